@@ -1,20 +1,54 @@
 package com.saicon.callcard.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.saicon.games.callcard.components.ICallCardManagement;
 import com.saicon.games.callcard.components.impl.CallCardManagement;
 import com.saicon.games.callcard.components.ErpDynamicQueryManager;
 import com.saicon.games.callcard.components.ErpNativeQueryManager;
+import com.saicon.games.callcard.components.MultiTenantQueryFilter;
+import com.saicon.games.callcard.components.BrandProductCategoryIndex;
+import com.saicon.games.callcard.components.CallCardAssemblyExecutor;
+import com.saicon.games.callcard.components.CallCardEventPublisher;
+import com.saicon.games.callcard.components.CallCardGameTypeConfigCache;
+import com.saicon.games.callcard.components.CallCardPropertyDictionaryCache;
+import com.saicon.games.callcard.components.CallCardRefUserCoordinatesCache;
+import com.saicon.games.callcard.components.CallCardRouteSheetJob;
+import com.saicon.games.callcard.components.CallCardRouteSheetStore;
+import com.saicon.games.callcard.components.CallCardTemplateSkeletonCache;
+import com.saicon.games.callcard.components.CallCardUpdateExecutor;
+import com.saicon.games.callcard.components.CallCardUserLocks;
+import com.saicon.games.callcard.dao.CallCardRefUserIndexBatchWriter;
 import com.saicon.games.callcard.dao.GenericDAO;
 import com.saicon.games.callcard.dao.IGenericDAO;
+import com.saicon.games.callcard.dao.JdbcCallCardRouteSheetRepository;
+import com.saicon.games.callcard.dao.JdbcIdempotentResponseStore;
 import com.saicon.games.callcard.entity.*;
 import com.saicon.games.entities.shared.*;
+import com.saicon.games.callcard.resources.CallCardIngestion;
+import com.saicon.games.callcard.resources.IdempotentSubmissions;
 import com.saicon.games.callcard.service.CallCardService;
 import com.saicon.games.callcard.ws.ICallCardService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class ComponentConfiguration {
@@ -22,6 +56,174 @@ public class ComponentConfiguration {
     @PersistenceContext
     private EntityManager entityManager;
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MultiTenantQueryFilter multiTenantQueryFilter;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private ObjectMapper objectMapper;
+
+    @Value("${callcard.template-skeleton-cache.max-size:1000}")
+    private long templateSkeletonCacheMaxSize;
+
+    @Value("${callcard.template-skeleton-cache.expire-after-write-minutes:30}")
+    private long templateSkeletonCacheExpireAfterWriteMinutes;
+
+    @Value("${callcard.game-type-config-cache.max-size:1000}")
+    private long gameTypeConfigCacheMaxSize;
+
+    @Value("${callcard.game-type-config-cache.expire-after-write-minutes:5}")
+    private long gameTypeConfigCacheExpireAfterWriteMinutes;
+
+    @Value("${callcard.events.async:true}")
+    private boolean eventsAsync;
+
+    @Value("${callcard.events.queue-capacity:10000}")
+    private int eventsQueueCapacity;
+
+    @Value("${callcard.events.batch-size:100}")
+    private int eventsBatchSize;
+
+    @Value("${callcard.events.flush-interval-millis:200}")
+    private long eventsFlushIntervalMillis;
+
+    @Value("${callcard.events.spool-file:callcard-events.spool}")
+    private String eventsSpoolFile;
+
+    @Value("${callcard.index-writer.batch-size:500}")
+    private int indexWriterBatchSize;
+
+    @Value("${callcard.ref-user-coordinates-cache.max-size:100000}")
+    private long refUserCoordinatesCacheMaxSize;
+
+    @Value("${callcard.ref-user-coordinates-cache.expire-after-write-minutes:60}")
+    private long refUserCoordinatesCacheExpireAfterWriteMinutes;
+
+    @Value("${callcard.ref-user-coordinates-cache.none-expire-after-write-minutes:5}")
+    private long refUserCoordinatesCacheNoneExpireAfterWriteMinutes;
+
+    @Value("${callcard.property-dictionary.refresh-interval-minutes:10}")
+    private long propertyDictionaryRefreshIntervalMinutes;
+
+    @Value("${callcard.assembly.threads:16}")
+    private int assemblyThreads;
+
+    @Value("${callcard.assembly.queue-capacity:256}")
+    private int assemblyQueueCapacity;
+
+    @Value("${callcard.assembly.timeout-millis:10000}")
+    private long assemblyTimeoutMillis;
+
+    @Value("${callcard.assembly.brand-product-categories-timeout-millis:5000}")
+    private long assemblyBrandProductCategoriesTimeoutMillis;
+
+    @Value("${callcard.assembly.summaries-timeout-millis:10000}")
+    private long assemblySummariesTimeoutMillis;
+
+    @Value("${callcard.assembly.geo-info-timeout-millis:3000}")
+    private long assemblyGeoInfoTimeoutMillis;
+
+    @Value("${callcard.parallel-update.enabled:false}")
+    private boolean parallelUpdateEnabled;
+
+    @Value("${callcard.parallel-update.threads:8}")
+    private int parallelUpdateThreads;
+
+    @Value("${callcard.parallel-update.queue-capacity:64}")
+    private int parallelUpdateQueueCapacity;
+
+    @Value("${callcard.parallel-update.timeout-millis:60000}")
+    private long parallelUpdateTimeoutMillis;
+
+    @Value("${callcard.user-locks.enabled:true}")
+    private boolean userLocksEnabled;
+
+    @Value("${callcard.user-locks.stripes:1024}")
+    private int userLocksStripes;
+
+    @Value("${callcard.user-locks.timeout-millis:30000}")
+    private long userLocksTimeoutMillis;
+
+    @Value("${callcard.dao.flush-interval:500}")
+    private int daoFlushInterval;
+
+    @Value("${callcard.dao.in-list-size:1024}")
+    private int daoInListSize;
+
+    @Value("${callcard.dao.fetch-size:500}")
+    private int daoFetchSize;
+
+    @Value("${callcard.brand-product-categories.refresh-interval-minutes:15}")
+    private long brandProductCategoriesRefreshIntervalMinutes;
+
+    @Value("${callcard.brand-product-categories.load-timeout-millis:5000}")
+    private long brandProductCategoriesLoadTimeoutMillis;
+
+    @Value("${callcard.brand-product-categories.threads:2}")
+    private int brandProductCategoriesThreads;
+
+    @Value("${callcard.brand-product-categories.retry-delay-seconds:30}")
+    private long brandProductCategoriesRetryDelaySeconds;
+
+    @Value("${callcard.route-sheets.enabled:false}")
+    private boolean routeSheetsEnabled;
+
+    @Value("${callcard.route-sheets.application-ids:}")
+    private String routeSheetsApplicationIds;
+
+    @Value("${callcard.route-sheets.run-at:02:00}")
+    private String routeSheetsRunAt;
+
+    @Value("${callcard.route-sheets.threads:4}")
+    private int routeSheetsThreads;
+
+    @Value("${callcard.route-sheets.max-age-hours:24}")
+    private long routeSheetsMaxAgeHours;
+
+    @Value("${callcard.route-sheets.table-enabled:true}")
+    private boolean routeSheetsTableEnabled;
+
+    @Value("${callcard.idempotency.max-entries:10000}")
+    private int idempotencyMaxEntries;
+
+    @Value("${callcard.idempotency.max-bytes:67108864}")
+    private long idempotencyMaxBytes;
+
+    @Value("${callcard.idempotency.expire-after-hours:24}")
+    private long idempotencyExpireAfterHours;
+
+    @Value("${callcard.idempotency.table-enabled:false}")
+    private boolean idempotencyTableEnabled;
+
+    @Value("${callcard.idempotency.in-flight-timeout-millis:30000}")
+    private long idempotencyInFlightTimeoutMillis;
+
+    @Value("${callcard.ingestion.journal-file:callcard-submissions.journal}")
+    private String ingestionJournalFile;
+
+    @Value("${callcard.ingestion.threads:4}")
+    private int ingestionThreads;
+
+    @Value("${callcard.ingestion.max-pending:10000}")
+    private int ingestionMaxPending;
+
+    @Value("${callcard.ingestion.max-jobs:100000}")
+    private int ingestionMaxJobs;
+
+    @Value("${callcard.ingestion.compact-bytes:67108864}")
+    private long ingestionCompactBytes;
+
+    @Value("${callcard.ingestion.retry-delay-millis:1000}")
+    private long ingestionRetryDelayMillis;
+
     // Component Layer Beans
     @Bean
     public ICallCardManagement callCardManagement() {
@@ -39,14 +241,207 @@ public class ComponentConfiguration {
         management.setPostcodeDao(postcodeDao());
         management.setErpDynamicQueryManager(erpDynamicQueryManager());
         management.setErpNativeQueryManager(erpNativeQueryManager());
+        management.setCallCardRefUserIndexBatchWriter(callCardRefUserIndexBatchWriter());
+        management.setCallCardTemplateSkeletonCache(callCardTemplateSkeletonCache());
+        management.setBrandProductCategoryIndex(brandProductCategoryIndex());
+        management.setCallCardGameTypeConfigCache(callCardGameTypeConfigCache());
+        management.setCallCardRefUserCoordinatesCache(callCardRefUserCoordinatesCache());
+        management.setCallCardPropertyDictionaryCache(callCardPropertyDictionaryCache());
+        management.setCallCardAssemblyExecutor(callCardAssemblyExecutor());
+        management.setCallCardUpdateExecutor(callCardUpdateExecutor());
+        management.setParallelUpdateEnabled(parallelUpdateEnabled);
+        if (eventsAsync)
+            management.setCallCardEventPublisher(callCardEventPublisher());
+        if (routeSheetsEnabled)
+            management.setCallCardRouteSheetStore(callCardRouteSheetStore());
         return management;
     }
 
+    // Cache Beans
+    @Bean(destroyMethod = "close")
+    public CallCardTemplateSkeletonCache callCardTemplateSkeletonCache() {
+        return new CallCardTemplateSkeletonCache(templateSkeletonCacheMaxSize, templateSkeletonCacheExpireAfterWriteMinutes);
+    }
+
+    @Bean
+    public CallCardGameTypeConfigCache callCardGameTypeConfigCache() {
+        return new CallCardGameTypeConfigCache(gameTypeConfigCacheMaxSize, gameTypeConfigCacheExpireAfterWriteMinutes);
+    }
+
+    @Bean
+    public CallCardRefUserCoordinatesCache callCardRefUserCoordinatesCache() {
+        return new CallCardRefUserCoordinatesCache(refUserCoordinatesCacheMaxSize, refUserCoordinatesCacheExpireAfterWriteMinutes, refUserCoordinatesCacheNoneExpireAfterWriteMinutes);
+    }
+
+    @Bean(destroyMethod = "close")
+    public CallCardPropertyDictionaryCache callCardPropertyDictionaryCache() {
+        return new CallCardPropertyDictionaryCache(metadataComponent(), propertyDictionaryRefreshIntervalMinutes);
+    }
+
+    @Bean(destroyMethod = "close")
+    public BrandProductCategoryIndex brandProductCategoryIndex() {
+        return new BrandProductCategoryIndex(solrClient(), brandProductCategoriesRefreshIntervalMinutes, brandProductCategoriesLoadTimeoutMillis, brandProductCategoriesThreads,
+                brandProductCategoriesRetryDelaySeconds);
+    }
+
+    // Executor Beans
+    @Bean(destroyMethod = "close")
+    public CallCardAssemblyExecutor callCardAssemblyExecutor() {
+        CallCardAssemblyExecutor executor = new CallCardAssemblyExecutor(transactionManager, assemblyThreads, assemblyQueueCapacity, assemblyTimeoutMillis);
+        executor.setTimeoutMillis(CallCardAssemblyExecutor.Dependency.BRAND_PRODUCT_CATEGORIES, assemblyBrandProductCategoriesTimeoutMillis);
+        executor.setTimeoutMillis(CallCardAssemblyExecutor.Dependency.SUMMARIES, assemblySummariesTimeoutMillis);
+        executor.setTimeoutMillis(CallCardAssemblyExecutor.Dependency.GEO_INFO, assemblyGeoInfoTimeoutMillis);
+        executor.setMultiTenantQueryFilter(multiTenantQueryFilter);
+        return executor;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CallCardUpdateExecutor callCardUpdateExecutor() {
+        CallCardUpdateExecutor executor = new CallCardUpdateExecutor(transactionManager, parallelUpdateThreads, parallelUpdateQueueCapacity, parallelUpdateTimeoutMillis);
+        executor.setMultiTenantQueryFilter(multiTenantQueryFilter);
+        if (meterRegistry != null) {
+            Gauge.builder("callcard.parallel-update.active", executor, CallCardUpdateExecutor::getActive).register(meterRegistry);
+            Gauge.builder("callcard.parallel-update.queued", executor, CallCardUpdateExecutor::getQueued).register(meterRegistry);
+        }
+        return executor;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CallCardEventPublisher callCardEventPublisher() {
+        File spoolFile = eventsSpoolFile.trim().isEmpty() ? null : new File(eventsSpoolFile);
+        CallCardEventPublisher publisher = new CallCardEventPublisher(generatedEventsDispatcher(), eventsQueueCapacity, eventsBatchSize, eventsFlushIntervalMillis, spoolFile);
+        if (meterRegistry != null)
+            bindEventMetrics(publisher);
+        return publisher;
+    }
+
+    private void bindEventMetrics(CallCardEventPublisher publisher) {
+        Gauge.builder("callcard.events.queue.size", publisher, CallCardEventPublisher::getQueued).register(meterRegistry);
+        Gauge.builder("callcard.events.queue.remaining", publisher, CallCardEventPublisher::getRemainingCapacity).register(meterRegistry);
+        FunctionCounter.builder("callcard.events.batches", publisher, CallCardEventPublisher::getBatches).register(meterRegistry);
+        FunctionCounter.builder("callcard.events", publisher, CallCardEventPublisher::getPublished).tag("state", "published").register(meterRegistry);
+        FunctionCounter.builder("callcard.events", publisher, CallCardEventPublisher::getDispatched).tag("state", "dispatched").register(meterRegistry);
+        FunctionCounter.builder("callcard.events", publisher, CallCardEventPublisher::getSpooled).tag("state", "spooled").register(meterRegistry);
+        FunctionCounter.builder("callcard.events", publisher, CallCardEventPublisher::getFailed).tag("state", "failed").register(meterRegistry);
+        FunctionCounter.builder("callcard.events", publisher, CallCardEventPublisher::getRolledBack).tag("state", "rolled-back").register(meterRegistry);
+    }
+
+    // Route Sheet Beans, with their metrics, only when the route sheets are enabled
+    @Bean
+    @ConditionalOnProperty(name = "callcard.route-sheets.enabled", havingValue = "true")
+    public CallCardRouteSheetStore callCardRouteSheetStore() {
+        return new CallCardRouteSheetStore(routeSheetsMaxAgeHours, routeSheetsTableEnabled ? new JdbcCallCardRouteSheetRepository(dataSource) : null);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "callcard.route-sheets.enabled", havingValue = "true")
+    public CallCardRouteSheetJob callCardRouteSheetJob() {
+        List<String> applicationIds = new ArrayList<>();
+        for (String applicationId : routeSheetsApplicationIds.split(","))
+            if (!applicationId.trim().isEmpty())
+                applicationIds.add(applicationId.trim());
+
+        CallCardRouteSheetJob job = new CallCardRouteSheetJob(callCardManagement(), erpDynamicQueryManager(), applicationDao(), callCardRouteSheetStore(), transactionManager, applicationIds, routeSheetsThreads);
+        job.schedule(LocalTime.parse(routeSheetsRunAt));
+        if (meterRegistry != null)
+            bindRouteSheetMetrics(job, callCardRouteSheetStore());
+        return job;
+    }
+
+    private void bindRouteSheetMetrics(CallCardRouteSheetJob job, CallCardRouteSheetStore store) {
+        Gauge.builder("callcard.route-sheets.users", job, j -> j.getProgress().getTotal()).tag("state", "total").register(meterRegistry);
+        Gauge.builder("callcard.route-sheets.users", job, j -> j.getProgress().getCompleted()).tag("state", "completed").register(meterRegistry);
+        Gauge.builder("callcard.route-sheets.users", job, j -> j.getProgress().getFailed()).tag("state", "failed").register(meterRegistry);
+        Gauge.builder("callcard.route-sheets.users", job, j -> j.getProgress().getRemaining()).tag("state", "remaining").register(meterRegistry);
+        Gauge.builder("callcard.route-sheets.running", job, j -> j.isRunning() ? 1 : 0).register(meterRegistry);
+        Gauge.builder("callcard.route-sheets.duration", job, j -> j.getProgress().getDurationMillis()).baseUnit("milliseconds").register(meterRegistry);
+        Gauge.builder("callcard.route-sheets.assembly.mean", job, j -> j.getProgress().getMeanAssemblyMillis()).baseUnit("milliseconds").register(meterRegistry);
+
+        Gauge.builder("callcard.route-sheets.store.size", store, CallCardRouteSheetStore::size).register(meterRegistry);
+        Gauge.builder("callcard.route-sheets.store.bytes", store, CallCardRouteSheetStore::getContentBytes).baseUnit("bytes").register(meterRegistry);
+        FunctionCounter.builder("callcard.route-sheets.requests", store, CallCardRouteSheetStore::getHits).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("callcard.route-sheets.requests", store, CallCardRouteSheetStore::getMisses).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("callcard.route-sheets.requests", store, CallCardRouteSheetStore::getStale).tag("result", "stale").register(meterRegistry);
+    }
+
+    // Idempotency Beans
+    @Bean
+    public IdempotentSubmissions idempotentSubmissions() {
+        long expireAfterMillis = TimeUnit.HOURS.toMillis(idempotencyExpireAfterHours);
+        JdbcIdempotentResponseStore store = idempotencyTableEnabled ? new JdbcIdempotentResponseStore(dataSource, expireAfterMillis) : null;
+        IdempotentSubmissions submissions = new IdempotentSubmissions(idempotencyMaxEntries, idempotencyMaxBytes, expireAfterMillis, idempotencyInFlightTimeoutMillis, store,
+                objectMapper != null ? objectMapper : new ObjectMapper());
+        if (meterRegistry != null)
+            bindIdempotencyMetrics(submissions);
+        return submissions;
+    }
+
+    private void bindIdempotencyMetrics(IdempotentSubmissions submissions) {
+        Gauge.builder("callcard.idempotency.size", submissions, IdempotentSubmissions::size).register(meterRegistry);
+        Gauge.builder("callcard.idempotency.bytes", submissions, IdempotentSubmissions::getBytes).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("callcard.idempotency.in-flight", submissions, IdempotentSubmissions::getInFlight).register(meterRegistry);
+        FunctionCounter.builder("callcard.idempotency.requests", submissions, IdempotentSubmissions::getExecuted).tag("result", "executed").register(meterRegistry);
+        FunctionCounter.builder("callcard.idempotency.requests", submissions, IdempotentSubmissions::getReplayed).tag("result", "replayed").register(meterRegistry);
+        FunctionCounter.builder("callcard.idempotency.requests", submissions, IdempotentSubmissions::getCoalesced).tag("result", "coalesced").register(meterRegistry);
+        FunctionCounter.builder("callcard.idempotency.requests", submissions, IdempotentSubmissions::getConflicts).tag("result", "conflict").register(meterRegistry);
+    }
+
+    // Ingestion Beans
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "callcard.ingestion.enabled", havingValue = "true")
+    public CallCardIngestion callCardIngestion() throws IOException {
+        CallCardIngestion ingestion = new CallCardIngestion(ingestionCallCardService(), new File(ingestionJournalFile), ingestionThreads, ingestionMaxPending, ingestionMaxJobs,
+                ingestionCompactBytes, ingestionRetryDelayMillis);
+        if (meterRegistry != null)
+            bindIngestionMetrics(ingestion);
+        return ingestion;
+    }
+
+    /**
+     * The service the ingestion workers apply jobs with: it does not wait for a busy user, the ingestion retries later.
+     * Not a bean, so that it is not published as an endpoint.
+     */
+    private ICallCardService ingestionCallCardService() {
+        CallCardService service = new CallCardService();
+        service.setCallCardManagement(callCardManagement());
+        if (userLocksEnabled)
+            service.setCallCardUserLocks(callCardUserLocks());
+        service.setUserLockTimeoutMillis(0);
+        return service;
+    }
+
+    private void bindIngestionMetrics(CallCardIngestion ingestion) {
+        Gauge.builder("callcard.ingestion.pending", ingestion, CallCardIngestion::getPending).register(meterRegistry);
+        FunctionCounter.builder("callcard.ingestion.jobs", ingestion, CallCardIngestion::getAccepted).tag("state", "accepted").register(meterRegistry);
+        FunctionCounter.builder("callcard.ingestion.jobs", ingestion, CallCardIngestion::getCompleted).tag("state", "completed").register(meterRegistry);
+        FunctionCounter.builder("callcard.ingestion.jobs", ingestion, CallCardIngestion::getFailed).tag("state", "failed").register(meterRegistry);
+        FunctionCounter.builder("callcard.ingestion.jobs", ingestion, CallCardIngestion::getRefused).tag("state", "refused").register(meterRegistry);
+        FunctionCounter.builder("callcard.ingestion.jobs", ingestion, CallCardIngestion::getRetried).tag("state", "retried").register(meterRegistry);
+    }
+
+    // Locking Beans
+    @Bean
+    public CallCardUserLocks callCardUserLocks() {
+        CallCardUserLocks locks = new CallCardUserLocks(userLocksStripes, userLocksTimeoutMillis);
+        if (meterRegistry != null)
+            bindUserLockMetrics(locks);
+        return locks;
+    }
+
+    private void bindUserLockMetrics(CallCardUserLocks locks) {
+        Gauge.builder("callcard.user-locks.waiting", locks, CallCardUserLocks::getWaiting).register(meterRegistry);
+        FunctionTimer.builder("callcard.user-locks.wait", locks, CallCardUserLocks::getContended, CallCardUserLocks::getWaitMillis, TimeUnit.MILLISECONDS).register(meterRegistry);
+        FunctionCounter.builder("callcard.user-locks.requests", locks, CallCardUserLocks::getAcquired).tag("result", "acquired").register(meterRegistry);
+        FunctionCounter.builder("callcard.user-locks.requests", locks, CallCardUserLocks::getTimedOut).tag("result", "timed-out").register(meterRegistry);
+    }
+
     // Service Layer Beans
     @Bean
     public ICallCardService callCardService() {
         CallCardService service = new CallCardService();
         service.setCallCardManagement(callCardManagement());
+        if (userLocksEnabled)
+            service.setCallCardUserLocks(callCardUserLocks());
         return service;
     }
 
@@ -71,6 +466,8 @@ public class ComponentConfiguration {
     public ErpDynamicQueryManager erpDynamicQueryManager() {
         ErpDynamicQueryManager manager = new ErpDynamicQueryManager();
         manager.setEntityManager(entityManager);
+        manager.setFetchSize(daoFetchSize);
+        manager.setInListSize(daoInListSize);
         return manager;
     }
 
@@ -78,64 +475,82 @@ public class ComponentConfiguration {
     public ErpNativeQueryManager erpNativeQueryManager() {
         ErpNativeQueryManager manager = new ErpNativeQueryManager();
         manager.setEntityManager(entityManager);
+        manager.setInListSize(daoInListSize);
         return manager;
     }
 
+    @Bean
+    public CallCardRefUserIndexBatchWriter callCardRefUserIndexBatchWriter() {
+        return new CallCardRefUserIndexBatchWriter(entityManager, indexWriterBatchSize);
+    }
+
     // DAO Beans - CallCard Entities
     @Bean
     public IGenericDAO<CallCard, String> callCardDao() {
-        return new GenericDAO<>(CallCard.class, entityManager);
+        return configured(new GenericDAO<>(CallCard.class, entityManager));
     }
 
     @Bean
     public IGenericDAO<CallCardTemplate, String> callCardTemplateDao() {
-        return new GenericDAO<>(CallCardTemplate.class, entityManager);
+        return configured(new GenericDAO<>(CallCardTemplate.class, entityManager));
     }
 
     @Bean
     public IGenericDAO<CallCardTemplatePOS, String> callCardTemplatePOSDao() {
-        return new GenericDAO<>(CallCardTemplatePOS.class, entityManager);
+        return configured(new GenericDAO<>(CallCardTemplatePOS.class, entityManager));
     }
 
     @Bean
     public IGenericDAO<CallCardTemplateEntry, String> callCardTemplateEntryDao() {
-        return new GenericDAO<>(CallCardTemplateEntry.class, entityManager);
+        return configured(new GenericDAO<>(CallCardTemplateEntry.class, entityManager));
     }
 
     @Bean
     public IGenericDAO<CallCardTemplateUserReferences, String> callCardTemplateUserReferencesDao() {
-        return new GenericDAO<>(CallCardTemplateUserReferences.class, entityManager);
+        return configured(new GenericDAO<>(CallCardTemplateUserReferences.class, entityManager));
     }
 
     @Bean
     public IGenericDAO<CallCardRefUser, String> callCardRefUserDao() {
-        return new GenericDAO<>(CallCardRefUser.class, entityManager);
+        return configured(new GenericDAO<>(CallCardRefUser.class, entityManager));
     }
 
     @Bean
     public IGenericDAO<CallCardRefUserIndex, String> callCardRefUserIndexDao() {
-        return new GenericDAO<>(CallCardRefUserIndex.class, entityManager);
+        return configured(new GenericDAO<>(CallCardRefUserIndex.class, entityManager));
     }
 
     // DAO Beans - Supporting Entities
     @Bean
     public IGenericDAO<Users, String> usersDao() {
-        return new GenericDAO<>(Users.class, entityManager);
+        return configured(new GenericDAO<>(Users.class, entityManager));
     }
 
     @Bean
     public IGenericDAO<ItemTypes, Integer> itemTypesDao() {
-        return new GenericDAO<>(ItemTypes.class, entityManager);
+        return configured(new GenericDAO<>(ItemTypes.class, entityManager));
     }
 
     @Bean
     public IGenericDAO<Application, String> applicationDao() {
-        return new GenericDAO<>(Application.class, entityManager);
+        return configured(new GenericDAO<>(Application.class, entityManager));
     }
 
     @Bean
     public IGenericDAO<Postcode, Integer> postcodeDao() {
-        return new GenericDAO<>(Postcode.class, entityManager);
+        return configured(new GenericDAO<>(Postcode.class, entityManager));
+    }
+
+    private <T, PK extends Serializable> GenericDAO<T, PK> configured(GenericDAO<T, PK> dao) {
+        dao.setFlushInterval(daoFlushInterval);
+        dao.setInListSize(daoInListSize);
+        dao.setFetchSize(daoFetchSize);
+        if (meterRegistry != null) {
+            String entity = dao.getType().getSimpleName();
+            FunctionCounter.builder("callcard.dao.named-query.lookups", dao, GenericDAO::getQueryNameHits).tag("entity", entity).tag("result", "hit").register(meterRegistry);
+            FunctionCounter.builder("callcard.dao.named-query.lookups", dao, GenericDAO::getQueryNameMisses).tag("entity", entity).tag("result", "miss").register(meterRegistry);
+        }
+        return dao;
     }
 
     // Stub Beans for External Dependencies
@@ -58,6 +58,12 @@ public class DataSourceConfiguration {
     @Value("${spring.jpa.hibernate.ddl-auto:none}")
     private String ddlAuto;
 
+    @Value("${spring.jpa.properties.hibernate.default_batch_fetch_size:64}")
+    private int defaultBatchFetchSize;
+
+    @Value("${spring.jpa.properties.hibernate.batch_fetch_style:PADDED}")
+    private String batchFetchStyle;
+
     /**
      * HikariCP DataSource configuration
      */
@@ -132,6 +138,10 @@ public class DataSourceConfiguration {
         jpaProperties.put("hibernate.order_updates", "true");
         jpaProperties.put("hibernate.jdbc.batch_versioned_data", "true");
 
+        // Lazy associations of the entities of a page are loaded for up to defaultBatchFetchSize owners per query
+        jpaProperties.put("hibernate.default_batch_fetch_size", String.valueOf(defaultBatchFetchSize));
+        jpaProperties.put("hibernate.batch_fetch_style", batchFetchStyle);
+
         emf.setJpaProperties(jpaProperties);
 
         return emf;
@@ -0,0 +1,24 @@
+-- ============================================================================
+-- CallCard Idempotent Response Table
+-- ============================================================================
+-- Purpose: Responses replayed to retried submissions carrying an Idempotency-Key
+-- Features: One row per user, endpoint and key; rows expire after callcard.idempotency.expire-after-hours
+-- Date: 2026-10-17
+-- Version: V005
+-- ============================================================================
+
+CREATE TABLE CALL_CARD_IDEMPOTENT_RESPONSE (
+    IDEMPOTENCY_KEY        NVARCHAR(256)       NOT NULL,
+    FINGERPRINT            CHAR(64)            NULL,
+    STATUS                 INT                 NOT NULL,
+    ITEM_COUNT             INT                 NULL,
+    BODY                   NVARCHAR(MAX)       NULL,
+    CREATED_AT             DATETIME            NOT NULL DEFAULT GETDATE(),
+
+    -- Primary Key
+    CONSTRAINT PK_CALL_CARD_IDEMPOTENT_RESPONSE PRIMARY KEY (IDEMPOTENCY_KEY)
+);
+
+-- Index on creation time (purge of expired responses)
+CREATE NONCLUSTERED INDEX idx_idempotent_response_created
+    ON CALL_CARD_IDEMPOTENT_RESPONSE(CREATED_AT);
@@ -0,0 +1,23 @@
+-- ============================================================================
+-- CallCard Route Sheet Table
+-- ============================================================================
+-- Purpose: Pre-materialized route sheets (gzipped CallCards from template) shared by all nodes
+-- Features: One row per user, user group, game type and application; rows expire after callcard.route-sheets.max-age-hours
+-- Date: 2026-10-17
+-- Version: V006
+-- ============================================================================
+
+CREATE TABLE CALL_CARD_ROUTE_SHEET (
+    ROUTE_SHEET_KEY        NVARCHAR(200)       NOT NULL,
+    VERSION                VARCHAR(64)         NOT NULL,
+    CONTENT                VARBINARY(MAX)      NOT NULL,
+    CONTENT_BYTES          INT                 NOT NULL,
+    BUILT_AT               DATETIME            NOT NULL DEFAULT GETDATE(),
+
+    -- Primary Key
+    CONSTRAINT PK_CALL_CARD_ROUTE_SHEET PRIMARY KEY (ROUTE_SHEET_KEY)
+);
+
+-- Index on build time (eviction of expired route sheets)
+CREATE NONCLUSTERED INDEX idx_route_sheet_built
+    ON CALL_CARD_ROUTE_SHEET(BUILT_AT);
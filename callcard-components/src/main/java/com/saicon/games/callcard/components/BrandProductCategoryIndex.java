@@ -0,0 +1,249 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.components.external.SolrClient;
+import com.saicon.games.callcard.util.SortOrderTypes;
+import com.saicon.games.solr.dto.SolrBrandProductDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Per-gameType index of brand product subcategories, loaded from Solr with one full catalogue scan and
+ * refreshed in the background every {@code refreshIntervalMinutes}.
+ *
+ * Request threads only read immutable snapshots. A failed or slow refresh keeps serving the previous
+ * snapshot. Only the first request of a gameType waits, at most {@code loadTimeoutMillis}, for the initial
+ * load; it and every request until the load completes get an empty category map. A failed load is retried
+ * after {@code retryDelaySeconds}, doubled on every consecutive failure up to the refresh interval.
+ */
+public class BrandProductCategoryIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrandProductCategoryIndex.class);
+
+    private final SolrClient solrClient;
+    private final long loadTimeoutMillis;
+    private final long retryDelaySeconds;
+    private final long refreshIntervalSeconds;
+
+    private final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<>(); //< GameTypeId, Snapshot>
+    private final ConcurrentMap<String, CompletableFuture<Snapshot>> loads = new ConcurrentHashMap<>(); //< GameTypeId, Load in progress>
+    private final ConcurrentMap<String, Integer> failures = new ConcurrentHashMap<>(); //< GameTypeId, Consecutive failed loads>
+    private final Set<String> gameTypeIds = ConcurrentHashMap.newKeySet(); //< GameTypes requested at least once
+    private final ScheduledExecutorService executor;
+
+    public BrandProductCategoryIndex(SolrClient solrClient) {
+        this(solrClient, 15, 5000, 2);
+    }
+
+    public BrandProductCategoryIndex(SolrClient solrClient, long refreshIntervalMinutes, long loadTimeoutMillis, int threads) {
+        this(solrClient, refreshIntervalMinutes, loadTimeoutMillis, threads, 30);
+    }
+
+    public BrandProductCategoryIndex(SolrClient solrClient, long refreshIntervalMinutes, long loadTimeoutMillis, int threads, long retryDelaySeconds) {
+        this.solrClient = solrClient;
+        this.loadTimeoutMillis = loadTimeoutMillis;
+        this.retryDelaySeconds = retryDelaySeconds > 0 ? retryDelaySeconds : 30;
+        this.refreshIntervalSeconds = TimeUnit.MINUTES.toSeconds(refreshIntervalMinutes);
+        this.executor = Executors.newScheduledThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "brand-product-category-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::refreshAll, refreshIntervalMinutes, refreshIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Return BrandProductId to product type category, where the category is the first subcategory of the
+     * brand product that is also one of the given product type categories.
+     */
+    public Map<String, Integer> getCategoriesMap(String gameTypeId, List<String> productTypeCategories) {
+        Snapshot snapshot = snapshots.get(gameTypeId);
+        if (snapshot == null) {
+            if (gameTypeIds.add(gameTypeId))
+                snapshot = awaitInitialLoad(gameTypeId);
+            else
+                snapshot = Snapshot.EMPTY;
+        }
+
+        return snapshot.getCategoriesMap(productTypeCategories);
+    }
+
+    /**
+     * Content hash of the current snapshot of a gameType, 0 while none is loaded. Does not wait for a load.
+     */
+    public int getVersion(String gameTypeId) {
+        Snapshot snapshot = snapshots.get(gameTypeId);
+        return snapshot != null ? snapshot.getVersion() : 0;
+    }
+
+    /**
+     * Reload the index of a gameType in the background, keeping the current snapshot until the reload completes.
+     */
+    public void refresh(String gameTypeId) {
+        scheduleLoad(gameTypeId);
+    }
+
+    public void refreshAll() {
+        for (String gameTypeId : new ArrayList<>(gameTypeIds))
+            scheduleLoad(gameTypeId);
+    }
+
+    public void close() {
+        executor.shutdownNow();
+        snapshots.clear();
+        gameTypeIds.clear();
+    }
+
+    private Snapshot awaitInitialLoad(String gameTypeId) {
+        try {
+            return scheduleLoad(gameTypeId).get(loadTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("-- Brand product categories not loaded in time, serving without categories : gameTypeId={} timeoutMillis={}", gameTypeId, loadTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // already logged by the loader
+        }
+        return Snapshot.EMPTY;
+    }
+
+    private CompletableFuture<Snapshot> scheduleLoad(final String gameTypeId) {
+        final CompletableFuture<Snapshot> load = new CompletableFuture<>();
+        CompletableFuture<Snapshot> running = loads.putIfAbsent(gameTypeId, load);
+        if (running != null)
+            return running;
+
+        executor.execute(() -> {
+            try {
+                Snapshot snapshot = load(solrClient, gameTypeId);
+                snapshots.put(gameTypeId, snapshot);
+                failures.remove(gameTypeId);
+                loads.remove(gameTypeId, load);
+                load.complete(snapshot);
+            } catch (RuntimeException e) {
+                long delaySeconds = scheduleRetry(gameTypeId);
+                LOGGER.error("-- Failed to refresh brand product categories, keeping previous snapshot : gameTypeId=" + gameTypeId + " retryInSeconds=" + delaySeconds, e);
+                loads.remove(gameTypeId, load);
+                load.completeExceptionally(e);
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Schedule another load of a gameType after a failed one, backing off exponentially up to the refresh interval.
+     */
+    private long scheduleRetry(String gameTypeId) {
+        int failed = failures.merge(gameTypeId, 1, Integer::sum);
+        long delaySeconds = Math.min(retryDelaySeconds << Math.min(failed - 1, 16), Math.max(refreshIntervalSeconds, retryDelaySeconds));
+        if (!executor.isShutdown())
+            executor.schedule(() -> scheduleLoad(gameTypeId), delaySeconds, TimeUnit.SECONDS);
+        return delaySeconds;
+    }
+
+    /**
+     * Scan the whole brand product catalogue of a gameType and index the subcategories of each product.
+     */
+    @SuppressWarnings("unchecked")
+    public static Snapshot load(SolrClient solrClient, String gameTypeId) {
+        long start = System.currentTimeMillis();
+
+        List<Object> solrBrandProductsRaw = solrClient.getMultipleBrandProducts(gameTypeId,
+                null,
+                "",
+                null,
+                null,
+                new String[]{},
+                new Integer[]{},
+                new String[]{},
+                new String[]{},
+                new String[]{},
+                0,
+                -1,
+                false,
+                true,
+                null,
+                null,
+                null,
+                false,
+                null,
+                null,
+                false,
+                null,
+                SortOrderTypes.BY_ORDERING_ASC);
+
+        List<SolrBrandProductDTO> brandProducts = null;
+        if (solrBrandProductsRaw != null && !solrBrandProductsRaw.isEmpty() && solrBrandProductsRaw.get(0) instanceof List) {
+            brandProducts = (List<SolrBrandProductDTO>) solrBrandProductsRaw.get(0);
+        }
+
+        Map<String, List<String>> subcategories = new HashMap<>();
+        if (brandProducts != null) {
+            for (SolrBrandProductDTO brandProduct : brandProducts) {
+                if (brandProduct != null && brandProduct.getSubcategoryIds() != null && brandProduct.getSubcategoryIds().size() > 0)
+                    subcategories.put(brandProduct.getBrandProductId(), Collections.unmodifiableList(new ArrayList<>(brandProduct.getSubcategoryIds())));
+            }
+        }
+
+        LOGGER.info("-- Loaded brand product categories : gameTypeId={} brandProducts={} took={}ms", gameTypeId, subcategories.size(), System.currentTimeMillis() - start);
+        return new Snapshot(subcategories);
+    }
+
+    /**
+     * Immutable catalogue view of one gameType. Category maps derived for a list of product type categories
+     * are memoized, as every application of a gameType asks with the same configuration.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.<String, List<String>>emptyMap());
+
+        private final Map<String, List<String>> subcategories; //< BrandProductId, Subcategory IDs>
+        private final ConcurrentMap<List<String>, Map<String, Integer>> categoriesMaps = new ConcurrentHashMap<>();
+        private final int version;
+
+        Snapshot(Map<String, List<String>> subcategories) {
+            this.subcategories = subcategories;
+            this.version = subcategories.hashCode();
+        }
+
+        public Map<String, Integer> getCategoriesMap(List<String> productTypeCategories) {
+            if (productTypeCategories == null || productTypeCategories.isEmpty() || subcategories.isEmpty())
+                return Collections.emptyMap();
+
+            return categoriesMaps.computeIfAbsent(new ArrayList<>(productTypeCategories), this::buildCategoriesMap);
+        }
+
+        public int size() {
+            return subcategories.size();
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        private Map<String, Integer> buildCategoriesMap(List<String> productTypeCategories) {
+            Map<String, Integer> categoriesMap = new HashMap<>();
+            for (Map.Entry<String, List<String>> entry : subcategories.entrySet()) {
+                for (String subcategoryId : entry.getValue()) {
+                    if (productTypeCategories.contains(subcategoryId)) {
+                        categoriesMap.put(entry.getKey(), Integer.parseInt(subcategoryId));
+                        break;
+                    }
+                }
+            }
+            return Collections.unmodifiableMap(categoriesMap);
+        }
+    }
+}
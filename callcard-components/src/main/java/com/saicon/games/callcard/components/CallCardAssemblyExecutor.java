@@ -0,0 +1,204 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.exception.BusinessLayerException;
+import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor that runs the independent lookups of CallCard assembly (configuration, property dictionary,
+ * brand product categories, templates, previous-value summaries, geo info) concurrently.
+ *
+ * Lookups that read the database run in their own read-only transaction on the worker thread, since the
+ * caller's persistence context is bound to the caller's thread; their results must not be lazily navigated
+ * afterwards. The tenant (userGroupId, gameTypeId) is re-applied to the worker session when the caller has
+ * the multi-tenant filter enabled, and the logging MDC is copied to the worker.
+ *
+ * A worker never waits for a connection while its caller holds one: when the caller thread is already in a
+ * transaction, database lookups run inline in that transaction, so concurrent assembly needs a caller that is
+ * not transactional and runs its own database work through {@link #executeInTransaction}.
+ *
+ * When the queue is full the lookup runs on the caller thread, so a saturated pool degrades to the former
+ * sequential behaviour instead of failing. A lookup that times out or fails is never run again: required lookups
+ * fail the assembly, optional ones are left out and reported as degraded.
+ */
+public class CallCardAssemblyExecutor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardAssemblyExecutor.class);
+
+    public enum Dependency {
+        GAME_TYPE_CONFIG,
+        PROPERTY_DICTIONARY,
+        BRAND_PRODUCT_CATEGORIES,
+        TEMPLATES,
+        SUMMARIES,
+        GEO_INFO
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Map<Dependency, Long> timeoutsMillis = new EnumMap<>(Dependency.class);
+
+    private MultiTenantQueryFilter multiTenantQueryFilter;
+
+    public CallCardAssemblyExecutor(PlatformTransactionManager transactionManager, int threads, int queueCapacity, long defaultTimeoutMillis) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "callcard-assembly-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTransaction.setReadOnly(true);
+
+        for (Dependency dependency : Dependency.values())
+            timeoutsMillis.put(dependency, defaultTimeoutMillis);
+    }
+
+    /**
+     * Run a lookup that does not touch the database.
+     */
+    public <T> Future<T> submit(Dependency dependency, Supplier<T> lookup) {
+        return executor.submit(withContext(dependency, lookup::get));
+    }
+
+    /**
+     * Run a database lookup in its own read-only transaction, scoped to the given tenant. If the caller is in a
+     * transaction the lookup runs inline in it instead.
+     */
+    public <T> Future<T> submitInTransaction(Dependency dependency, final String userGroupId, final String gameTypeId, final Supplier<T> lookup) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            try {
+                result.complete(lookup.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+
+        final boolean tenantFiltered = isTenantFiltered();
+        return executor.submit(withContext(dependency, () -> runInTransaction(userGroupId, gameTypeId, tenantFiltered, lookup)));
+    }
+
+    /**
+     * Run database work on the caller thread in a short read-only transaction, scoped to the given tenant, or in
+     * the caller's transaction if it has one.
+     */
+    public <T> T executeInTransaction(String userGroupId, String gameTypeId, Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive())
+            return work.get();
+
+        return runInTransaction(userGroupId, gameTypeId, isTenantFiltered(), work);
+    }
+
+    /**
+     * Wait for a lookup for at most the timeout of its dependency. A timed out lookup is cancelled but not
+     * interrupted, so a running query completes and its transaction ends normally.
+     */
+    public <T> T await(Dependency dependency, Future<T> future) throws BusinessLayerException {
+        long timeoutMillis = timeoutsMillis.get(dependency);
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "CallCard assembly lookup " + dependency + " timed out after " + timeoutMillis + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "CallCard assembly interrupted while waiting for " + dependency);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "CallCard assembly lookup " + dependency + " failed: " + e.getCause());
+        }
+    }
+
+    /**
+     * Wait for an optional lookup. If it times out or fails the assembly goes on with the given empty value and
+     * the dependency is added to the degraded ones, so that the response can be flagged.
+     */
+    public <T> T awaitOptional(Dependency dependency, Future<T> future, T empty, Set<Dependency> degraded) {
+        try {
+            return await(dependency, future);
+        } catch (BusinessLayerException | RuntimeException e) {
+            LOGGER.warn("-- CallCard assembly lookup degraded : dependency={} reason={}", dependency, e.getMessage());
+            degraded.add(dependency);
+            return empty;
+        }
+    }
+
+    public void setTimeoutMillis(Dependency dependency, long timeoutMillis) {
+        timeoutsMillis.put(dependency, timeoutMillis);
+    }
+
+    public long getTimeoutMillis(Dependency dependency) {
+        return timeoutsMillis.get(dependency);
+    }
+
+    public MultiTenantQueryFilter getMultiTenantQueryFilter() {
+        return multiTenantQueryFilter;
+    }
+
+    public void setMultiTenantQueryFilter(MultiTenantQueryFilter multiTenantQueryFilter) {
+        this.multiTenantQueryFilter = multiTenantQueryFilter;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private boolean isTenantFiltered() {
+        return multiTenantQueryFilter != null && multiTenantQueryFilter.isFilterEnabled();
+    }
+
+    private <T> T runInTransaction(final String userGroupId, final String gameTypeId, final boolean tenantFiltered, final Supplier<T> work) {
+        return readOnlyTransaction.execute(status -> {
+            if (tenantFiltered)
+                multiTenantQueryFilter.enableFilter(userGroupId, gameTypeId);
+            return work.get();
+        });
+    }
+
+    private static <T> Callable<T> withContext(final Dependency dependency, final Callable<T> lookup) {
+        final Map<String, String> mdc = MDC.getCopyOfContextMap();
+        return () -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            if (mdc != null)
+                MDC.setContextMap(mdc);
+            long start = System.currentTimeMillis();
+            try {
+                return lookup.call();
+            } finally {
+                LOGGER.debug("-- CallCard assembly lookup : dependency={} took={}ms", dependency, System.currentTimeMillis() - start);
+                if (previous != null)
+                    MDC.setContextMap(previous);
+                else
+                    MDC.clear();
+            }
+        };
+    }
+}
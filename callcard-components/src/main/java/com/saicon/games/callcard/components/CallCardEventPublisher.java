@@ -0,0 +1,314 @@
+package com.saicon.games.callcard.components;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.saicon.games.callcard.components.external.GeneratedEventsDispatcher;
+import com.saicon.games.callcard.ws.dto.EventTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes CallCard events to the {@link GeneratedEventsDispatcher} off the write path.
+ *
+ * Events published inside a transaction are held until it commits and dropped if it rolls back (outbox semantics);
+ * outside a transaction they are queued at once. A single worker drains the bounded queue, dispatching whatever is
+ * queued, up to {@code batchSize} events, per flush.
+ *
+ * Events that find the queue full, that an observer fails on, or that are still queued when the publisher closes are
+ * appended to the spool file as JSON lines, and dispatched again when the queue is idle and on the next start. Events
+ * queued in memory are lost if the process dies without closing the publisher.
+ */
+public class CallCardEventPublisher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardEventPublisher.class);
+
+    private static final Object TRANSACTION_EVENTS_KEY = new Object();
+
+    /**
+     * Minimum time between two replays of the spool, so an observer that keeps failing is not retried in a loop.
+     */
+    private static final long SPOOL_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final GeneratedEventsDispatcher generatedEventsDispatcher;
+    private final BlockingQueue<EventTO> queue;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final File spoolFile;
+
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final Object spoolLock = new Object();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private volatile boolean spoolPending;
+    private long lastReplayAt;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rolledBack = new AtomicLong();
+
+    /**
+     * @param spoolFile File undelivered events are kept in; null to log and drop them instead
+     */
+    public CallCardEventPublisher(GeneratedEventsDispatcher generatedEventsDispatcher, int queueCapacity, int batchSize, long flushIntervalMillis, File spoolFile) {
+        this.generatedEventsDispatcher = generatedEventsDispatcher;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.spoolFile = spoolFile;
+        this.spoolPending = spoolFile != null && (spoolFile.length() > 0 || replayFile().exists());
+
+        this.worker = new Thread(this::drain, "callcard-events");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Publish an event after the current transaction commits, or now when there is no transaction.
+     */
+    public void publish(EventTO event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(Collections.singletonList(event));
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<EventTO> transactionEvents = (List<EventTO>) TransactionSynchronizationManager.getResource(TRANSACTION_EVENTS_KEY);
+        if (transactionEvents == null) {
+            final List<EventTO> events = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(TRANSACTION_EVENTS_KEY, events);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(events);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(TRANSACTION_EVENTS_KEY);
+                    if (status != STATUS_COMMITTED)
+                        rolledBack.addAndGet(events.size());
+                }
+            });
+            transactionEvents = events;
+        }
+        transactionEvents.add(event);
+    }
+
+    /**
+     * Stop the worker, dispatching what can be dispatched within the flush interval and spooling the rest.
+     */
+    public void close() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(flushIntervalMillis + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<EventTO> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        spool(remaining);
+        LOGGER.info("-- CallCard events publisher closed : spooled={} {}", remaining.size(), this);
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public int getRemainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getDispatched() {
+        return dispatched.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getSpooled() {
+        return spooled.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getRolledBack() {
+        return rolledBack.get();
+    }
+
+    @Override
+    public String toString() {
+        return "published=" + published.get() + " dispatched=" + dispatched.get() + " batches=" + batches.get() + " queued=" + queue.size()
+                + " spooled=" + spooled.get() + " failed=" + failed.get() + " rolledBack=" + rolledBack.get();
+    }
+
+    private void enqueue(Collection<EventTO> events) {
+        List<EventTO> overflow = null;
+        for (EventTO event : events) {
+            published.incrementAndGet();
+            if (!queue.offer(event)) {
+                if (overflow == null)
+                    overflow = new ArrayList<>();
+                overflow.add(event);
+            }
+        }
+
+        if (overflow != null) {
+            LOGGER.warn("-- CallCard events queue full : overflow={} {}", overflow.size(), this);
+            spool(overflow);
+        }
+    }
+
+    private void drain() {
+        List<EventTO> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                EventTO first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (spoolPending && System.currentTimeMillis() - lastReplayAt >= SPOOL_RETRY_MILLIS)
+                        replaySpool();
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                dispatch(batch);
+            } catch (InterruptedException e) {
+                if (!running)
+                    break;
+            } catch (RuntimeException e) {
+                LOGGER.error("-- CallCard events worker failed : {}", this, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void dispatch(List<EventTO> batch) {
+        List<EventTO> undelivered = null;
+        for (EventTO event : batch) {
+            try {
+                generatedEventsDispatcher.dispatch(event);
+                dispatched.incrementAndGet();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                LOGGER.warn("-- CallCard event not dispatched : eventType={} userId={} reason={}", event.getEventType(), event.getUserId(), e.getMessage());
+                if (undelivered == null)
+                    undelivered = new ArrayList<>();
+                undelivered.add(event);
+            }
+        }
+        batches.incrementAndGet();
+
+        if (undelivered != null)
+            spool(undelivered);
+    }
+
+    private void spool(List<EventTO> events) {
+        if (events.isEmpty())
+            return;
+
+        if (spoolFile == null) {
+            LOGGER.error("-- CallCard events dropped, no spool file : count={}", events.size());
+            return;
+        }
+
+        synchronized (spoolLock) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(spoolFile, true), StandardCharsets.UTF_8)) {
+                for (EventTO event : events) {
+                    writer.write(mapper.writeValueAsString(event));
+                    writer.write('\n');
+                }
+                spooled.addAndGet(events.size());
+                spoolPending = true;
+            } catch (IOException e) {
+                LOGGER.error("-- CallCard events lost, spool file not writable : file={} count={}", spoolFile, events.size(), e);
+            }
+        }
+    }
+
+    /**
+     * Dispatch the spooled events. Events that fail again go back to the spool.
+     */
+    private void replaySpool() {
+        lastReplayAt = System.currentTimeMillis();
+        File replayFile = replayFile();
+        synchronized (spoolLock) {
+            spoolPending = false;
+            try {
+                if (!replayFile.exists()) { // a replay interrupted by a restart is resumed first
+                    if (!spoolFile.exists() || spoolFile.length() == 0)
+                        return;
+                    Files.move(spoolFile.toPath(), replayFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                LOGGER.error("-- CallCard events spool not replayed : file={}", spoolFile, e);
+                return;
+            }
+        }
+
+        int replayed = 0;
+        List<EventTO> batch = new ArrayList<>(batchSize);
+        try (BufferedReader reader = Files.newBufferedReader(replayFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty())
+                    continue;
+                try {
+                    batch.add(mapper.readValue(line, EventTO.class));
+                } catch (IOException e) {
+                    LOGGER.error("-- Unreadable spooled CallCard event dropped : {}", line, e);
+                }
+                if (batch.size() == batchSize) {
+                    dispatch(batch);
+                    replayed += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                dispatch(batch);
+                replayed += batch.size();
+            }
+            Files.delete(replayFile.toPath());
+        } catch (IOException e) {
+            LOGGER.error("-- CallCard events spool not replayed : file={}", replayFile, e);
+            return;
+        }
+
+        LOGGER.info("-- CallCard events replayed from spool : count={} {}", replayed, this);
+    }
+
+    private File replayFile() {
+        return new File(spoolFile.getPath() + ".replay");
+    }
+}
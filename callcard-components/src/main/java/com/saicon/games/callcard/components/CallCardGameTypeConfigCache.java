@@ -0,0 +1,63 @@
+package com.saicon.games.callcard.components;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.saicon.games.callcard.components.util.CallCardGameTypeConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of parsed GameType CallCard configurations, keyed by applicationId.
+ *
+ * Application settings are owned by another service, so entries expire after {@code expireAfterWriteMinutes};
+ * {@link #invalidate(String)} / {@link #invalidateAll()} apply a settings change immediately.
+ */
+public class CallCardGameTypeConfigCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardGameTypeConfigCache.class);
+
+    private final Cache<String, CallCardGameTypeConfig> configs;
+
+    public CallCardGameTypeConfigCache() {
+        this(1000, 5);
+    }
+
+    public CallCardGameTypeConfigCache(long maximumSize, long expireAfterWriteMinutes) {
+        this.configs = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * Return the cached configuration of the application, reading it with the given loader on a miss.
+     */
+    public CallCardGameTypeConfig get(String applicationId, Supplier<CallCardGameTypeConfig> loader) {
+        if (applicationId == null)
+            return loader.get();
+
+        return configs.get(applicationId, k -> {
+            CallCardGameTypeConfig config = loader.get();
+            LOGGER.debug("-- Loaded GameType CallCard configuration : applicationId={} {}", applicationId, config);
+            return config;
+        });
+    }
+
+    public void invalidate(String applicationId) {
+        if (applicationId == null)
+            return;
+
+        LOGGER.debug("-- Invalidating GameType CallCard configuration : applicationId={}", applicationId);
+        configs.invalidate(applicationId);
+    }
+
+    public void invalidateAll() {
+        configs.invalidateAll();
+    }
+
+    public long size() {
+        return configs.estimatedSize();
+    }
+}
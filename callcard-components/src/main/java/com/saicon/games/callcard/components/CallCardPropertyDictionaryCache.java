@@ -0,0 +1,113 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.components.external.IMetadataComponent;
+import com.saicon.games.callcard.components.util.CallCardPropertyDictionary;
+import com.saicon.games.callcard.util.Constants;
+import com.saicon.games.metadata.dto.MetadataKeyDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the current {@link CallCardPropertyDictionary}, loaded from the metadata component on first use and
+ * refreshed in the background every {@code refreshIntervalMinutes}. The version is bumped only when the set of
+ * properties actually changes; a failed refresh keeps the current dictionary.
+ */
+public class CallCardPropertyDictionaryCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardPropertyDictionaryCache.class);
+
+    private final IMetadataComponent metadataComponent;
+    private final ScheduledExecutorService executor;
+
+    private volatile CallCardPropertyDictionary dictionary;
+
+    public CallCardPropertyDictionaryCache(IMetadataComponent metadataComponent) {
+        this(metadataComponent, 10);
+    }
+
+    public CallCardPropertyDictionaryCache(IMetadataComponent metadataComponent, long refreshIntervalMinutes) {
+        this.metadataComponent = metadataComponent;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "callcard-property-dictionary");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                LOGGER.error("-- Failed to refresh CallCard property dictionary, keeping version " + (dictionary != null ? dictionary.getVersion() : 0), e);
+            }
+        }, refreshIntervalMinutes, refreshIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Return the current dictionary, loading it on first use.
+     */
+    public CallCardPropertyDictionary get() {
+        CallCardPropertyDictionary current = dictionary;
+        if (current != null)
+            return current;
+
+        synchronized (this) {
+            if (dictionary == null)
+                refresh();
+            return dictionary;
+        }
+    }
+
+    /**
+     * Reload the CallCard index properties, publishing a new version only if they changed.
+     */
+    public synchronized CallCardPropertyDictionary refresh() {
+        List<MetadataKeyDTO> metadataKeys = loadMetadataKeys();
+
+        CallCardPropertyDictionary current = dictionary;
+        if (current != null && sameProperties(current, metadataKeys))
+            return current;
+
+        long version = current != null ? current.getVersion() + 1 : 1;
+        CallCardPropertyDictionary loaded = new CallCardPropertyDictionary(version, metadataKeys);
+        LOGGER.info("-- Loaded CallCard property dictionary : version={} properties={}", version, loaded.size());
+
+        dictionary = loaded;
+        return loaded;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private List<MetadataKeyDTO> loadMetadataKeys() {
+        List<String> metadataKeyNames = metadataComponent.listMetadataKeysByItemType(Constants.ITEM_TYPE_CALL_CARD_INDEX, false);
+        List<MetadataKeyDTO> metadataKeys = new ArrayList<>();
+        if (metadataKeyNames != null) {
+            for (String keyName : metadataKeyNames) {
+                MetadataKeyDTO dto = new MetadataKeyDTO();
+                dto.setMetadataKeyName(keyName);
+                metadataKeys.add(dto);
+            }
+        }
+        return metadataKeys;
+    }
+
+    private static boolean sameProperties(CallCardPropertyDictionary dictionary, List<MetadataKeyDTO> metadataKeys) {
+        CallCardPropertyDictionary candidate = new CallCardPropertyDictionary(0, metadataKeys);
+        if (candidate.size() != dictionary.size())
+            return false;
+
+        for (int i = 0; i < candidate.size(); i++) {
+            CallCardPropertyDictionary.Property a = candidate.getProperty(i);
+            CallCardPropertyDictionary.Property b = dictionary.getProperty(i);
+            if (!a.getName().equals(b.getName()) || !Objects.equals(a.getMetadataKeyId(), b.getMetadataKeyId()) || !Objects.equals(a.getDataTypeName(), b.getDataTypeName()))
+                return false;
+        }
+        return true;
+    }
+}
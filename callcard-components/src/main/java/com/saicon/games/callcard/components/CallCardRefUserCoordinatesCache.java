@@ -0,0 +1,181 @@
+package com.saicon.games.callcard.components;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * In-process cache of the geo coordinates of POS (refUsers), keyed by refUserId. A POS without coordinates is
+ * cached as {@link Coordinates#NONE}, so it is not looked up again on every CallCard, but only for
+ * {@code noneExpireAfterWriteMinutes}: a POS is usually missing coordinates until its first address is added.
+ *
+ * Addresses written through the CallCard submission are applied once their transaction completes with
+ * {@link #invalidateAfterCompletion(String)}; addresses changed by other services are picked up when entries expire
+ * after {@code expireAfterWriteMinutes}.
+ */
+public class CallCardRefUserCoordinatesCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardRefUserCoordinatesCache.class);
+
+    private final Cache<String, Coordinates> coordinates;
+
+    public CallCardRefUserCoordinatesCache() {
+        this(100000, 60, 5);
+    }
+
+    public CallCardRefUserCoordinatesCache(long maximumSize, long expireAfterWriteMinutes, long noneExpireAfterWriteMinutes) {
+        this(maximumSize, expireAfterWriteMinutes, noneExpireAfterWriteMinutes, Ticker.systemTicker());
+    }
+
+    CallCardRefUserCoordinatesCache(long maximumSize, long expireAfterWriteMinutes, long noneExpireAfterWriteMinutes, Ticker ticker) {
+        final long expireAfterWriteNanos = TimeUnit.MINUTES.toNanos(expireAfterWriteMinutes);
+        final long noneExpireAfterWriteNanos = Math.min(expireAfterWriteNanos, TimeUnit.MINUTES.toNanos(noneExpireAfterWriteMinutes));
+        this.coordinates = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Coordinates>() {
+                    @Override
+                    public long expireAfterCreate(String key, Coordinates value, long currentTime) {
+                        return value.isPresent() ? expireAfterWriteNanos : noneExpireAfterWriteNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Coordinates value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Coordinates value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Return the coordinates of the given refUsers, reading the missing ones with the given loader in one call. The
+     * loader returns the coordinates of the refUsers it found; the others are cached as {@link Coordinates#NONE}.
+     *
+     * @return Coordinates keyed by the given refUserIds
+     */
+    public Map<String, Coordinates> getAll(List<String> refUserIds, Function<List<String>, Map<String, Coordinates>> loader) {
+        Map<String, Coordinates> results = new HashMap<>(); //< RefUserId, Coordinates>
+        List<String> missingRefUserIds = new ArrayList<>();
+
+        for (String refUserId : refUserIds) {
+            Coordinates cached = coordinates.getIfPresent(key(refUserId));
+            if (cached != null)
+                results.put(refUserId, cached);
+            else
+                missingRefUserIds.add(refUserId);
+        }
+
+        if (!missingRefUserIds.isEmpty()) {
+            Map<String, Coordinates> loaded = new HashMap<>();
+            for (Map.Entry<String, Coordinates> entry : loader.apply(missingRefUserIds).entrySet())
+                loaded.put(key(entry.getKey()), entry.getValue());
+
+            for (String refUserId : missingRefUserIds) {
+                Coordinates found = loaded.get(key(refUserId));
+                if (found == null)
+                    found = Coordinates.NONE;
+                coordinates.put(key(refUserId), found);
+                results.put(refUserId, found);
+            }
+            LOGGER.debug("-- Loaded refUser coordinates : requested={} loaded={}", refUserIds.size(), missingRefUserIds.size());
+        }
+
+        return results;
+    }
+
+    public void invalidate(String refUserId) {
+        if (refUserId == null)
+            return;
+
+        LOGGER.debug("-- Invalidating refUser coordinates : refUserId={}", refUserId);
+        coordinates.invalidate(key(refUserId));
+    }
+
+    /**
+     * Invalidate the coordinates of a POS whose address is written in the current transaction once it completes, or
+     * now when there is no transaction, so that a concurrent read cannot cache the address from before the commit.
+     */
+    public void invalidateAfterCompletion(String refUserId) {
+        if (refUserId == null)
+            return;
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(refUserId);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Set<String> changedRefUserIds = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (changedRefUserIds == null) {
+            final Set<String> refUserIds = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, refUserIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CallCardRefUserCoordinatesCache.this);
+                    for (String changedRefUserId : refUserIds)
+                        invalidate(changedRefUserId);
+                }
+            });
+            changedRefUserIds = refUserIds;
+        }
+        changedRefUserIds.add(refUserId);
+    }
+
+    public void invalidateAll() {
+        coordinates.invalidateAll();
+    }
+
+    public long size() {
+        return coordinates.estimatedSize();
+    }
+
+    private static String key(String refUserId) {
+        return refUserId.toUpperCase();
+    }
+
+    /**
+     * Latitude and longitude of a POS address.
+     */
+    public static final class Coordinates {
+        public static final Coordinates NONE = new Coordinates(null, null);
+
+        private final Double latitude;
+        private final Double longitude;
+
+        public Coordinates(Double latitude, Double longitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public Double getLatitude() {
+            return latitude;
+        }
+
+        public Double getLongitude() {
+            return longitude;
+        }
+
+        public boolean isPresent() {
+            return latitude != null && longitude != null;
+        }
+    }
+}
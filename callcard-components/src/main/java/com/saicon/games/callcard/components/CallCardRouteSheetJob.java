@@ -0,0 +1,267 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.dao.IGenericDAO;
+import com.saicon.games.entities.shared.Application;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nightly job that pre-materializes the route sheets (CallCards assembled from template) of every user assigned to
+ * an active template of the configured applications, in parallel over users, into a {@link CallCardRouteSheetStore}.
+ *
+ * Progress of the current or last run is available from {@link #getProgress()}. A user whose assembly fails is
+ * counted and skipped; the request path assembles that user's CallCards live.
+ */
+public class CallCardRouteSheetJob {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardRouteSheetJob.class);
+
+    private final ICallCardManagement callCardManagement;
+    private final ErpDynamicQueryManager erpDynamicQueryManager;
+    private final IGenericDAO<Application, String> applicationDao;
+    private final CallCardRouteSheetStore callCardRouteSheetStore;
+    private final TransactionTemplate readOnlyTransaction;
+    private final List<String> applicationIds;
+    private final int threads;
+
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Progress progress = new Progress(0);
+
+    public CallCardRouteSheetJob(ICallCardManagement callCardManagement, ErpDynamicQueryManager erpDynamicQueryManager, IGenericDAO<Application, String> applicationDao,
+                                 CallCardRouteSheetStore callCardRouteSheetStore, PlatformTransactionManager transactionManager, List<String> applicationIds, int threads) {
+        this.callCardManagement = callCardManagement;
+        this.erpDynamicQueryManager = erpDynamicQueryManager;
+        this.applicationDao = applicationDao;
+        this.callCardRouteSheetStore = callCardRouteSheetStore;
+        this.applicationIds = applicationIds != null ? applicationIds : Collections.<String>emptyList();
+        this.threads = threads;
+        this.progress.finish(); // nothing has run yet
+
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "callcard-route-sheets");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run the job every day at the given local time.
+     */
+    public void schedule(LocalTime runAt) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(runAt);
+        if (!next.isAfter(now))
+            next = next.plusDays(1);
+
+        long initialDelayMillis = Duration.between(now, next).toMillis();
+        scheduler.scheduleAtFixedRate(this::runSafely, initialDelayMillis, TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+
+        LOGGER.info("-- CallCard route sheets scheduled : runAt={} next={} applicationIds={}", runAt, next, applicationIds);
+    }
+
+    /**
+     * Materialize the route sheets of all users now. Returns the progress of this run, or of the run in progress
+     * if there is one.
+     */
+    public Progress run() {
+        if (!running.compareAndSet(false, true)) {
+            LOGGER.warn("-- CallCard route sheets already running : {}", progress);
+            return progress;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "callcard-route-sheets-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            int evicted = callCardRouteSheetStore.evictExpired();
+
+            List<RouteSheetUser> users = new ArrayList<>();
+            for (String applicationId : applicationIds)
+                users.addAll(listUsers(applicationId));
+
+            Progress current = new Progress(users.size());
+            progress = current;
+            LOGGER.info("-- CallCard route sheets started : users={} evicted={}", users.size(), evicted);
+
+            List<Future<?>> tasks = new ArrayList<>(users.size());
+            for (RouteSheetUser user : users)
+                tasks.add(workers.submit(() -> refresh(user, current)));
+            for (Future<?> task : tasks)
+                task.get();
+
+            current.finish();
+            LOGGER.info("-- CallCard route sheets finished : {}", current);
+            return current;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("-- CallCard route sheets interrupted : {}", progress);
+            return progress;
+        } catch (Exception e) {
+            LOGGER.error("-- CallCard route sheets failed : {}", progress, e);
+            return progress;
+        } finally {
+            workers.shutdownNow();
+            progress.finish();
+            running.set(false);
+        }
+    }
+
+    public Progress getProgress() {
+        return progress;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void runSafely() {
+        try {
+            run();
+        } catch (RuntimeException e) {
+            LOGGER.error("-- CallCard route sheets failed", e);
+        }
+    }
+
+    private List<RouteSheetUser> listUsers(final String applicationId) {
+        return readOnlyTransaction.execute(status -> {
+            Application application = applicationDao.read(applicationId);
+            if (application == null || application.getGameTypeId() == null) {
+                LOGGER.warn("-- CallCard route sheets skip unknown application : applicationId={}", applicationId);
+                return Collections.<RouteSheetUser>emptyList();
+            }
+
+            String gameTypeId = application.getGameTypeId().getGameTypeId();
+            List<RouteSheetUser> users = new ArrayList<>();
+            for (Object[] row : erpDynamicQueryManager.listActiveCallCardTemplateUsers(gameTypeId))
+                users.add(new RouteSheetUser((String) row[0], (String) row[1], gameTypeId, applicationId));
+            return users;
+        });
+    }
+
+    private void refresh(RouteSheetUser user, Progress current) {
+        long start = System.currentTimeMillis();
+        try {
+            int callCards = callCardManagement.refreshRouteSheet(user.userId, user.userGroupId, user.gameTypeId, user.applicationId);
+            current.completed(callCards, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            current.failed();
+            LOGGER.warn("-- CallCard route sheet not materialized : userId={} applicationId={} reason={}", user.userId, user.applicationId, e.getMessage());
+        }
+    }
+
+    private static final class RouteSheetUser {
+        private final String userId;
+        private final String userGroupId;
+        private final String gameTypeId;
+        private final String applicationId;
+
+        private RouteSheetUser(String userId, String userGroupId, String gameTypeId, String applicationId) {
+            this.userId = userId;
+            this.userGroupId = userGroupId;
+            this.gameTypeId = gameTypeId;
+            this.applicationId = applicationId;
+        }
+    }
+
+    /**
+     * Progress of one run of the job.
+     */
+    public static final class Progress {
+        private final int total;
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger callCards = new AtomicInteger();
+        private final AtomicLong assemblyMillis = new AtomicLong();
+        private volatile long finishedAt;
+
+        private Progress(int total) {
+            this.total = total;
+        }
+
+        private void completed(int callCardCount, long millis) {
+            callCards.addAndGet(callCardCount);
+            assemblyMillis.addAndGet(millis);
+            completed.incrementAndGet();
+        }
+
+        private void failed() {
+            failed.incrementAndGet();
+        }
+
+        private void finish() {
+            if (finishedAt == 0)
+                finishedAt = System.currentTimeMillis();
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getCompleted() {
+            return completed.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public int getRemaining() {
+            return total - completed.get() - failed.get();
+        }
+
+        public int getCallCards() {
+            return callCards.get();
+        }
+
+        /**
+         * Mean assembly time of a user's route sheet, in milliseconds.
+         */
+        public long getMeanAssemblyMillis() {
+            int count = completed.get();
+            return count > 0 ? assemblyMillis.get() / count : 0;
+        }
+
+        public boolean isFinished() {
+            return finishedAt != 0;
+        }
+
+        public long getDurationMillis() {
+            return (finishedAt != 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+        }
+
+        @Override
+        public String toString() {
+            return "total=" + total + " completed=" + completed.get() + " failed=" + failed.get() + " callCards=" + callCards.get()
+                    + " meanAssemblyMillis=" + getMeanAssemblyMillis() + " durationMillis=" + getDurationMillis();
+        }
+    }
+}
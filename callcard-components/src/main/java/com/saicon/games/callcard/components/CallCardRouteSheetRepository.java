@@ -0,0 +1,63 @@
+package com.saicon.games.callcard.components;
+
+/**
+ * Storage of the gzipped route sheets of {@link CallCardRouteSheetStore}, one per user key.
+ */
+public interface CallCardRouteSheetRepository {
+
+    /**
+     * The route sheet stored under the key, or null.
+     */
+    RouteSheet get(String key);
+
+    /**
+     * Store the route sheet under the key, replacing the previous one.
+     */
+    void put(String key, RouteSheet routeSheet);
+
+    void remove(String key);
+
+    /**
+     * Remove the route sheet stored under the key only while it is still at the given version, so that a sheet
+     * rebuilt meanwhile is kept.
+     */
+    void remove(String key, String version);
+
+    /**
+     * Remove the route sheets built before the given time, in milliseconds since the epoch.
+     *
+     * @return The number of route sheets removed
+     */
+    int removeBuiltBefore(long builtBefore);
+
+    int size();
+
+    /**
+     * Compressed size of all route sheets, in bytes.
+     */
+    long getContentBytes();
+
+    final class RouteSheet {
+        private final String version;
+        private final byte[] content;
+        private final long builtAt;
+
+        public RouteSheet(String version, byte[] content, long builtAt) {
+            this.version = version;
+            this.content = content;
+            this.builtAt = builtAt;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        public long getBuiltAt() {
+            return builtAt;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.saicon.games.callcard.components;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.saicon.games.callcard.components.CallCardRouteSheetRepository.RouteSheet;
+import com.saicon.games.callcard.ws.dto.CallCardDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Pre-materialized route sheets: the CallCards assembled from template for a user, kept as gzipped JSON together
+ * with the CallCard version (see ICallCardManagement#getCallCardVersion) they were assembled at.
+ *
+ * A sheet is served only while the user's current version still matches and it is younger than the maximum age;
+ * otherwise the caller assembles the CallCards live. Every read returns a fresh DTO graph. CallCards assembled with a
+ * degraded (left out) lookup are never stored.
+ *
+ * The sheets are kept in a {@link CallCardRouteSheetRepository}: the CALL_CARD_ROUTE_SHEET table in production, so
+ * they survive restarts and are shared by all nodes, or memory when none is given.
+ */
+public class CallCardRouteSheetStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardRouteSheetStore.class);
+
+    private static final TypeReference<List<CallCardDTO>> CALL_CARDS_TYPE = new TypeReference<List<CallCardDTO>>() {
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final CallCardRouteSheetRepository routeSheets;
+    private final long maxAgeMillis;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+
+    public CallCardRouteSheetStore(long maxAgeHours) {
+        this(maxAgeHours, null);
+    }
+
+    /**
+     * @param repository Where the route sheets are kept, or null to keep them in memory
+     */
+    public CallCardRouteSheetStore(long maxAgeHours, CallCardRouteSheetRepository repository) {
+        this.maxAgeMillis = TimeUnit.HOURS.toMillis(maxAgeHours);
+        this.routeSheets = repository != null ? repository : new InMemoryRepository();
+    }
+
+    /**
+     * The route sheet of the user if it was materialized at the given version, otherwise null.
+     */
+    public List<CallCardDTO> get(String userId, String userGroupId, String gameTypeId, String applicationId, String version) {
+        String key = key(userId, userGroupId, gameTypeId, applicationId);
+        RouteSheet routeSheet = routeSheets.get(key);
+        if (routeSheet == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (!routeSheet.getVersion().equals(version) || System.currentTimeMillis() - routeSheet.getBuiltAt() > maxAgeMillis) {
+            stale.incrementAndGet();
+            routeSheets.remove(key, routeSheet.getVersion());
+            return null;
+        }
+
+        try {
+            List<CallCardDTO> callCards = read(routeSheet.getContent());
+            hits.incrementAndGet();
+            return callCards;
+        } catch (IOException e) {
+            LOGGER.warn("-- Unreadable CallCard route sheet dropped : userId={}", userId, e);
+            routeSheets.remove(key, routeSheet.getVersion());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Store the route sheet of the user at the given version.
+     *
+     * @return false if the CallCards were assembled degraded and were not stored
+     */
+    public boolean put(String userId, String userGroupId, String gameTypeId, String applicationId, String version, List<CallCardDTO> callCards) throws IOException {
+        for (CallCardDTO callCard : callCards) {
+            if (callCard.isDegraded()) {
+                LOGGER.warn("-- Degraded CallCard route sheet not stored : userId={}", userId);
+                return false;
+            }
+        }
+
+        routeSheets.put(key(userId, userGroupId, gameTypeId, applicationId), new RouteSheet(version, write(callCards), System.currentTimeMillis()));
+        return true;
+    }
+
+    public void invalidate(String userId, String userGroupId, String gameTypeId, String applicationId) {
+        routeSheets.remove(key(userId, userGroupId, gameTypeId, applicationId));
+    }
+
+    /**
+     * Drop the route sheets older than the maximum age.
+     */
+    public int evictExpired() {
+        return routeSheets.removeBuiltBefore(System.currentTimeMillis() - maxAgeMillis);
+    }
+
+    public int size() {
+        return routeSheets.size();
+    }
+
+    /**
+     * Compressed size of all route sheets, in bytes.
+     */
+    public long getContentBytes() {
+        return routeSheets.getContentBytes();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getStale() {
+        return stale.get();
+    }
+
+    private byte[] write(List<CallCardDTO> callCards) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(bytes)) {
+            mapper.writeValue(output, callCards);
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<CallCardDTO> read(byte[] content) throws IOException {
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return mapper.readValue(input, CALL_CARDS_TYPE);
+        }
+    }
+
+    private static String key(String userId, String userGroupId, String gameTypeId, String applicationId) {
+        return (userId + "|" + userGroupId + "|" + gameTypeId + "|" + applicationId).toUpperCase();
+    }
+
+    /**
+     * Route sheets kept in memory, lost on restart and local to the node.
+     */
+    private static final class InMemoryRepository implements CallCardRouteSheetRepository {
+        private final ConcurrentMap<String, RouteSheet> routeSheets = new ConcurrentHashMap<>(); //< User key, Route sheet>
+
+        @Override
+        public RouteSheet get(String key) {
+            return routeSheets.get(key);
+        }
+
+        @Override
+        public void put(String key, RouteSheet routeSheet) {
+            routeSheets.put(key, routeSheet);
+        }
+
+        @Override
+        public void remove(String key) {
+            routeSheets.remove(key);
+        }
+
+        @Override
+        public void remove(String key, String version) {
+            routeSheets.computeIfPresent(key, (k, routeSheet) -> routeSheet.getVersion().equals(version) ? null : routeSheet);
+        }
+
+        @Override
+        public int removeBuiltBefore(long builtBefore) {
+            int removed = 0;
+            for (Map.Entry<String, RouteSheet> entry : routeSheets.entrySet()) {
+                if (entry.getValue().getBuiltAt() < builtBefore && routeSheets.remove(entry.getKey(), entry.getValue()))
+                    removed++;
+            }
+            return removed;
+        }
+
+        @Override
+        public int size() {
+            return routeSheets.size();
+        }
+
+        @Override
+        public long getContentBytes() {
+            long bytes = 0;
+            for (RouteSheet routeSheet : routeSheets.values())
+                bytes += routeSheet.getContent().length;
+            return bytes;
+        }
+    }
+}
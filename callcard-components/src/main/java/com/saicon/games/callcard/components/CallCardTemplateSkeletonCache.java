@@ -0,0 +1,225 @@
+package com.saicon.games.callcard.components;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.saicon.games.callcard.components.util.CallCardTemplateSkeleton;
+import com.saicon.games.callcard.entity.util.CallCardTemplateChangeListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of compiled CallCardTemplate skeletons, keyed by (templateId, gameTypeId).
+ *
+ * Entries are invalidated whenever the template, one of its entries, POS or user references is
+ * inserted, updated or deleted through JPA in this process (see {@link CallCardTemplateChangeListener}),
+ * once the transaction completes: invalidating at flush would let a concurrent reader cache the
+ * still committed, old template again. Changes made outside this process are picked up after
+ * {@code expireAfterWriteMinutes}, or immediately through {@link #invalidate(String)} / {@link #invalidateAll()}.
+ *
+ * Concurrent misses of a template share one load. A skeleton loaded while any invalidation happened
+ * is returned to its callers but not cached.
+ */
+public class CallCardTemplateSkeletonCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardTemplateSkeletonCache.class);
+
+    private static final String KEY_SEPARATOR = "|";
+
+    private final Cache<String, CallCardTemplateSkeleton> skeletons;
+    private final ConcurrentMap<String, CompletableFuture<CallCardTemplateSkeleton>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Consumer<String> changeCallback = this::invalidateAfterCompletion;
+
+    public CallCardTemplateSkeletonCache() {
+        this(1000, 30);
+    }
+
+    public CallCardTemplateSkeletonCache(long maximumSize, long expireAfterWriteMinutes) {
+        this.skeletons = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWriteMinutes, TimeUnit.MINUTES)
+                .build();
+
+        CallCardTemplateChangeListener.register(changeCallback);
+    }
+
+    /**
+     * Return the cached skeleton for the template, compiling it with the given loader on a miss.
+     * Concurrent misses for the same key compile the skeleton only once.
+     */
+    public CallCardTemplateSkeleton get(String callCardTemplateId, String gameTypeId, Supplier<CallCardTemplateSkeleton> loader) {
+        return getAll(Collections.singletonList(callCardTemplateId), gameTypeId,
+                missingTemplateIds -> Collections.singletonMap(callCardTemplateId, loader.get())).get(callCardTemplateId);
+    }
+
+    /**
+     * Return the skeletons of several templates, keyed by the requested template ID. The misses no other
+     * thread is loading are compiled with a single call to the loader, which receives the missing template
+     * IDs; the others are awaited.
+     */
+    public Map<String, CallCardTemplateSkeleton> getAll(Collection<String> callCardTemplateIds, String gameTypeId, Function<List<String>, Map<String, CallCardTemplateSkeleton>> loader) {
+        Map<String, CallCardTemplateSkeleton> results = new LinkedHashMap<>();
+        Map<String, CompletableFuture<CallCardTemplateSkeleton>> loads = new LinkedHashMap<>();
+        Map<String, CompletableFuture<CallCardTemplateSkeleton>> awaited = new LinkedHashMap<>();
+
+        for (String callCardTemplateId : callCardTemplateIds) {
+            String key = key(callCardTemplateId, gameTypeId);
+            CallCardTemplateSkeleton skeleton = skeletons.getIfPresent(key);
+            if (skeleton != null) {
+                results.put(callCardTemplateId, skeleton);
+                continue;
+            }
+
+            CompletableFuture<CallCardTemplateSkeleton> load = new CompletableFuture<>();
+            CompletableFuture<CallCardTemplateSkeleton> other = loading.putIfAbsent(key, load);
+            if (other != null)
+                awaited.put(callCardTemplateId, other);
+            else
+                loads.put(callCardTemplateId, load);
+        }
+
+        if (loads.size() > 0)
+            load(loads, gameTypeId, loader, results);
+
+        for (Map.Entry<String, CompletableFuture<CallCardTemplateSkeleton>> entry : awaited.entrySet()) {
+            CallCardTemplateSkeleton skeleton = join(entry.getValue());
+            if (skeleton != null)
+                results.put(entry.getKey(), skeleton);
+        }
+
+        return results;
+    }
+
+    private void load(Map<String, CompletableFuture<CallCardTemplateSkeleton>> loads, String gameTypeId,
+                      Function<List<String>, Map<String, CallCardTemplateSkeleton>> loader, Map<String, CallCardTemplateSkeleton> results) {
+        List<String> missingTemplateIds = new ArrayList<>(loads.keySet());
+        long version = invalidations.get();
+        try {
+            LOGGER.debug("-- Compiling CallCardTemplate skeletons : callCardTemplateIds={} gameTypeId={}", missingTemplateIds, gameTypeId);
+            Map<String, CallCardTemplateSkeleton> compiled = loader.apply(missingTemplateIds);
+
+            for (String callCardTemplateId : missingTemplateIds) {
+                CallCardTemplateSkeleton skeleton = compiled.get(callCardTemplateId);
+                String key = key(callCardTemplateId, gameTypeId);
+                if (skeleton != null) {
+                    // a skeleton loaded across an invalidation may be stale: serve it, but do not cache it
+                    if (invalidations.get() == version)
+                        skeletons.put(key, skeleton);
+                    results.put(callCardTemplateId, skeleton);
+                }
+                loading.remove(key, loads.get(callCardTemplateId));
+                loads.get(callCardTemplateId).complete(skeleton);
+            }
+        } catch (RuntimeException e) {
+            for (Map.Entry<String, CompletableFuture<CallCardTemplateSkeleton>> entry : loads.entrySet()) {
+                loading.remove(key(entry.getKey(), gameTypeId), entry.getValue());
+                entry.getValue().completeExceptionally(e);
+            }
+            throw e;
+        }
+    }
+
+    private static CallCardTemplateSkeleton join(CompletableFuture<CallCardTemplateSkeleton> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Invalidate the skeletons of a template for every gameType.
+     */
+    public void invalidate(String callCardTemplateId) {
+        if (callCardTemplateId == null)
+            return;
+
+        invalidations.incrementAndGet();
+        String prefix = callCardTemplateId.toUpperCase() + KEY_SEPARATOR;
+        // loads in flight may read the old template: later misses start a load of their own
+        loading.keySet().removeIf(key -> key.startsWith(prefix));
+
+        List<String> keys = new ArrayList<>();
+        for (String key : skeletons.asMap().keySet()) {
+            if (key.startsWith(prefix))
+                keys.add(key);
+        }
+
+        if (keys.size() > 0) {
+            LOGGER.debug("-- Invalidating CallCardTemplate skeletons : callCardTemplateId={} entries={}", callCardTemplateId, keys.size());
+            skeletons.invalidateAll(keys);
+        }
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        loading.clear();
+        skeletons.invalidateAll();
+    }
+
+    /**
+     * Invalidate the skeletons of a template changed in the current transaction once it completes, or now
+     * when there is no transaction. After a rollback too: the invalidation then only costs a reload.
+     */
+    void invalidateAfterCompletion(String callCardTemplateId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(callCardTemplateId);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Set<String> changedTemplateIds = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (changedTemplateIds == null) {
+            final Set<String> templateIds = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, templateIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CallCardTemplateSkeletonCache.this);
+                    for (String templateId : templateIds)
+                        invalidate(templateId);
+                }
+            });
+            changedTemplateIds = templateIds;
+        }
+        changedTemplateIds.add(callCardTemplateId);
+    }
+
+    public long size() {
+        return skeletons.estimatedSize();
+    }
+
+    /**
+     * Stop receiving template change notifications, e.g. when the owning context is closed.
+     */
+    public void close() {
+        CallCardTemplateChangeListener.unregister(changeCallback);
+        skeletons.invalidateAll();
+    }
+
+    private static String key(String callCardTemplateId, String gameTypeId) {
+        // uniqueidentifier values may come back in either case
+        return callCardTemplateId.toUpperCase() + KEY_SEPARATOR + gameTypeId;
+    }
+}
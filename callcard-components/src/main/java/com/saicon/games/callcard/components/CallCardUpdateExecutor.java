@@ -0,0 +1,196 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.exception.BusinessLayerException;
+import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor that stores the independent CallCards of a multi-card update concurrently, each in its own
+ * read-write transaction, so a failed CallCard is rolled back alone and does not undo the others.
+ *
+ * As in {@link CallCardAssemblyExecutor}, the tenant is re-applied to the worker session when the caller has the
+ * multi-tenant filter enabled, the logging MDC is copied to the worker, and a CallCard finding the queue full is
+ * stored on the caller thread.
+ */
+public class CallCardUpdateExecutor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardUpdateExecutor.class);
+
+    /**
+     * Work on the CallCards that may fail with a business error, rolling back its transaction.
+     */
+    public interface Task<T> {
+        T run() throws BusinessLayerException;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final TransactionTemplate transaction;
+    private final long timeoutMillis;
+
+    private MultiTenantQueryFilter multiTenantQueryFilter;
+
+    public CallCardUpdateExecutor(PlatformTransactionManager transactionManager, int threads, int queueCapacity, long timeoutMillis) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "callcard-update-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Run the task on a worker in its own transaction, scoped to the given tenant.
+     */
+    public <T> Future<T> submitInTransaction(String userGroupId, String gameTypeId, Task<T> task) {
+        final boolean tenantFiltered = multiTenantQueryFilter != null && multiTenantQueryFilter.isFilterEnabled();
+        return executor.submit(withContext(() -> runInTransaction(userGroupId, gameTypeId, tenantFiltered, task)));
+    }
+
+    /**
+     * Run the task on the caller thread in its own transaction, suspending the caller's.
+     */
+    public <T> T executeInTransaction(String userGroupId, String gameTypeId, Task<T> task) throws BusinessLayerException {
+        return runInTransaction(userGroupId, gameTypeId, multiTenantQueryFilter != null && multiTenantQueryFilter.isFilterEnabled(), task);
+    }
+
+    /**
+     * The deadline, in {@link System#nanoTime} terms, shared by the tasks of one update: the update waits at most
+     * the timeout for its tasks to start, however many there are.
+     */
+    public long deadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Wait for a task with a deadline of its own, see {@link #await(Future, long)}.
+     */
+    public <T> T await(Future<T> future) throws BusinessLayerException {
+        return await(future, deadline());
+    }
+
+    /**
+     * Wait for a task until the deadline. A task that has not started by then is cancelled and fails. A task that
+     * is running is waited for until it ends: it is not interrupted, as that could break off its transaction at any
+     * statement, and the update does not return while it still writes, as the user's lock would be released. An
+     * interrupted caller stops waiting for tasks that have not started, in the same way.
+     */
+    public <T> T await(Future<T> future, long deadline) throws BusinessLayerException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining > 0)
+                        return future.get(remaining, TimeUnit.NANOSECONDS);
+                    if (future.cancel(false))
+                        throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "CallCard update not started within " + timeoutMillis + "ms");
+
+                    LOGGER.warn("-- CallCard update still running after {}ms, waiting for it to end", timeoutMillis);
+                    return future.get();
+                } catch (TimeoutException e) {
+                    // the deadline has passed
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    deadline = System.nanoTime();
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BusinessLayerException)
+                throw (BusinessLayerException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "CallCard update failed: " + e.getCause());
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getActive() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    public MultiTenantQueryFilter getMultiTenantQueryFilter() {
+        return multiTenantQueryFilter;
+    }
+
+    public void setMultiTenantQueryFilter(MultiTenantQueryFilter multiTenantQueryFilter) {
+        this.multiTenantQueryFilter = multiTenantQueryFilter;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A BusinessLayerException is carried out of the transaction callback unchecked, so that it rolls back.
+     */
+    private <T> T runInTransaction(final String userGroupId, final String gameTypeId, final boolean tenantFiltered, final Task<T> task) throws BusinessLayerException {
+        try {
+            return transaction.execute(status -> {
+                if (tenantFiltered)
+                    multiTenantQueryFilter.enableFilter(userGroupId, gameTypeId);
+                try {
+                    return task.run();
+                } catch (BusinessLayerException e) {
+                    throw new BusinessFailure(e);
+                }
+            });
+        } catch (BusinessFailure e) {
+            throw e.failure;
+        }
+    }
+
+    private static <T> Callable<T> withContext(final Callable<T> task) {
+        final Map<String, String> mdc = MDC.getCopyOfContextMap();
+        return () -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            if (mdc != null)
+                MDC.setContextMap(mdc);
+            long start = System.currentTimeMillis();
+            try {
+                return task.call();
+            } finally {
+                LOGGER.debug("-- CallCard update task : took={}ms", System.currentTimeMillis() - start);
+                if (previous != null)
+                    MDC.setContextMap(previous);
+                else
+                    MDC.clear();
+            }
+        };
+    }
+
+    private static class BusinessFailure extends RuntimeException {
+        private final BusinessLayerException failure;
+
+        BusinessFailure(BusinessLayerException cause) {
+            super(cause.getMessage(), cause, false, false);
+            this.failure = cause;
+        }
+    }
+}
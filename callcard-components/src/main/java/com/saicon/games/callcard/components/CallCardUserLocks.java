@@ -0,0 +1,116 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.exception.BusinessLayerException;
+import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks serializing the CallCard updates of a user, so that two devices or a retry racing the original
+ * request do not both create a pending CallCard. Locks are held across the update transaction: acquire them
+ * before entering the transactional management methods and release them once those return.
+ *
+ * Users are mapped to a fixed number of stripes, so unrelated users may share a lock; the number of stripes
+ * bounds the memory used whatever the number of users. Locks are in-process: they serialize the syncs of a user
+ * on one node only.
+ */
+public class CallCardUserLocks {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardUserLocks.class);
+
+    private final ReentrantLock[] stripes;
+    private final long timeoutMillis;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong contended = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * @param stripes       Number of locks, rounded up to a power of two
+     * @param timeoutMillis Longest wait for the lock of a user before the update is refused
+     */
+    public CallCardUserLocks(int stripes, long timeoutMillis) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++)
+            this.stripes[i] = new ReentrantLock();
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Acquire the lock of a user, waiting at most the timeout. The caller must unlock it in a finally block.
+     *
+     * @throws BusinessLayerException CONCURRENT_MODIFICATION if another update of the user held it for too long
+     */
+    public Lock lock(String userId) throws BusinessLayerException {
+        return lock(userId, timeoutMillis);
+    }
+
+    /**
+     * Acquire the lock of a user, waiting at most the given time; 0 fails at once if it is held.
+     *
+     * @throws BusinessLayerException CONCURRENT_MODIFICATION if another update of the user held it for too long
+     */
+    public Lock lock(String userId, long timeoutMillis) throws BusinessLayerException {
+        ReentrantLock lock = stripes[stripe(userId)];
+        if (lock.tryLock()) {
+            acquired.incrementAndGet();
+            return lock;
+        }
+
+        contended.incrementAndGet();
+        waiting.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            if (lock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquired.incrementAndGet();
+                return lock;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waitNanos.addAndGet(System.nanoTime() - start);
+            waiting.decrementAndGet();
+        }
+
+        timedOut.incrementAndGet();
+        LOGGER.warn("-- CallCard update refused, another update of the user is in progress : userId={} waited={}ms", userId, timeoutMillis);
+        throw new BusinessLayerException(ExceptionTypeTO.CONCURRENT_MODIFICATION, "Another CallCard update of the user is in progress");
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    public long getContended() {
+        return contended.get();
+    }
+
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * Total time spent waiting for contended locks, acquired or not.
+     */
+    public double getWaitMillis() {
+        return waitNanos.get() / 1_000_000.0;
+    }
+
+    private int stripe(String userId) {
+        int hash = userId != null ? userId.toUpperCase().hashCode() : 0;
+        hash ^= hash >>> 16;
+        return hash & (stripes.length - 1);
+    }
+}
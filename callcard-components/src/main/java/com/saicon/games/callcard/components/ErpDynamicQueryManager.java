@@ -1,16 +1,30 @@
 package com.saicon.games.callcard.components;
 
+import com.saicon.games.callcard.dao.InLists;
+import com.saicon.games.callcard.dao.ScrollableResultsSpliterator;
+import com.saicon.games.callcard.dao.UniqueIdentifierOrder;
 import com.saicon.games.callcard.entity.*;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
+import org.hibernate.ScrollMode;
 import org.hibernate.Session;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityManager;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Dynamic query manager for CallCard entities using Hibernate Criteria API.
@@ -18,11 +32,20 @@ import java.util.List;
  *
  * Adapted from gameserver_v3 ErpDynamicQueryManager for CallCard microservice.
  * Contains only CallCard-related queries from the original implementation.
+ *
+ * Id lists are bound padded as described in {@link InLists}. A list longer than inListSize runs the query once per
+ * chunk of ids and merges the results; each chunk matches distinct rows, so counts are summed.
+ *
+ * A range of entities is read in two phases, see {@link #listPage}: the range applies to distinct root ids, never to
+ * joined rows. With chunked id lists, each chunk reads the ids up to the end of the range and the range is cut from
+ * their merge, in the order of one statement.
  */
 public class ErpDynamicQueryManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(ErpDynamicQueryManager.class);
 
     private EntityManager entityManager;
+    private int fetchSize = 500;
+    private int inListSize = InLists.DEFAULT_MAX_SIZE;
 
     public EntityManager getEntityManager() {
         return entityManager;
@@ -32,6 +55,29 @@ public class ErpDynamicQueryManager {
         this.entityManager = entityManager;
     }
 
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Rows the stream methods fetch per round trip, and evict per batch.
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize > 0 ? fetchSize : 500;
+    }
+
+    public int getInListSize() {
+        return inListSize;
+    }
+
+    /**
+     * Most ids bound in one IN list. SQL Server accepts at most 2100 parameters per statement: the IN lists of one
+     * statement bind at most {@link InLists#DEFAULT_PARAMETER_BUDGET} ids together.
+     */
+    public void setInListSize(int inListSize) {
+        this.inListSize = inListSize > 0 ? inListSize : InLists.DEFAULT_MAX_SIZE;
+    }
+
     private Session getHibernateSession() {
         return entityManager.unwrap(Session.class);
     }
@@ -49,19 +95,52 @@ public class ErpDynamicQueryManager {
             int rangeFrom,
             int rangeTo) {
 
-        Criteria criteria = getHibernateSession().createCriteria(CallCardTemplatePOS.class, "callCardTPOS");
+        if (InLists.exceeds(inListSize, InLists.DEFAULT_PARAMETER_BUDGET, callCardTemplatePOSIds, callCardTemplateIds, refUserIds)) {
+            List<List<List<String>>> statements = InLists.partitionAll(inListSize, InLists.DEFAULT_PARAMETER_BUDGET, callCardTemplatePOSIds, callCardTemplateIds, refUserIds);
+            if (rangeFrom == 0 && rangeTo == -1)
+                return statements.stream().flatMap(ids -> queryCallCardTemplatePOS(ids.get(0), ids.get(1), ids.get(2), mandatory, active, 0, -1).stream())
+                        .collect(Collectors.toList());
 
-        if (callCardTemplatePOSIds != null && !callCardTemplatePOSIds.isEmpty()) {
-            criteria.add(Restrictions.in("callCardTPOS.callCardTemplatePOSId", callCardTemplatePOSIds));
+            return listPage(statements.stream().map(ids -> callCardTemplatePOSCriteria(ids.get(0), ids.get(1), ids.get(2), mandatory, active)).collect(Collectors.toList()),
+                    CallCardTemplatePOS.class, "callCardTPOS", "callCardTemplatePOSId", rangeFrom, rangeTo - rangeFrom, "callCardTemplateId", "refUserId");
         }
 
-        if (callCardTemplateIds != null && !callCardTemplateIds.isEmpty()) {
-            criteria.add(Restrictions.in("callCardTPOS.callCardTemplateId.callCardTemplateId", callCardTemplateIds));
-        }
+        return queryCallCardTemplatePOS(callCardTemplatePOSIds, callCardTemplateIds, refUserIds, mandatory, active, rangeFrom, rangeTo);
+    }
 
-        if (refUserIds != null && !refUserIds.isEmpty()) {
-            criteria.add(Restrictions.in("callCardTPOS.refUserId.userId", refUserIds));
-        }
+    @SuppressWarnings("unchecked")
+    private List<CallCardTemplatePOS> queryCallCardTemplatePOS(
+            List<String> callCardTemplatePOSIds,
+            List<String> callCardTemplateIds,
+            List<String> refUserIds,
+            Boolean mandatory,
+            Boolean active,
+            int rangeFrom,
+            int rangeTo) {
+
+        Criteria criteria = callCardTemplatePOSCriteria(callCardTemplatePOSIds, callCardTemplateIds, refUserIds, mandatory, active);
+
+        if (!(rangeFrom == 0 && rangeTo == -1))
+            return listPage(criteria, CallCardTemplatePOS.class, "callCardTPOS", "callCardTemplatePOSId", rangeFrom, rangeTo - rangeFrom,
+                    "callCardTemplateId", "refUserId");
+
+        criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+
+        return criteria.list();
+    }
+
+    private Criteria callCardTemplatePOSCriteria(
+            List<String> callCardTemplatePOSIds,
+            List<String> callCardTemplateIds,
+            List<String> refUserIds,
+            Boolean mandatory,
+            Boolean active) {
+
+        Criteria criteria = getHibernateSession().createCriteria(CallCardTemplatePOS.class, "callCardTPOS");
+
+        addIn(criteria, "callCardTPOS.callCardTemplatePOSId", callCardTemplatePOSIds);
+        addIn(criteria, "callCardTPOS.callCardTemplateId.callCardTemplateId", callCardTemplateIds);
+        addIn(criteria, "callCardTPOS.refUserId.userId", refUserIds);
 
         if (mandatory != null) {
             criteria.add(Restrictions.eq("callCardTPOS.mandatory", mandatory));
@@ -71,14 +150,7 @@ public class ErpDynamicQueryManager {
             criteria.add(Restrictions.eq("callCardTPOS.active", active));
         }
 
-        if (!(rangeFrom == 0 && rangeTo == -1)) {
-            criteria.setFirstResult(rangeFrom);
-            criteria.setMaxResults(rangeTo - rangeFrom);
-        }
-
-        criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
-
-        return criteria.list();
+        return criteria;
     }
 
     /**
@@ -91,19 +163,25 @@ public class ErpDynamicQueryManager {
             Boolean mandatory,
             Boolean active) {
 
-        Criteria criteria = getHibernateSession().createCriteria(CallCardTemplatePOS.class, "callCardTPOS");
+        if (InLists.exceeds(inListSize, InLists.DEFAULT_PARAMETER_BUDGET, callCardTemplatePOSIds, callCardTemplateIds, refUserIds))
+            return InLists.partitionAll(inListSize, InLists.DEFAULT_PARAMETER_BUDGET, callCardTemplatePOSIds, callCardTemplateIds, refUserIds).stream()
+                    .mapToInt(ids -> queryCallCardTemplatePOSCount(ids.get(0), ids.get(1), ids.get(2), mandatory, active)).sum();
 
-        if (callCardTemplatePOSIds != null && !callCardTemplatePOSIds.isEmpty()) {
-            criteria.add(Restrictions.in("callCardTPOS.callCardTemplatePOSId", callCardTemplatePOSIds));
-        }
+        return queryCallCardTemplatePOSCount(callCardTemplatePOSIds, callCardTemplateIds, refUserIds, mandatory, active);
+    }
 
-        if (callCardTemplateIds != null && !callCardTemplateIds.isEmpty()) {
-            criteria.add(Restrictions.in("callCardTPOS.callCardTemplateId.callCardTemplateId", callCardTemplateIds));
-        }
+    private int queryCallCardTemplatePOSCount(
+            List<String> callCardTemplatePOSIds,
+            List<String> callCardTemplateIds,
+            List<String> refUserIds,
+            Boolean mandatory,
+            Boolean active) {
 
-        if (refUserIds != null && !refUserIds.isEmpty()) {
-            criteria.add(Restrictions.in("callCardTPOS.refUserId.userId", refUserIds));
-        }
+        Criteria criteria = getHibernateSession().createCriteria(CallCardTemplatePOS.class, "callCardTPOS");
+
+        addIn(criteria, "callCardTPOS.callCardTemplatePOSId", callCardTemplatePOSIds);
+        addIn(criteria, "callCardTPOS.callCardTemplateId.callCardTemplateId", callCardTemplateIds);
+        addIn(criteria, "callCardTPOS.refUserId.userId", refUserIds);
 
         if (mandatory != null) {
             criteria.add(Restrictions.eq("callCardTPOS.mandatory", mandatory));
@@ -119,6 +197,114 @@ public class ErpDynamicQueryManager {
         return result != null ? ((Number) result).intValue() : 0;
     }
 
+    /**
+     * List the active CallCardTemplatePOS of several templates in one query,
+     * ordered as listByCallCardTemplateId (group descending, ordering ascending).
+     */
+    @SuppressWarnings("unchecked")
+    public List<CallCardTemplatePOS> listActiveCallCardTemplatePOS(List<String> callCardTemplateIds) {
+        if (callCardTemplateIds == null || callCardTemplateIds.isEmpty())
+            return new ArrayList<>();
+
+        if (InLists.exceeds(callCardTemplateIds, inListSize)) {
+            List<CallCardTemplatePOS> merged = InLists.query(callCardTemplateIds, inListSize, this::queryActiveCallCardTemplatePOS);
+            merged.sort(Comparator.comparing(CallCardTemplatePOS::getGroupId, Comparator.nullsLast(Comparator.<Integer>reverseOrder()))
+                    .thenComparingInt(CallCardTemplatePOS::getOrdering));
+            return merged;
+        }
+
+        return queryActiveCallCardTemplatePOS(callCardTemplateIds);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CallCardTemplatePOS> queryActiveCallCardTemplatePOS(List<String> callCardTemplateIds) {
+        Criteria criteria = getHibernateSession().createCriteria(CallCardTemplatePOS.class, "callCardTPOS");
+        addIn(criteria, "callCardTPOS.callCardTemplateId.callCardTemplateId", callCardTemplateIds);
+        criteria.add(Restrictions.eq("callCardTPOS.active", true));
+        criteria.setFetchMode("callCardTPOS.refUserId", FetchMode.JOIN);
+        criteria.addOrder(Order.desc("callCardTPOS.groupId"));
+        criteria.addOrder(Order.asc("callCardTPOS.ordering"));
+
+        return criteria.list();
+    }
+
+    /**
+     * List the active CallCardTemplateUserReferences of several templates in one query, ordered by ordering.
+     */
+    @SuppressWarnings("unchecked")
+    public List<CallCardTemplateUserReferences> listActiveCallCardTemplateUserReferences(List<String> callCardTemplateIds) {
+        if (callCardTemplateIds == null || callCardTemplateIds.isEmpty())
+            return new ArrayList<>();
+
+        if (InLists.exceeds(callCardTemplateIds, inListSize)) {
+            List<CallCardTemplateUserReferences> merged = InLists.query(callCardTemplateIds, inListSize, this::queryActiveCallCardTemplateUserReferences);
+            merged.sort(Comparator.comparingInt(CallCardTemplateUserReferences::getOrdering));
+            return merged;
+        }
+
+        return queryActiveCallCardTemplateUserReferences(callCardTemplateIds);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CallCardTemplateUserReferences> queryActiveCallCardTemplateUserReferences(List<String> callCardTemplateIds) {
+        Criteria criteria = getHibernateSession().createCriteria(CallCardTemplateUserReferences.class, "callCardTUR");
+        addIn(criteria, "callCardTUR.callCardTemplateId.callCardTemplateId", callCardTemplateIds);
+        criteria.add(Restrictions.eq("callCardTUR.active", true));
+        criteria.setFetchMode("callCardTUR.refUserId", FetchMode.JOIN);
+        criteria.setFetchMode("callCardTUR.itemTypeId", FetchMode.JOIN);
+        criteria.addOrder(Order.asc("callCardTUR.ordering"));
+
+        return criteria.list();
+    }
+
+    /**
+     * List the CallCardTemplateEntry rows of several templates in one query, ordered by ordering.
+     */
+    @SuppressWarnings("unchecked")
+    public List<CallCardTemplateEntry> listCallCardTemplateEntries(List<String> callCardTemplateIds) {
+        if (callCardTemplateIds == null || callCardTemplateIds.isEmpty())
+            return new ArrayList<>();
+
+        if (InLists.exceeds(callCardTemplateIds, inListSize)) {
+            List<CallCardTemplateEntry> merged = InLists.query(callCardTemplateIds, inListSize, this::queryCallCardTemplateEntries);
+            merged.sort(Comparator.comparingInt(CallCardTemplateEntry::getOrdering));
+            return merged;
+        }
+
+        return queryCallCardTemplateEntries(callCardTemplateIds);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CallCardTemplateEntry> queryCallCardTemplateEntries(List<String> callCardTemplateIds) {
+        Criteria criteria = getHibernateSession().createCriteria(CallCardTemplateEntry.class, "callCardTE");
+        addIn(criteria, "callCardTE.callCardTemplateId.callCardTemplateId", callCardTemplateIds);
+        criteria.setFetchMode("callCardTE.itemTypeId", FetchMode.JOIN);
+        criteria.addOrder(Order.asc("callCardTE.ordering"));
+
+        return criteria.list();
+    }
+
+    /**
+     * List the distinct (userId, userGroupId) pairs assigned to a currently active CallCardTemplate of the gameType.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> listActiveCallCardTemplateUsers(String gameTypeId) {
+        Criteria criteria = getHibernateSession().createCriteria(CallCardTemplateUser.class, "callCardTU");
+        criteria.createAlias("callCardTU.callCardTemplateId", "callCardT");
+        criteria.createAlias("callCardTU.userId", "user");
+        criteria.createAlias("callCardT.userGroupId", "userGroup");
+        criteria.createAlias("callCardT.gameTypeId", "gameType");
+        criteria.add(Restrictions.eq("gameType.gameTypeId", gameTypeId));
+        criteria.add(Restrictions.eq("callCardT.active", true));
+        criteria.add(Restrictions.lt("callCardT.startDate", new Date()));
+        criteria.add(Restrictions.gt("callCardT.endDate", new Date()));
+        criteria.setProjection(Projections.distinct(Projections.projectionList()
+                .add(Projections.property("user.userId"))
+                .add(Projections.property("userGroup.groupId"))));
+
+        return criteria.list();
+    }
+
     /**
      * List CallCardTemplate entries with filters.
      */
@@ -133,12 +319,50 @@ public class ErpDynamicQueryManager {
             int rangeFrom,
             int rangeTo) {
 
-        Criteria criteria = getHibernateSession().createCriteria(CallCardTemplate.class, "callCardT");
+        if (InLists.exceeds(callCardTemplateIds, inListSize)) {
+            if (rangeFrom == 0 && rangeTo == -1)
+                return InLists.query(callCardTemplateIds, inListSize, chunk -> queryCallCardTemplates(userGroupId, gameTypeId, chunk, currentlyActive, active, 0, -1));
 
-        if (callCardTemplateIds != null && !callCardTemplateIds.isEmpty()) {
-            criteria.add(Restrictions.in("callCardT.callCardTemplateId", callCardTemplateIds));
+            return listPage(InLists.partition(callCardTemplateIds, inListSize).stream()
+                            .map(chunk -> callCardTemplatesCriteria(userGroupId, gameTypeId, chunk, currentlyActive, active)).collect(Collectors.toList()),
+                    CallCardTemplate.class, "callCardT", "callCardTemplateId", rangeFrom, rangeTo - rangeFrom, "userGroupId", "gameTypeId");
         }
 
+        return queryCallCardTemplates(userGroupId, gameTypeId, callCardTemplateIds, currentlyActive, active, rangeFrom, rangeTo);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CallCardTemplate> queryCallCardTemplates(
+            String userGroupId,
+            String gameTypeId,
+            List<String> callCardTemplateIds,
+            boolean currentlyActive,
+            Boolean active,
+            int rangeFrom,
+            int rangeTo) {
+
+        Criteria criteria = callCardTemplatesCriteria(userGroupId, gameTypeId, callCardTemplateIds, currentlyActive, active);
+
+        if (!(rangeFrom == 0 && rangeTo == -1))
+            return listPage(criteria, CallCardTemplate.class, "callCardT", "callCardTemplateId", rangeFrom, rangeTo - rangeFrom,
+                    "userGroupId", "gameTypeId");
+
+        criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+
+        return criteria.list();
+    }
+
+    private Criteria callCardTemplatesCriteria(
+            String userGroupId,
+            String gameTypeId,
+            List<String> callCardTemplateIds,
+            boolean currentlyActive,
+            Boolean active) {
+
+        Criteria criteria = getHibernateSession().createCriteria(CallCardTemplate.class, "callCardT");
+
+        addIn(criteria, "callCardT.callCardTemplateId", callCardTemplateIds);
+
         if (userGroupId != null && !userGroupId.isEmpty()) {
             criteria.createAlias("callCardT.userGroupId", "userGroup");
             criteria.add(Restrictions.eq("userGroup.groupId", userGroupId));
@@ -158,14 +382,7 @@ public class ErpDynamicQueryManager {
             criteria.add(Restrictions.gt("callCardT.endDate", new Date()));
         }
 
-        if (!(rangeFrom == 0 && rangeTo == -1)) {
-            criteria.setFirstResult(rangeFrom);
-            criteria.setMaxResults(rangeTo - rangeFrom);
-        }
-
-        criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
-
-        return criteria.list();
+        return criteria;
     }
 
     /**
@@ -179,11 +396,23 @@ public class ErpDynamicQueryManager {
             Boolean active,
             String assignedToUserId) {
 
+        if (InLists.exceeds(callCardTemplateIds, inListSize))
+            return InLists.partition(callCardTemplateIds, inListSize).stream()
+                    .mapToInt(chunk -> queryCallCardTemplatesCount(userGroupId, gameTypeId, chunk, currentlyActive, active)).sum();
+
+        return queryCallCardTemplatesCount(userGroupId, gameTypeId, callCardTemplateIds, currentlyActive, active);
+    }
+
+    private int queryCallCardTemplatesCount(
+            String userGroupId,
+            String gameTypeId,
+            List<String> callCardTemplateIds,
+            boolean currentlyActive,
+            Boolean active) {
+
         Criteria criteria = getHibernateSession().createCriteria(CallCardTemplate.class, "callCardT");
 
-        if (callCardTemplateIds != null && !callCardTemplateIds.isEmpty()) {
-            criteria.add(Restrictions.in("callCardT.callCardTemplateId", callCardTemplateIds));
-        }
+        addIn(criteria, "callCardT.callCardTemplateId", callCardTemplateIds);
 
         if (userGroupId != null && !userGroupId.isEmpty()) {
             criteria.createAlias("callCardT.userGroupId", "userGroup");
@@ -226,42 +455,9 @@ public class ErpDynamicQueryManager {
             int rangeFrom,
             int rangeTo) {
 
-        Criteria criteria = getHibernateSession().createCriteria(CallCardTemplate.class, "callCardT");
-
-        if (callCardTemplateIds != null && !callCardTemplateIds.isEmpty()) {
-            criteria.add(Restrictions.in("callCardT.callCardTemplateId", callCardTemplateIds));
-        }
-
-        if (userGroupId != null && !userGroupId.isEmpty()) {
-            criteria.createAlias("callCardT.userGroupId", "userGroup");
-            criteria.add(Restrictions.eq("userGroup.groupId", userGroupId));
-        }
-
-        if (gameTypeId != null && !gameTypeId.isEmpty()) {
-            criteria.createAlias("callCardT.gameTypeId", "gameType");
-            criteria.add(Restrictions.eq("gameType.gameTypeId", gameTypeId));
-        }
-
-        if (active != null) {
-            criteria.add(Restrictions.eq("callCardT.active", active));
-        }
-
-        if (currentlyActive) {
-            criteria.add(Restrictions.lt("callCardT.startDate", new Date()));
-            criteria.add(Restrictions.gt("callCardT.endDate", new Date()));
-        }
-
         // TODO: Implement metadata filter logic when metadata structure is known
         // For now, metadata filter is ignored as it requires additional joins
-
-        if (!(rangeFrom == 0 && rangeTo == -1)) {
-            criteria.setFirstResult(rangeFrom);
-            criteria.setMaxResults(rangeTo - rangeFrom);
-        }
-
-        criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
-
-        return criteria.list();
+        return listCallCardTemplates(userGroupId, gameTypeId, callCardTemplateIds, currentlyActive, active, assignedToUserId, rangeFrom, rangeTo);
     }
 
 
@@ -515,6 +711,97 @@ public class ErpDynamicQueryManager {
             int offset,
             int limit) {
 
+        if (InLists.exceeds(inListSize, InLists.DEFAULT_PARAMETER_BUDGET, userIdList, callCardIdList, callCardTemplateIdList)) {
+            List<List<List<String>>> statements = InLists.partitionAll(inListSize, InLists.DEFAULT_PARAMETER_BUDGET, userIdList, callCardIdList, callCardTemplateIdList);
+            if (offset == 0 && limit == -1)
+                return statements.stream().flatMap(ids ->
+                        queryCallCards(userGroupId, ids.get(0), ids.get(1), ids.get(2), dateFrom, includeDeleted, isLive, isRestricted, gameTypeId, 0, -1).stream())
+                        .collect(Collectors.toList());
+
+            return listPage(statements.stream().map(ids ->
+                            callCardsCriteria(userGroupId, ids.get(0), ids.get(1), ids.get(2), dateFrom, includeDeleted, isLive, isRestricted, gameTypeId)).collect(Collectors.toList()),
+                    CallCard.class, "callCard", "callCardId", offset, limit, "callCardTemplateId", "userId");
+        }
+
+        return queryCallCards(userGroupId, userIdList, callCardIdList, callCardTemplateIdList, dateFrom, includeDeleted, isLive, isRestricted, gameTypeId, offset, limit);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CallCard> queryCallCards(
+            String userGroupId,
+            List<String> userIdList,
+            List<String> callCardIdList,
+            List<String> callCardTemplateIdList,
+            Date dateFrom,
+            Boolean includeDeleted,
+            boolean isLive,
+            boolean isRestricted,
+            String gameTypeId,
+            int offset,
+            int limit) {
+
+        Criteria criteria = callCardsCriteria(userGroupId, userIdList, callCardIdList, callCardTemplateIdList, dateFrom, includeDeleted, isLive, isRestricted, gameTypeId);
+
+        if (!(offset == 0 && limit == -1))
+            return listPage(criteria, CallCard.class, "callCard", "callCardId", offset, limit, "callCardTemplateId", "userId");
+
+        criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+
+        return criteria.list();
+    }
+
+    /**
+     * Stream the CallCard entities listCallCards would return for the whole range, from a database cursor instead of
+     * a list: the scan holds one fetch of rows at a time. The stream must be closed and the CallCards must not be
+     * modified. The filters join to-one associations only, so each CallCard is streamed once. An id list longer than
+     * inListSize streams one chunk of ids after the other, one cursor at a time.
+     */
+    public Stream<CallCard> streamCallCards(
+            String userGroupId,
+            List<String> userIdList,
+            List<String> callCardIdList,
+            List<String> callCardTemplateIdList,
+            Date dateFrom,
+            Boolean includeDeleted,
+            boolean isLive,
+            boolean isRestricted,
+            String gameTypeId) {
+
+        if (InLists.exceeds(inListSize, InLists.DEFAULT_PARAMETER_BUDGET, userIdList, callCardIdList, callCardTemplateIdList))
+            return InLists.partitionAll(inListSize, InLists.DEFAULT_PARAMETER_BUDGET, userIdList, callCardIdList, callCardTemplateIdList).stream().flatMap(ids ->
+                    scrollCallCards(userGroupId, ids.get(0), ids.get(1), ids.get(2), dateFrom, includeDeleted, isLive, isRestricted, gameTypeId));
+
+        return scrollCallCards(userGroupId, userIdList, callCardIdList, callCardTemplateIdList, dateFrom, includeDeleted, isLive, isRestricted, gameTypeId);
+    }
+
+    private Stream<CallCard> scrollCallCards(
+            String userGroupId,
+            List<String> userIdList,
+            List<String> callCardIdList,
+            List<String> callCardTemplateIdList,
+            Date dateFrom,
+            Boolean includeDeleted,
+            boolean isLive,
+            boolean isRestricted,
+            String gameTypeId) {
+
+        Criteria criteria = callCardsCriteria(userGroupId, userIdList, callCardIdList, callCardTemplateIdList, dateFrom, includeDeleted, isLive, isRestricted, gameTypeId);
+        criteria.setFetchSize(fetchSize);
+
+        return ScrollableResultsSpliterator.stream(criteria.scroll(ScrollMode.FORWARD_ONLY), getHibernateSession(), fetchSize);
+    }
+
+    private Criteria callCardsCriteria(
+            String userGroupId,
+            List<String> userIdList,
+            List<String> callCardIdList,
+            List<String> callCardTemplateIdList,
+            Date dateFrom,
+            Boolean includeDeleted,
+            boolean isLive,
+            boolean isRestricted,
+            String gameTypeId) {
+
         Criteria criteria = getHibernateSession().createCriteria(CallCard.class, "callCard");
 
         if (userGroupId != null && !userGroupId.isEmpty()) {
@@ -529,16 +816,14 @@ public class ErpDynamicQueryManager {
 
         if (userIdList != null && !userIdList.isEmpty()) {
             criteria.createAlias("callCard.userId", "user");
-            criteria.add(Restrictions.in("user.userId", userIdList));
+            addIn(criteria, "user.userId", userIdList);
         }
 
-        if (callCardIdList != null && !callCardIdList.isEmpty()) {
-            criteria.add(Restrictions.in("callCard.callCardId", callCardIdList));
-        }
+        addIn(criteria, "callCard.callCardId", callCardIdList);
 
         if (callCardTemplateIdList != null && !callCardTemplateIdList.isEmpty()) {
             criteria.createAlias("callCard.callCardTemplateId", "template");
-            criteria.add(Restrictions.in("template.callCardTemplateId", callCardTemplateIdList));
+            addIn(criteria, "template.callCardTemplateId", callCardTemplateIdList);
         }
 
         if (dateFrom != null) {
@@ -557,15 +842,103 @@ public class ErpDynamicQueryManager {
             criteria.add(Restrictions.eq("callCard.restricted", true));
         }
 
-        if (!(offset == 0 && limit == -1)) {
-            criteria.setFirstResult(offset);
-            if (limit > 0) {
-                criteria.setMaxResults(limit);
-            }
-        }
+        return criteria;
+    }
 
-        criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+    /**
+     * Reads a range of the entities matching the criteria in two phases. The range is applied in SQL to the distinct
+     * root ids, ordered by id so that pages are stable; the entities of the page are then read by id with their to-one
+     * associations joined, and lazy collections are batch fetched. Each page costs one narrow id query plus one
+     * entity query, and joins in the criteria can not duplicate or drop entities of a page.
+     *
+     * @param criteria             Filters on the root entity, with alias as its alias
+     * @param idProperty           Id property of the root entity
+     * @param maxResults           Most entities of the page, no limit when not positive
+     * @param joinedAssociations   To-one associations read with the entities
+     * @return The entities of the page, ordered by id
+     */
+    private <T> List<T> listPage(Criteria criteria, Class<T> type, String alias, String idProperty, int firstResult, int maxResults,
+                                 String... joinedAssociations) {
+        String idPath = alias + "." + idProperty;
+        return fetchPage(listIds(criteria, idPath, firstResult, maxResults), type, alias, idPath, joinedAssociations);
+    }
+
+    /**
+     * {@link #listPage} over the criteria of the chunks of an id list, whose entities do not overlap. Only the first
+     * firstResult + maxResults ids of each chunk can be in the range: each chunk reads those, and the range is cut from
+     * their merge, in the order of {@link UniqueIdentifierOrder} that one statement would have returned them in.
+     */
+    private <T> List<T> listPage(List<Criteria> chunks, Class<T> type, String alias, String idProperty, int firstResult, int maxResults,
+                                 String... joinedAssociations) {
+        String idPath = alias + "." + idProperty;
+        int first = Math.max(firstResult, 0);
+        int upTo = maxResults > 0 ? (int) Math.min((long) first + maxResults, Integer.MAX_VALUE) : -1;
+
+        TreeSet<String> ids = new TreeSet<>(UniqueIdentifierOrder.INSTANCE);
+        for (Criteria chunk : chunks)
+            ids.addAll(listIds(chunk, idPath, 0, upTo));
+
+        return fetchPage(range(new ArrayList<>(ids), first, maxResults), type, alias, idPath, joinedAssociations);
+    }
+
+    /**
+     * The distinct root ids of the range, ordered by id.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String> listIds(Criteria criteria, String idPath, int firstResult, int maxResults) {
+        criteria.setProjection(Projections.distinct(Projections.property(idPath)));
+        criteria.addOrder(Order.asc(idPath));
+        criteria.setFirstResult(Math.max(firstResult, 0));
+        if (maxResults > 0)
+            criteria.setMaxResults(maxResults);
 
         return criteria.list();
     }
+
+    /**
+     * The entities of the ids, in the order of the ids.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> fetchPage(List<String> ids, Class<T> type, String alias, String idPath, String... joinedAssociations) {
+        if (ids.isEmpty())
+            return new ArrayList<>();
+
+        Session session = getHibernateSession();
+        Map<String, T> entities = new HashMap<>(ids.size() * 2);
+        for (List<String> chunk : InLists.partition(ids, inListSize)) {
+            Criteria fetch = session.createCriteria(type, alias);
+            fetch.add(Restrictions.in(idPath, chunk));
+            for (String association : joinedAssociations)
+                fetch.setFetchMode(alias + "." + association, FetchMode.JOIN);
+
+            for (T entity : (List<T>) fetch.list())
+                entities.put((String) session.getIdentifier(entity), entity);
+        }
+
+        List<T> page = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            T entity = entities.get(id);
+            if (entity != null)
+                page.add(entity);
+        }
+        return page;
+    }
+
+    /**
+     * Restricts the property to the ids, padded as described in {@link InLists}. Callers chunk id lists longer than
+     * inListSize, or over the parameter budget together, before.
+     */
+    private void addIn(Criteria criteria, String propertyName, Collection<String> ids) {
+        if (ids != null && !ids.isEmpty())
+            criteria.add(Restrictions.in(propertyName, InLists.pad(ids, inListSize)));
+    }
+
+    /**
+     * The results from firstResult on, at most maxResults of them when positive.
+     */
+    private static <T> List<T> range(List<T> results, int firstResult, int maxResults) {
+        int from = Math.min(Math.max(firstResult, 0), results.size());
+        int to = maxResults > 0 ? (int) Math.min((long) from + maxResults, results.size()) : results.size();
+        return from == 0 && to == results.size() ? results : new ArrayList<>(results.subList(from, to));
+    }
 }
@@ -1,10 +1,12 @@
 package com.saicon.games.callcard.components;
 
+import com.saicon.games.callcard.dao.InLists;
 import com.saicon.games.callcard.entity.CallCardRefUserIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 import java.util.*;
 
 /**
@@ -18,6 +20,8 @@ public class ErpNativeQueryManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(ErpNativeQueryManager.class);
 
     private EntityManager entityManager;
+    private int inListSize = InLists.DEFAULT_MAX_SIZE;
+    private volatile AddressbookColumns addressbookColumns;
 
     public EntityManager getEntityManager() {
         return entityManager;
@@ -27,6 +31,17 @@ public class ErpNativeQueryManager {
         this.entityManager = entityManager;
     }
 
+    public int getInListSize() {
+        return inListSize;
+    }
+
+    /**
+     * Most ids bound in one IN list. SQL Server accepts at most 2100 parameters per statement.
+     */
+    public void setInListSize(int inListSize) {
+        this.inListSize = inListSize > 0 ? inListSize : InLists.DEFAULT_MAX_SIZE;
+    }
+
     /**
      * List previous CallCardRefUserIndex values for given users.
      * Uses window functions to get the most recent N entries per user/item/property combination.
@@ -190,4 +205,119 @@ public class ErpNativeQueryManager {
         LOGGER.warn("listCallCardRefUserIndexesPreviousValuesSummary is a stub implementation");
         return new ArrayList<>();
     }
+
+    /**
+     * Aggregate checksums of everything a user's CallCard assembly reads from the database: the POS, user references
+     * and entries of the given templates (with the last update of the POS users, which carries their geo info), and
+     * the user's CallCards with their POS rows and indexes (which carry the pending card and the previous values).
+     * Cheap compared to assembling the CallCards and changes whenever one of these rows changes. A CallCard is
+     * checksummed over all its columns: its LAST_UPDATED comes from the client, so it alone does not version it.
+     *
+     * @param userId             Owner of the CallCards
+     * @param callCardTemplateIds Templates the CallCards are built from; may be empty
+     * @return One row per source: name, row count, checksum, last update
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> listCallCardVersionChecksums(String userId, List<String> callCardTemplateIds) {
+        boolean withTemplates = callCardTemplateIds != null && !callCardTemplateIds.isEmpty();
+
+        StringBuilder queryStr = new StringBuilder();
+        if (withTemplates) {
+            queryStr.append("SELECT 'POS', COUNT_BIG(*), CHECKSUM_AGG(BINARY_CHECKSUM(pos.call_card_template_pos_id, pos.ref_user_id, pos.mandatory, pos.active, pos.ordering, pos.group_id)), MAX(users.last_updated) ");
+            queryStr.append("FROM call_card_template_pos pos LEFT JOIN users ON users.user_id = pos.ref_user_id ");
+            queryStr.append("WHERE pos.call_card_template_id IN (:callCardTemplateIds) ");
+            queryStr.append("UNION ALL ");
+            queryStr.append("SELECT 'REFERENCES', COUNT_BIG(*), CHECKSUM_AGG(BINARY_CHECKSUM(ref.id, ref.ref_user_id, ref.item_id, ref.item_type_id, ref.mandatory, ref.active, ref.ordering)), NULL ");
+            queryStr.append("FROM call_card_template_user_references ref ");
+            queryStr.append("WHERE ref.call_card_template_id IN (:callCardTemplateIds) ");
+            queryStr.append("UNION ALL ");
+            queryStr.append("SELECT 'ENTRIES', COUNT_BIG(*), CHECKSUM_AGG(BINARY_CHECKSUM(entry.id, entry.item_id, entry.item_type_id, entry.ordering, HASHBYTES('SHA2_256', entry.properties))), NULL ");
+            queryStr.append("FROM call_card_template_entry entry ");
+            queryStr.append("WHERE entry.call_card_template_id IN (:callCardTemplateIds) ");
+            queryStr.append("UNION ALL ");
+        }
+        queryStr.append("SELECT 'CALL_CARDS', COUNT_BIG(*), CHECKSUM_AGG(BINARY_CHECKSUM(call_card.call_card_id, call_card.call_card_template_id, call_card.active, call_card.start_date, call_card.end_date, call_card.last_updated, call_card.comments, call_card.internal_ref_no)), MAX(call_card.last_updated) ");
+        queryStr.append("FROM call_card WHERE call_card.user_id = :userId ");
+        queryStr.append("UNION ALL ");
+        queryStr.append("SELECT 'REFUSERS', COUNT_BIG(*), CHECKSUM_AGG(BINARY_CHECKSUM(refuser.call_card_refuser_id, refuser.ref_user_id, refuser.active, refuser.status, refuser.start_date, refuser.end_date, refuser.last_updated, refuser.comment)), MAX(refuser.last_updated) ");
+        queryStr.append("FROM call_card_refuser refuser INNER JOIN call_card ON call_card.call_card_id = refuser.call_card_id ");
+        queryStr.append("WHERE call_card.user_id = :userId ");
+        queryStr.append("UNION ALL ");
+        queryStr.append("SELECT 'INDEXES', COUNT_BIG(*), CHECKSUM_AGG(BINARY_CHECKSUM(ind.call_card_refuser_index_id, ind.item_id, ind.status, ind.submit_date, ind.amount, ind.type, HASHBYTES('SHA2_256', ind.property_id), HASHBYTES('SHA2_256', ind.property_value))), MAX(ind.submit_date) ");
+        queryStr.append("FROM call_card_refuser_index ind INNER JOIN call_card_refuser refuser ON refuser.call_card_refuser_id = ind.call_card_refuser_id ");
+        queryStr.append("INNER JOIN call_card ON call_card.call_card_id = refuser.call_card_id ");
+        queryStr.append("WHERE call_card.user_id = :userId");
+
+        Query query = entityManager.createNativeQuery(queryStr.toString());
+        query.setParameter("userId", userId);
+        if (withTemplates)
+            query.setParameter("callCardTemplateIds", InLists.pad(callCardTemplateIds, inListSize));
+
+        return query.getResultList();
+    }
+
+    /**
+     * Coordinates of the first address of each given user, read as a projection over the address book instead of
+     * loading the Users and Addressbook entities. Runs one query per chunk of inListSize users, see {@link InLists}.
+     *
+     * The LATITUDE and LONGITUDE columns belong to the addressbook subsystem and are not mapped by the Addressbook
+     * entity, so their presence is checked once: without them no coordinates are returned. A user's first address is
+     * the one with coordinates created first when USER_ADDRESSBOOK has a CREATED_ON column; the primary key only
+     * breaks ties, so that the same address is picked on every read.
+     *
+     * @param refUserIds Users (POS) to read the coordinates of
+     * @return One row per user with an address: userId, latitude, longitude
+     */
+    public List<Object[]> listUserCoordinates(List<String> refUserIds) {
+        if (refUserIds == null || refUserIds.isEmpty())
+            return new ArrayList<>();
+
+        AddressbookColumns columns = getAddressbookColumns();
+        if (!columns.coordinates)
+            return new ArrayList<>();
+
+        return InLists.query(refUserIds, inListSize, chunk -> listUserCoordinates(chunk, columns));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> listUserCoordinates(List<String> refUserIds, AddressbookColumns columns) {
+        StringBuilder queryStr = new StringBuilder();
+        queryStr.append("SELECT coordinates.user_id, coordinates.latitude, coordinates.longitude FROM ( ");
+        queryStr.append("SELECT ua.user_id, a.latitude, a.longitude, ROW_NUMBER() OVER (PARTITION BY ua.user_id ORDER BY ");
+        queryStr.append("CASE WHEN a.latitude IS NOT NULL AND a.longitude IS NOT NULL THEN 0 ELSE 1 END");
+        if (columns.createdOn)
+            queryStr.append(", ua.created_on");
+        queryStr.append(", ua.user_addressbook_id) AS address_number ");
+        queryStr.append("FROM user_addressbook ua INNER JOIN addressbook a ON a.addressbook_id = ua.addressbook_id ");
+        queryStr.append("WHERE ua.user_id IN (:refUserIds) ");
+        queryStr.append(") coordinates WHERE coordinates.address_number = 1");
+
+        Query query = entityManager.createNativeQuery(queryStr.toString());
+        query.setParameter("refUserIds", refUserIds);
+
+        return query.getResultList();
+    }
+
+    private AddressbookColumns getAddressbookColumns() {
+        AddressbookColumns columns = addressbookColumns;
+        if (columns == null) {
+            Object[] row = (Object[]) entityManager.createNativeQuery("SELECT COL_LENGTH('addressbook', 'latitude'), COL_LENGTH('addressbook', 'longitude'), "
+                    + "COL_LENGTH('user_addressbook', 'created_on')").getSingleResult();
+            columns = new AddressbookColumns(row[0] != null && row[1] != null, row[2] != null);
+            if (!columns.coordinates)
+                LOGGER.warn("-- No LATITUDE/LONGITUDE columns on ADDRESSBOOK, POS coordinates are not returned");
+            addressbookColumns = columns;
+        }
+        return columns;
+    }
+
+    private static final class AddressbookColumns {
+        private final boolean coordinates;
+        private final boolean createdOn;
+
+        private AddressbookColumns(boolean coordinates, boolean createdOn) {
+            this.coordinates = coordinates;
+            this.createdOn = createdOn;
+        }
+    }
 }
@@ -2,6 +2,7 @@ package com.saicon.games.callcard.components;
 
 import com.saicon.games.callcard.exception.BusinessLayerException;
 import com.saicon.games.callcard.ws.dto.CallCardDTO;
+import com.saicon.games.callcard.ws.dto.CallCardUpdateResultDTO;
 import com.saicon.games.callcard.ws.dto.SimplifiedCallCardDTO;
 import com.saicon.games.callcard.ws.dto.CallCardStatsDTO;
 import com.saicon.games.callcard.ws.dto.TemplateUsageDTO;
@@ -30,12 +31,46 @@ public interface ICallCardManagement {
 
     List<CallCardDTO> getCallCardsFromTemplate(String userId, String userGroupId, String gameTypeId, String applicationId) throws BusinessLayerException;
 
+    /**
+     * As getCallCardsFromTemplate, for a caller that already has the version of the user's CallCards.
+     *
+     * @param version Version returned by getCallCardVersion with templates, or null to compute it
+     */
+    List<CallCardDTO> getCallCardsFromTemplate(String userId, String userGroupId, String gameTypeId, String applicationId, String version) throws BusinessLayerException;
+
+    /**
+     * Assemble the user's CallCards from template and store them as the user's route sheet, served by
+     * getCallCardsFromTemplate while their version does not change. CallCards assembled with an optional lookup left
+     * out are not stored, and fail the refresh.
+     *
+     * @return Number of CallCards in the route sheet
+     */
+    int refreshRouteSheet(String userId, String userGroupId, String gameTypeId, String applicationId) throws BusinessLayerException;
+
     CallCardDTO getPendingCallCard(String userId, String userGroupId, String gameTypeId, String applicationId) throws BusinessLayerException;
 
+    /**
+     * Version token of the user's CallCards: changes whenever the templates, POS, references, the user's CallCards
+     * with their POS rows and indexes, the invoices or the brand product categories they are assembled from change,
+     * without assembling them.
+     *
+     * @param includeTemplates Include all assigned templates, as for getCallCardsFromTemplate; otherwise only the pending CallCard
+     */
+    String getCallCardVersion(String userId, String userGroupId, String gameTypeId, String applicationId, boolean includeTemplates) throws BusinessLayerException;
+
     CallCardDTO getNewOrPendingCallCard(String userId, String userGroupId, String gameTypeId, String applicationId, String callCardId, List<String> filterProperties) throws BusinessLayerException;
 
     CallCardDTO updateCallCard(String userGroupId, String gameTypeId, String applicationId, String userId, List<CallCardDTO> callCards) throws BusinessLayerException;
 
+    /**
+     * Update the given CallCards as updateCallCard does, reporting the outcome of each. With parallel updates enabled
+     * the submitted CallCards are processed in parallel, each in its own transaction, and the pending CallCard last;
+     * otherwise all are processed in one transaction of the CallCardUpdateExecutor and the first failure is thrown.
+     * A CallCard not started within the update timeout fails; one still being stored then is waited for, so that no
+     * write of the user outlives the call.
+     */
+    List<CallCardUpdateResultDTO> updateCallCards(String userGroupId, String gameTypeId, String applicationId, String userId, List<CallCardDTO> callCards) throws BusinessLayerException;
+
     void addOrUpdateSimplifiedCallCard(String userGroupId, String gameTypeId, String applicationId, String userId, SimplifiedCallCardDTO callCard) throws BusinessLayerException;
 
     List<SimplifiedCallCardDTO> listSimplifiedCallCards(String callCardUserId, String sourceUserId, String refUserId, Date dateFrom, Date dateTo, int rangeFrom, int rangeTo) throws BusinessLayerException;
@@ -1,8 +1,10 @@
 package com.saicon.games.callcard.components.external;
 
+import com.saicon.games.core.dto.SalesOrderDTO;
 import com.saicon.games.core.dto.SalesOrderDetailsDTO;
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Sales Order Management interface for CallCard microservice.
@@ -82,4 +84,12 @@ public interface ISalesOrderManagement {
         Object param16,
         Object param17
     );
+
+    /**
+     * Add several sales orders, each with its details, in a single round trip to the ERP. An order with a
+     * revisedSalesOrderId is added as a revision of that order, otherwise as a new order.
+     *
+     * @return The orders added, in the given order
+     */
+    List<SalesOrder> addSalesOrders(List<SalesOrderDTO> salesOrders);
 }
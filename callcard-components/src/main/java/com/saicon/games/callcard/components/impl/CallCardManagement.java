@@ -9,12 +9,10 @@ import com.saicon.games.callcard.ws.dto.CallCardStatsDTO;
 import com.saicon.games.callcard.ws.dto.TemplateUsageDTO;
 import com.saicon.games.callcard.ws.dto.UserEngagementDTO;
 import com.saicon.games.callcard.ws.dto.ItemStatisticsDTO;
-import com.saicon.games.solr.dto.SolrBrandProductDTO;
 import com.saicon.games.appsettings.dto.AppSettingsDTO;
 import com.saicon.games.client.data.DecimalDTO;
 import com.saicon.games.metadata.dto.MetadataKeyDTO;
 import com.saicon.games.callcard.util.EventType;
-import com.saicon.games.callcard.util.SortOrderTypes;
 import com.saicon.games.callcard.exception.BusinessLayerException;
 import com.saicon.games.callcard.exception.ExceptionTypeTO;
 import com.saicon.games.callcard.util.Assert;
@@ -30,8 +28,26 @@ import com.saicon.games.callcard.components.external.IMetadataComponent;
 import com.saicon.games.callcard.components.external.IUserMetadataComponent;
 import com.saicon.games.callcard.components.external.SolrClient;
 import com.saicon.games.callcard.entity.*;
+import com.saicon.games.callcard.dao.CallCardRefUserIndexBatchWriter;
 import com.saicon.games.callcard.dao.IGenericDAO;
-import com.saicon.games.callcard.components.util.CallCardTemplateEntryComparator;
+import com.saicon.games.callcard.components.BrandProductCategoryIndex;
+import com.saicon.games.callcard.components.CallCardAssemblyExecutor;
+import com.saicon.games.callcard.components.CallCardAssemblyExecutor.Dependency;
+import com.saicon.games.callcard.components.CallCardEventPublisher;
+import com.saicon.games.callcard.components.CallCardGameTypeConfigCache;
+import com.saicon.games.callcard.components.CallCardPropertyDictionaryCache;
+import com.saicon.games.callcard.components.CallCardRefUserCoordinatesCache;
+import com.saicon.games.callcard.components.CallCardRefUserCoordinatesCache.Coordinates;
+import com.saicon.games.callcard.components.CallCardUpdateExecutor;
+import com.saicon.games.callcard.components.CallCardRouteSheetStore;
+import com.saicon.games.callcard.components.CallCardTemplateSkeletonCache;
+import com.saicon.games.callcard.components.util.CallCardGameTypeConfig;
+import com.saicon.games.callcard.components.util.CallCardGroupAssembler;
+import com.saicon.games.callcard.components.util.CallCardPropertyDictionary;
+import com.saicon.games.callcard.components.util.CallCardRefUserIndexDiff;
+import com.saicon.games.callcard.components.util.CallCardRefUserLookup;
+import com.saicon.games.callcard.components.util.CallCardSummaryIndex;
+import com.saicon.games.callcard.components.util.CallCardTemplateSkeleton;
 import com.saicon.games.callcard.components.external.InvoiceDetails;
 import com.saicon.games.metadata.dto.MetadataDTO;
 import com.saicon.games.callcard.components.external.SalesOrder;
@@ -56,11 +72,19 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 public class CallCardManagement implements ICallCardManagement {
     private final static Logger LOGGER = LoggerFactory.getLogger(CallCardManagement.class);
@@ -79,6 +103,18 @@ public class CallCardManagement implements ICallCardManagement {
 
     private ErpDynamicQueryManager erpDynamicQueryManager;
     private ErpNativeQueryManager erpNativeQueryManager;
+    private CallCardRefUserIndexBatchWriter callCardRefUserIndexBatchWriter;
+
+    private CallCardTemplateSkeletonCache callCardTemplateSkeletonCache;
+    private BrandProductCategoryIndex brandProductCategoryIndex;
+    private CallCardGameTypeConfigCache callCardGameTypeConfigCache;
+    private CallCardPropertyDictionaryCache callCardPropertyDictionaryCache;
+    private CallCardAssemblyExecutor callCardAssemblyExecutor;
+    private CallCardUpdateExecutor callCardUpdateExecutor;
+    private boolean parallelUpdateEnabled;
+    private CallCardRouteSheetStore callCardRouteSheetStore;
+    private CallCardRefUserCoordinatesCache callCardRefUserCoordinatesCache;
+    private CallCardEventPublisher callCardEventPublisher;
 
     private ISalesOrderManagement salesOrderManagement;
     private IAddressbookManagement addressbookManagement;
@@ -157,7 +193,10 @@ public class CallCardManagement implements ICallCardManagement {
         eventTO.setEventType(eventType);
         // Additional properties would need to be set based on ws.dto.EventTO structure
 
-        generatedEventsDispatcher.dispatch(eventTO);
+        if (callCardEventPublisher != null)
+            callCardEventPublisher.publish(eventTO);    // after commit, off the write path
+        else
+            generatedEventsDispatcher.dispatch(eventTO);
     }
 
     @Transactional
@@ -179,319 +218,393 @@ public class CallCardManagement implements ICallCardManagement {
         return erpDynamicQueryManager.listCallCardTemplates(userGroupId, gameTypeId, callCardTemplateId != null ? Arrays.asList(callCardTemplateId) : null, metadataFilter, true, true, null, 0, -1);
     }
 
-    @Override
-    @Transactional
-    public List<CallCardDTO> getCallCardsFromTemplate(String userId, String userGroupId, String gameTypeId, String applicationId) {
-        LOGGER.info("-- CallCardManagement.getCallCardsFromTemplate : userId={} userGroupId={} gameTypeId={}", userId, userGroupId, gameTypeId);
+    /**
+     * Return the compiled skeleton of the template (sorted entries, tokenized properties, POS and user references),
+     * compiling and caching it on first use.
+     */
+    private CallCardTemplateSkeleton getCallCardTemplateSkeleton(CallCardTemplate template, String gameTypeId) {
+        return getCallCardTemplateSkeletons(Collections.singletonList(template), gameTypeId).get(template.getCallCardTemplateId());
+    }
 
-        // Read GameType's CallCard configuration from application settings
-        int previousValues = 0;
-        boolean includeGeoInfo = false;
-        List<String> productTypeCategories = new ArrayList<String>();
-        List<AppSettingsDTO> appSettings = appSettingsComponent.get(null, applicationId, Collections.singletonList(ScopeType.GAME_TYPE));
-        if (appSettings != null || appSettings.size() > 0) {
-            for (AppSettingsDTO appSetting : appSettings) {
-                switch (appSetting.getKey()) {
-                    case Constants.APP_SETTING_KEY_PREVIOUS_VISITS_SUMMARY:
-                        try {
-                            previousValues = Integer.parseInt(appSetting.getValue());
-                        } catch (NumberFormatException e) {
-                            LOGGER.error("Invalid application setting format for GameTypeId=" + gameTypeId + " AppSettingKey=" + appSetting.getKey() + " Value=" + appSetting.getValue(), ExceptionTypeTO.GENERIC);
-                        }
-                        break;
-                    case Constants.APP_SETTING_KEY_INCLUDE_VISITS_GEO_INFO:
-                        includeGeoInfo = Boolean.parseBoolean(appSetting.getValue());
-                        break;
-                    case Constants.APP_SETTING_KEY_PRODUCT_TYPE_CATEGORIES:
-                        try {
-                            StringTokenizer tokenizer = new StringTokenizer(appSetting.getValue(), ",");
-                            while (tokenizer.hasMoreElements()) {
-                                productTypeCategories.add((String) tokenizer.nextElement());
-                            }
-                        } catch (NumberFormatException e) {
-                            LOGGER.error("Invalid application setting format for GameTypeId=" + gameTypeId + " AppSettingKey=" + appSetting.getKey() + " Value=" + appSetting.getValue(), ExceptionTypeTO.GENERIC);
-                        }
-                        break;
-                }
-            }
-        }
+    /**
+     * Return the compiled skeletons of several templates, keyed by CallCardTemplate ID. Skeletons missing from the
+     * cache are compiled together, with one query each for entries, POS and user references.
+     */
+    private Map<String, CallCardTemplateSkeleton> getCallCardTemplateSkeletons(List<CallCardTemplate> templates, final String gameTypeId) {
+        List<String> callCardTemplateIds = new ArrayList<>(templates.size());
+        for (CallCardTemplate template : templates)
+            callCardTemplateIds.add(template.getCallCardTemplateId());
 
-        LOGGER.info("CallCard configuration: \n" +
-                "- Number of previous values to summarize: " + previousValues + "\n" +
-                "- Include Geographical info for CallCardRefUsers: " + includeGeoInfo);
+        if (callCardTemplateSkeletonCache == null)
+            return compileCallCardTemplateSkeletons(callCardTemplateIds, gameTypeId);
 
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        return callCardTemplateSkeletonCache.getAll(callCardTemplateIds, gameTypeId, missingTemplateIds -> compileCallCardTemplateSkeletons(missingTemplateIds, gameTypeId));
+    }
 
-        // Read list of CallCard properties
-        List<String> metadataKeyNames = metadataComponent.listMetadataKeysByItemType(Constants.ITEM_TYPE_CALL_CARD_INDEX, false);
-        List<MetadataKeyDTO> metadataKeyDTOs = new ArrayList<>();
-        if (metadataKeyNames != null) {
-            for (String keyName : metadataKeyNames) {
-                MetadataKeyDTO dto = new MetadataKeyDTO();
-                dto.setMetadataKeyName(keyName);
-                metadataKeyDTOs.add(dto);
-            }
-        }
-        Map<String, String> metadataKeysTypeMap = new HashMap<>();
-        Map<String, String> metadataKeysIdMap = new HashMap<>();
-        if (metadataKeyDTOs != null && metadataKeyDTOs.size() > 0) {
-            for (MetadataKeyDTO metadataKeyDTO : metadataKeyDTOs) {
-                metadataKeysTypeMap.put(metadataKeyDTO.getMetadataKeyName(), metadataKeyDTO.getDataTypeName());
-                metadataKeysIdMap.put(metadataKeyDTO.getMetadataKeyName(), metadataKeyDTO.getMetadataKeyId());
-            }
-        }
+    private Map<String, CallCardTemplateSkeleton> compileCallCardTemplateSkeletons(List<String> callCardTemplateIds, String gameTypeId) {
+        Map<String, List<CallCardTemplateEntry>> entriesMap = new HashMap<>(); //< CallCardTemplateId, Entries>
+        for (CallCardTemplateEntry entry : erpDynamicQueryManager.listCallCardTemplateEntries(callCardTemplateIds))
+            addToTemplateMap(entriesMap, entry.getCallCardTemplateId().getCallCardTemplateId(), entry);
 
-        //get Brand product Type Categories
-        Map<String, Integer> brandProductTypeCategoriesMap = new HashMap<String, Integer>();
-        @SuppressWarnings("unchecked")
-        List<Object> solrBrandProductsRaw = solrClient.getMultipleBrandProducts(gameTypeId,
-                null,
-                "",
-                null,
-                null,
-                new String[]{},
-                new Integer[]{},
-                new String[]{},
-                new String[]{},
-                new String[]{},
-                0,
-                -1,
-                false,
-                true,
-                null,
-                null,
-                null,
-                false,
-                null,
-                null,
-                false,
-                null,
-                SortOrderTypes.BY_ORDERING_ASC);
+        Map<String, List<CallCardTemplatePOS>> posMap = new HashMap<>(); //< CallCardTemplateId, POS>
+        for (CallCardTemplatePOS pos : erpDynamicQueryManager.listActiveCallCardTemplatePOS(callCardTemplateIds))
+            addToTemplateMap(posMap, pos.getCallCardTemplateId().getCallCardTemplateId(), pos);
 
-        List<SolrBrandProductDTO> brandProducts = null;
-        if (solrBrandProductsRaw != null && !solrBrandProductsRaw.isEmpty() && solrBrandProductsRaw.get(0) instanceof List) {
-            brandProducts = (List<SolrBrandProductDTO>) solrBrandProductsRaw.get(0);
+        Map<String, List<CallCardTemplateUserReferences>> referencesMap = new HashMap<>(); //< CallCardTemplateId, User References>
+        for (CallCardTemplateUserReferences reference : erpDynamicQueryManager.listActiveCallCardTemplateUserReferences(callCardTemplateIds))
+            addToTemplateMap(referencesMap, reference.getCallCardTemplateId().getCallCardTemplateId(), reference);
+
+        Map<String, CallCardTemplateSkeleton> skeletons = new HashMap<>();
+        for (String callCardTemplateId : callCardTemplateIds) {
+            String key = callCardTemplateId.toUpperCase();
+            skeletons.put(callCardTemplateId, CallCardTemplateSkeleton.compile(callCardTemplateId, gameTypeId, entriesMap.get(key), posMap.get(key), referencesMap.get(key)));
         }
 
-        if (brandProducts != null && brandProducts.size() > 0) {
-            for (SolrBrandProductDTO brandProduct : brandProducts) {
-                if (brandProduct != null && brandProduct.getSubcategoryIds() != null) {
-                    List<String> categories = new ArrayList<String>();
-                    categories.addAll(brandProduct.getSubcategoryIds());
+        return skeletons;
+    }
 
-                    categories.retainAll(productTypeCategories);
-                    if (categories != null && categories.size() > 0)
-                        brandProductTypeCategoriesMap.put(brandProduct.getBrandProductId(), Integer.parseInt(categories.get(0)));
-                }
-            }
+    private static <T> void addToTemplateMap(Map<String, List<T>> templateMap, String callCardTemplateId, T value) {
+        String key = callCardTemplateId.toUpperCase(); // uniqueidentifier values may come back in either case
+        List<T> values = templateMap.get(key);
+        if (values == null) {
+            values = new ArrayList<>();
+            templateMap.put(key, values);
         }
+        values.add(value);
+    }
 
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /**
+     * Start an independent assembly lookup on the assembly executor, or run it inline when none is configured.
+     */
+    private <T> Future<T> lookup(Dependency dependency, Supplier<T> lookup) {
+        if (callCardAssemblyExecutor == null)
+            return CompletableFuture.completedFuture(lookup.get());
 
+        return callCardAssemblyExecutor.submit(dependency, lookup);
+    }
 
-        List<CallCardTemplate> assignedCallCardTemplates = erpDynamicQueryManager.listCallCardTemplates(userGroupId, gameTypeId, null, null, true, true, userId, 0, -1);
-        List<CallCardDTO> callCards = new ArrayList<CallCardDTO>();
+    /**
+     * Start an independent database lookup in its own read-only transaction, or run it inline when no assembly executor is configured.
+     */
+    private <T> Future<T> lookupInTransaction(Dependency dependency, String userGroupId, String gameTypeId, Supplier<T> lookup) {
+        if (callCardAssemblyExecutor == null)
+            return CompletableFuture.completedFuture(lookup.get());
 
-        if (assignedCallCardTemplates != null && assignedCallCardTemplates.size() > 0) {
-            for (CallCardTemplate assignedCallCardTemplate : assignedCallCardTemplates) {
-                CallCardDTO callCardDTO = new CallCardDTO();
-                callCardDTO.setCallCardTemplateId(assignedCallCardTemplate.getCallCardTemplateId());
+        return callCardAssemblyExecutor.submitInTransaction(dependency, userGroupId, gameTypeId, lookup);
+    }
 
-                List<CallCardActionItemDTO> items = null;
+    /**
+     * Run database work on the caller thread in a short read-only transaction, or inline when no assembly executor is configured.
+     */
+    private <T> T inTransaction(String userGroupId, String gameTypeId, Supplier<T> work) {
+        if (callCardAssemblyExecutor == null)
+            return work.get();
 
-                int itemsItemTypeId = 0;
-                if (assignedCallCardTemplate.getEntries() != null && assignedCallCardTemplate.getEntries().size() > 0) {
-                    List<CallCardTemplateEntry> templateEntries = assignedCallCardTemplate.getEntries();
-                    Collections.sort(templateEntries, new CallCardTemplateEntryComparator());
+        return callCardAssemblyExecutor.executeInTransaction(userGroupId, gameTypeId, work);
+    }
 
-                    items = new ArrayList<>();
-                    for (CallCardTemplateEntry templateEntry : templateEntries) {
-                        LOGGER.debug("----- List of CallCardTemplateEntries for template= {}  : size={}", templateEntry.getCallCardTemplateId(), assignedCallCardTemplate.getPos().size());
+    /**
+     * Wait for a lookup the assembly can not do without: if it times out or fails, so does the assembly.
+     */
+    private <T> T awaitLookup(Dependency dependency, Future<T> lookup) throws BusinessLayerException {
+        if (callCardAssemblyExecutor == null)
+            return getCompleted(lookup);
 
-                        List<CallCardActionItemAttributesDTO> attributes = new ArrayList<>();
-                        if (StringUtils.isNotBlank(templateEntry.getProperties())) {
-                            LOGGER.debug("------ Properties for CallCardTemplate with ID={} : properties={}", templateEntry.getCallCardTemplateId(), templateEntry.getProperties());
-                            StringTokenizer properties = new StringTokenizer(templateEntry.getProperties(), ","); //split properties
+        return callCardAssemblyExecutor.await(dependency, lookup);
+    }
 
-                            while (properties.hasMoreElements()) {
-                                String attribute = (String) properties.nextElement();
+    /**
+     * Wait for a lookup the assembly can do without: if it times out or fails, the empty value is used and the
+     * dependency is recorded as degraded.
+     */
+    private <T> T awaitOptionalLookup(Dependency dependency, Future<T> lookup, T empty, Set<Dependency> degraded) {
+        if (callCardAssemblyExecutor == null) {
+            try {
+                return getCompleted(lookup);
+            } catch (BusinessLayerException e) {
+                degraded.add(dependency);
+                return empty;
+            }
+        }
 
-                                attributes.add(new CallCardActionItemAttributesDTO(
-                                        null,
-                                        metadataKeysIdMap.get(attribute),
-                                        attribute,
-                                        metadataKeysTypeMap.get(attribute),
-                                        null,
-                                        null,
-                                        null,
-                                        CallCardRefUserDTO.SELL,
-                                        null,
-                                        null));
-                            }
+        return callCardAssemblyExecutor.awaitOptional(dependency, lookup, empty, degraded);
+    }
 
-                            itemsItemTypeId = templateEntry.getItemTypeId().getItemTypeId();
-                            int categoryId = brandProductTypeCategoriesMap.get(templateEntry.getId()) != null ? brandProductTypeCategoriesMap.get(templateEntry.getId()) : 0;
-                            items.add(new CallCardActionItemDTO(templateEntry.getItemId(), templateEntry.getItemTypeId().getItemTypeId(), attributes, categoryId, false));
-                        }
-                    }
-                }
+    private static <T> T getCompleted(Future<T> lookup) throws BusinessLayerException {
+        try {
+            return lookup.get(); // lookups run inline are already completed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "CallCard assembly interrupted");
+        } catch (ExecutionException e) {
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "CallCard assembly lookup failed: " + e.getCause());
+        }
+    }
 
-                // add other references
-                Map<String, List<CallCardActionItemDTO>> referencesMap = null;
+    private static void flagDegraded(Collection<CallCardDTO> callCards, Set<Dependency> degraded) {
+        if (degraded.isEmpty())
+            return;
 
-                List<CallCardTemplateUserReferences> references = callCardTemplateUserReferencesDao.queryList("listByCallCardTemplateId", assignedCallCardTemplate.getCallCardTemplateId());
-                if (references != null && references.size() > 0) {
-                    referencesMap = new HashMap<String, List<CallCardActionItemDTO>>(); //< RefUserId, List of ActionItems>
+        for (CallCardDTO callCard : callCards)
+            callCard.setDegraded(true);
+    }
 
-                    for (CallCardTemplateUserReferences reference : references) {
-                        List<CallCardActionItemDTO> referencesList = null;
-                        if (referencesMap.containsKey(reference.getRefUserId().getUserId()))
-                            referencesList = referencesMap.get(reference.getRefUserId().getUserId());
-                        else
-                            referencesList = new ArrayList<>();
+    private Future<CallCardSummaryIndex> lookupSummaries(final List<String> refUserIds, final String userId, String userGroupId, String gameTypeId, final int previousValues, final CallCardPropertyDictionary propertyDictionary) {
+        if (previousValues <= 0 || refUserIds.isEmpty())
+            return CompletableFuture.completedFuture(CallCardSummaryIndex.empty());
 
-                        int categoryId = 0;
-                        if (reference.getItemTypeId().getItemTypeId() == Constants.ITEM_TYPE_BRAND_PRODUCT)
-                            categoryId = brandProductTypeCategoriesMap.get(reference.getItemId()) != null ? brandProductTypeCategoriesMap.get(reference.getItemId()) : 0;
+        return lookupInTransaction(Dependency.SUMMARIES, userGroupId, gameTypeId,
+                () -> summarizeCallCardProperties(refUserIds, userId, previousValues, callCardVisitStatuses, propertyDictionary, false));
+    }
 
-                        referencesList.add(new CallCardActionItemDTO(reference.getItemId(), reference.getItemTypeId().getItemTypeId(), null, categoryId, reference.isMandatory()));
-                        referencesMap.put(reference.getRefUserId().getUserId(), referencesList);
-                    }
-                }
+    private Future<Map<String, List<KeyValueDTO>>> lookupAdditionalRefUserInfo(final List<String> refUserIds, String userGroupId, String gameTypeId, boolean includeGeoInfo) {
+        if (!includeGeoInfo)
+            return CompletableFuture.<Map<String, List<KeyValueDTO>>>completedFuture(new HashMap<String, List<KeyValueDTO>>());
 
+        return lookupInTransaction(Dependency.GEO_INFO, userGroupId, gameTypeId, () -> getAdditionalRefUserInfo(refUserIds));
+    }
 
-                Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> refUserItemAttributeSummariesMap = new HashMap<>();//< RefUserId, < BrandProductId, Attributes>>
-                Map<String, List<KeyValueDTO>> refUserAdditionalInfoMap = new HashMap<>();//< RefUserId, Additional Info>
-                List<String> templateRefUsers = new ArrayList<String>();
-                List<CallCardTemplatePOS> callCardTemplatePOSs = callCardTemplatePOSDao.queryList("listByCallCardTemplateId", assignedCallCardTemplate.getCallCardTemplateId());
-                if (callCardTemplatePOSs != null && callCardTemplatePOSs.size() > 0) {
-                    Map<Integer, List<CallCardRefUserDTO>> groupUserDTOs = new HashMap<>();
+    /**
+     * GameType CallCard configuration of the application, served from the configuration cache when available.
+     */
+    private CallCardGameTypeConfig getCallCardGameTypeConfig(final String applicationId) {
+        if (callCardGameTypeConfigCache == null)
+            return loadCallCardGameTypeConfig(applicationId);
 
-                    // Create list of visit targets from template,that need to be filled with additional data
-                    if (includeGeoInfo || previousValues != 0) {
-                        for (CallCardTemplatePOS pos : callCardTemplatePOSs) {
-                            if (!templateRefUsers.contains(pos.getRefUserId().getUserId()))
-                                templateRefUsers.add(pos.getRefUserId().getUserId());
-                        }
-                    }
+        return callCardGameTypeConfigCache.get(applicationId, () -> loadCallCardGameTypeConfig(applicationId));
+    }
 
-                    // Collect additional CallCard Info
-                    if (previousValues > 0)
-                        refUserItemAttributeSummariesMap = summarizeCallCardProperties(templateRefUsers, userId, previousValues, callCardVisitStatuses, metadataKeysTypeMap, false);
+    private CallCardGameTypeConfig loadCallCardGameTypeConfig(String applicationId) {
+        List<AppSettingsDTO> appSettings = appSettingsComponent.get(null, applicationId, Collections.singletonList(ScopeType.GAME_TYPE));
+        return CallCardGameTypeConfig.parse(applicationId, appSettings);
+    }
 
-                    if (includeGeoInfo)
-                        refUserAdditionalInfoMap = getAdditionalRefUserInfo(templateRefUsers);
+    /**
+     * Current dictionary of CallCard index properties, shared by the read and write paths.
+     */
+    private CallCardPropertyDictionary getCallCardPropertyDictionary() {
+        if (callCardPropertyDictionaryCache != null)
+            return callCardPropertyDictionaryCache.get();
 
-                    LOGGER.info("-- List of POS : size= {}", assignedCallCardTemplate.getPos().size());
-                    for (CallCardTemplatePOS pos : callCardTemplatePOSs) {
+        List<String> metadataKeyNames = metadataComponent.listMetadataKeysByItemType(Constants.ITEM_TYPE_CALL_CARD_INDEX, false);
+        List<MetadataKeyDTO> metadataKeyDTOs = new ArrayList<>();
+        if (metadataKeyNames != null) {
+            for (String keyName : metadataKeyNames) {
+                MetadataKeyDTO dto = new MetadataKeyDTO();
+                dto.setMetadataKeyName(keyName);
+                metadataKeyDTOs.add(dto);
+            }
+        }
+        return new CallCardPropertyDictionary(0, metadataKeyDTOs);
+    }
 
-                        List<CallCardRefUserDTO> userDTOs;
+    /**
+     * BrandProductId to product type category, served from the background-refreshed index when available.
+     */
+    private Map<String, Integer> getBrandProductTypeCategoriesMap(String gameTypeId, List<String> productTypeCategories) {
+        if (brandProductCategoryIndex != null)
+            return brandProductCategoryIndex.getCategoriesMap(gameTypeId, productTypeCategories);
 
-                        if (groupUserDTOs.containsKey(pos.getGroupId()))
-                            userDTOs = groupUserDTOs.get(pos.getGroupId());
-                        else if (pos.getGroupId() == null && groupUserDTOs.containsKey(CallCardGroupDTO.UNASSIGNED_POS_GROUP))
-                            userDTOs = groupUserDTOs.get(CallCardGroupDTO.UNASSIGNED_POS_GROUP);
-                        else
-                            userDTOs = new ArrayList<CallCardRefUserDTO>();
+        return BrandProductCategoryIndex.load(solrClient, gameTypeId).getCategoriesMap(productTypeCategories);
+    }
 
-                        List<CallCardActionsDTO> userActions = new ArrayList<>();
-                        if (items != null && items.size() > 0) {
-                            List<CallCardActionItemDTO> actionItems = new ArrayList<CallCardActionItemDTO>();
+    /**
+     * Distinct POS refUserIds of the given skeletons, in template order.
+     */
+    private static List<String> getTemplateRefUsers(Collection<CallCardTemplateSkeleton> skeletons) {
+        Set<String> refUserIds = new LinkedHashSet<>();
+        for (CallCardTemplateSkeleton skeleton : skeletons) {
+            for (CallCardTemplateSkeleton.Pos pos : skeleton.getPos())
+                refUserIds.add(pos.getRefUserId());
+        }
+        return new ArrayList<>(refUserIds);
+    }
 
-                            for (CallCardActionItemDTO item : items) {
-                                List<CallCardActionItemAttributesDTO> actionItemsAttributes = new ArrayList<CallCardActionItemAttributesDTO>();
+    /**
+     * Not transactional, so that no connection is held while the assembly lookups run concurrently, each in its own
+     * read-only transaction; the remaining database work runs in short transactions of its own.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<CallCardDTO> getCallCardsFromTemplate(String userId, String userGroupId, String gameTypeId, String applicationId) throws BusinessLayerException {
+        return getCallCardsFromTemplate(userId, userGroupId, gameTypeId, applicationId, null);
+    }
 
-                                List<CallCardActionItemAttributesDTO> itemAttributeSummaries = null;
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<CallCardDTO> getCallCardsFromTemplate(String userId, String userGroupId, String gameTypeId, String applicationId, String knownVersion) throws BusinessLayerException {
+        LOGGER.info("-- CallCardManagement.getCallCardsFromTemplate : userId={} userGroupId={} gameTypeId={}", userId, userGroupId, gameTypeId);
 
-                                if (refUserItemAttributeSummariesMap != null) {
-                                    Map<String, List<CallCardActionItemAttributesDTO>> itemAttributeSummariesMap = refUserItemAttributeSummariesMap.get(pos.getRefUserId().getUserId());
-                                    if (itemAttributeSummariesMap != null && itemAttributeSummariesMap.size() > 0)
-                                        itemAttributeSummaries = itemAttributeSummariesMap.get(item.getItemId());
-                                }
+        if (callCardRouteSheetStore != null) {
+            String version = knownVersion != null ? knownVersion : inTransaction(userGroupId, gameTypeId, () -> getCallCardVersion(userId, userGroupId, gameTypeId, applicationId, true));
+            List<CallCardDTO> routeSheet = callCardRouteSheetStore.get(userId, userGroupId, gameTypeId, applicationId, version);
+            if (routeSheet != null) {
+                LOGGER.info("-- CallCards served from route sheet : userId={} version={}", userId, version);
+                return routeSheet;
+            }
+        }
 
-                                for (CallCardActionItemAttributesDTO itemAttribute : item.getAttributes()) {
-                                    CallCardActionItemAttributesDTO summary = new CallCardActionItemAttributesDTO();
+        return assembleCallCardsFromTemplate(userId, userGroupId, gameTypeId, applicationId);
+    }
 
-                                    if (itemAttributeSummaries != null && itemAttributeSummaries.size() > 0) {
-                                        for (CallCardActionItemAttributesDTO itemAttributeSummary : itemAttributeSummaries) {
-                                            if (itemAttributeSummary != null && itemAttributeSummary.getPropertyName().equalsIgnoreCase(itemAttribute.getPropertyName())) {
-                                                summary = itemAttributeSummary;
-                                                break;
-                                            }
-                                        }
-                                    }
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int refreshRouteSheet(String userId, String userGroupId, String gameTypeId, String applicationId) throws BusinessLayerException {
+        if (callCardRouteSheetStore == null)
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "No CallCard route sheet store configured");
+
+        // version first: if the sources change during assembly the sheet is stale on its first read, never wrong
+        String version = inTransaction(userGroupId, gameTypeId, () -> getCallCardVersion(userId, userGroupId, gameTypeId, applicationId, true));
+        List<CallCardDTO> callCards = assembleCallCardsFromTemplate(userId, userGroupId, gameTypeId, applicationId);
+        try {
+            if (!callCardRouteSheetStore.put(userId, userGroupId, gameTypeId, applicationId, version, callCards))
+                throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "CallCard route sheet of user " + userId + " assembled degraded, not stored");
+        } catch (IOException e) {
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "Could not store CallCard route sheet of user " + userId + ": " + e.getMessage());
+        }
 
-                                    actionItemsAttributes.add(new CallCardActionItemAttributesDTO(
-                                            itemAttribute.getCallCardRefUserIndexId(),
-                                            itemAttribute.getPropertyId(),
-                                            itemAttribute.getPropertyName(),
-                                            itemAttribute.getPropertyTypeId(),
-                                            itemAttribute.getPropertyValue(),
-                                            itemAttribute.getDateSubmitted(),
-                                            itemAttribute.getStatus(),
-                                            itemAttribute.getType(),
-                                            null,
-                                            summary != null ? summary.getRefPropertyValue() : null));
-                                }
+        return callCards.size();
+    }
 
-                                int categoryId = 0;
-                                switch (item.getItemTypeId()) {
-                                    case Constants.ITEM_TYPE_BRAND_PRODUCT:
-                                        categoryId = brandProductTypeCategoriesMap.get(item.getItemId()) != null ? brandProductTypeCategoriesMap.get(item.getItemId()) : 0;
-                                        break;
-                                }
-                                actionItems.add(new CallCardActionItemDTO(item.getItemId(), item.getItemTypeId(), actionItemsAttributes, categoryId, item.isMandatory()));
-                            }
+    private List<CallCardDTO> assembleCallCardsFromTemplate(String userId, String userGroupId, String gameTypeId, String applicationId) throws BusinessLayerException {
+        Set<Dependency> degraded = EnumSet.noneOf(Dependency.class);
 
-                            userActions.add(new CallCardActionsDTO(actionItems, itemsItemTypeId, pos.isMandatory()));
-                        }
+        // Configuration, property dictionary, brand product categories and assigned templates are independent lookups
+        Future<CallCardGameTypeConfig> gameTypeConfigLookup = lookup(Dependency.GAME_TYPE_CONFIG, () -> getCallCardGameTypeConfig(applicationId));
+        Future<CallCardPropertyDictionary> propertyDictionaryLookup = lookup(Dependency.PROPERTY_DICTIONARY, this::getCallCardPropertyDictionary);
+        Future<Map<String, Integer>> brandProductTypeCategoriesLookup = lookup(Dependency.BRAND_PRODUCT_CATEGORIES,
+                () -> getBrandProductTypeCategoriesMap(gameTypeId, getCallCardGameTypeConfig(applicationId).getProductTypeCategories()));
+        Future<List<CallCardTemplate>> assignedCallCardTemplatesLookup = lookupInTransaction(Dependency.TEMPLATES, userGroupId, gameTypeId,
+                () -> erpDynamicQueryManager.listCallCardTemplates(userGroupId, gameTypeId, null, null, true, true, userId, 0, -1));
 
-                        if (referencesMap != null && referencesMap.containsKey(pos.getRefUserId().getUserId())) {
+        // Read GameType's CallCard configuration from application settings
+        CallCardGameTypeConfig gameTypeConfig = awaitLookup(Dependency.GAME_TYPE_CONFIG, gameTypeConfigLookup);
+        final int previousValues = gameTypeConfig.getPreviousValues();
+        final boolean includeGeoInfo = gameTypeConfig.isIncludeGeoInfo();
 
-                            boolean mandatorySurveyExists = false; // Mark if there is at list one mandatory Survey
+        LOGGER.info("{}", gameTypeConfig);
 
-                            List<CallCardActionItemDTO> actionItems = referencesMap.get(pos.getRefUserId().getUserId());
-                            for (CallCardActionItemDTO item : actionItems) {
-                                if ((item.getItemTypeId() == Constants.ITEM_TYPE_QUIZ) && item.isMandatory()) {
-                                    mandatorySurveyExists = true;
-                                    break;
-                                }
-                            }
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-                            int itemTypeId = referencesMap.get(pos.getRefUserId().getUserId()).get(0).getItemTypeId();
+        // Read list of CallCard properties
+        final CallCardPropertyDictionary propertyDictionary = awaitLookup(Dependency.PROPERTY_DICTIONARY, propertyDictionaryLookup);
 
-                            userActions.add(new CallCardActionsDTO(referencesMap.get(pos.getRefUserId().getUserId()), itemTypeId, mandatorySurveyExists));
-                        }
+        //get Brand product Type Categories
+        Map<String, Integer> brandProductTypeCategoriesMap = awaitOptionalLookup(Dependency.BRAND_PRODUCT_CATEGORIES, brandProductTypeCategoriesLookup, Collections.<String, Integer>emptyMap(), degraded);
+
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-                        List<KeyValueDTO> additionalRefUserInfo = refUserItemAttributeSummariesMap != null ? refUserAdditionalInfoMap.get(pos.getRefUserId().getUserId()) : null;
 
-                        CallCardRefUserDTO refUserDTO = new CallCardRefUserDTO(null, pos.getRefUserId().getUserId(), userActions, null, null, pos.isMandatory(), null, CallCardRefUserDTO.SELL, null, null, userId, additionalRefUserInfo, true);
+        List<CallCardTemplate> assignedCallCardTemplates = awaitLookup(Dependency.TEMPLATES, assignedCallCardTemplatesLookup);
+        List<CallCardDTO> callCards = new ArrayList<CallCardDTO>();
 
-                        userDTOs.add(refUserDTO);
+        if (assignedCallCardTemplates != null && assignedCallCardTemplates.size() > 0) {
+            Map<String, CallCardTemplateSkeleton> skeletons = inTransaction(userGroupId, gameTypeId, () -> getCallCardTemplateSkeletons(assignedCallCardTemplates, gameTypeId));
 
-                        groupUserDTOs.put(pos.getGroupId() != null ? pos.getGroupId() : CallCardGroupDTO.UNASSIGNED_POS_GROUP, userDTOs); // Out Of Route POS are in group 0
-                    }
+            // Collect additional CallCard Info once for the visit targets of all assigned templates
+            final List<String> templateRefUsers = getTemplateRefUsers(skeletons.values());
+            Future<CallCardSummaryIndex> summariesLookup = lookupSummaries(templateRefUsers, userId, userGroupId, gameTypeId, previousValues, propertyDictionary);
+            Future<Map<String, List<KeyValueDTO>>> additionalInfoLookup = lookupAdditionalRefUserInfo(templateRefUsers, userGroupId, gameTypeId, includeGeoInfo);
+            CallCardSummaryIndex refUserItemAttributeSummaries = awaitOptionalLookup(Dependency.SUMMARIES, summariesLookup, CallCardSummaryIndex.empty(), degraded);//< RefUserId, < BrandProductId, Attributes by property ordinal>>
+            Map<String, List<KeyValueDTO>> refUserAdditionalInfoMap = awaitOptionalLookup(Dependency.GEO_INFO, additionalInfoLookup, new HashMap<String, List<KeyValueDTO>>(), degraded);//< RefUserId, Additional Info>
 
-                    List<CallCardGroupDTO> groupDTOs = new ArrayList<>();
-                    for (Map.Entry<Integer, List<CallCardRefUserDTO>> groupUserDTO : groupUserDTOs.entrySet()) {
-                        groupDTOs.add(new CallCardGroupDTO(groupUserDTO.getKey(), groupUserDTO.getValue(), assignedCallCardTemplate.getCallCardTemplateId()));
-                    }
+            for (CallCardTemplate assignedCallCardTemplate : assignedCallCardTemplates) {
+                CallCardTemplateSkeleton skeleton = skeletons.get(assignedCallCardTemplate.getCallCardTemplateId());
 
-                    callCardDTO.setGroupIds(groupDTOs);
+                CallCardDTO callCardDTO = new CallCardDTO();
+                callCardDTO.setCallCardTemplateId(assignedCallCardTemplate.getCallCardTemplateId());
 
-                }
+                List<CallCardGroupDTO> groupDTOs = CallCardGroupAssembler.buildCallCardGroups(skeleton, userId, refUserItemAttributeSummaries, refUserAdditionalInfoMap, propertyDictionary, brandProductTypeCategoriesMap);
+                if (groupDTOs != null)
+                    callCardDTO.setGroupIds(groupDTOs);
 
                 callCards.add(callCardDTO);
             }
         }
 
+        flagDegraded(callCards, degraded);
         return callCards;
     }
 
+    @Override
+    @Transactional
+    public String getCallCardVersion(String userId, String userGroupId, String gameTypeId, String applicationId, boolean includeTemplates) {
+        LOGGER.debug("-- CallCardManagement.getCallCardVersion : userId={} userGroupId={} gameTypeId={} includeTemplates={}", userId, userGroupId, gameTypeId, includeTemplates);
+
+        StringBuilder version = new StringBuilder();
+        List<CallCardTemplate> templates = new ArrayList<>();
+        List<String> callCardTemplateIds = new ArrayList<>();
+
+        if (includeTemplates) {
+            List<CallCardTemplate> assignedCallCardTemplates = erpDynamicQueryManager.listCallCardTemplates(userGroupId, gameTypeId, null, null, true, true, userId, 0, -1);
+            if (assignedCallCardTemplates != null) {
+                for (CallCardTemplate template : assignedCallCardTemplates) {
+                    templates.add(template);
+                    callCardTemplateIds.add(template.getCallCardTemplateId());
+                    version.append(template.getCallCardTemplateId()).append(':').append(template.getStartDate()).append(':').append(template.getEndDate()).append(';');
+                }
+            }
+        }
+
+        CallCard pendingCallCard = checkIfActiveCallCard(userId, userGroupId, gameTypeId);
+        if (pendingCallCard != null) {
+            String pendingTemplateId = pendingCallCard.getCallCardTemplateId().getCallCardTemplateId();
+            if (!callCardTemplateIds.contains(pendingTemplateId)) {
+                templates.add(pendingCallCard.getCallCardTemplateId());
+                callCardTemplateIds.add(pendingTemplateId);
+            }
+            version.append(pendingCallCard.getCallCardId()).append(':').append(pendingCallCard.getLastUpdated()).append(';');
+        }
+
+        // Templates, POS, references and the user's CallCards with their POS rows and indexes
+        for (Object[] row : erpNativeQueryManager.listCallCardVersionChecksums(userId, callCardTemplateIds))
+            version.append(Arrays.toString(row)).append(';');
+
+        // Previous values also come from the invoices of the templates' POS
+        CallCardGameTypeConfig gameTypeConfig = getCallCardGameTypeConfig(applicationId);
+        if (gameTypeConfig.getPreviousValues() > 0 && !templates.isEmpty()) {
+            List<String> refUserIds = getTemplateRefUsers(getCallCardTemplateSkeletons(templates, gameTypeId).values());
+            if (!refUserIds.isEmpty()) {
+                for (Object[] row : erpNativeQueryManager.listInvoiceDetailsSummaries(userId, refUserIds, gameTypeConfig.getPreviousValues(), Arrays.asList(InvoiceDTO.SUBMITTED)))
+                    version.append(Arrays.toString(row)).append(';');
+            }
+        }
+
+        // In-memory inputs of the assembly
+        version.append(gameTypeConfig).append(';');
+        version.append(getCallCardPropertyDictionary().getVersion()).append(';');
+        version.append(getBrandProductCategoriesVersion(gameTypeId, gameTypeConfig.getProductTypeCategories()));
+
+        return toVersionToken(version);
+    }
+
+    /**
+     * Version of the brand product categories read from Solr: the content hash of the index snapshot, which does
+     * not wait for a load, or of the categories themselves when there is no index.
+     */
+    private int getBrandProductCategoriesVersion(String gameTypeId, List<String> productTypeCategories) {
+        if (brandProductCategoryIndex != null)
+            return brandProductCategoryIndex.getVersion(gameTypeId);
+
+        return getBrandProductTypeCategoriesMap(gameTypeId, productTypeCategories).hashCode();
+    }
+
+    private static String toVersionToken(CharSequence version) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(version.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder token = new StringBuilder();
+            for (int i = 0; i < 16; i++)
+                token.append(String.format("%02x", digest[i]));
+            return token.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(version.toString().hashCode());
+        }
+    }
+
     @Override
     @Transactional
     public CallCardDTO getPendingCallCard(String userId, String userGroupId, String gameTypeId, String applicationId) {
@@ -515,300 +628,47 @@ public class CallCardManagement implements ICallCardManagement {
         LOGGER.info("-- CallCardTemplate returned : {}", callCardTemplateId);
 
         // Read GameType's CallCard configuration from application settings
-        int previousValues = 0;
-        boolean includeGeoInfo = false;
-        List<String> productTypeCategories = new ArrayList<String>();
-        List<AppSettingsDTO> appSettings = appSettingsComponent.get(null, applicationId, Collections.singletonList(ScopeType.GAME_TYPE));
-        if (appSettings != null || appSettings.size() > 0) {
-            for (AppSettingsDTO appSetting : appSettings) {
-                switch (appSetting.getKey()) {
-                    case Constants.APP_SETTING_KEY_PREVIOUS_VISITS_SUMMARY:
-                        try {
-                            previousValues = Integer.parseInt(appSetting.getValue());
-                        } catch (NumberFormatException e) {
-                            LOGGER.error("Invalid application setting format for GameTypeId=" + gameTypeId + " AppSettingKey=" + appSetting.getKey() + " Value=" + appSetting.getValue(), ExceptionTypeTO.GENERIC);
-                        }
-                        break;
-                    case Constants.APP_SETTING_KEY_INCLUDE_VISITS_GEO_INFO:
-                        includeGeoInfo = Boolean.parseBoolean(appSetting.getValue());
-                        break;
-                    case Constants.APP_SETTING_KEY_PRODUCT_TYPE_CATEGORIES:
-                        try {
-                            StringTokenizer tokenizer = new StringTokenizer(appSetting.getValue(), ",");
-                            while (tokenizer.hasMoreElements()) {
-                                productTypeCategories.add((String) tokenizer.nextElement());
-                            }
-                        } catch (NumberFormatException e) {
-                            LOGGER.error("Invalid application setting format for GameTypeId=" + gameTypeId + " AppSettingKey=" + appSetting.getKey() + " Value=" + appSetting.getValue(), ExceptionTypeTO.GENERIC);
-                        }
-                        break;
-                }
-            }
-        }
+        CallCardGameTypeConfig gameTypeConfig = getCallCardGameTypeConfig(applicationId);
+        int previousValues = gameTypeConfig.getPreviousValues();
+        boolean includeGeoInfo = gameTypeConfig.isIncludeGeoInfo();
+        List<String> productTypeCategories = gameTypeConfig.getProductTypeCategories();
 
-        LOGGER.info("CallCard configuration: \n" +
-                "- Number of previous values to summarize: " + previousValues + "\n" +
-                "- Include Geographical info for CallCardRefUsers: " + includeGeoInfo);
+        LOGGER.info("{}", gameTypeConfig);
 
         ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
         ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
         ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
         // Read list of CallCard properties
-        List<String> metadataKeyNames = metadataComponent.listMetadataKeysByItemType(Constants.ITEM_TYPE_CALL_CARD_INDEX, false);
-        List<MetadataKeyDTO> metadataKeyDTOs = new ArrayList<>();
-        if (metadataKeyNames != null) {
-            for (String keyName : metadataKeyNames) {
-                MetadataKeyDTO dto = new MetadataKeyDTO();
-                dto.setMetadataKeyName(keyName);
-                metadataKeyDTOs.add(dto);
-            }
-        }
-        Map<String, String> metadataKeysTypeMap = new HashMap<>();
-        Map<String, String> metadataKeysIdMap = new HashMap<>();
-        if (metadataKeyDTOs != null && metadataKeyDTOs.size() > 0) {
-            for (MetadataKeyDTO metadataKeyDTO : metadataKeyDTOs) {
-                metadataKeysTypeMap.put(metadataKeyDTO.getMetadataKeyName(), metadataKeyDTO.getDataTypeName());
-                metadataKeysIdMap.put(metadataKeyDTO.getMetadataKeyName(), metadataKeyDTO.getMetadataKeyId());
-            }
-        }
+        CallCardPropertyDictionary propertyDictionary = getCallCardPropertyDictionary();
+        Map<String, String> metadataKeysTypeMap = propertyDictionary.getTypesMap();
+        Map<String, String> metadataKeysIdMap = propertyDictionary.getIdsMap();
 
         //get Brand product Type Categories
-        Map<String, Integer> brandProductTypeCategoriesMap = new HashMap<String, Integer>();
-        @SuppressWarnings("unchecked")
-        List<Object> solrBrandProductsRaw = solrClient.getMultipleBrandProducts(gameTypeId,
-                null,
-                "",
-                null,
-                null,
-                new String[]{},
-                new Integer[]{},
-                new String[]{},
-                new String[]{},
-                new String[]{},
-                0,
-                -1,
-                false,
-                true,
-                null,
-                null,
-                null,
-                false,
-                null,
-                null,
-                false,
-                null,
-                SortOrderTypes.BY_ORDERING_ASC);
-
-        List<SolrBrandProductDTO> brandProducts = null;
-        if (solrBrandProductsRaw != null && !solrBrandProductsRaw.isEmpty() && solrBrandProductsRaw.get(0) instanceof List) {
-            brandProducts = (List<SolrBrandProductDTO>) solrBrandProductsRaw.get(0);
-        }
-
-        if (brandProducts != null && brandProducts.size() > 0) {
-            for (SolrBrandProductDTO brandProduct : brandProducts) {
-                if (brandProduct != null && brandProduct.getSubcategoryIds() != null) {
-                    List<String> categories = new ArrayList<String>();
-                    categories.addAll(brandProduct.getSubcategoryIds());
-
-                    categories.retainAll(productTypeCategories);
-                    if (categories != null && categories.size() > 0)
-                        brandProductTypeCategoriesMap.put(brandProduct.getBrandProductId(), Integer.parseInt(categories.get(0)));
-                }
-            }
-        }
+        Map<String, Integer> brandProductTypeCategoriesMap = getBrandProductTypeCategoriesMap(gameTypeId, productTypeCategories);
 
         ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
         ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
         ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-        CallCardDTO callCardDTO = new CallCardDTO();
-        callCardDTO.setCallCardTemplateId(template.getCallCardTemplateId());
-
-        List<CallCardActionItemDTO> items = null;
-
-        int itemsItemTypeId = 0;
-        if (template.getEntries() != null && template.getEntries().size() > 0) {
-            List<CallCardTemplateEntry> templateEntries = template.getEntries();
-            Collections.sort(templateEntries, new CallCardTemplateEntryComparator());
+        CallCardTemplateSkeleton skeleton = getCallCardTemplateSkeleton(template, gameTypeId);
 
-            items = new ArrayList<>();
-            for (CallCardTemplateEntry templateEntry : templateEntries) {
-                LOGGER.debug("----- List of CallCardTemplateEntries for template= {}  : size={}", templateEntry.getCallCardTemplateId(), template.getPos().size());
-
-                List<CallCardActionItemAttributesDTO> attributes = new ArrayList<>();
-                if (StringUtils.isNotBlank(templateEntry.getProperties())) {
-                    LOGGER.debug("------ Properties for CallCardTemplate with ID={} : properties={}", templateEntry.getCallCardTemplateId(), templateEntry.getProperties());
-                    StringTokenizer properties = new StringTokenizer(templateEntry.getProperties(), ","); //split properties
-
-                    while (properties.hasMoreElements()) {
-                        String attribute = (String) properties.nextElement();
-
-                        attributes.add(new CallCardActionItemAttributesDTO(
-                                null,
-                                metadataKeysIdMap.get(attribute),
-                                attribute,
-                                metadataKeysTypeMap.get(attribute),
-                                null,
-                                null,
-                                null,
-                                CallCardRefUserDTO.SELL,
-                                null,
-                                null));
-                    }
-
-                    itemsItemTypeId = templateEntry.getItemTypeId().getItemTypeId();
-                    int categoryId = brandProductTypeCategoriesMap.get(templateEntry.getId()) != null ? brandProductTypeCategoriesMap.get(templateEntry.getId()) : 0;
-                    items.add(new CallCardActionItemDTO(templateEntry.getItemId(), templateEntry.getItemTypeId().getItemTypeId(), attributes, categoryId, false));
-                }
-            }
-        }
-
-        // add other references
-        Map<String, List<CallCardActionItemDTO>> referencesMap = null;
-
-        List<CallCardTemplateUserReferences> references = callCardTemplateUserReferencesDao.queryList("listByCallCardTemplateId", template.getCallCardTemplateId());
-        if (references != null && references.size() > 0) {
-            referencesMap = new HashMap<String, List<CallCardActionItemDTO>>(); //< RefUserId, List of ActionItems>
-
-            for (CallCardTemplateUserReferences reference : references) {
-                List<CallCardActionItemDTO> referencesList = null;
-                if (referencesMap.containsKey(reference.getRefUserId().getUserId()))
-                    referencesList = referencesMap.get(reference.getRefUserId().getUserId());
-                else
-                    referencesList = new ArrayList<>();
-
-                int categoryId = 0;
-                if (reference.getItemTypeId().getItemTypeId() == Constants.ITEM_TYPE_BRAND_PRODUCT)
-                    categoryId = brandProductTypeCategoriesMap.get(reference.getItemId()) != null ? brandProductTypeCategoriesMap.get(reference.getItemId()) : 0;
-
-                referencesList.add(new CallCardActionItemDTO(reference.getItemId(), reference.getItemTypeId().getItemTypeId(), null, categoryId, reference.isMandatory()));
-                referencesMap.put(reference.getRefUserId().getUserId(), referencesList);
-            }
-        }
-
-
-        Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> refUserItemAttributeSummariesMap = new HashMap<>();//< RefUserId, < BrandProductId, Attributes>>
-        Map<String, List<KeyValueDTO>> refUserAdditionalInfoMap = new HashMap<>();//< RefUserId, Additional Info>
-        List<String> templateRefUsers = new ArrayList<String>();
-        List<CallCardTemplatePOS> callCardTemplatePOSs = callCardTemplatePOSDao.queryList("listByCallCardTemplateId", template.getCallCardTemplateId());
-        if (callCardTemplatePOSs != null && callCardTemplatePOSs.size() > 0) {
-            Map<Integer, List<CallCardRefUserDTO>> groupUserDTOs = new HashMap<>();
-
-            // Create list of visit targets from template,that need to be filled with additional data
-            if (includeGeoInfo || previousValues != 0) {
-                for (CallCardTemplatePOS pos : callCardTemplatePOSs) {
-                    if (!templateRefUsers.contains(pos.getRefUserId().getUserId()))
-                        templateRefUsers.add(pos.getRefUserId().getUserId());
-                }
-            }
-
-            // Collect additional CallCard Info
-            if (previousValues > 0)
-                refUserItemAttributeSummariesMap = summarizeCallCardProperties(templateRefUsers, userId, previousValues, callCardVisitStatuses, metadataKeysTypeMap, false);
-
-            if (includeGeoInfo)
-                refUserAdditionalInfoMap = getAdditionalRefUserInfo(templateRefUsers);
-
-            LOGGER.info("-- List of POS : size= {}", template.getPos().size());
-            for (CallCardTemplatePOS pos : callCardTemplatePOSs) {
-
-                List<CallCardRefUserDTO> userDTOs;
-
-                if (groupUserDTOs.containsKey(pos.getGroupId()))
-                    userDTOs = groupUserDTOs.get(pos.getGroupId());
-                else if (pos.getGroupId() == null && groupUserDTOs.containsKey(CallCardGroupDTO.UNASSIGNED_POS_GROUP))
-                    userDTOs = groupUserDTOs.get(CallCardGroupDTO.UNASSIGNED_POS_GROUP);
-                else
-                    userDTOs = new ArrayList<CallCardRefUserDTO>();
-
-                List<CallCardActionsDTO> userActions = new ArrayList<>();
-                if (items != null && items.size() > 0) {
-                    List<CallCardActionItemDTO> actionItems = new ArrayList<CallCardActionItemDTO>();
-
-                    for (CallCardActionItemDTO item : items) {
-                        List<CallCardActionItemAttributesDTO> actionItemsAttributes = new ArrayList<CallCardActionItemAttributesDTO>();
-
-                        List<CallCardActionItemAttributesDTO> itemAttributeSummaries = null;
-
-                        if (refUserItemAttributeSummariesMap != null) {
-                            Map<String, List<CallCardActionItemAttributesDTO>> itemAttributeSummariesMap = refUserItemAttributeSummariesMap.get(pos.getRefUserId().getUserId());
-                            if (itemAttributeSummariesMap != null && itemAttributeSummariesMap.size() > 0)
-                                itemAttributeSummaries = itemAttributeSummariesMap.get(item.getItemId());
-                        }
-
-                        for (CallCardActionItemAttributesDTO itemAttribute : item.getAttributes()) {
-                            CallCardActionItemAttributesDTO summary = new CallCardActionItemAttributesDTO();
-
-                            if (itemAttributeSummaries != null && itemAttributeSummaries.size() > 0) {
-                                for (CallCardActionItemAttributesDTO itemAttributeSummary : itemAttributeSummaries) {
-                                    if (itemAttributeSummary != null && itemAttributeSummary.getPropertyName().equalsIgnoreCase(itemAttribute.getPropertyName())) {
-                                        summary = itemAttributeSummary;
-                                        break;
-                                    }
-                                }
-                            }
-
-                            actionItemsAttributes.add(new CallCardActionItemAttributesDTO(
-                                    itemAttribute.getCallCardRefUserIndexId(),
-                                    itemAttribute.getPropertyId(),
-                                    itemAttribute.getPropertyName(),
-                                    itemAttribute.getPropertyTypeId(),
-                                    itemAttribute.getPropertyValue(),
-                                    itemAttribute.getDateSubmitted(),
-                                    itemAttribute.getStatus(),
-                                    itemAttribute.getType(),
-                                    null,
-                                    summary != null ? summary.getRefPropertyValue() : null));
-                        }
-
-                        int categoryId = 0;
-                        switch (item.getItemTypeId()) {
-                            case Constants.ITEM_TYPE_BRAND_PRODUCT:
-                                categoryId = brandProductTypeCategoriesMap.get(item.getItemId()) != null ? brandProductTypeCategoriesMap.get(item.getItemId()) : 0;
-                                break;
-                        }
-                        actionItems.add(new CallCardActionItemDTO(item.getItemId(), item.getItemTypeId(), actionItemsAttributes, categoryId, item.isMandatory()));
-                    }
-
-                    userActions.add(new CallCardActionsDTO(actionItems, itemsItemTypeId, pos.isMandatory()));
-                }
-
-                if (referencesMap != null && referencesMap.containsKey(pos.getRefUserId().getUserId())) {
-
-                    boolean mandatorySurveyExists = false; // Mark if there is at list one mandatory Survey
-
-                    List<CallCardActionItemDTO> actionItems = referencesMap.get(pos.getRefUserId().getUserId());
-                    for (CallCardActionItemDTO item : actionItems) {
-                        if ((item.getItemTypeId() == Constants.ITEM_TYPE_QUIZ) && item.isMandatory()) {
-                            mandatorySurveyExists = true;
-                            break;
-                        }
-                    }
-
-                    int itemTypeId = referencesMap.get(pos.getRefUserId().getUserId()).get(0).getItemTypeId();
-
-                    userActions.add(new CallCardActionsDTO(referencesMap.get(pos.getRefUserId().getUserId()), itemTypeId, mandatorySurveyExists));
-                }
-
-                List<KeyValueDTO> additionalRefUserInfo = refUserItemAttributeSummariesMap != null ? refUserAdditionalInfoMap.get(pos.getRefUserId().getUserId()) : null;
-
-                CallCardRefUserDTO refUserDTO = new CallCardRefUserDTO(null, pos.getRefUserId().getUserId(), userActions, null, null, pos.isMandatory(), null, CallCardRefUserDTO.SELL, null, null, userId, additionalRefUserInfo, true);
-
-                userDTOs.add(refUserDTO);
-
-                groupUserDTOs.put(pos.getGroupId() != null ? pos.getGroupId() : CallCardGroupDTO.UNASSIGNED_POS_GROUP, userDTOs);
-            }
+        // Collect additional CallCard Info
+        List<String> templateRefUsers = getTemplateRefUsers(Collections.singletonList(skeleton));
+        Future<CallCardSummaryIndex> summariesLookup = lookupSummaries(templateRefUsers, userId, userGroupId, gameTypeId, previousValues, propertyDictionary);
+        Future<Map<String, List<KeyValueDTO>>> additionalInfoLookup = lookupAdditionalRefUserInfo(templateRefUsers, userGroupId, gameTypeId, includeGeoInfo);
+        Set<Dependency> degraded = EnumSet.noneOf(Dependency.class);
+        CallCardSummaryIndex refUserItemAttributeSummaries = awaitOptionalLookup(Dependency.SUMMARIES, summariesLookup, CallCardSummaryIndex.empty(), degraded);//< RefUserId, < BrandProductId, Attributes by property ordinal>>
+        Map<String, List<KeyValueDTO>> refUserAdditionalInfoMap = awaitOptionalLookup(Dependency.GEO_INFO, additionalInfoLookup, new HashMap<String, List<KeyValueDTO>>(), degraded);//< RefUserId, Additional Info>
 
-            List<CallCardGroupDTO> groupDTOs = new ArrayList<>();
-            for (Map.Entry<Integer, List<CallCardRefUserDTO>> groupUserDTO : groupUserDTOs.entrySet()) {
-                groupDTOs.add(new CallCardGroupDTO(groupUserDTO.getKey(), groupUserDTO.getValue(), template.getCallCardTemplateId()));
-            }
+        CallCardDTO callCardDTO = new CallCardDTO();
+        callCardDTO.setCallCardTemplateId(template.getCallCardTemplateId());
+        callCardDTO.setDegraded(!degraded.isEmpty());
 
+        List<CallCardGroupDTO> groupDTOs = CallCardGroupAssembler.buildCallCardGroups(skeleton, userId, refUserItemAttributeSummaries, refUserAdditionalInfoMap, propertyDictionary, brandProductTypeCategoriesMap);
+        if (groupDTOs != null)
             callCardDTO.setGroupIds(groupDTOs);
 
-        }
-
         callCardDTO.setCallCardId(callCard.getCallCardId());
         callCardDTO.setStartDate(callCard.getStartDate());
         callCardDTO.setEndDate(callCard.getEndDate());
@@ -957,7 +817,7 @@ public class CallCardManagement implements ICallCardManagement {
 
         // Collect additional CallCard Info
         if (previousValues > 0)
-            additionalRefUserItemAttributeSummariesMap = summarizeCallCardProperties(additionalVisitUsers, userId, previousValues, callCardVisitStatuses, metadataKeysTypeMap, false);
+            additionalRefUserItemAttributeSummariesMap = summarizeCallCardProperties(additionalVisitUsers, userId, previousValues, callCardVisitStatuses, propertyDictionary, false).asMap();
 
         if (includeGeoInfo)
             additionalRefUserAdditionalInfoMap = getAdditionalRefUserInfo(additionalVisitUsers);
@@ -1256,375 +1116,122 @@ public class CallCardManagement implements ICallCardManagement {
                             refUserId = additionalRefUserIndex.getRefUserId().getUserId();
                             status = additionalRefUserIndex.getStatus();
                             active = additionalRefUserIndex.isActive();
-                            refNo = additionalRefUserIndex.getRefNo();
-                            break;
-                        }
-                    }
-                    refUserId = additionalEntry.getKey().equalsIgnoreCase(CallCardRefUserDTO.DEFAULT_REF_USER_ID) ? additionalEntry.getKey() : refUserId;
-                }
-
-                List<KeyValueDTO> additionalRefUserInfo = null;
-                if (additionalRefUserAdditionalInfoMap != null && additionalRefUserAdditionalInfoMap.containsKey(refUserId))
-                    additionalRefUserInfo = additionalRefUserAdditionalInfoMap.get(refUserId);
-
-                CallCardRefUserDTO additionalRefUserDTO = new CallCardRefUserDTO(
-                        additionalEntry.getKey(),
-                        refUserId,
-                        list,
-                        startDate,
-                        endDate,
-                        false,
-                        comment,
-                        status,
-                        lastUpdated,
-                        refNo,
-                        userId,
-                        additionalRefUserInfo,
-                        active);
-
-                refUserDTOtoAdd.add(additionalRefUserDTO);
-            }
-
-            CallCardGroupDTO additionalGroupDTO = new CallCardGroupDTO(CallCardGroupDTO.STOCK_DATA_GROUP, refUserDTOtoAdd, "");
-            callCardDTO.getGroupIds().add(additionalGroupDTO);
-        }
-
-        return callCardDTO;
-    }
-
-    @Override
-    @Transactional
-    public CallCardDTO getNewOrPendingCallCard(String userId, String userGroupId, String gameTypeId, String applicationId, String callCardId, List<String> filterProperties) throws BusinessLayerException {
-        LOGGER.info("-- CallCardManagement.getNewOrPendingCallCard : userId={} userGroupId={} gameTypeId={}", userId, userGroupId, gameTypeId);
-
-        String additionalEventProperties = "";
-
-        String callCardTemplateId = null;
-        CallCard callCard = null;
-        CallCardTemplate template = null;
-
-        if (StringUtils.isNotBlank(callCardId)) {
-            callCard = callCardDao.read(callCardId);
-
-            callCardTemplateId = callCard.getCallCardTemplateId().getCallCardTemplateId();
-
-            template = callCardTemplateDao.read(callCardTemplateId);
-
-            additionalEventProperties = (EventTO.PROPERTY_STATUS + "=existed\n");
-        } else {
-
-            callCard = checkIfActiveCallCard(userId, userGroupId, gameTypeId);
-            if (callCard != null) {
-                callCardTemplateId = callCard.getCallCardTemplateId().getCallCardTemplateId();
-
-                template = callCardTemplateDao.read(callCardTemplateId);
-            } else {
-                // check in CALL_CARD_TEMPLATE_USERS for related template
-                additionalEventProperties = (EventTO.PROPERTY_STATUS + "=fromTemplate\n");
-
-                // check for associated Template
-                template = getCallCardTemplate(userGroupId, gameTypeId, applicationId, userId);
-
-            }
-        }
-
-        LOGGER.info("-- CallCardTemplate returned : {}", template.getCallCardTemplateId());
-
-        // Read GameType's CallCard configuration from application settings
-        int previousValues = 0;
-        boolean includeGeoInfo = false;
-        List<String> productTypeCategories = new ArrayList<String>();
-        List<AppSettingsDTO> appSettings = appSettingsComponent.get(null, applicationId, Collections.singletonList(ScopeType.GAME_TYPE));
-        if (appSettings != null || appSettings.size() > 0) {
-            for (AppSettingsDTO appSetting : appSettings) {
-                switch (appSetting.getKey()) {
-                    case Constants.APP_SETTING_KEY_PREVIOUS_VISITS_SUMMARY:
-                        try {
-                            previousValues = Integer.parseInt(appSetting.getValue());
-                        } catch (NumberFormatException e) {
-                            LOGGER.error("Invalid application setting format for GameTypeId=" + gameTypeId + " AppSettingKey=" + appSetting.getKey() + " Value=" + appSetting.getValue(), ExceptionTypeTO.GENERIC);
-                        }
-                        break;
-                    case Constants.APP_SETTING_KEY_INCLUDE_VISITS_GEO_INFO:
-                        includeGeoInfo = Boolean.parseBoolean(appSetting.getValue());
-                        break;
-                    case Constants.APP_SETTING_KEY_PRODUCT_TYPE_CATEGORIES:
-                        try {
-                            StringTokenizer tokenizer = new StringTokenizer(appSetting.getValue(), ",");
-                            while (tokenizer.hasMoreElements()) {
-                                productTypeCategories.add((String) tokenizer.nextElement());
-                            }
-                        } catch (NumberFormatException e) {
-                            LOGGER.error("Invalid application setting format for GameTypeId=" + gameTypeId + " AppSettingKey=" + appSetting.getKey() + " Value=" + appSetting.getValue(), ExceptionTypeTO.GENERIC);
-                        }
-                        break;
-                }
-            }
-        }
-
-        LOGGER.info("CallCard configuration: \n" +
-                "- Number of previous values to summarize: " + previousValues + "\n" +
-                "- Include Geographical info for CallCardRefUsers: " + includeGeoInfo + "\n");
-
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-
-        // Read list of CallCard properties
-        List<String> metadataKeyNames = metadataComponent.listMetadataKeysByItemType(Constants.ITEM_TYPE_CALL_CARD_INDEX, false);
-        List<MetadataKeyDTO> metadataKeyDTOs = new ArrayList<>();
-        if (metadataKeyNames != null) {
-            for (String keyName : metadataKeyNames) {
-                MetadataKeyDTO dto = new MetadataKeyDTO();
-                dto.setMetadataKeyName(keyName);
-                metadataKeyDTOs.add(dto);
-            }
-        }
-        Map<String, String> metadataKeysTypeMap = new HashMap<>();
-        Map<String, String> metadataKeysIdMap = new HashMap<>();
-        if (metadataKeyDTOs != null && metadataKeyDTOs.size() > 0) {
-            for (MetadataKeyDTO metadataKeyDTO : metadataKeyDTOs) {
-                metadataKeysTypeMap.put(metadataKeyDTO.getMetadataKeyName(), metadataKeyDTO.getDataTypeName());
-                metadataKeysIdMap.put(metadataKeyDTO.getMetadataKeyName(), metadataKeyDTO.getMetadataKeyId());
-            }
-        }
-
-        //get Brand product Type Categories
-        Map<String, Integer> brandProductTypeCategoriesMap = new HashMap<String, Integer>();
-        @SuppressWarnings("unchecked")
-        List<Object> solrBrandProductsRaw = solrClient.getMultipleBrandProducts(gameTypeId,
-                null,
-                "",
-                null,
-                null,
-                new String[]{},
-                new Integer[]{},
-                new String[]{},
-                new String[]{},
-                new String[]{},
-                0,
-                -1,
-                false,
-                true,
-                null,
-                null,
-                null,
-                false,
-                null,
-                null,
-                false,
-                null,
-                SortOrderTypes.BY_ORDERING_ASC);
-
-        List<SolrBrandProductDTO> brandProducts = null;
-        if (solrBrandProductsRaw != null && !solrBrandProductsRaw.isEmpty() && solrBrandProductsRaw.get(0) instanceof List) {
-            brandProducts = (List<SolrBrandProductDTO>) solrBrandProductsRaw.get(0);
-        }
-
-        if (brandProducts != null && brandProducts.size() > 0) {
-            for (SolrBrandProductDTO brandProduct : brandProducts) {
-                if (brandProduct != null && brandProduct.getSubcategoryIds() != null) {
-                    List<String> categories = new ArrayList<String>();
-                    categories.addAll(brandProduct.getSubcategoryIds());
-
-                    categories.retainAll(productTypeCategories);
-                    if (categories != null && categories.size() > 0)
-                        brandProductTypeCategoriesMap.put(brandProduct.getBrandProductId(), Integer.parseInt(categories.get(0)));
-                }
-            }
-        }
-
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
-
-        CallCardDTO callCardDTO = new CallCardDTO();
-        callCardDTO.setCallCardTemplateId(template.getCallCardTemplateId());
-
-        List<CallCardActionItemDTO> items = null;
-
-        int itemsItemTypeId = 0;
-        if (template.getEntries() != null && template.getEntries().size() > 0) {
-            List<CallCardTemplateEntry> templateEntries = template.getEntries();
-            Collections.sort(templateEntries, new CallCardTemplateEntryComparator());
-
-            items = new ArrayList<>();
-            for (CallCardTemplateEntry templateEntry : templateEntries) {
-                LOGGER.debug("----- List of CallCardTemplateEntries for template= {}  : size={}", templateEntry.getCallCardTemplateId(), template.getPos().size());
-
-                List<CallCardActionItemAttributesDTO> attributes = new ArrayList<>();
-                if (StringUtils.isNotBlank(templateEntry.getProperties())) {
-                    LOGGER.debug("------ Properties for CallCardTemplate with ID={} : properties={}", templateEntry.getCallCardTemplateId(), templateEntry.getProperties());
-                    StringTokenizer properties = new StringTokenizer(templateEntry.getProperties(), ","); //split properties
-
-                    while (properties.hasMoreElements()) {
-                        String attribute = (String) properties.nextElement();
-
-                        attributes.add(new CallCardActionItemAttributesDTO(
-                                null,
-                                metadataKeysIdMap.get(attribute),
-                                attribute,
-                                metadataKeysTypeMap.get(attribute),
-                                null,
-                                null,
-                                null,
-                                CallCardRefUserDTO.SELL,
-                                null,
-                                null));
-                    }
-
-                    itemsItemTypeId = templateEntry.getItemTypeId().getItemTypeId();
-                    int categoryId = brandProductTypeCategoriesMap.get(templateEntry.getId()) != null ? brandProductTypeCategoriesMap.get(templateEntry.getId()) : 0;
-                    items.add(new CallCardActionItemDTO(templateEntry.getItemId(), templateEntry.getItemTypeId().getItemTypeId(), attributes, categoryId, false));
-                }
-            }
-        }
-
-        // add other references
-        Map<String, List<CallCardActionItemDTO>> referencesMap = null;
-
-        List<CallCardTemplateUserReferences> references = callCardTemplateUserReferencesDao.queryList("listByCallCardTemplateId", template.getCallCardTemplateId());
-        if (references != null && references.size() > 0) {
-            referencesMap = new HashMap<String, List<CallCardActionItemDTO>>(); //< RefUserId, List of ActionItems>
-
-            for (CallCardTemplateUserReferences reference : references) {
-                List<CallCardActionItemDTO> referencesList = null;
-                if (referencesMap.containsKey(reference.getRefUserId().getUserId()))
-                    referencesList = referencesMap.get(reference.getRefUserId().getUserId());
-                else
-                    referencesList = new ArrayList<>();
-
-                int categoryId = 0;
-                if (reference.getItemTypeId().getItemTypeId() == Constants.ITEM_TYPE_BRAND_PRODUCT)
-                    categoryId = brandProductTypeCategoriesMap.get(reference.getItemId()) != null ? brandProductTypeCategoriesMap.get(reference.getItemId()) : 0;
-
-                referencesList.add(new CallCardActionItemDTO(reference.getItemId(), reference.getItemTypeId().getItemTypeId(), null, categoryId, reference.isMandatory()));
-                referencesMap.put(reference.getRefUserId().getUserId(), referencesList);
-            }
-        }
+                            refNo = additionalRefUserIndex.getRefNo();
+                            break;
+                        }
+                    }
+                    refUserId = additionalEntry.getKey().equalsIgnoreCase(CallCardRefUserDTO.DEFAULT_REF_USER_ID) ? additionalEntry.getKey() : refUserId;
+                }
 
+                List<KeyValueDTO> additionalRefUserInfo = null;
+                if (additionalRefUserAdditionalInfoMap != null && additionalRefUserAdditionalInfoMap.containsKey(refUserId))
+                    additionalRefUserInfo = additionalRefUserAdditionalInfoMap.get(refUserId);
 
-        Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> refUserItemAttributeSummariesMap = new HashMap<>();//< RefUserId, < BrandProductId, Attributes>>
-        Map<String, List<KeyValueDTO>> refUserAdditionalInfoMap = new HashMap<>();//< RefUserId, Additional Info>
-        List<String> templateRefUsers = new ArrayList<String>();
-        List<CallCardTemplatePOS> callCardTemplatePOSs = callCardTemplatePOSDao.queryList("listByCallCardTemplateId", template.getCallCardTemplateId());
-        if (callCardTemplatePOSs != null && callCardTemplatePOSs.size() > 0) {
-            Map<Integer, List<CallCardRefUserDTO>> groupUserDTOs = new HashMap<>();
+                CallCardRefUserDTO additionalRefUserDTO = new CallCardRefUserDTO(
+                        additionalEntry.getKey(),
+                        refUserId,
+                        list,
+                        startDate,
+                        endDate,
+                        false,
+                        comment,
+                        status,
+                        lastUpdated,
+                        refNo,
+                        userId,
+                        additionalRefUserInfo,
+                        active);
 
-            // Create list of visit targets from template,that need to be filled with additional data
-            if (includeGeoInfo || previousValues != 0) {
-                for (CallCardTemplatePOS pos : callCardTemplatePOSs) {
-                    if (!templateRefUsers.contains(pos.getRefUserId().getUserId()))
-                        templateRefUsers.add(pos.getRefUserId().getUserId());
-                }
+                refUserDTOtoAdd.add(additionalRefUserDTO);
             }
 
-            // Collect additional CallCard Info
-            if (previousValues > 0)
-                refUserItemAttributeSummariesMap = summarizeCallCardProperties(templateRefUsers, userId, previousValues, callCardVisitStatuses, metadataKeysTypeMap, false);
-
-            if (includeGeoInfo)
-                refUserAdditionalInfoMap = getAdditionalRefUserInfo(templateRefUsers);
+            CallCardGroupDTO additionalGroupDTO = new CallCardGroupDTO(CallCardGroupDTO.STOCK_DATA_GROUP, refUserDTOtoAdd, "");
+            callCardDTO.getGroupIds().add(additionalGroupDTO);
+        }
 
-            LOGGER.info("-- List of POS : size= {}", template.getPos().size());
-            for (CallCardTemplatePOS pos : callCardTemplatePOSs) {
+        return callCardDTO;
+    }
 
-                List<CallCardRefUserDTO> userDTOs;
+    @Override
+    @Transactional
+    public CallCardDTO getNewOrPendingCallCard(String userId, String userGroupId, String gameTypeId, String applicationId, String callCardId, List<String> filterProperties) throws BusinessLayerException {
+        LOGGER.info("-- CallCardManagement.getNewOrPendingCallCard : userId={} userGroupId={} gameTypeId={}", userId, userGroupId, gameTypeId);
 
-                if (groupUserDTOs.containsKey(pos.getGroupId()))
-                    userDTOs = groupUserDTOs.get(pos.getGroupId());
-                else if (pos.getGroupId() == null && groupUserDTOs.containsKey(CallCardGroupDTO.UNASSIGNED_POS_GROUP))
-                    userDTOs = groupUserDTOs.get(CallCardGroupDTO.UNASSIGNED_POS_GROUP);
-                else
-                    userDTOs = new ArrayList<CallCardRefUserDTO>();
+        String additionalEventProperties = "";
 
-                List<CallCardActionsDTO> userActions = new ArrayList<>();
-                if (items != null && items.size() > 0) {
-                    List<CallCardActionItemDTO> actionItems = new ArrayList<CallCardActionItemDTO>();
+        String callCardTemplateId = null;
+        CallCard callCard = null;
+        CallCardTemplate template = null;
 
-                    for (CallCardActionItemDTO item : items) {
-                        List<CallCardActionItemAttributesDTO> actionItemsAttributes = new ArrayList<CallCardActionItemAttributesDTO>();
+        if (StringUtils.isNotBlank(callCardId)) {
+            callCard = callCardDao.read(callCardId);
 
-                        List<CallCardActionItemAttributesDTO> itemAttributeSummaries = null;
+            callCardTemplateId = callCard.getCallCardTemplateId().getCallCardTemplateId();
 
-                        if (refUserItemAttributeSummariesMap != null) {
-                            Map<String, List<CallCardActionItemAttributesDTO>> itemAttributeSummariesMap = refUserItemAttributeSummariesMap.get(pos.getRefUserId().getUserId());
-                            if (itemAttributeSummariesMap != null && itemAttributeSummariesMap.size() > 0)
-                                itemAttributeSummaries = itemAttributeSummariesMap.get(item.getItemId());
-                        }
+            template = callCardTemplateDao.read(callCardTemplateId);
 
-                        for (CallCardActionItemAttributesDTO itemAttribute : item.getAttributes()) {
-                            CallCardActionItemAttributesDTO summary = new CallCardActionItemAttributesDTO();
+            additionalEventProperties = (EventTO.PROPERTY_STATUS + "=existed\n");
+        } else {
 
-                            if (itemAttributeSummaries != null && itemAttributeSummaries.size() > 0) {
-                                for (CallCardActionItemAttributesDTO itemAttributeSummary : itemAttributeSummaries) {
-                                    if (itemAttributeSummary != null && itemAttributeSummary.getPropertyName().equalsIgnoreCase(itemAttribute.getPropertyName())) {
-                                        summary = itemAttributeSummary;
-                                        break;
-                                    }
-                                }
-                            }
+            callCard = checkIfActiveCallCard(userId, userGroupId, gameTypeId);
+            if (callCard != null) {
+                callCardTemplateId = callCard.getCallCardTemplateId().getCallCardTemplateId();
 
-                            actionItemsAttributes.add(new CallCardActionItemAttributesDTO(
-                                    itemAttribute.getCallCardRefUserIndexId(),
-                                    itemAttribute.getPropertyId(),
-                                    itemAttribute.getPropertyName(),
-                                    itemAttribute.getPropertyTypeId(),
-                                    itemAttribute.getPropertyValue(),
-                                    itemAttribute.getDateSubmitted(),
-                                    itemAttribute.getStatus(),
-                                    itemAttribute.getType(),
-                                    null,
-                                    summary != null ? summary.getRefPropertyValue() : null));
-                        }
+                template = callCardTemplateDao.read(callCardTemplateId);
+            } else {
+                // check in CALL_CARD_TEMPLATE_USERS for related template
+                additionalEventProperties = (EventTO.PROPERTY_STATUS + "=fromTemplate\n");
 
-                        int categoryId = 0;
-                        switch (item.getItemTypeId()) {
-                            case Constants.ITEM_TYPE_BRAND_PRODUCT:
-                                categoryId = brandProductTypeCategoriesMap.get(item.getItemId()) != null ? brandProductTypeCategoriesMap.get(item.getItemId()) : 0;
-                                break;
-                        }
-                        actionItems.add(new CallCardActionItemDTO(item.getItemId(), item.getItemTypeId(), actionItemsAttributes, categoryId, item.isMandatory()));
-                    }
+                // check for associated Template
+                template = getCallCardTemplate(userGroupId, gameTypeId, applicationId, userId);
 
-                    userActions.add(new CallCardActionsDTO(actionItems, itemsItemTypeId, pos.isMandatory()));
-                }
+            }
+        }
 
-                if (referencesMap != null && referencesMap.containsKey(pos.getRefUserId().getUserId())) {
+        LOGGER.info("-- CallCardTemplate returned : {}", template.getCallCardTemplateId());
 
-                    boolean mandatorySurveyExists = false; // Mark if there is at list one mandatory Survey
+        // Read GameType's CallCard configuration from application settings
+        CallCardGameTypeConfig gameTypeConfig = getCallCardGameTypeConfig(applicationId);
+        int previousValues = gameTypeConfig.getPreviousValues();
+        boolean includeGeoInfo = gameTypeConfig.isIncludeGeoInfo();
+        List<String> productTypeCategories = gameTypeConfig.getProductTypeCategories();
 
-                    List<CallCardActionItemDTO> actionItems = referencesMap.get(pos.getRefUserId().getUserId());
-                    for (CallCardActionItemDTO item : actionItems) {
-                        if ((item.getItemTypeId() == Constants.ITEM_TYPE_QUIZ) && item.isMandatory()) {
-                            mandatorySurveyExists = true;
-                            break;
-                        }
-                    }
+        LOGGER.info("{}", gameTypeConfig);
 
-                    int itemTypeId = referencesMap.get(pos.getRefUserId().getUserId()).get(0).getItemTypeId();
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-                    userActions.add(new CallCardActionsDTO(referencesMap.get(pos.getRefUserId().getUserId()), itemTypeId, mandatorySurveyExists));
-                }
+        // Read list of CallCard properties
+        CallCardPropertyDictionary propertyDictionary = getCallCardPropertyDictionary();
+        Map<String, String> metadataKeysTypeMap = propertyDictionary.getTypesMap();
+        Map<String, String> metadataKeysIdMap = propertyDictionary.getIdsMap();
 
-                List<KeyValueDTO> additionalRefUserInfo = refUserItemAttributeSummariesMap != null ? refUserAdditionalInfoMap.get(pos.getRefUserId().getUserId()) : null;
+        //get Brand product Type Categories
+        Map<String, Integer> brandProductTypeCategoriesMap = getBrandProductTypeCategoriesMap(gameTypeId, productTypeCategories);
 
-                CallCardRefUserDTO refUserDTO = new CallCardRefUserDTO(null, pos.getRefUserId().getUserId(), userActions, null, null, pos.isMandatory(), null, CallCardRefUserDTO.SELL, null, null, userId, additionalRefUserInfo, true);
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-                userDTOs.add(refUserDTO);
+        CallCardTemplateSkeleton skeleton = getCallCardTemplateSkeleton(template, gameTypeId);
 
-                groupUserDTOs.put(pos.getGroupId() != null ? pos.getGroupId() : CallCardGroupDTO.UNASSIGNED_POS_GROUP, userDTOs);
-            }
+        // Collect additional CallCard Info
+        List<String> templateRefUsers = getTemplateRefUsers(Collections.singletonList(skeleton));
+        Future<CallCardSummaryIndex> summariesLookup = lookupSummaries(templateRefUsers, userId, userGroupId, gameTypeId, previousValues, propertyDictionary);
+        Future<Map<String, List<KeyValueDTO>>> additionalInfoLookup = lookupAdditionalRefUserInfo(templateRefUsers, userGroupId, gameTypeId, includeGeoInfo);
+        Set<Dependency> degraded = EnumSet.noneOf(Dependency.class);
+        CallCardSummaryIndex refUserItemAttributeSummaries = awaitOptionalLookup(Dependency.SUMMARIES, summariesLookup, CallCardSummaryIndex.empty(), degraded);//< RefUserId, < BrandProductId, Attributes by property ordinal>>
+        Map<String, List<KeyValueDTO>> refUserAdditionalInfoMap = awaitOptionalLookup(Dependency.GEO_INFO, additionalInfoLookup, new HashMap<String, List<KeyValueDTO>>(), degraded);//< RefUserId, Additional Info>
 
-            List<CallCardGroupDTO> groupDTOs = new ArrayList<>();
-            for (Map.Entry<Integer, List<CallCardRefUserDTO>> groupUserDTO : groupUserDTOs.entrySet()) {
-                groupDTOs.add(new CallCardGroupDTO(groupUserDTO.getKey(), groupUserDTO.getValue(), template.getCallCardTemplateId()));
-            }
+        CallCardDTO callCardDTO = new CallCardDTO();
+        callCardDTO.setCallCardTemplateId(template.getCallCardTemplateId());
+        callCardDTO.setDegraded(!degraded.isEmpty());
 
+        List<CallCardGroupDTO> groupDTOs = CallCardGroupAssembler.buildCallCardGroups(skeleton, userId, refUserItemAttributeSummaries, refUserAdditionalInfoMap, propertyDictionary, brandProductTypeCategoriesMap);
+        if (groupDTOs != null)
             callCardDTO.setGroupIds(groupDTOs);
 
-        }
-
         if (callCard == null) {
             // Check if callCard with content already pending
             List<CallCard> callCards = erpDynamicQueryManager.listCallCards(null, Arrays.asList(userId), null, Arrays.asList(template.getCallCardTemplateId()), null, true, true, true, gameTypeId, 0, -1);
@@ -1797,7 +1404,7 @@ public class CallCardManagement implements ICallCardManagement {
 
         // Collect additional CallCard Info
         if (previousValues > 0)
-            additionalRefUserItemAttributeSummariesMap = summarizeCallCardProperties(additionalVisitUsers, userId, previousValues, callCardVisitStatuses, metadataKeysTypeMap, false);
+            additionalRefUserItemAttributeSummariesMap = summarizeCallCardProperties(additionalVisitUsers, userId, previousValues, callCardVisitStatuses, propertyDictionary, false).asMap();
 
         if (includeGeoInfo)
             additionalRefUserAdditionalInfoMap = getAdditionalRefUserInfo(additionalVisitUsers);
@@ -2140,6 +1747,17 @@ public class CallCardManagement implements ICallCardManagement {
 
         Map<String, Map<Integer, Integer>> totalQuantityPerPackagingUnitPerProductMap = new HashMap<>(); //< ProductId, < Packaging Unit, Quantity>>
         Map<Integer, Integer> totalVisitsPerTypeMap = new HashMap<>(); //< CallCardRefUSer Status, Number Of Visits>
+        List<CallCardRefUserIndex> indexesToInsert = new ArrayList<>();
+        List<SalesOrderDTO> salesOrdersToAdd = new ArrayList<>();
+
+        List<String> incomingCallCardRefUserIds = new ArrayList<>();
+        for (CallCardGroupDTO group : groups) {
+            if (group.getRefUserIds() != null) {
+                for (CallCardRefUserDTO refUser : group.getRefUserIds())
+                    incomingCallCardRefUserIds.add(refUser.getCallCardRefUserId());
+            }
+        }
+        CallCardRefUserLookup refUserLookup = prefetchCallCardRefUsers(callCard, incomingCallCardRefUserIds);
 
         for (CallCardGroupDTO group : groups) {
             if (group.getRefUserIds() != null) {
@@ -2150,6 +1768,7 @@ public class CallCardManagement implements ICallCardManagement {
                     SalesOrder revisedSalesOrder = null;
                     boolean isSalesOrderRevision = false;
                     SalesOrderDTO salerOrderToCreate = null;
+                    CallCardRefUserIndexDiff indexDiff = new CallCardRefUserIndexDiff(null);
 
                     //Skip defaultRefUser record And empty CallCard refUsers
                     if (refUser.getRefUserId().equalsIgnoreCase(CallCardRefUserDTO.DEFAULT_REF_USER_ID) || StringUtils.isBlank(refUser.getCallCardRefUserId()))
@@ -2160,12 +1779,12 @@ public class CallCardManagement implements ICallCardManagement {
 
                     if (UUIDUtilities.isValidUUID(refUser.getCallCardRefUserId())) {
                         // Update CallCardRefUser contents
-                        callCardRefUser = callCardRefUserDao.read(refUser.getCallCardRefUserId());
+                        callCardRefUser = refUserLookup.getById(refUser.getCallCardRefUserId());
                         if (callCardRefUser == null)
                             throw new BusinessLayerException("CallCardRefUser with id:" + refUser.getCallCardRefUserId() + "does not exist", ExceptionTypeTO.ITEM_NOT_FOUND);
 
                         callCardRefUser.setActive(refUser.isActive());
-                        resetIndexEntries(callCardRefUser);
+                        indexDiff = loadIndexDiff(callCardRefUser);
 
                         existingCallCardRefUserId = callCardRefUser.getCallCardRefUserId();
                     } else {
@@ -2174,18 +1793,20 @@ public class CallCardManagement implements ICallCardManagement {
                          * new => create CallCardRefUser
                          * */
 
-                        List<CallCardRefUser> existedRefUsers = callCardRefUserDao.queryList("listByCallCardIdInternalRefNo", callCard.getCallCardId(), refUser.getCallCardRefUserId());
+                        List<CallCardRefUser> existedRefUsers = refUserLookup.listByInternalRefNo(refUser.getCallCardRefUserId());
                         if (existedRefUsers != null && existedRefUsers.size() > 0) {
                             if (existedRefUsers.size() == 1) {
                                 callCardRefUser = existedRefUsers.get(0);
                                 callCardRefUser.setActive(refUser.isActive());
-                                resetIndexEntries(callCardRefUser);
+                                indexDiff = loadIndexDiff(callCardRefUser);
 
                                 existingCallCardRefUserId = callCardRefUser.getCallCardRefUserId();
                             } else
                                 throw new BusinessLayerException("10-Digit random number found in multiple entries", ExceptionTypeTO.GENERIC);
-                        } else
+                        } else {
                             callCardRefUser = addCallCardRefUser(callCard, refUser.getSourceUserId(), refUser.getRefUserId(), refUser.getStartDate(), refUser.getEndDate(), null, refUser.getComment(), refUser.getStatus(), refUser.getCallCardRefUserId(), refUser.getRefNo(), refUser.isActive());
+                            refUserLookup.add(callCardRefUser);
+                        }
                     }
 
                     callCardRefUser.setComment(StringUtils.isNotBlank(refUser.getComment()) ? refUser.getComment() : null);
@@ -2259,7 +1880,7 @@ public class CallCardManagement implements ICallCardManagement {
                                                     salerOrderToCreate.getSalesOrderDetailsDTOList().add(salesOrderDetailsDTOToAdd);
 
                                                 } else {    // Save attribute on CallCardIndex
-                                                    addCallCardRefUserIndex(
+                                                    indexDiff.add(newCallCardRefUserIndex(
                                                             callCardRefUser,
                                                             item.getItemId(),
                                                             item.getItemTypeId(),
@@ -2268,7 +1889,7 @@ public class CallCardManagement implements ICallCardManagement {
                                                             attribute.getStatus() != null ? attribute.getStatus() : 1,
                                                             attribute.getDateSubmitted() != null ? attribute.getDateSubmitted() : new Date(),
                                                             attribute.getAmount() != null ? attribute.getAmount().toBigDecimal() : BigDecimal.ZERO,
-                                                            attribute.getType());
+                                                            attribute.getType()));
                                                 }
                                             }
                                         }
@@ -2292,11 +1913,12 @@ public class CallCardManagement implements ICallCardManagement {
                         }
                     }
 
+                    applyIndexDiff(callCardRefUser, indexDiff, indexesToInsert);
+
                     // Check if SalesOrder or Sales Order Revision should be created
                     boolean createRevision = false;
-                    SalesOrder salesOrder = null;
                     if (salesOrderStatuses.contains(callCardRefUser.getStatus()) && !isSalesOrderRevision && salerOrderToCreate != null) { //create new SalesOrder
-                        salesOrder = salesOrderManagement.addSalesOrder(salerOrderToCreate.getCreatedByUserId(), salerOrderToCreate.getFromUserId(), salerOrderToCreate.getToUserId(), salerOrderToCreate.getDateCreated(), salerOrderToCreate.getDateUpdated(), null, null, null, salerOrderToCreate.getComments(), null, null, null, null, salerOrderToCreate.getSalesOrderStatus(), salerOrderToCreate.getDateSubmitted(), null, null, null, salerOrderToCreate.getRefItemId(), salerOrderToCreate.getRefItemTypeId());
+                        salesOrdersToAdd.add(salerOrderToCreate);
                     } else if (salesOrderStatuses.contains(callCardRefUser.getStatus()) && isSalesOrderRevision && salerOrderToCreate != null) {  // create SalesOrder revision
 
                         if (revisedSalesOrder.getSalesOrderDetails().size() == salerOrderToCreate.getSalesOrderDetailsDTOList().size()) {
@@ -2330,30 +1952,8 @@ public class CallCardManagement implements ICallCardManagement {
                         }
 
                         if (createRevision) {
-                            salesOrder = salesOrderManagement.createSalesOrderRevision(salerOrderToCreate.getCreatedByUserId(), salerOrderToCreate.getDateCreated(), salerOrderToCreate.getDateUpdated(), null, null, null, salerOrderToCreate.getComments(), null, null, null, null, salerOrderToCreate.getDateSubmitted(), revisedSalesOrder.getSalesOrderId(), salerOrderToCreate.getRefItemId(), salerOrderToCreate.getRefItemTypeId());
-                        }
-                    }
-
-                    if (salesOrder != null) {
-                        for (SalesOrderDetailsDTO detailDTO : salerOrderToCreate.getSalesOrderDetailsDTOList()) {
-                            SalesOrderDetailsDTO salesOrderDetailsDTO = salesOrderManagement.addSalesOrderDetails(
-                                    salesOrder.getSalesOrderId(),
-                                    detailDTO.getItemId(),
-                                    detailDTO.getItemTypeId(),
-                                    null,
-                                    detailDTO.getItemPrice() != null ? new BigDecimal(BigInteger.valueOf(detailDTO.getItemPrice().getValue()), detailDTO.getItemPrice().getScale()) : null,
-                                    null,
-                                    null,
-                                    null,
-                                    null,
-                                    null,
-                                    detailDTO.getQuantity(),
-                                    null,
-                                    null,
-                                    null,
-                                    salesOrder.getDateCreated(),
-                                    null,
-                                    null);
+                            salerOrderToCreate.setRevisedSalesOrderId(revisedSalesOrder.getSalesOrderId());
+                            salesOrdersToAdd.add(salerOrderToCreate);
                         }
                     }
 
@@ -2365,6 +1965,10 @@ public class CallCardManagement implements ICallCardManagement {
             }
         }
 
+        insertIndexes(indexesToInsert);
+        if (!salesOrdersToAdd.isEmpty())
+            salesOrderManagement.addSalesOrders(salesOrdersToAdd);
+
         if (!callCard.isActive() && totalVisitsPerTypeMap != null && totalVisitsPerTypeMap.size() > 0) {
             for (Map.Entry<Integer, Integer> totalVisitsPerType : totalVisitsPerTypeMap.entrySet()) {
                 String additionalEventProperties = EventTO.PROPERTY_TYPE + "=" + totalVisitsPerType.getKey() + "\n";
@@ -2391,9 +1995,16 @@ public class CallCardManagement implements ICallCardManagement {
         Assert.notNull(refUserIds, "refUserIds is null");
 
         Map<String, Map<Integer, Integer>> totalQuantityPerPackagingUnitPerProductMap = new HashMap<>(); //< ProductId, < Packaging Unit, Quantity>>
+        List<CallCardRefUserIndex> indexesToInsert = new ArrayList<>();
+
+        List<String> incomingCallCardRefUserIds = new ArrayList<>();
+        for (SimplifiedCallCardRefUserDTO refUser : refUserIds)
+            incomingCallCardRefUserIds.add(refUser.getCallCardRefUserId());
+        CallCardRefUserLookup refUserLookup = prefetchCallCardRefUsers(callCard, incomingCallCardRefUserIds);
 
         for (SimplifiedCallCardRefUserDTO refUser : refUserIds) {
             CallCardRefUser callCardRefUser = null;
+            CallCardRefUserIndexDiff indexDiff = new CallCardRefUserIndexDiff(null);
 
             //Skip defaultRefUser record And empty CallCard refUsers
             if (refUser.getRecipientUserId().equalsIgnoreCase(SimplifiedCallCardRefUserDTO.DEFAULT_REF_USER_ID) || StringUtils.isBlank(refUser.getCallCardRefUserId()))
@@ -2404,28 +2015,30 @@ public class CallCardManagement implements ICallCardManagement {
 
             if (UUIDUtilities.isValidUUID(refUser.getCallCardRefUserId())) {
                 // Update CallCardRefUser contents
-                callCardRefUser = callCardRefUserDao.read(refUser.getCallCardRefUserId());
+                callCardRefUser = refUserLookup.getById(refUser.getCallCardRefUserId());
                 if (callCardRefUser == null)
                     throw new BusinessLayerException("CallCardRefUser with id:" + refUser.getCallCardRefUserId() + "does not exist", ExceptionTypeTO.ITEM_NOT_FOUND);
 
                 callCardRefUser.setActive(refUser.isActive());
-                resetIndexEntries(callCardRefUser);
+                indexDiff = loadIndexDiff(callCardRefUser);
             } else {
                 /** Client-generated ID - search by Client-generated ID for existing CallCardRefUser
                  * existing => Overwrite existing
                  * new => create CallCardRefUser
                  * */
 
-                List<CallCardRefUser> existedRefUsers = callCardRefUserDao.queryList("listByCallCardIdInternalRefNo", callCard.getCallCardId(), refUser.getCallCardRefUserId());
+                List<CallCardRefUser> existedRefUsers = refUserLookup.listByInternalRefNo(refUser.getCallCardRefUserId());
                 if (existedRefUsers != null && existedRefUsers.size() > 0) {
                     if (existedRefUsers.size() == 1) {
                         callCardRefUser = existedRefUsers.get(0);
                         callCardRefUser.setActive(refUser.isActive());
-                        resetIndexEntries(callCardRefUser);
+                        indexDiff = loadIndexDiff(callCardRefUser);
                     } else
                         throw new BusinessLayerException("Internal Ref No found in multiple entries", ExceptionTypeTO.GENERIC);
-                } else
+                } else {
                     callCardRefUser = addCallCardRefUser(callCard, refUser.getIssuerUserId(), refUser.getRecipientUserId(), refUser.getDateCreated(), new Date(), refUser.getDateUpdated(), refUser.getComment(), refUser.getStatus(), refUser.getCallCardRefUserId(), refUser.getRefNo(), refUser.isActive());
+                    refUserLookup.add(callCardRefUser);
+                }
             }
 
             callCardRefUser.setComment(StringUtils.isNotBlank(refUser.getComment()) ? refUser.getComment() : null);
@@ -2449,7 +2062,7 @@ public class CallCardManagement implements ICallCardManagement {
                                 if (sell && attribute.getPropertyName().equals("CallCardIndex.salesUnit"))
                                     packagingUnit = Integer.parseInt(attribute.getPropertyValue());
 
-                                addCallCardRefUserIndex(
+                                indexDiff.add(newCallCardRefUserIndex(
                                         callCardRefUser,
                                         item.getItemId(),
                                         item.getItemTypeId(),
@@ -2458,7 +2071,7 @@ public class CallCardManagement implements ICallCardManagement {
                                         attribute.getStatus() != null ? attribute.getStatus() : 1,
                                         attribute.getDateSubmitted() != null ? attribute.getDateSubmitted() : new Date(),
                                         attribute.getAmount() != null ? attribute.getAmount().toBigDecimal() : BigDecimal.ZERO,
-                                        attribute.getType());
+                                        attribute.getType()));
                             }
                         }
 
@@ -2478,8 +2091,12 @@ public class CallCardManagement implements ICallCardManagement {
                     }
                 }
             }
+
+            applyIndexDiff(callCardRefUser, indexDiff, indexesToInsert);
         }
 
+        insertIndexes(indexesToInsert);
+
         if (!callCard.isActive() && totalQuantityPerPackagingUnitPerProductMap != null && totalQuantityPerPackagingUnitPerProductMap.size() > 0) {
             for (Map.Entry<String, Map<Integer, Integer>> quantityPerPackagingUnitPerProduct : totalQuantityPerPackagingUnitPerProductMap.entrySet()) {
                 for (Map.Entry<Integer, Integer> quantityPerPackagingUnit : quantityPerPackagingUnitPerProduct.getValue().entrySet()) {
@@ -2673,7 +2290,18 @@ public class CallCardManagement implements ICallCardManagement {
                                         Date submitDate,
                                         BigDecimal amount,
                                         Integer type) {
+        callCardRefUserIndexDao.create(newCallCardRefUserIndex(callCardRefUser, itemId, itemTypeId, propertyName, propertyValue, status, submitDate, amount, type));
+    }
 
+    private CallCardRefUserIndex newCallCardRefUserIndex(CallCardRefUser callCardRefUser,
+                                                         String itemId,
+                                                         Integer itemTypeId,
+                                                         String propertyName,
+                                                         String propertyValue,
+                                                         Integer status,
+                                                         Date submitDate,
+                                                         BigDecimal amount,
+                                                         Integer type) {
         Assert.notNull(callCardRefUser, "callCardRefUser is null");
         Assert.isTrue(itemTypeId > 0, "itemTypeId is null or empty");
         Assert.notNullOrEmpty(propertyName, "propertyName is null");
@@ -2695,7 +2323,7 @@ public class CallCardManagement implements ICallCardManagement {
         callCardRefUserIndex.setAmount(amount);
         callCardRefUserIndex.setType(type);
 
-        callCardRefUserIndexDao.create(callCardRefUserIndex);
+        return callCardRefUserIndex;
     }
 
     @Transactional(readOnly = true)
@@ -2777,29 +2405,10 @@ public class CallCardManagement implements ICallCardManagement {
             if (StringUtils.isBlank(callCardDTO.getCallCardId()))
                 throw new BusinessLayerException("CallCardId cannot be null or empty !", ExceptionTypeTO.GENERIC);
 
-            // search for existing callCard with the external Id sent by client
-            if (UUIDUtilities.isValidUUID(callCardDTO.getCallCardId())) {
-                CallCard requestedCallCard = callCardDao.read(callCardDTO.getCallCardId());
+            CallCard requestedCallCard = resolveCallCardId(userId, callCardDTO);
+            if (requestedCallCard != null)
                 inheritedCallCardTemplateId = requestedCallCard.getCallCardTemplateId();
 
-                if (requestedCallCard == null)
-                    throw new BusinessLayerException("No callCard found with callcardId:" + callCardDTO.getCallCardId(), ExceptionTypeTO.NO_ITEM_FOUND_WITH_SPECIFIED_PROPERTIES);
-
-                if (requestedCallCard.isActive() == false)
-                    LOGGER.info("\n\n\n\n Call card is closed but client tries SYNC, callCardId " + callCardDTO.getCallCardId());
-            } else {
-                List<CallCard> callCardsByTemporaryId = callCardDao.queryList("listByUserInternalRefNo", userId, callCardDTO.getCallCardId());
-                if (callCardsByTemporaryId != null && callCardsByTemporaryId.size() > 0) {
-                    if (callCardsByTemporaryId.size() != 1)
-                        throw new BusinessLayerException("More than one callCards found with reference ID:" + callCardDTO.getCallCardId(), ExceptionTypeTO.MORE_THAN_1_ITEM_FOUND_WITH_SPECIFIED_PROPERTIES);
-
-                    callCardDTO.setCallCardId(callCardsByTemporaryId.get(0).getCallCardId());
-                } else {
-                    callCardDTO.setInternalRefNo(callCardDTO.getCallCardId());
-                    callCardDTO.setCallCardId(null);
-                }
-            }
-
             CallCardDTO storedCallCard = updateCallCardInternal(userGroupId, gameTypeId, applicationId, userId, callCardDTO, inheritedCallCardTemplateId);
             if (storedCallCard.isSubmitted() == false)
                 pendingCallCardIds.add(storedCallCard.getCallCardId());
@@ -2832,6 +2441,196 @@ public class CallCardManagement implements ICallCardManagement {
         return null;
     }
 
+    /**
+     * Resolve the id the client sent for a CallCard: the id of an existing CallCard, or a temporary id that is
+     * replaced by the id of the CallCard created with it before, or moved to internalRefNo for a new CallCard.
+     *
+     * @return The existing CallCard requested by id, null if the client sent a temporary id
+     */
+    private CallCard resolveCallCardId(String userId, CallCardDTO callCardDTO) throws BusinessLayerException {
+        // search for existing callCard with the external Id sent by client
+        if (UUIDUtilities.isValidUUID(callCardDTO.getCallCardId())) {
+            CallCard requestedCallCard = callCardDao.read(callCardDTO.getCallCardId());
+            if (requestedCallCard == null)
+                throw new BusinessLayerException(ExceptionTypeTO.NO_ITEM_FOUND_WITH_SPECIFIED_PROPERTIES, "No callCard found with callcardId:" + callCardDTO.getCallCardId());
+
+            if (requestedCallCard.isActive() == false)
+                LOGGER.info("\n\n\n\n Call card is closed but client tries SYNC, callCardId " + callCardDTO.getCallCardId());
+            return requestedCallCard;
+        }
+
+        List<CallCard> callCardsByTemporaryId = callCardDao.queryList("listByUserInternalRefNo", userId, callCardDTO.getCallCardId());
+        if (callCardsByTemporaryId != null && callCardsByTemporaryId.size() > 0) {
+            if (callCardsByTemporaryId.size() != 1)
+                throw new BusinessLayerException(ExceptionTypeTO.MORE_THAN_1_ITEM_FOUND_WITH_SPECIFIED_PROPERTIES, "More than one callCards found with reference ID:" + callCardDTO.getCallCardId());
+
+            callCardDTO.setCallCardId(callCardsByTemporaryId.get(0).getCallCardId());
+        } else {
+            callCardDTO.setInternalRefNo(callCardDTO.getCallCardId());
+            callCardDTO.setCallCardId(null);
+        }
+        return null;
+    }
+
+    /**
+     * Not transactional itself: every CallCard is stored in a transaction of the CallCardUpdateExecutor, so that one
+     * failing or slow CallCard does not roll back or hold the others.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<CallCardUpdateResultDTO> updateCallCards(final String userGroupId, final String gameTypeId, final String applicationId, final String userId, final List<CallCardDTO> callCards) throws BusinessLayerException {
+        if (callCards == null || callCards.size() == 0)
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "CallCards list cannot be null or empty!");
+        if (callCardUpdateExecutor == null)
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "No CallCard update executor configured");
+
+        Map<CallCardDTO, CallCardUpdateResultDTO> results = new IdentityHashMap<>(); //< CallCard as submitted, Result>
+        for (CallCardDTO callCardDTO : callCards)
+            results.put(callCardDTO, new CallCardUpdateResultDTO(callCardDTO.getCallCardId(), callCardDTO.isSubmitted()));
+
+        if (!parallelUpdateEnabled || !areIndependent(callCards)) {
+            CallCardDTO pendingCallCard = callCardUpdateExecutor.executeInTransaction(userGroupId, gameTypeId,
+                    () -> updateCallCard(userGroupId, gameTypeId, applicationId, userId, new ArrayList<>(callCards)));
+            for (CallCardDTO callCardDTO : callCards) {
+                CallCardUpdateResultDTO result = results.get(callCardDTO);
+                result.setState(CallCardUpdateResultDTO.UPDATED);
+                result.setStoredCallCardId(callCardDTO.getCallCardId());
+                if (!callCardDTO.isSubmitted())
+                    result.setCallCard(pendingCallCard);
+            }
+            return toResultList(callCards, results);
+        }
+
+        List<CallCardDTO> orderedCallCards = new ArrayList<>(callCards);
+        Collections.sort(orderedCallCards, new CallCardDTO.ExistingCallCardFirst());   // existing CallCards first
+
+        // ids are resolved by each CallCard in its own transaction; only the ids sent as existing are known up front
+        final List<String> existingCallCardIds = new ArrayList<>();
+        List<CallCardDTO> pendingCallCards = new ArrayList<>();
+        List<CallCardDTO> submittedCallCards = new ArrayList<>();
+        for (CallCardDTO callCardDTO : orderedCallCards) {
+            if (UUIDUtilities.isValidUUID(callCardDTO.getCallCardId()))
+                existingCallCardIds.add(callCardDTO.getCallCardId());
+            if (callCardDTO.isSubmitted())
+                submittedCallCards.add(callCardDTO);
+            else
+                pendingCallCards.add(callCardDTO);
+        }
+
+        // closed CallCards are independent of each other: store each in its own transaction
+        Map<CallCardDTO, Future<CallCardDTO>> futures = new IdentityHashMap<>();
+        for (final CallCardDTO callCardDTO : submittedCallCards) {
+            futures.put(callCardDTO, callCardUpdateExecutor.submitInTransaction(userGroupId, gameTypeId,
+                    () -> updateCallCardInternal(userGroupId, gameTypeId, applicationId, userId, callCardDTO, resolveCallCardTemplate(userId, callCardDTO, existingCallCardIds))));
+        }
+        // one deadline for all: CallCards not started by then fail, running ones are waited for so that none outlives the update
+        long deadline = callCardUpdateExecutor.deadline();
+        for (CallCardDTO callCardDTO : submittedCallCards) {
+            CallCardUpdateResultDTO result = results.get(callCardDTO);
+            try {
+                CallCardDTO storedCallCard = callCardUpdateExecutor.await(futures.get(callCardDTO), deadline);
+                result.setState(CallCardUpdateResultDTO.UPDATED);
+                result.setStoredCallCardId(storedCallCard.getCallCardId());
+            } catch (BusinessLayerException e) {
+                setFailure(result, e);
+            } catch (RuntimeException e) {
+                LOGGER.error("-- CallCard not updated : userId={} callCardId={}", userId, result.getCallCardId(), e);
+                setFailure(result, new BusinessLayerException(ExceptionTypeTO.GENERIC, String.valueOf(e.getMessage())));
+            }
+        }
+
+        // the pending CallCard last, once the closed ones are stored
+        if (!pendingCallCards.isEmpty())
+            updatePendingCallCards(userGroupId, gameTypeId, applicationId, userId, pendingCallCards, existingCallCardIds, results);
+
+        return toResultList(callCards, results);
+    }
+
+    private void updatePendingCallCards(final String userGroupId, final String gameTypeId, final String applicationId, final String userId,
+                                        final List<CallCardDTO> pendingCallCards, final List<String> existingCallCardIds,
+                                        Map<CallCardDTO, CallCardUpdateResultDTO> results) {
+        try {
+            CallCardDTO pendingCallCard = callCardUpdateExecutor.executeInTransaction(userGroupId, gameTypeId, () -> {
+                if (pendingCallCards.size() > 1)
+                    throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "pendingCallCardIds more than 1 in DB!");
+
+                CallCardDTO callCardDTO = pendingCallCards.get(0);
+                CallCardDTO storedCallCard = updateCallCardInternal(userGroupId, gameTypeId, applicationId, userId, callCardDTO, resolveCallCardTemplate(userId, callCardDTO, existingCallCardIds));
+
+                List<String> filterProperties = new ArrayList<>();
+                switch (gameTypeId) {
+                    case Constants.PMI_EGYPT_GAME_TYPE_ID:
+                    case Constants.PMI_SENEGAL_GAME_TYPE_ID:
+                        filterProperties.add(Constants.METADATA_KEY_PERSONAL_REGION);
+                        break;
+                    case Constants.PMI_IRAQ_GAME_TYPE_ID:
+                        break;
+                }
+                return getNewOrPendingCallCard(userId, userGroupId, gameTypeId, applicationId, storedCallCard.getCallCardId(), filterProperties);
+            });
+
+            for (CallCardDTO callCardDTO : pendingCallCards) {
+                CallCardUpdateResultDTO result = results.get(callCardDTO);
+                result.setState(CallCardUpdateResultDTO.UPDATED);
+                result.setStoredCallCardId(callCardDTO.getCallCardId());
+                result.setCallCard(pendingCallCard);
+            }
+        } catch (BusinessLayerException e) {
+            for (CallCardDTO callCardDTO : pendingCallCards)
+                setFailure(results.get(callCardDTO), e);
+        }
+    }
+
+    /**
+     * Resolve the id of a CallCard of a multi-card update, in the transaction storing it, and the template to store it
+     * with: its own if it exists, otherwise that of the last existing CallCard of the update, as updateCallCard does.
+     */
+    private CallCardTemplate resolveCallCardTemplate(String userId, CallCardDTO callCardDTO, List<String> existingCallCardIds) throws BusinessLayerException {
+        if (StringUtils.isBlank(callCardDTO.getCallCardId()))
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "CallCardId cannot be null or empty !");
+
+        CallCard requestedCallCard = resolveCallCardId(userId, callCardDTO);
+        if (requestedCallCard != null)
+            return requestedCallCard.getCallCardTemplateId();
+
+        for (int i = existingCallCardIds.size() - 1; i >= 0; i--) {
+            CallCard existingCallCard = callCardDao.read(existingCallCardIds.get(i));
+            if (existingCallCard != null)
+                return existingCallCard.getCallCardTemplateId();
+        }
+        return null;
+    }
+
+    /**
+     * CallCards can be stored in parallel unless the submission refers to the same CallCard more than once.
+     */
+    private static boolean areIndependent(List<CallCardDTO> callCards) {
+        Set<String> callCardIds = new HashSet<>();
+        for (CallCardDTO callCardDTO : callCards) {
+            if (StringUtils.isBlank(callCardDTO.getCallCardId()) || !callCardIds.add(callCardDTO.getCallCardId().toUpperCase()))
+                return false;
+        }
+        return true;
+    }
+
+    private static List<CallCardUpdateResultDTO> toResultList(List<CallCardDTO> callCards, Map<CallCardDTO, CallCardUpdateResultDTO> results) {
+        List<CallCardUpdateResultDTO> resultList = new ArrayList<>(callCards.size());
+        for (CallCardDTO callCardDTO : callCards)
+            resultList.add(results.get(callCardDTO));
+        return resultList;
+    }
+
+    /**
+     * BusinessLayerExceptions are built both as (message, code) and (code, message): the numeric one is the code.
+     */
+    private static void setFailure(CallCardUpdateResultDTO result, BusinessLayerException e) {
+        boolean codeFirst = StringUtils.isNumeric(e.getErrorCode());
+        String code = codeFirst ? e.getErrorCode() : e.getMessage();
+        result.setState(CallCardUpdateResultDTO.FAILED);
+        result.setErrorNumber(StringUtils.isNumeric(code) ? Integer.valueOf(code) : Integer.valueOf(ExceptionTypeTO.GENERIC));
+        result.setError(codeFirst ? e.getMessage() : e.getErrorCode());
+    }
+
     @Transactional
     private CallCardTemplate getCallCardTemplateByMetadataProperty(String userGroupId, String gameTypeId, String userId) throws BusinessLayerException {
         List<String> metadataKeys = new ArrayList<>();
@@ -3094,28 +2893,76 @@ public class CallCardManagement implements ICallCardManagement {
 
         // delete previous callCardRefUserIndexes
         if (refUserIndexIdsToDelete != null && refUserIndexIdsToDelete.size() > 0)
-            callCardRefUserIndexDao.executeUpdate("deleteByIds", refUserIndexIdsToDelete);
+            callCardRefUserIndexDao.deleteAllByIds(refUserIndexIdsToDelete);
         // delete previous callCardRefUser
         if (refUserIdsToDelete != null && refUserIdsToDelete.size() > 0)
-            callCardRefUserDao.executeUpdate("deleteByIds", refUserIdsToDelete);
+            callCardRefUserDao.deleteAllByIds(refUserIdsToDelete);
     }
 
-    @Transactional
-    private void resetIndexEntries(CallCardRefUser callCardRefUser) {
+    /**
+     * Fetch the existing CallCardRefUsers a submission refers to, by id (UUIDs) and by internal ref no (client-generated
+     * ids) within the CallCard, in one query per chunk of ids and one by internal ref no.
+     */
+    private CallCardRefUserLookup prefetchCallCardRefUsers(CallCard callCard, List<String> incomingCallCardRefUserIds) {
+        Set<String> ids = new HashSet<>();
+        Set<String> internalRefNos = new HashSet<>();
+        for (String callCardRefUserId : incomingCallCardRefUserIds) {
+            if (StringUtils.isBlank(callCardRefUserId))
+                continue;
+            if (UUIDUtilities.isValidUUID(callCardRefUserId))
+                ids.add(callCardRefUserId);
+            else
+                internalRefNos.add(callCardRefUserId);
+        }
+
+        List<CallCardRefUser> refUsersById = ids.isEmpty() ? null : callCardRefUserDao.readAll(ids);
+        List<CallCardRefUser> refUsersByInternalRefNo = internalRefNos.isEmpty() ? null : callCardRefUserDao.queryList("listByCallCardIdInternalRefNos", callCard.getCallCardId(), new ArrayList<>(internalRefNos));
+        return new CallCardRefUserLookup(refUsersById, refUsersByInternalRefNo);
+    }
+
+    /**
+     * Start a diff of the index rows of an existing CallCardRefUser against the rows of the incoming submission.
+     */
+    private CallCardRefUserIndexDiff loadIndexDiff(CallCardRefUser callCardRefUser) {
         if (callCardRefUser == null || StringUtils.isBlank(callCardRefUser.getCallCardRefUserId()))
-            return;
+            return new CallCardRefUserIndexDiff(null);
 
-        List<CallCardRefUserIndex> refUsersIndexesToDelete = erpDynamicQueryManager.listCallCardRefUserIndexes(null, Arrays.asList(callCardRefUser.getCallCardRefUserId()), null, null, null, null, null, null, null, null, null, null, 0, -1);
-        List<String> refUserIndexIdsToDelete = null;
-        if (refUsersIndexesToDelete != null && refUsersIndexesToDelete.size() > 0) {
-            refUserIndexIdsToDelete = new ArrayList<>();
-            for (CallCardRefUserIndex refUserIndexToDelete : refUsersIndexesToDelete)
+        List<CallCardRefUserIndex> storedIndexes = erpDynamicQueryManager.listCallCardRefUserIndexes(null, Arrays.asList(callCardRefUser.getCallCardRefUserId()), null, null, null, null, null, null, null, null, null, null, 0, -1);
+        return new CallCardRefUserIndexDiff(storedIndexes);
+    }
+
+    /**
+     * Write only the index rows that changed: one delete of the rows no longer submitted and the updated rows, which
+     * Hibernate sends in JDBC batches. The new rows are collected for {@link #insertIndexes(List)}.
+     */
+    @Transactional
+    private void applyIndexDiff(CallCardRefUser callCardRefUser, CallCardRefUserIndexDiff indexDiff, List<CallCardRefUserIndex> indexesToInsert) {
+        List<CallCardRefUserIndex> deletes = indexDiff.getDeletes();
+        if (deletes.size() > 0) {
+            List<String> refUserIndexIdsToDelete = new ArrayList<>(deletes.size());
+            for (CallCardRefUserIndex refUserIndexToDelete : deletes)
                 refUserIndexIdsToDelete.add(refUserIndexToDelete.getCallCardRefUserIndexId());
+            callCardRefUserIndexDao.deleteAllByIds(refUserIndexIdsToDelete);
         }
 
-        // delete previous callCardRefUserIndexes
-        if (refUserIndexIdsToDelete != null && refUserIndexIdsToDelete.size() > 0)
-            callCardRefUserIndexDao.executeUpdate("deleteByIds", refUserIndexIdsToDelete);
+        callCardRefUserIndexDao.updateAll(indexDiff.getUpdates());
+
+        indexesToInsert.addAll(indexDiff.getInserts());
+
+        LOGGER.debug("-- CallCardRefUser indexes written : callCardRefUserId={} {}", callCardRefUser.getCallCardRefUserId(), indexDiff);
+    }
+
+    /**
+     * Insert the new index rows of a submission, in JDBC batches when the batch writer is configured.
+     */
+    @Transactional
+    private void insertIndexes(List<CallCardRefUserIndex> indexesToInsert) {
+        if (callCardRefUserIndexBatchWriter != null) {
+            callCardRefUserIndexBatchWriter.insert(indexesToInsert);
+            return;
+        }
+
+        callCardRefUserIndexDao.createAll(indexesToInsert);
     }
 
     @Transactional
@@ -3205,6 +3052,8 @@ public class CallCardManagement implements ICallCardManagement {
                         user.setLastUpdated(new Date());
 
                         usersDao.update(user);
+                        if (callCardRefUserCoordinatesCache != null)
+                            callCardRefUserCoordinatesCache.invalidateAfterCompletion(userId);
                     }
                 } else {
                     LOGGER.error("User Metadata countryId, stateId, cityId, postCodeId are null or empty.");
@@ -3219,28 +3068,47 @@ public class CallCardManagement implements ICallCardManagement {
         Map<String, List<KeyValueDTO>> additionalRefUsersInfoMap = new HashMap<String, List<KeyValueDTO>>();
 
         if (refUserIds != null && refUserIds.size() > 0) {
-            List<Users> refUsers = usersDao.queryList("listByUserIds", refUserIds);
+            Map<String, Coordinates> coordinatesMap = callCardRefUserCoordinatesCache != null
+                    ? callCardRefUserCoordinatesCache.getAll(refUserIds, this::loadRefUserCoordinates)
+                    : loadRefUserCoordinates(refUserIds);
 
-            for (Users refUser : refUsers) {
+            for (String refUserId : refUserIds) {
                 List<KeyValueDTO> additionalRefUsersInfo = new ArrayList<KeyValueDTO>();
 
-                if (refUser.getUserAddress() != null && refUser.getUserAddress().size() > 0) {
-                    @SuppressWarnings("unchecked")
-                    List<UserAddressbook> userAddresses = (List<UserAddressbook>)(List<?>) refUser.getUserAddress();
-                    Addressbook address = userAddresses.get(0).getAddressbook();
-                    if (address.getLatitude() != null && address.getLongitude() != null) {
-                        additionalRefUsersInfo.add(new KeyValueDTO(CallCardRefUserDTO.LATITUDE, address.getLatitude().toString()));
-                        additionalRefUsersInfo.add(new KeyValueDTO(CallCardRefUserDTO.LONGITUDE, address.getLongitude().toString()));
-                    }
+                Coordinates coordinates = coordinatesMap.get(refUserId);
+                if (coordinates != null && coordinates.isPresent()) {
+                    additionalRefUsersInfo.add(new KeyValueDTO(CallCardRefUserDTO.LATITUDE, coordinates.getLatitude().toString()));
+                    additionalRefUsersInfo.add(new KeyValueDTO(CallCardRefUserDTO.LONGITUDE, coordinates.getLongitude().toString()));
                 }
 
-                additionalRefUsersInfoMap.put(refUser.getUserId(), additionalRefUsersInfo);
+                additionalRefUsersInfoMap.put(refUserId, additionalRefUsersInfo);
             }
         }
 
         return additionalRefUsersInfoMap;
     }
 
+    /**
+     * Coordinates of the first address of each refUser, in a single projection query.
+     */
+    private Map<String, Coordinates> loadRefUserCoordinates(List<String> refUserIds) {
+        Map<String, Coordinates> coordinatesMap = new HashMap<>(); //< RefUserId, Coordinates>
+        for (Object[] row : erpNativeQueryManager.listUserCoordinates(refUserIds)) {
+            Double latitude = row[1] != null ? ((Number) row[1]).doubleValue() : null;
+            Double longitude = row[2] != null ? ((Number) row[2]).doubleValue() : null;
+            coordinatesMap.put(row[0].toString().toUpperCase(), new Coordinates(latitude, longitude));
+        }
+
+        // key the results by the requested ids, whatever their case
+        Map<String, Coordinates> results = new HashMap<>();
+        for (String refUserId : refUserIds) {
+            Coordinates coordinates = coordinatesMap.get(refUserId.toUpperCase());
+            if (coordinates != null)
+                results.put(refUserId, coordinates);
+        }
+        return results;
+    }
+
     @Transactional
     private Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> getCallCardValuesFromSalesOrder(CallCard pendingCallCard) {
         Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> results = new HashMap<>(); // < CallCardRefUserId , < ProductId, Attributes list>>
@@ -3305,9 +3173,8 @@ public class CallCardManagement implements ICallCardManagement {
     }
 
     @Transactional
-    private Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> summarizeCallCardProperties(List<String> refUserIds, String callCardUserId, Integer previousValuesSetting, List<Integer> recordsTypes, Map<String, String> properties, boolean activeCallCards) {
+    private CallCardSummaryIndex summarizeCallCardProperties(List<String> refUserIds, String callCardUserId, Integer previousValuesSetting, List<Integer> recordsTypes, CallCardPropertyDictionary properties, boolean activeCallCards) {
         LOGGER.info("In summarizeCallCardProperties for User with UserId: {}", callCardUserId);
-        //Map<String, String> properties: key => propertyName, value => propertyType
         Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> results = new HashMap<>();  //< RefUserId, <ItemId, List of ActionItemAttributesDTO>>
 
         @SuppressWarnings({"unchecked", "rawtypes"})
@@ -3315,7 +3182,7 @@ public class CallCardManagement implements ICallCardManagement {
         @SuppressWarnings({"unchecked", "rawtypes"})
         Map<String, List<InvoiceDetails>> detailsByRefUser = new HashMap<>();//< RefUserId, List of SalesOrderDetails>>
 
-        List<String> propertiesList = new ArrayList<String>(properties.keySet());
+        List<String> propertiesList = new ArrayList<String>(properties.getTypesMap().keySet());
 
         // indexesByRefUser = erpNativeQueryManager.listCallCardRefUserIndexesPreviousValues(callCardUserId, refUserIds, previousValuesSetting, activeCallCards);  // get a number of previous values
         indexesByRefUser = (Map) erpNativeQueryManager.listCallCardRefUserIndexesPreviousValuesSummary(callCardUserId, refUserIds, propertiesList, previousValuesSetting, recordsTypes, activeCallCards); // get the summaries for a number of previous values
@@ -3398,26 +3265,34 @@ public class CallCardManagement implements ICallCardManagement {
                 results.put(refUserMap.getKey(), itemsMap);
             }
         }
-        return results;
+        return new CallCardSummaryIndex(results, properties);
     }
 
-    private List<CallCardActionItemAttributesDTO> summarizePropertiesByItem(Map<String, String> properties, List<CallCardRefUserIndex> indexesList) {
+    private List<CallCardActionItemAttributesDTO> summarizePropertiesByItem(CallCardPropertyDictionary properties, List<CallCardRefUserIndex> indexesList) {
         List<CallCardActionItemAttributesDTO> itemProperties = new ArrayList<>();
 
-        for (Map.Entry<String, String> property : properties.entrySet()) {
-            List<CallCardRefUserIndex> indexesPropertyList = new ArrayList<>();
+        // bucket the indexes by property ordinal once, instead of comparing names per property
+        @SuppressWarnings("unchecked")
+        List<CallCardRefUserIndex>[] indexesByProperty = new List[properties.size()];
+        for (CallCardRefUserIndex index : indexesList) {
+            int ordinal = properties.ordinalOf(index.getPropertyId());
+            if (ordinal == CallCardPropertyDictionary.UNKNOWN)
+                continue;
 
-            CallCardActionItemAttributesDTO propertySummary = new CallCardActionItemAttributesDTO();
+            if (indexesByProperty[ordinal] == null)
+                indexesByProperty[ordinal] = new ArrayList<>();
+            indexesByProperty[ordinal].add(index);
+        }
 
-            for (CallCardRefUserIndex index : indexesList) {
-                if (index.getPropertyId().equals(property.getKey()))
-                    indexesPropertyList.add(index);
-            }
+        for (CallCardPropertyDictionary.Property property : properties.getProperties()) {
+            List<CallCardRefUserIndex> indexesPropertyList = indexesByProperty[property.getOrdinal()];
+
+            CallCardActionItemAttributesDTO propertySummary = new CallCardActionItemAttributesDTO();
 
             if (indexesPropertyList != null && indexesPropertyList.size() > 0) {
-                propertySummary.setPropertyName(property.getKey());
+                propertySummary.setPropertyName(property.getName());
 
-                if (property.getValue().equalsIgnoreCase("integer")) {
+                if ("integer".equalsIgnoreCase(property.getDataTypeName())) {
                     int sum = 0;
                     int propertyRecords = 0;
                     int average = 0;
@@ -3435,7 +3310,7 @@ public class CallCardManagement implements ICallCardManagement {
                     propertySummary.setRefPropertyValue(String.valueOf(average));
                     itemProperties.add(propertySummary);
 
-                } else if (property.getValue().equalsIgnoreCase("string") || property.getValue().equalsIgnoreCase("boolean")) {
+                } else if ("string".equalsIgnoreCase(property.getDataTypeName()) || "boolean".equalsIgnoreCase(property.getDataTypeName())) {
                     CallCardRefUserIndex lastValue = null;
 
                     for (CallCardRefUserIndex indexProperty : indexesPropertyList) {
@@ -3578,6 +3453,94 @@ public class CallCardManagement implements ICallCardManagement {
         this.erpNativeQueryManager = erpNativeQueryManager;
     }
 
+    public CallCardTemplateSkeletonCache getCallCardTemplateSkeletonCache() {
+        return callCardTemplateSkeletonCache;
+    }
+
+    public void setCallCardTemplateSkeletonCache(CallCardTemplateSkeletonCache callCardTemplateSkeletonCache) {
+        this.callCardTemplateSkeletonCache = callCardTemplateSkeletonCache;
+    }
+
+    public BrandProductCategoryIndex getBrandProductCategoryIndex() {
+        return brandProductCategoryIndex;
+    }
+
+    public void setBrandProductCategoryIndex(BrandProductCategoryIndex brandProductCategoryIndex) {
+        this.brandProductCategoryIndex = brandProductCategoryIndex;
+    }
+
+    public CallCardGameTypeConfigCache getCallCardGameTypeConfigCache() {
+        return callCardGameTypeConfigCache;
+    }
+
+    public void setCallCardGameTypeConfigCache(CallCardGameTypeConfigCache callCardGameTypeConfigCache) {
+        this.callCardGameTypeConfigCache = callCardGameTypeConfigCache;
+    }
+
+    public CallCardEventPublisher getCallCardEventPublisher() {
+        return callCardEventPublisher;
+    }
+
+    public void setCallCardEventPublisher(CallCardEventPublisher callCardEventPublisher) {
+        this.callCardEventPublisher = callCardEventPublisher;
+    }
+
+    public CallCardRefUserIndexBatchWriter getCallCardRefUserIndexBatchWriter() {
+        return callCardRefUserIndexBatchWriter;
+    }
+
+    public void setCallCardRefUserIndexBatchWriter(CallCardRefUserIndexBatchWriter callCardRefUserIndexBatchWriter) {
+        this.callCardRefUserIndexBatchWriter = callCardRefUserIndexBatchWriter;
+    }
+
+    public CallCardRefUserCoordinatesCache getCallCardRefUserCoordinatesCache() {
+        return callCardRefUserCoordinatesCache;
+    }
+
+    public void setCallCardRefUserCoordinatesCache(CallCardRefUserCoordinatesCache callCardRefUserCoordinatesCache) {
+        this.callCardRefUserCoordinatesCache = callCardRefUserCoordinatesCache;
+    }
+
+    public CallCardPropertyDictionaryCache getCallCardPropertyDictionaryCache() {
+        return callCardPropertyDictionaryCache;
+    }
+
+    public void setCallCardPropertyDictionaryCache(CallCardPropertyDictionaryCache callCardPropertyDictionaryCache) {
+        this.callCardPropertyDictionaryCache = callCardPropertyDictionaryCache;
+    }
+
+    public CallCardAssemblyExecutor getCallCardAssemblyExecutor() {
+        return callCardAssemblyExecutor;
+    }
+
+    public void setCallCardAssemblyExecutor(CallCardAssemblyExecutor callCardAssemblyExecutor) {
+        this.callCardAssemblyExecutor = callCardAssemblyExecutor;
+    }
+
+    public CallCardUpdateExecutor getCallCardUpdateExecutor() {
+        return callCardUpdateExecutor;
+    }
+
+    public void setCallCardUpdateExecutor(CallCardUpdateExecutor callCardUpdateExecutor) {
+        this.callCardUpdateExecutor = callCardUpdateExecutor;
+    }
+
+    public boolean isParallelUpdateEnabled() {
+        return parallelUpdateEnabled;
+    }
+
+    public void setParallelUpdateEnabled(boolean parallelUpdateEnabled) {
+        this.parallelUpdateEnabled = parallelUpdateEnabled;
+    }
+
+    public CallCardRouteSheetStore getCallCardRouteSheetStore() {
+        return callCardRouteSheetStore;
+    }
+
+    public void setCallCardRouteSheetStore(CallCardRouteSheetStore callCardRouteSheetStore) {
+        this.callCardRouteSheetStore = callCardRouteSheetStore;
+    }
+
     public IAppSettingsComponent getAppSettingsComponent() {
         return appSettingsComponent;
     }
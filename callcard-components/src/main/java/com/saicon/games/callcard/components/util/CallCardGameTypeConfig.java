@@ -0,0 +1,89 @@
+package com.saicon.games.callcard.components.util;
+
+import com.saicon.games.appsettings.dto.AppSettingsDTO;
+import com.saicon.games.callcard.util.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * Parsed, immutable CallCard configuration of a GameType, read from the GAME_TYPE scoped application settings.
+ */
+public final class CallCardGameTypeConfig {
+    private final static Logger LOGGER = LoggerFactory.getLogger(CallCardGameTypeConfig.class);
+
+    public static final CallCardGameTypeConfig DEFAULT = new CallCardGameTypeConfig(0, false, Collections.<String>emptyList());
+
+    private final int previousValues;
+    private final boolean includeGeoInfo;
+    private final List<String> productTypeCategories;
+
+    public CallCardGameTypeConfig(int previousValues, boolean includeGeoInfo, List<String> productTypeCategories) {
+        this.previousValues = previousValues;
+        this.includeGeoInfo = includeGeoInfo;
+        this.productTypeCategories = Collections.unmodifiableList(new ArrayList<>(productTypeCategories));
+    }
+
+    /**
+     * Parse the CallCard settings of an application. Unknown keys are ignored and malformed values fall back to their defaults.
+     */
+    public static CallCardGameTypeConfig parse(String applicationId, List<AppSettingsDTO> appSettings) {
+        int previousValues = 0;
+        boolean includeGeoInfo = false;
+        List<String> productTypeCategories = new ArrayList<String>();
+
+        if (appSettings != null && appSettings.size() > 0) {
+            for (AppSettingsDTO appSetting : appSettings) {
+                if (appSetting == null || appSetting.getKey() == null)
+                    continue;
+
+                switch (appSetting.getKey()) {
+                    case Constants.APP_SETTING_KEY_PREVIOUS_VISITS_SUMMARY:
+                        try {
+                            previousValues = Integer.parseInt(appSetting.getValue());
+                        } catch (NumberFormatException e) {
+                            LOGGER.error("Invalid application setting format for ApplicationId=" + applicationId + " AppSettingKey=" + appSetting.getKey() + " Value=" + appSetting.getValue());
+                        }
+                        break;
+                    case Constants.APP_SETTING_KEY_INCLUDE_VISITS_GEO_INFO:
+                        includeGeoInfo = Boolean.parseBoolean(appSetting.getValue());
+                        break;
+                    case Constants.APP_SETTING_KEY_PRODUCT_TYPE_CATEGORIES:
+                        if (appSetting.getValue() != null) {
+                            StringTokenizer tokenizer = new StringTokenizer(appSetting.getValue(), ",");
+                            while (tokenizer.hasMoreElements()) {
+                                productTypeCategories.add((String) tokenizer.nextElement());
+                            }
+                        }
+                        break;
+                }
+            }
+        }
+
+        return new CallCardGameTypeConfig(previousValues, includeGeoInfo, productTypeCategories);
+    }
+
+    public int getPreviousValues() {
+        return previousValues;
+    }
+
+    public boolean isIncludeGeoInfo() {
+        return includeGeoInfo;
+    }
+
+    public List<String> getProductTypeCategories() {
+        return productTypeCategories;
+    }
+
+    @Override
+    public String toString() {
+        return "CallCard configuration: \n" +
+                "- Number of previous values to summarize: " + previousValues + "\n" +
+                "- Include Geographical info for CallCardRefUsers: " + includeGeoInfo + "\n" +
+                "- Product type categories: " + productTypeCategories;
+    }
+}
@@ -0,0 +1,149 @@
+package com.saicon.games.callcard.components.util;
+
+import com.saicon.games.callcard.util.Constants;
+import com.saicon.games.callcard.ws.dto.CallCardActionItemAttributesDTO;
+import com.saicon.games.callcard.ws.dto.CallCardActionItemDTO;
+import com.saicon.games.callcard.ws.dto.CallCardActionsDTO;
+import com.saicon.games.callcard.ws.dto.CallCardGroupDTO;
+import com.saicon.games.callcard.ws.dto.CallCardRefUserDTO;
+import com.saicon.multiplayer.dto.KeyValueDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the CallCard groups of a template from its skeleton and the request's summaries, geographical info and
+ * product categories. Holds no state, so the template and pending-card paths share it.
+ */
+public final class CallCardGroupAssembler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardGroupAssembler.class);
+
+    private CallCardGroupAssembler() {
+    }
+
+    /**
+     * Assemble the CallCard groups of a template for the given user: one CallCardRefUserDTO per template POS,
+     * with previous visit summaries, geographical info and product categories filled in.
+     * Summaries and geographical info are expected to be already collected for the template refUsers.
+     * Returns null when the template has no active POS.
+     */
+    public static List<CallCardGroupDTO> buildCallCardGroups(CallCardTemplateSkeleton skeleton, String userId,
+                                                             CallCardSummaryIndex refUserItemAttributeSummaries,
+                                                             Map<String, List<KeyValueDTO>> refUserAdditionalInfoMap,
+                                                             CallCardPropertyDictionary propertyDictionary,
+                                                             Map<String, Integer> brandProductTypeCategoriesMap) {
+        if (skeleton.getPos().isEmpty())
+            return null;
+
+        // resolve the template properties once per template, not once per POS
+        List<CallCardTemplateSkeleton.Item> items = skeleton.getItems();
+        int[][] itemPropertyOrdinals = new int[items.size()][];
+        for (int i = 0; i < items.size(); i++) {
+            List<String> propertyNames = items.get(i).getPropertyNames();
+            itemPropertyOrdinals[i] = new int[propertyNames.size()];
+            for (int j = 0; j < propertyNames.size(); j++)
+                itemPropertyOrdinals[i][j] = propertyDictionary.ordinalOf(propertyNames.get(j));
+        }
+
+        Map<Integer, List<CallCardRefUserDTO>> groupUserDTOs = new HashMap<>();
+
+        LOGGER.info("-- List of POS : size= {}", skeleton.getPos().size());
+        for (CallCardTemplateSkeleton.Pos pos : skeleton.getPos()) {
+
+            List<CallCardRefUserDTO> userDTOs;
+
+            if (groupUserDTOs.containsKey(pos.getGroupId()))
+                userDTOs = groupUserDTOs.get(pos.getGroupId());
+            else if (pos.getGroupId() == null && groupUserDTOs.containsKey(CallCardGroupDTO.UNASSIGNED_POS_GROUP))
+                userDTOs = groupUserDTOs.get(CallCardGroupDTO.UNASSIGNED_POS_GROUP);
+            else
+                userDTOs = new ArrayList<CallCardRefUserDTO>();
+
+            List<CallCardActionsDTO> userActions = new ArrayList<>();
+            if (skeleton.getItems().size() > 0) {
+                List<CallCardActionItemDTO> actionItems = new ArrayList<CallCardActionItemDTO>(skeleton.getItems().size());
+
+                Map<String, CallCardActionItemAttributesDTO[]> itemAttributeSummariesMap = refUserItemAttributeSummaries.getItems(pos.getRefUserId());
+
+                for (int i = 0; i < items.size(); i++) {
+                    CallCardTemplateSkeleton.Item item = items.get(i);
+
+                    CallCardActionItemAttributesDTO[] itemAttributeSummaries = null;
+                    if (itemAttributeSummariesMap != null)
+                        itemAttributeSummaries = itemAttributeSummariesMap.get(item.getItemId());
+
+                    List<CallCardActionItemAttributesDTO> actionItemsAttributes = new ArrayList<CallCardActionItemAttributesDTO>(item.getPropertyNames().size());
+                    for (int j = 0; j < item.getPropertyNames().size(); j++) {
+                        String propertyName = item.getPropertyNames().get(j);
+                        int propertyOrdinal = itemPropertyOrdinals[i][j];
+
+                        CallCardActionItemAttributesDTO summary = null;
+                        if (itemAttributeSummaries != null && propertyOrdinal != CallCardPropertyDictionary.UNKNOWN)
+                            summary = itemAttributeSummaries[propertyOrdinal];
+
+                        CallCardPropertyDictionary.Property property = propertyOrdinal != CallCardPropertyDictionary.UNKNOWN ? propertyDictionary.getProperty(propertyOrdinal) : null;
+
+                        actionItemsAttributes.add(new CallCardActionItemAttributesDTO(
+                                null,
+                                property != null ? property.getMetadataKeyId() : null,
+                                propertyName,
+                                property != null ? property.getDataTypeName() : null,
+                                null,
+                                null,
+                                null,
+                                CallCardRefUserDTO.SELL,
+                                null,
+                                summary != null ? summary.getRefPropertyValue() : null));
+                    }
+
+                    int categoryId = 0;
+                    if (item.getItemTypeId() == Constants.ITEM_TYPE_BRAND_PRODUCT)
+                        categoryId = brandProductTypeCategoriesMap.get(item.getItemId()) != null ? brandProductTypeCategoriesMap.get(item.getItemId()) : 0;
+
+                    actionItems.add(new CallCardActionItemDTO(item.getItemId(), item.getItemTypeId(), actionItemsAttributes, categoryId, false));
+                }
+
+                userActions.add(new CallCardActionsDTO(actionItems, skeleton.getItemsItemTypeId(), pos.isMandatory()));
+            }
+
+            List<CallCardTemplateSkeleton.Reference> references = skeleton.getReferences(pos.getRefUserId());
+            if (references != null && references.size() > 0) {
+
+                boolean mandatorySurveyExists = false; // Mark if there is at list one mandatory Survey
+
+                List<CallCardActionItemDTO> actionItems = new ArrayList<CallCardActionItemDTO>(references.size());
+                for (CallCardTemplateSkeleton.Reference reference : references) {
+                    if ((reference.getItemTypeId() == Constants.ITEM_TYPE_QUIZ) && reference.isMandatory())
+                        mandatorySurveyExists = true;
+
+                    int categoryId = 0;
+                    if (reference.getItemTypeId() == Constants.ITEM_TYPE_BRAND_PRODUCT)
+                        categoryId = brandProductTypeCategoriesMap.get(reference.getItemId()) != null ? brandProductTypeCategoriesMap.get(reference.getItemId()) : 0;
+
+                    actionItems.add(new CallCardActionItemDTO(reference.getItemId(), reference.getItemTypeId(), null, categoryId, reference.isMandatory()));
+                }
+
+                userActions.add(new CallCardActionsDTO(actionItems, references.get(0).getItemTypeId(), mandatorySurveyExists));
+            }
+
+            List<KeyValueDTO> additionalRefUserInfo = refUserAdditionalInfoMap != null ? refUserAdditionalInfoMap.get(pos.getRefUserId()) : null;
+
+            CallCardRefUserDTO refUserDTO = new CallCardRefUserDTO(null, pos.getRefUserId(), userActions, null, null, pos.isMandatory(), null, CallCardRefUserDTO.SELL, null, null, userId, additionalRefUserInfo, true);
+
+            userDTOs.add(refUserDTO);
+
+            groupUserDTOs.put(pos.getGroupId() != null ? pos.getGroupId() : CallCardGroupDTO.UNASSIGNED_POS_GROUP, userDTOs); // Out Of Route POS are in group 0
+        }
+
+        List<CallCardGroupDTO> groupDTOs = new ArrayList<>();
+        for (Map.Entry<Integer, List<CallCardRefUserDTO>> groupUserDTO : groupUserDTOs.entrySet()) {
+            groupDTOs.add(new CallCardGroupDTO(groupUserDTO.getKey(), groupUserDTO.getValue(), skeleton.getCallCardTemplateId()));
+        }
+
+        return groupDTOs;
+    }
+}
@@ -0,0 +1,138 @@
+package com.saicon.games.callcard.components.util;
+
+import com.saicon.games.metadata.dto.MetadataKeyDTO;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable, versioned dictionary of the CallCard index properties (metadata keys of ITEM_TYPE_CALL_CARD_INDEX).
+ * Every property gets a small int ordinal, so per-request code can bucket and compare properties by ordinal
+ * instead of by name. Name lookups are case-insensitive.
+ */
+public final class CallCardPropertyDictionary {
+
+    public static final int UNKNOWN = -1;
+
+    public static final CallCardPropertyDictionary EMPTY = new CallCardPropertyDictionary(0, Collections.<MetadataKeyDTO>emptyList());
+
+    private final long version;
+    private final List<Property> properties;
+    private final Map<String, Property> propertiesByName; //< lower-case name, Property>
+    private final Map<String, String> typesMap; //< name, data type name>
+    private final Map<String, String> idsMap; //< name, metadata key id>
+
+    public CallCardPropertyDictionary(long version, List<MetadataKeyDTO> metadataKeys) {
+        this.version = version;
+
+        List<Property> properties = new ArrayList<>(metadataKeys.size());
+        Map<String, Property> propertiesByName = new HashMap<>();
+        Map<String, String> typesMap = new LinkedHashMap<>();
+        Map<String, String> idsMap = new LinkedHashMap<>();
+
+        for (MetadataKeyDTO metadataKey : metadataKeys) {
+            if (metadataKey == null || metadataKey.getMetadataKeyName() == null)
+                continue;
+
+            String lowerCaseName = metadataKey.getMetadataKeyName().toLowerCase(Locale.ROOT);
+            if (propertiesByName.containsKey(lowerCaseName))
+                continue;
+
+            Property property = new Property(properties.size(), metadataKey.getMetadataKeyName(), metadataKey.getMetadataKeyId(), metadataKey.getDataTypeName());
+            properties.add(property);
+            propertiesByName.put(lowerCaseName, property);
+            typesMap.put(property.getName(), property.getDataTypeName());
+            idsMap.put(property.getName(), property.getMetadataKeyId());
+        }
+
+        this.properties = Collections.unmodifiableList(properties);
+        this.propertiesByName = Collections.unmodifiableMap(propertiesByName);
+        this.typesMap = Collections.unmodifiableMap(typesMap);
+        this.idsMap = Collections.unmodifiableMap(idsMap);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return properties.size();
+    }
+
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+    public Property getProperty(int ordinal) {
+        return properties.get(ordinal);
+    }
+
+    public Property getProperty(String name) {
+        return name == null ? null : propertiesByName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Ordinal of the property, or {@link #UNKNOWN} if the name is not a CallCard index property.
+     */
+    public int ordinalOf(String name) {
+        Property property = getProperty(name);
+        return property == null ? UNKNOWN : property.getOrdinal();
+    }
+
+    /**
+     * The dictionary spelling of a property name, or the name itself if it is unknown.
+     */
+    public String canonicalName(String name) {
+        Property property = getProperty(name);
+        return property == null ? name : property.getName();
+    }
+
+    /**
+     * Property name to data type name, in ordinal order.
+     */
+    public Map<String, String> getTypesMap() {
+        return typesMap;
+    }
+
+    /**
+     * Property name to metadata key id, in ordinal order.
+     */
+    public Map<String, String> getIdsMap() {
+        return idsMap;
+    }
+
+    public static final class Property {
+        private final int ordinal;
+        private final String name;
+        private final String metadataKeyId;
+        private final String dataTypeName;
+
+        Property(int ordinal, String name, String metadataKeyId, String dataTypeName) {
+            this.ordinal = ordinal;
+            this.name = name;
+            this.metadataKeyId = metadataKeyId;
+            this.dataTypeName = dataTypeName;
+        }
+
+        public int getOrdinal() {
+            return ordinal;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getMetadataKeyId() {
+            return metadataKeyId;
+        }
+
+        public String getDataTypeName() {
+            return dataTypeName;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.saicon.games.callcard.components.util;
+
+import com.saicon.games.callcard.entity.CallCardRefUserIndex;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between the stored index rows of a CallCardRefUser and the rows of an incoming submission, matched on
+ * (itemId, itemTypeId, propertyId, type). A matched row whose value, status, submit date or amount changed is updated
+ * in place; unmatched incoming rows are inserted and unmatched stored rows deleted. Unchanged rows are left alone, so
+ * a client resending the full visit writes only what changed.
+ *
+ * Rows sharing a key are matched in order.
+ */
+public final class CallCardRefUserIndexDiff {
+
+    /**
+     * SUBMIT_DATE is a SQL Server datetime, stored rounded to .000, .003 or .007 seconds.
+     */
+    private static final long SUBMIT_DATE_PRECISION_MILLIS = 3;
+
+    /**
+     * AMOUNT is a decimal(7,2): SQL Server rounds the incoming amount half up to two decimals when storing it.
+     */
+    private static final int AMOUNT_SCALE = 2;
+
+    private final Map<String, Deque<CallCardRefUserIndex>> stored = new HashMap<>(); //< Index key, Stored rows>
+    private final List<CallCardRefUserIndex> inserts = new ArrayList<>();
+    private final List<CallCardRefUserIndex> updates = new ArrayList<>();
+    private int unchanged;
+
+    public CallCardRefUserIndexDiff(List<CallCardRefUserIndex> storedIndexes) {
+        if (storedIndexes == null)
+            return;
+
+        for (CallCardRefUserIndex index : storedIndexes) {
+            Deque<CallCardRefUserIndex> rows = stored.get(key(index));
+            if (rows == null) {
+                rows = new ArrayDeque<>();
+                stored.put(key(index), rows);
+            }
+            rows.add(index);
+        }
+    }
+
+    /**
+     * Add an incoming row. A matched stored row takes the incoming values and is returned by {@link #getUpdates()}
+     * when they differ; otherwise the incoming row is returned by {@link #getInserts()}.
+     */
+    public void add(CallCardRefUserIndex incoming) {
+        Deque<CallCardRefUserIndex> rows = stored.get(key(incoming));
+        CallCardRefUserIndex match = rows != null ? rows.poll() : null;
+        if (match == null) {
+            inserts.add(incoming);
+            return;
+        }
+
+        if (sameValues(match, incoming)) {
+            unchanged++;
+            return;
+        }
+
+        match.setPropertyValue(incoming.getPropertyValue());
+        match.setStatus(incoming.getStatus());
+        match.setSubmitDate(incoming.getSubmitDate());
+        match.setAmount(incoming.getAmount());
+        updates.add(match);
+    }
+
+    public List<CallCardRefUserIndex> getInserts() {
+        return inserts;
+    }
+
+    public List<CallCardRefUserIndex> getUpdates() {
+        return updates;
+    }
+
+    /**
+     * Stored rows not matched by any incoming row.
+     */
+    public List<CallCardRefUserIndex> getDeletes() {
+        List<CallCardRefUserIndex> deletes = new ArrayList<>();
+        for (Deque<CallCardRefUserIndex> rows : stored.values())
+            deletes.addAll(rows);
+        return deletes;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    @Override
+    public String toString() {
+        return "inserts=" + inserts.size() + " updates=" + updates.size() + " deletes=" + getDeletes().size() + " unchanged=" + unchanged;
+    }
+
+    private static boolean sameValues(CallCardRefUserIndex stored, CallCardRefUserIndex incoming) {
+        return stored.getStatus() == incoming.getStatus()
+                && equal(stored.getPropertyValue(), incoming.getPropertyValue())
+                && sameDate(stored.getSubmitDate(), incoming.getSubmitDate())
+                && sameAmount(stored.getAmount(), incoming.getAmount());
+    }
+
+    private static boolean sameDate(Date stored, Date incoming) {
+        if (stored == null || incoming == null)
+            return stored == incoming;
+        return Math.abs(stored.getTime() - incoming.getTime()) <= SUBMIT_DATE_PRECISION_MILLIS;
+    }
+
+    private static boolean sameAmount(BigDecimal stored, BigDecimal incoming) {
+        if (stored == null || incoming == null)
+            return stored == incoming;
+        return stored.setScale(AMOUNT_SCALE, RoundingMode.HALF_UP).compareTo(incoming.setScale(AMOUNT_SCALE, RoundingMode.HALF_UP)) == 0;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static String key(CallCardRefUserIndex index) {
+        String itemId = index.getItemId() != null ? index.getItemId().toUpperCase() : "";
+        Integer itemTypeId = index.getItemTypeId() != null ? index.getItemTypeId().getItemTypeId() : null;
+        return itemId + "|" + itemTypeId + "|" + index.getPropertyId() + "|" + index.getType();
+    }
+}
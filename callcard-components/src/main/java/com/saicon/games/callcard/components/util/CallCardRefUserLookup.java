@@ -0,0 +1,65 @@
+package com.saicon.games.callcard.components.util;
+
+import com.saicon.games.callcard.entity.CallCardRefUser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The existing CallCardRefUsers a submission refers to, fetched up front and indexed by id and by client-generated
+ * internal ref no, so that resolving each incoming refUser is a map lookup instead of a select. Keys are compared
+ * ignoring case, as the database does.
+ */
+public final class CallCardRefUserLookup {
+
+    private final Map<String, CallCardRefUser> byId = new HashMap<>(); //< CallCardRefUserId, CallCardRefUser>
+    private final Map<String, List<CallCardRefUser>> byInternalRefNo = new HashMap<>(); //< Internal Ref No, CallCardRefUsers>
+
+    public CallCardRefUserLookup(List<CallCardRefUser> refUsersById, List<CallCardRefUser> refUsersByInternalRefNo) {
+        if (refUsersById != null) {
+            for (CallCardRefUser refUser : refUsersById)
+                byId.put(refUser.getCallCardRefUserId().toUpperCase(), refUser);
+        }
+        if (refUsersByInternalRefNo != null) {
+            for (CallCardRefUser refUser : refUsersByInternalRefNo)
+                addByInternalRefNo(refUser);
+        }
+    }
+
+    public CallCardRefUser getById(String callCardRefUserId) {
+        return byId.get(callCardRefUserId.toUpperCase());
+    }
+
+    /**
+     * CallCardRefUsers of the CallCard with the given internal ref no; more than one means the number is ambiguous.
+     */
+    public List<CallCardRefUser> listByInternalRefNo(String internalRefNo) {
+        List<CallCardRefUser> refUsers = byInternalRefNo.get(internalRefNo.toUpperCase());
+        return refUsers != null ? refUsers : Collections.<CallCardRefUser>emptyList();
+    }
+
+    /**
+     * Register a CallCardRefUser created while processing the submission, so a repeated internal ref no resolves to it.
+     */
+    public void add(CallCardRefUser refUser) {
+        if (refUser.getCallCardRefUserId() != null)
+            byId.put(refUser.getCallCardRefUserId().toUpperCase(), refUser);
+        addByInternalRefNo(refUser);
+    }
+
+    private void addByInternalRefNo(CallCardRefUser refUser) {
+        if (refUser.getInternalRefNo() == null)
+            return;
+
+        String key = refUser.getInternalRefNo().toUpperCase();
+        List<CallCardRefUser> refUsers = byInternalRefNo.get(key);
+        if (refUsers == null) {
+            refUsers = new ArrayList<>(1);
+            byInternalRefNo.put(key, refUsers);
+        }
+        refUsers.add(refUser);
+    }
+}
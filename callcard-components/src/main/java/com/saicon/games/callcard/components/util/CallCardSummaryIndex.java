@@ -0,0 +1,77 @@
+package com.saicon.games.callcard.components.util;
+
+import com.saicon.games.callcard.ws.dto.CallCardActionItemAttributesDTO;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Previous-value summaries indexed as refUserId → itemId → property ordinal, so that merging a summary into
+ * a template attribute is two hash lookups and an array access. The ordinals are those of the
+ * {@link CallCardPropertyDictionary} the index was built with.
+ */
+public final class CallCardSummaryIndex {
+
+    private final Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> summaries; //< RefUserId, <ItemId, Summaries>>
+    private final Map<String, Map<String, CallCardActionItemAttributesDTO[]>> index; //< RefUserId, <ItemId, Summaries by ordinal>>
+
+    public CallCardSummaryIndex(Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> summaries, CallCardPropertyDictionary dictionary) {
+        this.summaries = summaries != null ? summaries : Collections.<String, Map<String, List<CallCardActionItemAttributesDTO>>>emptyMap();
+        this.index = new HashMap<>(this.summaries.size() * 2);
+
+        for (Map.Entry<String, Map<String, List<CallCardActionItemAttributesDTO>>> refUserEntry : this.summaries.entrySet()) {
+            if (refUserEntry.getValue() == null)
+                continue;
+
+            Map<String, CallCardActionItemAttributesDTO[]> items = new HashMap<>(refUserEntry.getValue().size() * 2);
+            for (Map.Entry<String, List<CallCardActionItemAttributesDTO>> itemEntry : refUserEntry.getValue().entrySet()) {
+                if (itemEntry.getValue() == null || itemEntry.getValue().isEmpty())
+                    continue;
+
+                CallCardActionItemAttributesDTO[] byOrdinal = new CallCardActionItemAttributesDTO[dictionary.size()];
+                for (CallCardActionItemAttributesDTO summary : itemEntry.getValue()) {
+                    if (summary == null)
+                        continue;
+
+                    int ordinal = dictionary.ordinalOf(summary.getPropertyName());
+                    if (ordinal != CallCardPropertyDictionary.UNKNOWN && byOrdinal[ordinal] == null) // first match wins, as in the former linear scan
+                        byOrdinal[ordinal] = summary;
+                }
+                items.put(itemEntry.getKey(), byOrdinal);
+            }
+            index.put(refUserEntry.getKey(), items);
+        }
+    }
+
+    public static CallCardSummaryIndex empty() {
+        return new CallCardSummaryIndex(null, CallCardPropertyDictionary.EMPTY);
+    }
+
+    /**
+     * Summaries of a refUser by itemId, each array indexed by property ordinal; null if the refUser has no summaries.
+     */
+    public Map<String, CallCardActionItemAttributesDTO[]> getItems(String refUserId) {
+        return index.get(refUserId);
+    }
+
+    public CallCardActionItemAttributesDTO get(String refUserId, String itemId, int propertyOrdinal) {
+        if (propertyOrdinal == CallCardPropertyDictionary.UNKNOWN)
+            return null;
+
+        Map<String, CallCardActionItemAttributesDTO[]> items = index.get(refUserId);
+        if (items == null)
+            return null;
+
+        CallCardActionItemAttributesDTO[] byOrdinal = items.get(itemId);
+        return byOrdinal != null && propertyOrdinal < byOrdinal.length ? byOrdinal[propertyOrdinal] : null;
+    }
+
+    /**
+     * The summaries as produced by summarization: refUserId → itemId → summaries.
+     */
+    public Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> asMap() {
+        return summaries;
+    }
+}
@@ -0,0 +1,187 @@
+package com.saicon.games.callcard.components.util;
+
+import com.saicon.games.callcard.entity.CallCardTemplateEntry;
+import com.saicon.games.callcard.entity.CallCardTemplatePOS;
+import com.saicon.games.callcard.entity.CallCardTemplateUserReferences;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/**
+ * Compiled, immutable view of a CallCardTemplate: entries sorted and tokenized, active POS and user references
+ * in query order. Holds no request-specific data (summaries, categories, metadata types), so a single instance
+ * can be shared by concurrent requests for the same (templateId, gameTypeId).
+ */
+public final class CallCardTemplateSkeleton {
+
+    private final String callCardTemplateId;
+    private final String gameTypeId;
+    private final List<Item> items;
+    private final int itemsItemTypeId;
+    private final List<Pos> pos;
+    private final Map<String, List<Reference>> references; //< RefUserId, References>
+
+    private CallCardTemplateSkeleton(String callCardTemplateId, String gameTypeId, List<Item> items, int itemsItemTypeId, List<Pos> pos, Map<String, List<Reference>> references) {
+        this.callCardTemplateId = callCardTemplateId;
+        this.gameTypeId = gameTypeId;
+        this.items = Collections.unmodifiableList(items);
+        this.itemsItemTypeId = itemsItemTypeId;
+        this.pos = Collections.unmodifiableList(pos);
+        this.references = Collections.unmodifiableMap(references);
+    }
+
+    /**
+     * Compile a skeleton from the entries and the active POS / user references of a template.
+     * Entries without properties are skipped, as they never produce an action item.
+     */
+    public static CallCardTemplateSkeleton compile(String callCardTemplateId, String gameTypeId, List<CallCardTemplateEntry> templateEntries,
+                                                   List<CallCardTemplatePOS> templatePOSs, List<CallCardTemplateUserReferences> templateReferences) {
+        List<Item> items = new ArrayList<>();
+        int itemsItemTypeId = 0;
+
+        if (templateEntries != null && templateEntries.size() > 0) {
+            List<CallCardTemplateEntry> sortedEntries = new ArrayList<>(templateEntries);
+            Collections.sort(sortedEntries, new CallCardTemplateEntryComparator());
+
+            for (CallCardTemplateEntry templateEntry : sortedEntries) {
+                if (StringUtils.isBlank(templateEntry.getProperties()))
+                    continue;
+
+                List<String> propertyNames = new ArrayList<>();
+                StringTokenizer properties = new StringTokenizer(templateEntry.getProperties(), ","); //split properties
+                while (properties.hasMoreElements()) {
+                    propertyNames.add((String) properties.nextElement());
+                }
+
+                itemsItemTypeId = templateEntry.getItemTypeId().getItemTypeId();
+                items.add(new Item(templateEntry.getItemId(), itemsItemTypeId, propertyNames));
+            }
+        }
+
+        List<Pos> pos = new ArrayList<>();
+        if (templatePOSs != null) {
+            for (CallCardTemplatePOS templatePOS : templatePOSs) {
+                pos.add(new Pos(templatePOS.getRefUserId().getUserId(), templatePOS.isMandatory(), templatePOS.getGroupId()));
+            }
+        }
+
+        Map<String, List<Reference>> references = new LinkedHashMap<>();
+        if (templateReferences != null) {
+            for (CallCardTemplateUserReferences templateReference : templateReferences) {
+                String refUserId = templateReference.getRefUserId().getUserId();
+                List<Reference> refUserReferences = references.get(refUserId);
+                if (refUserReferences == null) {
+                    refUserReferences = new ArrayList<>();
+                    references.put(refUserId, refUserReferences);
+                }
+                refUserReferences.add(new Reference(templateReference.getItemId(), templateReference.getItemTypeId().getItemTypeId(), templateReference.isMandatory()));
+            }
+            for (Map.Entry<String, List<Reference>> entry : references.entrySet()) {
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+            }
+        }
+
+        return new CallCardTemplateSkeleton(callCardTemplateId, gameTypeId, items, itemsItemTypeId, pos, references);
+    }
+
+    public String getCallCardTemplateId() {
+        return callCardTemplateId;
+    }
+
+    public String getGameTypeId() {
+        return gameTypeId;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public int getItemsItemTypeId() {
+        return itemsItemTypeId;
+    }
+
+    public List<Pos> getPos() {
+        return pos;
+    }
+
+    public List<Reference> getReferences(String refUserId) {
+        return references.get(refUserId);
+    }
+
+    public static final class Item {
+        private final String itemId;
+        private final int itemTypeId;
+        private final List<String> propertyNames;
+
+        Item(String itemId, int itemTypeId, List<String> propertyNames) {
+            this.itemId = itemId;
+            this.itemTypeId = itemTypeId;
+            this.propertyNames = Collections.unmodifiableList(propertyNames);
+        }
+
+        public String getItemId() {
+            return itemId;
+        }
+
+        public int getItemTypeId() {
+            return itemTypeId;
+        }
+
+        public List<String> getPropertyNames() {
+            return propertyNames;
+        }
+    }
+
+    public static final class Pos {
+        private final String refUserId;
+        private final boolean mandatory;
+        private final Integer groupId;
+
+        Pos(String refUserId, boolean mandatory, Integer groupId) {
+            this.refUserId = refUserId;
+            this.mandatory = mandatory;
+            this.groupId = groupId;
+        }
+
+        public String getRefUserId() {
+            return refUserId;
+        }
+
+        public boolean isMandatory() {
+            return mandatory;
+        }
+
+        public Integer getGroupId() {
+            return groupId;
+        }
+    }
+
+    public static final class Reference {
+        private final String itemId;
+        private final int itemTypeId;
+        private final boolean mandatory;
+
+        Reference(String itemId, int itemTypeId, boolean mandatory) {
+            this.itemId = itemId;
+            this.itemTypeId = itemTypeId;
+            this.mandatory = mandatory;
+        }
+
+        public String getItemId() {
+            return itemId;
+        }
+
+        public int getItemTypeId() {
+            return itemTypeId;
+        }
+
+        public boolean isMandatory() {
+            return mandatory;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.saicon.games.callcard.dao;
+
+import com.saicon.games.callcard.entity.CallCardRefUserIndex;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Bulk insert of CALL_CARD_REFUSER_INDEX rows with JDBC batches on the connection of the current transaction,
+ * bypassing the persistence context. Ids are generated on the client, as the entity's UUID generator does, so a
+ * submission of thousands of rows takes one round trip per {@code batchSize} rows.
+ *
+ * The inserted rows are not managed entities: they are visible to later queries of the transaction but not to
+ * entities already loaded.
+ */
+public class CallCardRefUserIndexBatchWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardRefUserIndexBatchWriter.class);
+
+    private static final String INSERT_SQL = "INSERT INTO CALL_CARD_REFUSER_INDEX "
+            + "(CALL_CARD_REFUSER_INDEX_ID, CALL_CARD_REFUSER_ID, ITEM_ID, ITEM_TYPE_ID, PROPERTY_ID, PROPERTY_VALUE, STATUS, SUBMIT_DATE, AMOUNT, TYPE) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final EntityManager entityManager;
+    private final int batchSize;
+
+    public CallCardRefUserIndexBatchWriter(EntityManager entityManager, int batchSize) {
+        this.entityManager = entityManager;
+        this.batchSize = batchSize > 0 ? batchSize : 500;
+    }
+
+    /**
+     * Insert the given rows, assigning the ids of those without one. Must be called within a transaction.
+     *
+     * @return Number of rows inserted
+     */
+    public int insert(final List<CallCardRefUserIndex> indexes) {
+        if (indexes == null || indexes.isEmpty())
+            return 0;
+
+        Session session = entityManager.unwrap(Session.class);
+        session.flush(); // the CallCardRefUsers the rows refer to may still be pending
+
+        long start = System.currentTimeMillis();
+        session.doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                int pending = 0;
+                for (CallCardRefUserIndex index : indexes) {
+                    if (index.getCallCardRefUserIndexId() == null)
+                        index.setCallCardRefUserIndexId(UUID.randomUUID().toString().toUpperCase());
+
+                    statement.setString(1, index.getCallCardRefUserIndexId());
+                    statement.setString(2, index.getCallCardRefUserId().getCallCardRefUserId());
+                    if (index.getItemId() != null)
+                        statement.setString(3, index.getItemId());
+                    else
+                        statement.setNull(3, Types.VARCHAR);
+                    statement.setInt(4, index.getItemTypeId().getItemTypeId());
+                    statement.setString(5, index.getPropertyId());
+                    statement.setString(6, index.getPropertyValue());
+                    statement.setInt(7, index.getStatus());
+                    statement.setTimestamp(8, new Timestamp(index.getSubmitDate().getTime()));
+                    if (index.getAmount() != null)
+                        statement.setBigDecimal(9, index.getAmount());
+                    else
+                        statement.setNull(9, Types.DECIMAL);
+                    statement.setInt(10, index.getType());
+                    statement.addBatch();
+
+                    if (++pending == batchSize) {
+                        statement.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0)
+                    statement.executeBatch();
+            }
+        });
+
+        LOGGER.debug("-- Inserted CallCardRefUser indexes : rows={} batchSize={} millis={}", indexes.size(), batchSize, System.currentTimeMillis() - start);
+        return indexes.size();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+}
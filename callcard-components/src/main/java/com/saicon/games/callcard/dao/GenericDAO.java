@@ -3,13 +3,31 @@ package com.saicon.games.callcard.dao;
 import com.saicon.games.callcard.util.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.hibernate.ScrollMode;
 import org.hibernate.Session;
 
 import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.Query;
+import javax.persistence.metamodel.EntityType;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
  * Generic DAO implementation providing basic CRUD operations for entities.
@@ -20,10 +38,19 @@ import java.util.List;
  */
 public class GenericDAO<T, PK extends Serializable> implements IGenericDAO<T, PK> {
     private static final Logger LOGGER = LoggerFactory.getLogger(GenericDAO.class);
+    private static final String MISSING = "";
 
     private final Class<T> type;
     private final EntityManager entityManager;
 
+    private final ConcurrentMap<String, String> queryNames = new ConcurrentHashMap<>(); //< Query name, Registered named query name or MISSING>
+    private final AtomicLong queryNameHits = new AtomicLong();
+    private final AtomicLong queryNameMisses = new AtomicLong();
+
+    private int flushInterval = 500;
+    private int inListSize = InLists.DEFAULT_MAX_SIZE;
+    private int fetchSize = 500;
+
     public GenericDAO(Class<T> type, EntityManager entityManager) {
         this.type = type;
         this.entityManager = entityManager;
@@ -55,18 +82,81 @@ public class GenericDAO<T, PK extends Serializable> implements IGenericDAO<T, PK
     }
 
     @Override
-    @SuppressWarnings("unchecked")
-    public List<T> listAll() {
-        String queryName = type.getName() + ".listAll";
+    public void createAll(Collection<T> newInstances) {
+        if (newInstances == null || newInstances.isEmpty())
+            return;
+
+        List<T> pending = new ArrayList<>(Math.min(newInstances.size(), flushInterval));
+        for (T newInstance : newInstances) {
+            entityManager.persist(newInstance);
+            pending.add(newInstance);
+            if (pending.size() == flushInterval)
+                flushAndDetach(pending);
+        }
+        if (!pending.isEmpty())
+            flushAndDetach(pending);
+    }
 
-        Query q = findQuery(queryName);
+    @Override
+    public void updateAll(Collection<T> transientObjects) {
+        if (transientObjects == null || transientObjects.isEmpty())
+            return;
+
+        List<T> pending = new ArrayList<>(Math.min(transientObjects.size(), flushInterval));
+        for (T transientObject : transientObjects) {
+            pending.add(entityManager.merge(transientObject));
+            if (pending.size() == flushInterval)
+                flushAndDetach(pending);
+        }
+        if (!pending.isEmpty())
+            flushAndDetach(pending);
+    }
 
-        if (q == null) {
-            queryName = type.getSimpleName() + ".listAll";
-            q = findQuery(queryName);
+    @Override
+    public int deleteAllByIds(Collection<PK> ids) {
+        if (ids == null || ids.isEmpty())
+            return 0;
+
+        EntityType<T> entity = entityManager.getMetamodel().entity(type);
+        String jpql = "DELETE FROM " + entity.getName() + " e WHERE e." + getIdName(entity) + " IN (:ids)";
+
+        int deleted = 0;
+        for (List<PK> chunk : chunks(ids))
+            deleted += entityManager.createQuery(jpql).setParameter("ids", chunk).executeUpdate();
+        return deleted;
+    }
+
+    @Override
+    public List<T> readAll(Collection<PK> ids) {
+        if (ids == null || ids.isEmpty())
+            return new ArrayList<>();
+
+        EntityType<T> entity = entityManager.getMetamodel().entity(type);
+        String jpql = "SELECT e FROM " + entity.getName() + " e WHERE e." + getIdName(entity) + " IN (:ids)";
+
+        PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        Map<Object, T> entities = new LinkedHashMap<>(ids.size() * 2); //< Id key, Entity>
+        for (List<PK> chunk : chunks(ids)) {
+            for (T entity : entityManager.createQuery(jpql, type).setParameter("ids", chunk).getResultList())
+                entities.put(idKey(persistenceUnitUtil.getIdentifier(entity)), entity);
+        }
+
+        List<T> retList = new ArrayList<>(entities.size());
+        for (PK id : new LinkedHashSet<>(ids)) {
+            T entity = entities.remove(idKey(id));
+            if (entity != null)
+                retList.add(entity);
         }
+        retList.addAll(entities.values());
+        return retList;
+    }
 
-        Assert.notNull(q, "Could not find named query: " + queryName);
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<T> listAll() {
+        Query q = findNamedQuery("listAll");
+
+        Assert.notNull(q, "Could not find named query: " + type.getSimpleName() + ".listAll");
 
         List<T> retList = null;
         if (q != null) {
@@ -79,12 +169,28 @@ public class GenericDAO<T, PK extends Serializable> implements IGenericDAO<T, PK
     @Override
     @SuppressWarnings("unchecked")
     public List<T> queryList(String queryName, Object... args) {
-        Query q = createQuery(queryName, args);
-        if (q == null) {
-            LOGGER.error("Could not find query with name: {}", queryName);
-            return new ArrayList<>();
-        }
-        return q.getResultList();
+        List<Object[]> statements = mergedStatements(queryName, args);
+        if (statements == null)
+            return resultList(queryName, args, new ArrayList<>());
+
+        List<T> results = new ArrayList<>();
+        Set<Object> entities = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object[] statementArgs : statements)
+            addDistinct(results, resultList(queryName, statementArgs, new ArrayList<T>()), entities);
+        return results;
+    }
+
+    @Override
+    public Stream<T> queryStream(String queryName, Object... args) {
+        List<Object[]> statements = mergedStatements(queryName, args);
+        if (statements == null)
+            return stream(queryName, args);
+
+        PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        Set<Object> streamedIds = new HashSet<>();
+        return statements.stream()
+                .flatMap(statementArgs -> stream(queryName, statementArgs))
+                .filter(result -> !type.isInstance(result) || streamedIds.add(persistenceUnitUtil.getIdentifier(result)));
     }
 
     @Override
@@ -123,6 +229,20 @@ public class GenericDAO<T, PK extends Serializable> implements IGenericDAO<T, PK
         return q.getResultList();
     }
 
+    @Override
+    public Stream<T> nativeQueryStream(String query, Class classType, Object... args) {
+        Query q = entityManager.createNativeQuery(query, classType);
+
+        if (args != null && args.length > 0) {
+            int pos = 1;
+            for (Object o : args) {
+                q.setParameter(pos++, o);
+            }
+        }
+
+        return scroll(q);
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public List<T> nativeQueryListRange(String query, int fromIndex, int maxResults, Class classType) {
@@ -140,23 +260,48 @@ public class GenericDAO<T, PK extends Serializable> implements IGenericDAO<T, PK
     @Override
     @SuppressWarnings("unchecked")
     public T querySingle(String queryName, Object... args) {
-        Query q = createQuery(queryName, args);
-        if (q == null) {
-            LOGGER.error("Could not find query with name: {}", queryName);
-            return null;
+        List<Object[]> statements = statements(args);
+        if (statements == null) {
+            Query q = createQuery(queryName, args);
+            if (q == null) {
+                LOGGER.error("Could not find query with name: {}", queryName);
+                return null;
+            }
+            return (T) q.getSingleResult();
         }
-        return (T) q.getSingleResult();
+
+        List<T> results = new ArrayList<>();
+        Set<Object> entities = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object[] statementArgs : statements) {
+            List<T> statementResults = resultList(queryName, statementArgs, null);
+            if (statementResults == null)
+                return null;
+            addDistinct(results, statementResults, entities);
+        }
+
+        if (results.isEmpty())
+            throw new NoResultException("No result for query " + queryName);
+        if (results.size() > 1)
+            throw new NonUniqueResultException("Query " + queryName + " returned " + results.size() + " results instead of one");
+        return results.get(0);
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public List queryObjects(String queryName, Object... args) {
-        Query q = createQuery(queryName, args);
-        if (q == null) {
-            LOGGER.error("Could not find query with name: {}", queryName);
-            return null;
+        List<Object[]> statements = mergedStatements(queryName, args);
+        if (statements == null)
+            return resultList(queryName, args, null);
+
+        List results = new ArrayList<>();
+        Set<Object> entities = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object[] statementArgs : statements) {
+            List statementResults = resultList(queryName, statementArgs, null);
+            if (statementResults == null)
+                return null;
+            addDistinct(results, statementResults, entities);
         }
-        return q.getResultList();
+        return results;
     }
 
     @Override
@@ -243,12 +388,18 @@ public class GenericDAO<T, PK extends Serializable> implements IGenericDAO<T, PK
 
     @Override
     public int executeUpdate(String queryName, Object... args) {
-        Query q = createQuery(queryName, args);
-        if (q == null) {
-            LOGGER.error("Could not find query with name: {}", queryName);
-            return -1;
+        List<Object[]> statements = statements(args);
+        if (statements == null)
+            return update(queryName, args);
+
+        int updated = 0;
+        for (Object[] statementArgs : statements) {
+            int statementUpdated = update(queryName, statementArgs);
+            if (statementUpdated < 0)
+                return statementUpdated;
+            updated += statementUpdated;
         }
-        return q.executeUpdate();
+        return updated;
     }
 
     @Override
@@ -284,10 +435,245 @@ public class GenericDAO<T, PK extends Serializable> implements IGenericDAO<T, PK
         }
     }
 
+    public Class<T> getType() {
+        return type;
+    }
+
+    public int getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Number of entities {@link #createAll} and {@link #updateAll} write before flushing and detaching them; they
+     * flush and detach the last ones before returning, whatever the number of entities.
+     */
+    public void setFlushInterval(int flushInterval) {
+        this.flushInterval = flushInterval > 0 ? flushInterval : 500;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Rows {@link #queryStream} and {@link #nativeQueryStream} fetch per round trip, and evict per batch.
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize > 0 ? fetchSize : 500;
+    }
+
+    public int getInListSize() {
+        return inListSize;
+    }
+
+    /**
+     * Most values bound in one IN list. {@link #readAll}, {@link #deleteAllByIds}, and {@link #queryList},
+     * {@link #queryStream}, {@link #querySingle}, {@link #queryObjects} and {@link #executeUpdate} given a larger
+     * collection argument, or collection arguments over {@link InLists#DEFAULT_PARAMETER_BUDGET} values together,
+     * run one statement per chunk of values; the other named query methods reject such arguments. SQL Server accepts
+     * at most 2100 parameters per statement.
+     */
+    public void setInListSize(int inListSize) {
+        this.inListSize = inListSize > 0 ? inListSize : InLists.DEFAULT_MAX_SIZE;
+    }
+
+    /**
+     * Named query lookups answered from the resolved names.
+     */
+    public long getQueryNameHits() {
+        return queryNameHits.get();
+    }
+
+    /**
+     * Named query lookups that had to resolve the name, once per query name.
+     */
+    public long getQueryNameMisses() {
+        return queryNameMisses.get();
+    }
+
     // ============================================================
     // Private Helper Methods
     // ============================================================
 
+    /**
+     * Finds the named query registered for this entity under its fully qualified or its simple name. The name found
+     * is remembered, as is a query found under neither, so each name is resolved by trial only once: named queries
+     * do not change for the life of the persistence unit.
+     *
+     * @param queryName the query name without the entity prefix
+     * @return the Query if found, otherwise returns null
+     */
+    private Query findNamedQuery(String queryName) {
+        String registeredName = queryNames.get(queryName);
+        if (registeredName != null) {
+            queryNameHits.incrementAndGet();
+            return MISSING.equals(registeredName) ? null : entityManager.createNamedQuery(registeredName);
+        }
+
+        queryNameMisses.incrementAndGet();
+        registeredName = type.getName() + "." + queryName;
+        Query q = findQuery(registeredName);
+
+        if (q == null) {
+            registeredName = type.getSimpleName() + "." + queryName;
+            q = findQuery(registeredName);
+        }
+
+        queryNames.put(queryName, q != null ? registeredName : MISSING);
+        return q;
+    }
+
+    /**
+     * Streams the results of the named query as one statement, or nothing if it is not found.
+     */
+    private Stream<T> stream(String queryName, Object[] args) {
+        Query q = createQuery(queryName, args);
+        if (q == null) {
+            LOGGER.error("Could not find query with name: {}", queryName);
+            return Stream.empty();
+        }
+        return scroll(q);
+    }
+
+    /**
+     * Streams the results of the query from a forward-only cursor.
+     */
+    private Stream<T> scroll(Query q) {
+        org.hibernate.query.Query<?> query = q.unwrap(org.hibernate.query.Query.class);
+        query.setFetchSize(fetchSize);
+        return ScrollableResultsSpliterator.stream(query.scroll(ScrollMode.FORWARD_ONLY), entityManager.unwrap(Session.class), fetchSize);
+    }
+
+    /**
+     * Flushes the given managed entities and removes them from the persistence context.
+     */
+    private void flushAndDetach(List<T> managed) {
+        entityManager.flush();
+        for (T entity : managed)
+            entityManager.detach(entity);
+        managed.clear();
+    }
+
+    /**
+     * The id as the database compares it: String ids, uniqueidentifiers included, ignoring case.
+     */
+    private static Object idKey(Object id) {
+        return id instanceof String ? ((String) id).toUpperCase(Locale.ROOT) : id;
+    }
+
+    private static String getIdName(EntityType<?> entity) {
+        return entity.getId(entity.getIdType().getJavaType()).getName();
+    }
+
+    /**
+     * Splits the distinct ids into IN lists of at most inListSize ids, padded as described in {@link InLists}.
+     */
+    private List<List<PK>> chunks(Collection<PK> ids) {
+        return InLists.partition(ids, inListSize);
+    }
+
+    /**
+     * The arguments of each statement to run when the collection arguments do not fit in one statement, see
+     * {@link InLists#partitionAll}; null when they do. Results of the statements are merged in statement order,
+     * without the entities already merged.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object[]> statements(Object[] args) {
+        if (fitsOneStatement(args))
+            return null;
+
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++)
+            if (args[i] instanceof Collection)
+                indexes.add(i);
+
+        Collection<Object>[] lists = new Collection[indexes.size()];
+        for (int i = 0; i < lists.length; i++)
+            lists[i] = (Collection<Object>) args[indexes.get(i)];
+
+        List<Object[]> statements = new ArrayList<>();
+        for (List<List<Object>> chunks : InLists.partitionAll(inListSize, InLists.DEFAULT_PARAMETER_BUDGET, lists)) {
+            Object[] statementArgs = args.clone();
+            for (int i = 0; i < lists.length; i++)
+                statementArgs[indexes.get(i)] = chunks.get(i);
+            statements.add(statementArgs);
+        }
+        return statements;
+    }
+
+    /**
+     * The statements of a query whose results are merged into one list or stream, see {@link #statements}. A query
+     * ordering its results is rejected when it needs several statements: their merge would not be ordered.
+     */
+    private List<Object[]> mergedStatements(String queryName, Object[] args) {
+        List<Object[]> statements = statements(args);
+        if (statements != null && isOrdered(findNamedQuery(queryName)))
+            throw new IllegalArgumentException("Named query " + queryName + " orders its results: its collection arguments must fit in one statement, at most "
+                    + inListSize + " values each and " + InLists.DEFAULT_PARAMETER_BUDGET + " together");
+        return statements;
+    }
+
+    private static boolean isOrdered(Query q) {
+        return q instanceof org.hibernate.query.Query
+                && ((org.hibernate.query.Query<?>) q).getQueryString().toLowerCase(Locale.ROOT).contains("order by");
+    }
+
+    /**
+     * Whether the collection arguments fit in the IN lists of one statement.
+     */
+    private boolean fitsOneStatement(Object[] args) {
+        if (args == null)
+            return true;
+
+        List<Collection<?>> lists = new ArrayList<>();
+        for (Object arg : args)
+            if (arg instanceof Collection)
+                lists.add((Collection<?>) arg);
+        return lists.isEmpty() || !InLists.exceeds(inListSize, InLists.DEFAULT_PARAMETER_BUDGET, lists.toArray(new Collection<?>[0]));
+    }
+
+    /**
+     * Adds the results of one statement of a query to the results of the others. An entity matched by several
+     * statements, as a query ORing its IN lists can, is added once: it is the same instance in every statement.
+     * Other values are added as they are.
+     */
+    private <R> void addDistinct(List<R> results, List<? extends R> statementResults, Set<Object> entities) {
+        for (R result : statementResults)
+            if (!type.isInstance(result) || entities.add(result))
+                results.add(result);
+    }
+
+    /**
+     * Runs the named query as one statement, or returns the given default if it is not found.
+     */
+    @SuppressWarnings("unchecked")
+    private <R> List<R> resultList(String queryName, Object[] args, List<R> notFound) {
+        Query q = createQuery(queryName, args);
+        if (q == null) {
+            LOGGER.error("Could not find query with name: {}", queryName);
+            return notFound;
+        }
+        return q.getResultList();
+    }
+
+    private int update(String queryName, Object[] args) {
+        Query q = createQuery(queryName, args);
+        if (q == null) {
+            LOGGER.error("Could not find query with name: {}", queryName);
+            return -1;
+        }
+        return q.executeUpdate();
+    }
+
+    /**
+     * Collection arguments fitting in one IN list are bound padded, so that lists of nearby sizes share a plan.
+     */
+    private Object bindable(Object arg) {
+        if (arg instanceof Collection && !InLists.exceeds((Collection<?>) arg, inListSize))
+            return InLists.pad((Collection<?>) arg, inListSize);
+        return arg;
+    }
+
     /**
      * Finds a named query in the entity manager.
      *
@@ -307,18 +693,15 @@ public class GenericDAO<T, PK extends Serializable> implements IGenericDAO<T, PK
      * Creates a query with the given name and binds the provided arguments.
      *
      * @param queryName the name of the query
-     * @param args      the arguments needed for the query execution
+     * @param args      the arguments needed for the query execution, whose collections fit in one statement
      * @return the query ready for execution if found, otherwise returns null
      */
     private Query createQuery(String queryName, Object... args) {
-        String fullQueryName = type.getName() + "." + queryName;
-
-        Query q = findQuery(fullQueryName);
+        if (!fitsOneStatement(args))
+            throw new IllegalArgumentException("Collection arguments of named query " + queryName + " do not fit in one statement: at most "
+                    + inListSize + " values each and " + InLists.DEFAULT_PARAMETER_BUDGET + " together");
 
-        if (q == null) {
-            fullQueryName = type.getSimpleName() + "." + queryName;
-            q = findQuery(fullQueryName);
-        }
+        Query q = findNamedQuery(queryName);
 
         if (q == null) {
             LOGGER.warn("Could not find named query: {}", queryName);
@@ -327,7 +710,7 @@ public class GenericDAO<T, PK extends Serializable> implements IGenericDAO<T, PK
 
         if (args != null && args.length > 0) {
             for (int i = 0; i < args.length; i++) {
-                q.setParameter(i + 1, args[i]);
+                q.setParameter(i + 1, bindable(args[i]));
             }
         }
 
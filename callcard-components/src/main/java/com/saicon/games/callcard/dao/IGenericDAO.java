@@ -1,7 +1,9 @@
 package com.saicon.games.callcard.dao;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Generic DAO interface for basic CRUD operations.
@@ -43,6 +45,39 @@ public interface IGenericDAO<T, PK extends Serializable> {
      */
     void delete(T persistentObject);
 
+    /**
+     * Persist the given objects, flushing and detaching them every flush interval objects so that the persistence
+     * context does not grow with the collection. The last ones are flushed and detached before returning: whatever
+     * their number, the objects are written and no longer managed when the method returns.
+     */
+    void createAll(Collection<T> newInstances);
+
+    /**
+     * Save changes made to the given objects, flushing and detaching them every flush interval objects as
+     * {@link #createAll(Collection)} does: the objects, and the managed copies merged from them, are no longer
+     * managed when the method returns.
+     */
+    void updateAll(Collection<T> transientObjects);
+
+    /**
+     * Remove the objects with the given primary keys with one bulk delete per chunk of ids. The delete bypasses the
+     * persistence context: objects already loaded are not removed from it.
+     *
+     * @param ids the primary keys of the objects to remove
+     * @return the number of entities deleted
+     */
+    int deleteAllByIds(Collection<PK> ids);
+
+    /**
+     * Retrieve the objects with the given primary keys with one query per chunk of ids. The objects are returned in
+     * the order of their ids in the collection, each once; ids that can not be found are skipped. String ids are
+     * matched ignoring case.
+     *
+     * @param ids the primary keys of the objects to be retrieved
+     * @return the persisted objects
+     */
+    List<T> readAll(Collection<PK> ids);
+
     /**
      * List all items in the table
      */
@@ -52,9 +87,21 @@ public interface IGenericDAO<T, PK extends Serializable> {
      * Execute the query identified by {@code queryName} and return a list of T items.
      * WARNING: this method prefixes the queryName with the fully-qualified name
      * of the type T.
+     * A collection argument too large for one IN list runs the query once per chunk of its values, and the results
+     * are merged in chunk order, each entity once. A query with an ORDER BY is then rejected with an
+     * IllegalArgumentException, as the merge would not be ordered.
      */
     List<T> queryList(String queryName, Object... args);
 
+    /**
+     * Does the same as queryList but streams the items from a database cursor, a fetch of rows at a time, evicting
+     * the streamed items from the persistence context as the scan goes. The stream must be closed, for example with
+     * try-with-resources, and the items must not be modified. A collection argument too large for one IN list is
+     * streamed one chunk after the other, as queryList merges them; the ids streamed are then kept to skip entities
+     * already streamed.
+     */
+    Stream<T> queryStream(String queryName, Object... args);
+
     /**
      * Executes the query identified by {@code queryName} and returns a list of
      * {@code T} items. The maximum number of items to be returned is {@code maxResults}.
@@ -66,6 +113,8 @@ public interface IGenericDAO<T, PK extends Serializable> {
      * @param maxResults maximum number of results to be returned
      * @param args       parameters to the query
      * @return List of {@code T} objects with a maximum of {@code maxResults} items
+     * @throws IllegalArgumentException if the collection arguments do not fit in the IN lists of one statement: a
+     *                                  range can not be cut from the merge of several
      */
     List<T> queryListRange(String queryName, int fromIndex, int maxResults, Object... args);
 
@@ -85,6 +134,11 @@ public interface IGenericDAO<T, PK extends Serializable> {
      */
     List<T> nativeQueryList(String query, Class classType, Object... args);
 
+    /**
+     * Does the same as nativeQueryList but streams the items from a database cursor, as {@link #queryStream} does.
+     */
+    Stream<T> nativeQueryStream(String query, Class classType, Object... args);
+
     /**
      * Executes the native SQL query identified by {@code query} and returns a list of
      * {@code T} items for a range of items.
@@ -95,6 +149,8 @@ public interface IGenericDAO<T, PK extends Serializable> {
      * Execute the query identified by {@code queryName} and return a single result of type T.
      * WARNING: this method prefixes the queryName with the fully-qualified name
      * of the type T.
+     * A collection argument too large for one IN list runs the query once per chunk of its values, and the single
+     * result is looked for in the results of all of them.
      *
      * @param queryName the query name. This name is prefixed with the FQN of the entity class
      * @param args      the arguments to be supplied in the named query
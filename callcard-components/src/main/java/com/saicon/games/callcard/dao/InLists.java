@@ -0,0 +1,198 @@
+package com.saicon.games.callcard.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * IN-list values bound as query parameters, made safe for SQL Server: a statement takes at most 2100 parameters, and
+ * every distinct list size compiles and caches a plan of its own.
+ *
+ * Values are deduplicated, split in chunks of at most {@code maxSize} values, and each chunk is padded to the next
+ * power of two, but not past {@code maxSize}, by repeating its last value, so that any number of ids maps to a
+ * handful of statement shapes. The padding does not change the rows an IN matches. A statement with several IN lists
+ * also keeps their padded values within a parameter budget, see {@link #partitionAll}.
+ */
+public final class InLists {
+
+    /**
+     * Default chunk size: a power of two, leaving room under the 2100 parameter limit for the other parameters.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    /**
+     * Default number of values the IN lists of one statement may bind together, leaving 100 of the 2100 parameters
+     * of SQL Server to its other parameters.
+     */
+    public static final int DEFAULT_PARAMETER_BUDGET = 2000;
+
+    private InLists() {
+    }
+
+    /**
+     * The distinct values padded to the next power of two, for a list that fits in one statement.
+     */
+    public static <E> List<E> pad(Collection<E> values) {
+        return pad(values, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The distinct values padded to the next power of two, but to at most maxSize values.
+     */
+    public static <E> List<E> pad(Collection<E> values, int maxSize) {
+        List<E> distinctValues = new ArrayList<>(new LinkedHashSet<>(values));
+        return padDistinct(distinctValues, maxSize);
+    }
+
+    /**
+     * The distinct values split in chunks of at most maxSize values, each padded to the next power of two but not
+     * past maxSize.
+     */
+    public static <E> List<List<E>> partition(Collection<E> values, int maxSize) {
+        if (values == null || values.isEmpty())
+            return Collections.emptyList();
+
+        List<E> distinctValues = new ArrayList<>(new LinkedHashSet<>(values));
+        List<List<E>> chunks = new ArrayList<>(distinctValues.size() / maxSize + 1);
+        for (int from = 0; from < distinctValues.size(); from += maxSize)
+            chunks.add(padDistinct(distinctValues.subList(from, Math.min(distinctValues.size(), from + maxSize)), maxSize));
+        return chunks;
+    }
+
+    /**
+     * The statements to run for several IN lists of one query, ANDed together: each statement binds at most maxSize
+     * values of a list, and at most budget values over all lists. While the padded lists exceed the budget, the chunk
+     * size of the largest is halved; every combination of chunks is then one statement. A row matches exactly one
+     * combination, so the results of the statements do not overlap. Null or empty lists do not filter and are passed
+     * as they are to every statement.
+     *
+     * @return The lists of each statement, in the order given
+     */
+    @SafeVarargs
+    public static <E> List<List<List<E>>> partitionAll(int maxSize, int budget, Collection<E>... lists) {
+        int[] chunkSizes = chunkSizes(maxSize, budget, lists);
+
+        List<List<List<E>>> statements = new ArrayList<>();
+        statements.add(new ArrayList<>(lists.length));
+        for (int i = 0; i < lists.length; i++) {
+            List<List<E>> chunks = isEmpty(lists[i]) ? Collections.singletonList(asList(lists[i])) : partition(lists[i], chunkSizes[i]);
+
+            List<List<List<E>>> combined = new ArrayList<>(statements.size() * chunks.size());
+            for (List<List<E>> statement : statements) {
+                for (List<E> chunk : chunks) {
+                    List<List<E>> next = new ArrayList<>(statement);
+                    next.add(chunk);
+                    combined.add(next);
+                }
+            }
+            statements = combined;
+        }
+        return statements;
+    }
+
+    /**
+     * Run the query once per chunk of the values and concatenate the results. Rows are ordered within a chunk only.
+     */
+    public static <E, R> List<R> query(Collection<E> values, int maxSize, Function<List<E>, List<R>> query) {
+        List<List<E>> chunks = partition(values, maxSize);
+        if (chunks.size() == 1)
+            return query.apply(chunks.get(0));
+
+        List<R> results = new ArrayList<>();
+        for (List<E> chunk : chunks)
+            results.addAll(query.apply(chunk));
+        return results;
+    }
+
+    /**
+     * Run the query once per statement of {@link #partitionAll} and concatenate the results. Rows are ordered within
+     * a statement only.
+     */
+    @SafeVarargs
+    public static <E, R> List<R> queryAll(int maxSize, int budget, Function<List<List<E>>, List<R>> query, Collection<E>... lists) {
+        List<R> results = new ArrayList<>();
+        for (List<List<E>> statement : partitionAll(maxSize, budget, lists))
+            results.addAll(query.apply(statement));
+        return results;
+    }
+
+    /**
+     * Whether the values need more than one statement.
+     */
+    public static boolean exceeds(Collection<?> values, int maxSize) {
+        return values != null && values.size() > maxSize;
+    }
+
+    /**
+     * Whether the IN lists of one statement need more than one statement: one of them has more than maxSize values,
+     * or their padded values together exceed the budget.
+     */
+    public static boolean exceeds(int maxSize, int budget, Collection<?>... lists) {
+        int parameters = 0;
+        for (Collection<?> values : lists) {
+            if (exceeds(values, maxSize))
+                return true;
+            if (!isEmpty(values))
+                parameters += paddedSize(values.size(), maxSize);
+        }
+        return parameters > budget;
+    }
+
+    /**
+     * Chunk size of each list: maxSize, halved for the largest padded lists until they fit the budget together.
+     */
+    private static int[] chunkSizes(int maxSize, int budget, Collection<?>[] lists) {
+        int[] chunkSizes = new int[lists.length];
+        int[] parameters = new int[lists.length];
+        int total = 0;
+        for (int i = 0; i < lists.length; i++) {
+            chunkSizes[i] = maxSize;
+            parameters[i] = isEmpty(lists[i]) ? 0 : paddedSize(Math.min(new LinkedHashSet<>(lists[i]).size(), maxSize), maxSize);
+            total += parameters[i];
+        }
+
+        while (total > budget) {
+            int largest = 0;
+            for (int i = 1; i < lists.length; i++)
+                if (parameters[i] > parameters[largest])
+                    largest = i;
+            if (parameters[largest] <= 1)
+                break;   // a budget below the number of lists: one value per list is the least
+
+            chunkSizes[largest] = Integer.highestOneBit(parameters[largest] - 1);
+            total -= parameters[largest] - chunkSizes[largest];
+            parameters[largest] = chunkSizes[largest];
+        }
+        return chunkSizes;
+    }
+
+    private static int paddedSize(int size, int maxSize) {
+        int nextPowerOfTwo = Integer.highestOneBit(size) == size ? size : Integer.highestOneBit(size) << 1;
+        return Math.max(size, Math.min(nextPowerOfTwo, maxSize));
+    }
+
+    private static <E> List<E> padDistinct(List<E> distinctValues, int maxSize) {
+        int size = distinctValues.size();
+        if (size == 0)
+            return new ArrayList<>(distinctValues);
+
+        int paddedSize = paddedSize(size, maxSize);
+        List<E> padded = new ArrayList<>(paddedSize);
+        padded.addAll(distinctValues);
+        E last = distinctValues.get(size - 1);
+        while (padded.size() < paddedSize)
+            padded.add(last);
+        return padded;
+    }
+
+    private static boolean isEmpty(Collection<?> values) {
+        return values == null || values.isEmpty();
+    }
+
+    private static <E> List<E> asList(Collection<E> values) {
+        return values == null || values instanceof List ? (List<E>) values : new ArrayList<>(values);
+    }
+}
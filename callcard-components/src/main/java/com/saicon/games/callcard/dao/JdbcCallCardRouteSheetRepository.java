@@ -0,0 +1,151 @@
+package com.saicon.games.callcard.dao;
+
+import com.saicon.games.callcard.components.CallCardRouteSheetRepository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * {@link CallCardRouteSheetRepository} on the CALL_CARD_ROUTE_SHEET table, shared by all nodes and kept across
+ * restarts. Read and written with autocommit connections of the pool, outside of any transaction.
+ *
+ * The row count and content bytes, read by the metrics on every scrape, come from one query whose result is kept
+ * for {@link #COUNT_CACHE_MILLIS}.
+ */
+public class JdbcCallCardRouteSheetRepository implements CallCardRouteSheetRepository {
+
+    private static final String SELECT_SQL = "SELECT VERSION, CONTENT, BUILT_AT FROM CALL_CARD_ROUTE_SHEET WHERE ROUTE_SHEET_KEY = ?";
+
+    private static final String MERGE_SQL = "MERGE CALL_CARD_ROUTE_SHEET WITH (HOLDLOCK) AS target "
+            + "USING (SELECT ? AS ROUTE_SHEET_KEY, ? AS VERSION, ? AS CONTENT, ? AS CONTENT_BYTES, ? AS BUILT_AT) AS source "
+            + "ON target.ROUTE_SHEET_KEY = source.ROUTE_SHEET_KEY "
+            + "WHEN MATCHED THEN UPDATE SET VERSION = source.VERSION, CONTENT = source.CONTENT, CONTENT_BYTES = source.CONTENT_BYTES, BUILT_AT = source.BUILT_AT "
+            + "WHEN NOT MATCHED THEN INSERT (ROUTE_SHEET_KEY, VERSION, CONTENT, CONTENT_BYTES, BUILT_AT) "
+            + "VALUES (source.ROUTE_SHEET_KEY, source.VERSION, source.CONTENT, source.CONTENT_BYTES, source.BUILT_AT);";
+
+    private static final String DELETE_SQL = "DELETE FROM CALL_CARD_ROUTE_SHEET WHERE ROUTE_SHEET_KEY = ?";
+
+    private static final String DELETE_VERSION_SQL = "DELETE FROM CALL_CARD_ROUTE_SHEET WHERE ROUTE_SHEET_KEY = ? AND VERSION = ?";
+
+    private static final String DELETE_EXPIRED_SQL = "DELETE FROM CALL_CARD_ROUTE_SHEET WHERE BUILT_AT < ?";
+
+    private static final String COUNT_SQL = "SELECT COUNT(*), COALESCE(SUM(CAST(CONTENT_BYTES AS BIGINT)), 0) FROM CALL_CARD_ROUTE_SHEET";
+
+    static final long COUNT_CACHE_MILLIS = 60_000;
+
+    private final DataSource dataSource;
+    private volatile Counts counts;
+
+    public JdbcCallCardRouteSheetRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public RouteSheet get(String key) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_SQL)) {
+            statement.setString(1, key);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next())
+                    return null;
+
+                return new RouteSheet(rs.getString(1), rs.getBytes(2), rs.getTimestamp(3).getTime());
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Route sheet not read: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void put(String key, RouteSheet routeSheet) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(MERGE_SQL)) {
+            statement.setString(1, key);
+            statement.setString(2, routeSheet.getVersion());
+            statement.setBytes(3, routeSheet.getContent());
+            statement.setInt(4, routeSheet.getContent().length);
+            statement.setTimestamp(5, new Timestamp(routeSheet.getBuiltAt()));
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Route sheet not stored: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        update("deleted", DELETE_SQL, key);
+    }
+
+    @Override
+    public void remove(String key, String version) {
+        update("deleted", DELETE_VERSION_SQL, key, version);
+    }
+
+    @Override
+    public int removeBuiltBefore(long builtBefore) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(DELETE_EXPIRED_SQL)) {
+            statement.setTimestamp(1, new Timestamp(builtBefore));
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Expired route sheets not deleted: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) counts().rows;
+    }
+
+    @Override
+    public long getContentBytes() {
+        return counts().bytes;
+    }
+
+    private Counts counts() {
+        Counts current = counts;
+        long now = System.currentTimeMillis();
+        if (current != null && now - current.countedAt < COUNT_CACHE_MILLIS)
+            return current;
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(COUNT_SQL);
+             ResultSet rs = statement.executeQuery()) {
+            current = rs.next() ? new Counts(rs.getLong(1), rs.getLong(2), now) : new Counts(0, 0, now);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Route sheets not counted: " + e.getMessage(), e);
+        }
+        counts = current;
+        return current;
+    }
+
+    /**
+     * @param operation What the statement does to the route sheet, for the failure message
+     */
+    private void update(String operation, String sql, String... parameters) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++)
+                statement.setString(i + 1, parameters[i]);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Route sheet not " + operation + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static final class Counts {
+        private final long rows;
+        private final long bytes;
+        private final long countedAt;
+
+        private Counts(long rows, long bytes, long countedAt) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.countedAt = countedAt;
+        }
+    }
+}
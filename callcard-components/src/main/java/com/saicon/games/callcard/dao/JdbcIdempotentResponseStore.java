@@ -0,0 +1,93 @@
+package com.saicon.games.callcard.dao;
+
+import com.saicon.games.callcard.resources.IdempotentResponse;
+import com.saicon.games.callcard.resources.IdempotentResponseStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IdempotentResponseStore} on the CALL_CARD_IDEMPOTENT_RESPONSE table, written outside of the transaction of
+ * the submission with autocommit connections of the pool.
+ *
+ * Rows older than {@code expireAfterMillis} are deleted every {@link #PURGE_INTERVAL} inserts, which keeps the table
+ * bounded to the responses of the expiry period.
+ */
+public class JdbcIdempotentResponseStore implements IdempotentResponseStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdbcIdempotentResponseStore.class);
+
+    static final int PURGE_INTERVAL = 1000;
+
+    private static final String SELECT_SQL = "SELECT FINGERPRINT, STATUS, ITEM_COUNT, BODY, CREATED_AT FROM CALL_CARD_IDEMPOTENT_RESPONSE WHERE IDEMPOTENCY_KEY = ?";
+
+    private static final String INSERT_SQL = "INSERT INTO CALL_CARD_IDEMPOTENT_RESPONSE (IDEMPOTENCY_KEY, FINGERPRINT, STATUS, ITEM_COUNT, BODY, CREATED_AT) "
+            + "SELECT ?, ?, ?, ?, ?, ? WHERE NOT EXISTS (SELECT 1 FROM CALL_CARD_IDEMPOTENT_RESPONSE WHERE IDEMPOTENCY_KEY = ?)";
+
+    private static final String PURGE_SQL = "DELETE FROM CALL_CARD_IDEMPOTENT_RESPONSE WHERE CREATED_AT < ?";
+
+    private final DataSource dataSource;
+    private final long expireAfterMillis;
+    private final AtomicLong inserts = new AtomicLong();
+
+    public JdbcIdempotentResponseStore(DataSource dataSource, long expireAfterMillis) {
+        this.dataSource = dataSource;
+        this.expireAfterMillis = expireAfterMillis;
+    }
+
+    @Override
+    public IdempotentResponse get(String key) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(SELECT_SQL)) {
+            statement.setString(1, key);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next())
+                    return null;
+
+                int itemCount = rs.getInt(3);
+                return new IdempotentResponse(rs.getInt(2), rs.wasNull() ? null : itemCount, rs.getString(4), rs.getString(1), rs.getTimestamp(5).getTime());
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Idempotent response not read: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void put(String key, IdempotentResponse response) {
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                statement.setString(1, key);
+                statement.setString(2, response.getFingerprint());
+                statement.setInt(3, response.getStatus());
+                if (response.getItemCount() != null)
+                    statement.setInt(4, response.getItemCount());
+                else
+                    statement.setNull(4, Types.INTEGER);
+                statement.setString(5, (String) response.getEntity());
+                statement.setTimestamp(6, new Timestamp(response.getCreatedAt()));
+                statement.setString(7, key);
+                statement.executeUpdate();
+            }
+
+            if (inserts.incrementAndGet() % PURGE_INTERVAL == 0)
+                purge(connection);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Idempotent response not stored: " + e.getMessage(), e);
+        }
+    }
+
+    private void purge(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(PURGE_SQL)) {
+            statement.setTimestamp(1, new Timestamp(System.currentTimeMillis() - expireAfterMillis));
+            int deleted = statement.executeUpdate();
+            LOGGER.debug("-- Expired idempotent responses deleted : rows={}", deleted);
+        }
+    }
+}
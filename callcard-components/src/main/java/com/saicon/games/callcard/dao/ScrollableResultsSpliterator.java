@@ -0,0 +1,138 @@
+package com.saicon.games.callcard.dao;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+
+import javax.persistence.Entity;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spliterator over the rows of a forward-only {@link ScrollableResults}, so that a scan holds one JDBC fetch of
+ * rows at a time instead of the whole result list.
+ *
+ * Every {@code evictInterval} rows the entities the scan loaded are evicted from the session, which keeps the
+ * persistence context from growing with the scan. Entities that were already in the session when their row was read,
+ * loaded by the caller before or while streaming, are left alone; streamed entities are meant to be read once and
+ * must not be modified. The stream must be closed, which evicts the entities left and closes the cursor.
+ *
+ * The session must be a {@link SessionImplementor}, as the sessions of an EntityManager are.
+ *
+ * @param <T> Type the rows are mapped to
+ */
+public class ScrollableResultsSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+    private final ScrollableResults results;
+    private final Session session;
+    private final PersistenceContext persistenceContext;
+    private final int evictInterval;
+    private final Function<Object[], T> mapper;
+    private final Set<Object> streamed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<Object> managedBefore = Collections.newSetFromMap(new IdentityHashMap<>());
+    private int managedAfterRow = -1;
+    private int rows;
+
+    public ScrollableResultsSpliterator(ScrollableResults results, Session session, int evictInterval, Function<Object[], T> mapper) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED);
+        this.results = results;
+        this.session = session;
+        this.persistenceContext = ((SessionImplementor) session).getPersistenceContextInternal();
+        this.evictInterval = evictInterval > 0 ? evictInterval : 500;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Stream the first column of the rows, closing the cursor when the stream is closed.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Stream<T> stream(ScrollableResults results, Session session, int evictInterval) {
+        return stream(results, session, evictInterval, row -> (T) row[0]);
+    }
+
+    /**
+     * Stream the rows mapped by the given function, closing the cursor when the stream is closed.
+     */
+    public static <T> Stream<T> stream(ScrollableResults results, Session session, int evictInterval, Function<Object[], T> mapper) {
+        final ScrollableResultsSpliterator<T> spliterator = new ScrollableResultsSpliterator<>(results, session, evictInterval, mapper);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (rows == evictInterval)
+            evictStreamed();
+
+        // the caller changed the session since the last row: what it holds now is not the scan's to evict
+        if (persistenceContext.getNumberOfManagedEntities() != managedAfterRow)
+            snapshotManaged();
+
+        if (!results.next()) {
+            evictStreamed();
+            return false;
+        }
+
+        Object[] row = results.get();
+        for (Object value : row) {
+            Object entity = loadedEntity(value);
+            if (entity != null && !managedBefore.contains(entity))
+                streamed.add(entity);
+        }
+        managedAfterRow = persistenceContext.getNumberOfManagedEntities();
+        rows++;
+
+        action.accept(mapper.apply(row));
+        return true;
+    }
+
+    /**
+     * Evict the entities streamed since the last eviction, for a stream closed before its end, and close the cursor.
+     */
+    private void close() {
+        try {
+            evictStreamed();
+        } finally {
+            results.close();
+        }
+    }
+
+    private void evictStreamed() {
+        boolean unchanged = persistenceContext.getNumberOfManagedEntities() == managedAfterRow;
+        for (Object entity : streamed)
+            session.evict(entity);
+        streamed.clear();
+        rows = 0;
+        if (unchanged)
+            managedAfterRow = persistenceContext.getNumberOfManagedEntities();
+    }
+
+    private void snapshotManaged() {
+        managedBefore.clear();
+        for (Object entity : persistenceContext.getEntitiesByKey().values())
+            if (!streamed.contains(entity))
+                managedBefore.add(entity);
+        managedAfterRow = persistenceContext.getNumberOfManagedEntities();
+    }
+
+    /**
+     * The entity a row value holds, unwrapping initialized proxies; null for scalars and uninitialized proxies, which
+     * the row did not load.
+     */
+    private static Object loadedEntity(Object value) {
+        if (value instanceof HibernateProxy) {
+            LazyInitializer initializer = ((HibernateProxy) value).getHibernateLazyInitializer();
+            return initializer.isUninitialized() ? null : initializer.getImplementation();
+        }
+        return value != null && value.getClass().isAnnotationPresent(Entity.class) ? value : null;
+    }
+}
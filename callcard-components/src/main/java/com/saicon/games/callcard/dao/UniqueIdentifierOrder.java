@@ -0,0 +1,54 @@
+package com.saicon.games.callcard.dao;
+
+import java.util.Comparator;
+
+/**
+ * Orders ids as SQL Server orders uniqueidentifier columns, so that rows merged from several statements can be put
+ * back in the order one statement would have returned them.
+ *
+ * SQL Server compares the bytes of "00112233-4455-6677-8899-AABBCCDDEEFF" from the last group on: AA BB CC DD EE FF,
+ * then 88 99, then the first three groups, whose bytes are stored in reverse: 77 66, 55 44 and 33 22 11 00. Ids
+ * that are not uniqueidentifiers are compared ignoring case, after the uniqueidentifiers.
+ */
+public final class UniqueIdentifierOrder implements Comparator<String> {
+
+    public static final UniqueIdentifierOrder INSTANCE = new UniqueIdentifierOrder();
+
+    /**
+     * Offsets in the string form of the bytes, most significant first.
+     */
+    private static final int[] BYTE_OFFSETS = {24, 26, 28, 30, 32, 34, 19, 21, 16, 14, 11, 9, 6, 4, 2, 0};
+
+    private UniqueIdentifierOrder() {
+    }
+
+    @Override
+    public int compare(String left, String right) {
+        boolean leftIsGuid = isUniqueIdentifier(left);
+        boolean rightIsGuid = isUniqueIdentifier(right);
+        if (!leftIsGuid || !rightIsGuid)
+            return leftIsGuid ? -1 : rightIsGuid ? 1 : String.CASE_INSENSITIVE_ORDER.compare(left, right);
+
+        for (int offset : BYTE_OFFSETS) {
+            int result = Integer.compare(byteAt(left, offset), byteAt(right, offset));
+            if (result != 0)
+                return result;
+        }
+        return 0;
+    }
+
+    private static int byteAt(String id, int offset) {
+        return Character.digit(id.charAt(offset), 16) << 4 | Character.digit(id.charAt(offset + 1), 16);
+    }
+
+    private static boolean isUniqueIdentifier(String id) {
+        if (id == null || id.length() != 36)
+            return false;
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23 ? c != '-' : Character.digit(c, 16) < 0)
+                return false;
+        }
+        return true;
+    }
+}
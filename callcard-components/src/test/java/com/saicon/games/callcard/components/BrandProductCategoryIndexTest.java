@@ -0,0 +1,172 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.components.external.SolrClient;
+import com.saicon.games.callcard.util.SortOrderTypes;
+import com.saicon.games.solr.dto.SolrBrandProductDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for BrandProductCategoryIndex loading, memoization, slow-backend behaviour and retries.
+ */
+public class BrandProductCategoryIndexTest {
+
+    private static final String GAME_TYPE_ID = "pmi-egypt";
+
+    private BrandProductCategoryIndex index;
+
+    @AfterEach
+    public void tearDown() {
+        if (index != null)
+            index.close();
+    }
+
+    @Test
+    public void categoriesAreResolvedFromOneCatalogueScan() {
+        StubSolrClient solrClient = new StubSolrClient(null);
+        index = new BrandProductCategoryIndex(solrClient, 15, 5000, 1);
+
+        List<String> productTypeCategories = Arrays.asList("20", "30");
+        Map<String, Integer> first = index.getCategoriesMap(GAME_TYPE_ID, productTypeCategories);
+        Map<String, Integer> second = index.getCategoriesMap(GAME_TYPE_ID, productTypeCategories);
+
+        assertEquals(Integer.valueOf(30), first.get("product-1"));
+        assertEquals(Integer.valueOf(20), first.get("product-2"));
+        assertTrue(!first.containsKey("product-3"));
+        assertEquals(first, second);
+        assertEquals(1, solrClient.scans.get());
+    }
+
+    @Test
+    public void versionChangesWhenASnapshotIsLoaded() {
+        index = new BrandProductCategoryIndex(new StubSolrClient(null), 15, 5000, 1);
+
+        assertEquals(0, index.getVersion(GAME_TYPE_ID));
+
+        index.getCategoriesMap(GAME_TYPE_ID, Collections.singletonList("20"));
+
+        assertTrue(index.getVersion(GAME_TYPE_ID) != 0);
+    }
+
+    /**
+     * A catalogue backend slower than the load timeout does not block requests; the index is served once loaded.
+     */
+    @Test
+    public void slowCatalogueDoesNotBlockRequests() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StubSolrClient solrClient = new StubSolrClient(release);
+        index = new BrandProductCategoryIndex(solrClient, 15, 50, 1);
+
+        List<String> productTypeCategories = Collections.singletonList("20");
+        assertTrue(index.getCategoriesMap(GAME_TYPE_ID, productTypeCategories).isEmpty());
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        Map<String, Integer> categories = Collections.emptyMap();
+        while (categories.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            categories = index.getCategoriesMap(GAME_TYPE_ID, productTypeCategories);
+        }
+
+        assertEquals(Integer.valueOf(20), categories.get("product-2"));
+        assertEquals(1, solrClient.scans.get());
+    }
+
+    /**
+     * Only the first request of a gameType waits for the initial load.
+     */
+    @Test
+    public void onlyTheFirstRequestWaits() {
+        CountDownLatch release = new CountDownLatch(1);
+        index = new BrandProductCategoryIndex(new StubSolrClient(release), 15, 200, 1);
+
+        List<String> productTypeCategories = Collections.singletonList("20");
+        long start = System.currentTimeMillis();
+        index.getCategoriesMap(GAME_TYPE_ID, productTypeCategories);
+        long firstMillis = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        assertTrue(index.getCategoriesMap(GAME_TYPE_ID, productTypeCategories).isEmpty());
+        long secondMillis = System.currentTimeMillis() - start;
+        release.countDown();
+
+        assertTrue(firstMillis >= 200);
+        assertTrue(secondMillis < 200);
+    }
+
+    /**
+     * A failed initial load is retried until the index loads.
+     */
+    @Test
+    public void failedLoadIsRetried() throws Exception {
+        StubSolrClient solrClient = new StubSolrClient(null);
+        solrClient.failures.set(1);
+        index = new BrandProductCategoryIndex(solrClient, 15, 5000, 1, 1);
+
+        List<String> productTypeCategories = Collections.singletonList("20");
+        assertTrue(index.getCategoriesMap(GAME_TYPE_ID, productTypeCategories).isEmpty());
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        Map<String, Integer> categories = Collections.emptyMap();
+        while (categories.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            categories = index.getCategoriesMap(GAME_TYPE_ID, productTypeCategories);
+        }
+
+        assertEquals(Integer.valueOf(20), categories.get("product-2"));
+        assertEquals(2, solrClient.scans.get());
+    }
+
+    private static SolrBrandProductDTO brandProduct(String brandProductId, String... subcategoryIds) {
+        SolrBrandProductDTO brandProduct = new SolrBrandProductDTO();
+        brandProduct.setBrandProductId(brandProductId);
+        brandProduct.setSubcategoryIds(new ArrayList<>(Arrays.asList(subcategoryIds)));
+        return brandProduct;
+    }
+
+    private static class StubSolrClient extends SolrClient {
+        private final AtomicInteger scans = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final CountDownLatch release;
+
+        StubSolrClient(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public List<Object> getMultipleBrandProducts(String gameTypeId, Object organizationId, String searchTerm, Object itemTypeId, Object categoryId,
+                                                     String[] brands, Integer[] priceRange, String[] sizes, String[] colors, String[] tags, int offset, int limit,
+                                                     boolean sortByPrice, boolean sortByPopularity, Object minPrice, Object maxPrice, Object rating, boolean onlyAvailable,
+                                                     Object supplierId, Object regionId, boolean includeDeleted, Object customFilter, SortOrderTypes sortOrder) {
+            scans.incrementAndGet();
+            if (failures.getAndDecrement() > 0)
+                throw new IllegalStateException("Solr unavailable");
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            List<Object> result = new ArrayList<>();
+            result.add(Arrays.asList(
+                    brandProduct("product-1", "10", "30", "20"),
+                    brandProduct("product-2", "20"),
+                    brandProduct("product-3", "40")));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.components.CallCardAssemblyExecutor.Dependency;
+import com.saicon.games.callcard.exception.BusinessLayerException;
+import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for CallCardAssemblyExecutor concurrency, timeouts and context propagation.
+ */
+public class CallCardAssemblyExecutorTest {
+
+    private final AtomicInteger transactions = new AtomicInteger();
+    private CallCardAssemblyExecutor executor;
+
+    @BeforeEach
+    public void setUp() {
+        PlatformTransactionManager transactionManager = new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                transactions.incrementAndGet();
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+            }
+        };
+        executor = new CallCardAssemblyExecutor(transactionManager, 4, 16, 2000);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.close();
+        MDC.clear();
+    }
+
+    @Test
+    public void independentLookupsRunConcurrently() throws Exception {
+        long start = System.currentTimeMillis();
+
+        Future<String> templates = executor.submitInTransaction(Dependency.TEMPLATES, "group", "gameType", () -> sleepAndReturn(300, "templates"));
+        Future<String> summaries = executor.submitInTransaction(Dependency.SUMMARIES, "group", "gameType", () -> sleepAndReturn(300, "summaries"));
+        Future<String> categories = executor.submit(Dependency.BRAND_PRODUCT_CATEGORIES, () -> sleepAndReturn(300, "categories"));
+
+        assertEquals("templates", executor.await(Dependency.TEMPLATES, templates));
+        assertEquals("summaries", executor.await(Dependency.SUMMARIES, summaries));
+        assertEquals("categories", executor.await(Dependency.BRAND_PRODUCT_CATEGORIES, categories));
+
+        assertTrue(System.currentTimeMillis() - start < 800, "lookups should overlap");
+        assertEquals(2, transactions.get());
+    }
+
+    @Test
+    public void timedOutOptionalLookupIsLeftOutAndReported() {
+        executor.setTimeoutMillis(Dependency.GEO_INFO, 50);
+        AtomicInteger runs = new AtomicInteger();
+        Set<Dependency> degraded = EnumSet.noneOf(Dependency.class);
+
+        Future<String> geoInfo = executor.submit(Dependency.GEO_INFO, () -> {
+            runs.incrementAndGet();
+            return sleepAndReturn(1000, "geo");
+        });
+
+        assertEquals("empty", executor.awaitOptional(Dependency.GEO_INFO, geoInfo, "empty", degraded));
+        assertEquals(EnumSet.of(Dependency.GEO_INFO), degraded);
+        assertTrue(geoInfo.isCancelled());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void timedOutRequiredLookupFails() {
+        executor.setTimeoutMillis(Dependency.TEMPLATES, 50);
+
+        Future<String> templates = executor.submitInTransaction(Dependency.TEMPLATES, "group", "gameType", () -> sleepAndReturn(1000, "templates"));
+
+        BusinessLayerException e = assertThrows(BusinessLayerException.class, () -> executor.await(Dependency.TEMPLATES, templates));
+        assertEquals(ExceptionTypeTO.GENERIC, e.getErrorCode());
+    }
+
+    @Test
+    public void databaseLookupRunsInTheCallersTransaction() throws Exception {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            Future<String> lookup = executor.submitInTransaction(Dependency.SUMMARIES, "group", "gameType", () -> Thread.currentThread().getName());
+
+            assertTrue(lookup.isDone());
+            assertEquals(Thread.currentThread().getName(), executor.await(Dependency.SUMMARIES, lookup));
+            assertEquals(0, transactions.get());
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    @Test
+    public void loggingContextIsPropagated() throws Exception {
+        MDC.put("userId", "user-1");
+
+        Future<String> lookup = executor.submit(Dependency.GAME_TYPE_CONFIG, () -> MDC.get("userId"));
+
+        assertEquals("user-1", executor.await(Dependency.GAME_TYPE_CONFIG, lookup));
+    }
+
+    private static String sleepAndReturn(long millis, String value) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,112 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.components.external.GeneratedEventsDispatcher;
+import com.saicon.games.callcard.util.EventType;
+import com.saicon.games.callcard.ws.dto.EventTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for CallCardEventPublisher after-commit dispatch and spooling.
+ */
+public class CallCardEventPublisherTest {
+
+    private final List<EventTO> dispatched = new CopyOnWriteArrayList<>();
+    private CallCardEventPublisher publisher;
+
+    @AfterEach
+    public void tearDown() {
+        if (publisher != null)
+            publisher.close();
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    public void eventsAreDispatchedOnlyAfterCommit() throws Exception {
+        publisher = new CallCardEventPublisher(recordingDispatcher(), 100, 10, 20, null);
+
+        TransactionSynchronizationManager.initSynchronization();
+        publisher.publish(event("committed-1"));
+        publisher.publish(event("committed-2"));
+        Thread.sleep(100);
+        assertTrue(dispatched.isEmpty(), "events must wait for the commit");
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        TransactionSynchronizationManager.initSynchronization();
+        publisher.publish(event("rolled-back"));
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        awaitDispatched(2);
+        assertEquals("committed-1", dispatched.get(0).getUserId());
+        assertEquals(1, publisher.getRolledBack());
+    }
+
+    @Test
+    public void spooledEventsSurviveARestart(@TempDir Path directory) throws Exception {
+        File spoolFile = directory.resolve("events.spool").toFile();
+        GeneratedEventsDispatcher failing = new GeneratedEventsDispatcher() {
+            @Override
+            public void dispatch(EventTO event) {
+                throw new IllegalStateException("observer down");
+            }
+        };
+
+        CallCardEventPublisher first = new CallCardEventPublisher(failing, 100, 10, 20, spoolFile);
+        first.publish(event("user-1"));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (first.getSpooled() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        first.close();
+        assertTrue(spoolFile.length() > 0);
+
+        publisher = new CallCardEventPublisher(recordingDispatcher(), 100, 10, 20, spoolFile);
+        awaitDispatched(1);
+        assertEquals("user-1", dispatched.get(0).getUserId());
+        assertEquals(EventType.CALL_CARD_STATISTICS, dispatched.get(0).getEventType());
+    }
+
+    private GeneratedEventsDispatcher recordingDispatcher() {
+        return new GeneratedEventsDispatcher() {
+            @Override
+            public void dispatch(EventTO event) {
+                dispatched.add(event);
+            }
+        };
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED)
+                synchronization.afterCommit();
+            synchronization.afterCompletion(status);
+        }
+    }
+
+    private void awaitDispatched(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (dispatched.size() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(count, dispatched.size());
+    }
+
+    private static EventTO event(String userId) {
+        EventTO event = new EventTO();
+        event.setUserId(userId);
+        event.setEventType(EventType.CALL_CARD_STATISTICS);
+        return event;
+    }
+}
@@ -0,0 +1,71 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.appsettings.dto.AppSettingsDTO;
+import com.saicon.games.callcard.components.util.CallCardGameTypeConfig;
+import com.saicon.games.callcard.util.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for CallCardGameTypeConfig parsing and CallCardGameTypeConfigCache invalidation.
+ */
+public class CallCardGameTypeConfigCacheTest {
+
+    private static final String APPLICATION_ID = "application-1";
+
+    @Test
+    public void parseReadsCallCardSettings() {
+        CallCardGameTypeConfig config = CallCardGameTypeConfig.parse(APPLICATION_ID, Arrays.asList(
+                new AppSettingsDTO(Constants.APP_SETTING_KEY_PREVIOUS_VISITS_SUMMARY, "3", null, null),
+                new AppSettingsDTO(Constants.APP_SETTING_KEY_INCLUDE_VISITS_GEO_INFO, "true", null, null),
+                new AppSettingsDTO(Constants.APP_SETTING_KEY_PRODUCT_TYPE_CATEGORIES, "10,20", null, null),
+                new AppSettingsDTO("UNRELATED", "x", null, null)));
+
+        assertEquals(3, config.getPreviousValues());
+        assertTrue(config.isIncludeGeoInfo());
+        assertEquals(Arrays.asList("10", "20"), config.getProductTypeCategories());
+    }
+
+    @Test
+    public void parseFallsBackToDefaults() {
+        CallCardGameTypeConfig config = CallCardGameTypeConfig.parse(APPLICATION_ID, Arrays.asList(
+                new AppSettingsDTO(Constants.APP_SETTING_KEY_PREVIOUS_VISITS_SUMMARY, "three", null, null)));
+
+        assertEquals(0, config.getPreviousValues());
+        assertFalse(config.isIncludeGeoInfo());
+        assertTrue(config.getProductTypeCategories().isEmpty());
+        assertEquals(0, CallCardGameTypeConfig.parse(APPLICATION_ID, null).getPreviousValues());
+    }
+
+    @Test
+    public void configIsLoadedOnceUntilInvalidated() {
+        CallCardGameTypeConfigCache cache = new CallCardGameTypeConfigCache(100, 5);
+        AtomicInteger loads = new AtomicInteger();
+
+        CallCardGameTypeConfig first = cache.get(APPLICATION_ID, () -> {
+            loads.incrementAndGet();
+            return CallCardGameTypeConfig.DEFAULT;
+        });
+        CallCardGameTypeConfig second = cache.get(APPLICATION_ID, () -> {
+            loads.incrementAndGet();
+            return CallCardGameTypeConfig.DEFAULT;
+        });
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+
+        cache.invalidate(APPLICATION_ID);
+        cache.get(APPLICATION_ID, () -> {
+            loads.incrementAndGet();
+            return CallCardGameTypeConfig.DEFAULT;
+        });
+        assertEquals(2, loads.get());
+    }
+}
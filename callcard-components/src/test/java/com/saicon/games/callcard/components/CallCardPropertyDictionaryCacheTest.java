@@ -0,0 +1,54 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.components.util.CallCardPropertyDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Unit tests for CallCardPropertyDictionary lookups and CallCardPropertyDictionaryCache versioning.
+ */
+public class CallCardPropertyDictionaryCacheTest {
+
+    @Test
+    public void dictionaryResolvesOrdinalsCaseInsensitively() {
+        List<String> keys = Arrays.asList("callCardIndexSales", "callCardIndexStock", "CALLCARDINDEXSALES");
+        CallCardPropertyDictionaryCache cache = new CallCardPropertyDictionaryCache((itemTypeId, activeOnly) -> keys, 10);
+        try {
+            CallCardPropertyDictionary dictionary = cache.get();
+
+            assertEquals(2, dictionary.size());
+            assertEquals(0, dictionary.ordinalOf("CallCardIndexSales"));
+            assertEquals(1, dictionary.ordinalOf("callCardIndexStock"));
+            assertEquals(CallCardPropertyDictionary.UNKNOWN, dictionary.ordinalOf("unknown"));
+            assertEquals("callCardIndexSales", dictionary.canonicalName("CALLCARDINDEXSALES"));
+            assertEquals(Arrays.asList("callCardIndexSales", "callCardIndexStock"), new ArrayList<>(dictionary.getTypesMap().keySet()));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void versionChangesOnlyWhenPropertiesChange() {
+        List<String> keys = new ArrayList<>(Arrays.asList("callCardIndexSales"));
+        CallCardPropertyDictionaryCache cache = new CallCardPropertyDictionaryCache((itemTypeId, activeOnly) -> new ArrayList<>(keys), 10);
+        try {
+            CallCardPropertyDictionary first = cache.get();
+            assertEquals(1, first.getVersion());
+            assertSame(first, cache.refresh());
+
+            keys.add("callCardIndexStock");
+            CallCardPropertyDictionary second = cache.refresh();
+            assertEquals(2, second.getVersion());
+            assertEquals(2, second.size());
+            assertSame(second, cache.get());
+        } finally {
+            cache.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.components.CallCardRefUserCoordinatesCache.Coordinates;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Unit tests for CallCardRefUserCoordinatesCache batching and invalidation.
+ */
+public class CallCardRefUserCoordinatesCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final CallCardRefUserCoordinatesCache cache = new CallCardRefUserCoordinatesCache(100, 60, 5, nanos::get);
+    private final List<List<String>> loads = new ArrayList<>();
+
+    @Test
+    public void onlyMissingRefUsersAreLoaded() {
+        cache.getAll(Arrays.asList("pos-1", "pos-2"), this::load);
+        Map<String, Coordinates> coordinates = cache.getAll(Arrays.asList("POS-1", "pos-2", "pos-3"), this::load);
+
+        assertEquals(Arrays.asList(Arrays.asList("pos-1", "pos-2"), Collections.singletonList("pos-3")), loads);
+        assertEquals(Double.valueOf(1.5), coordinates.get("POS-1").getLatitude());
+        assertSame(Coordinates.NONE, coordinates.get("pos-2"));
+        assertFalse(coordinates.get("pos-2").isPresent());
+    }
+
+    @Test
+    public void invalidatedRefUserIsReloaded() {
+        cache.getAll(Collections.singletonList("pos-1"), this::load);
+        cache.invalidate("POS-1");
+        cache.getAll(Collections.singletonList("pos-1"), this::load);
+
+        assertEquals(2, loads.size());
+    }
+
+    @Test
+    public void refUsersWithoutCoordinatesExpireSooner() {
+        cache.getAll(Arrays.asList("pos-1", "pos-2"), this::load);
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        cache.getAll(Arrays.asList("pos-1", "pos-2"), this::load);
+
+        assertEquals(Arrays.asList(Arrays.asList("pos-1", "pos-2"), Collections.singletonList("pos-2")), loads);
+    }
+
+    @Test
+    public void refUserWrittenInATransactionIsInvalidatedWhenItCompletes() {
+        cache.getAll(Collections.singletonList("pos-1"), this::load);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.invalidateAfterCompletion("pos-1");
+            cache.getAll(Collections.singletonList("pos-1"), this::load);
+            assertEquals(1, loads.size());
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations())
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clear();
+        }
+
+        cache.getAll(Collections.singletonList("pos-1"), this::load);
+        assertEquals(2, loads.size());
+    }
+
+    private Map<String, Coordinates> load(List<String> refUserIds) {
+        loads.add(new ArrayList<>(refUserIds));
+        // only pos-1 and pos-3 have an address
+        Map<String, Coordinates> found = new HashMap<>();
+        for (String refUserId : refUserIds) {
+            if (!refUserId.equalsIgnoreCase("pos-2"))
+                found.put(refUserId, new Coordinates(1.5, 2.5));
+        }
+        return found;
+    }
+}
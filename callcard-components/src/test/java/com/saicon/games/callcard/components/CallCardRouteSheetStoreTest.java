@@ -0,0 +1,57 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.ws.dto.CallCardDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for CallCardRouteSheetStore versioning and counters.
+ */
+public class CallCardRouteSheetStoreTest {
+
+    private final CallCardRouteSheetStore store = new CallCardRouteSheetStore(24);
+
+    @Test
+    public void routeSheetIsServedAtItsVersion() throws Exception {
+        List<CallCardDTO> callCards = Arrays.asList(new CallCardDTO("card-1", new Date(0), new Date(1)), new CallCardDTO("card-2", new Date(2), new Date(3)));
+        store.put("user-1", "group-1", "gameType-1", "app-1", "v1", callCards);
+
+        List<CallCardDTO> served = store.get("USER-1", "group-1", "gameType-1", "app-1", "v1");
+
+        assertEquals(2, served.size());
+        assertEquals("card-2", served.get(1).getCallCardId());
+        assertNotSame(served, store.get("user-1", "group-1", "gameType-1", "app-1", "v1"));
+        assertEquals(2, store.getHits());
+    }
+
+    @Test
+    public void changedVersionFallsBack() throws Exception {
+        store.put("user-1", "group-1", "gameType-1", "app-1", "v1", Arrays.asList(new CallCardDTO("card-1", new Date(0), new Date(1))));
+
+        assertNull(store.get("user-1", "group-1", "gameType-1", "app-1", "v2"));
+        assertNull(store.get("user-1", "group-1", "gameType-1", "app-1", "v1"));
+
+        assertEquals(1, store.getStale());
+        assertEquals(1, store.getMisses());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void degradedCallCardsAreNotStored() throws Exception {
+        CallCardDTO callCard = new CallCardDTO("card-1", new Date(0), new Date(1));
+        callCard.setDegraded(true);
+
+        assertFalse(store.put("user-1", "group-1", "gameType-1", "app-1", "v1", Arrays.asList(callCard)));
+
+        assertNull(store.get("user-1", "group-1", "gameType-1", "app-1", "v1"));
+        assertEquals(0, store.size());
+    }
+}
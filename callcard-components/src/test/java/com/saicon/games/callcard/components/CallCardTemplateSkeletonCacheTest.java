@@ -0,0 +1,221 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.components.util.CallCardTemplateSkeleton;
+import com.saicon.games.callcard.entity.CallCardTemplate;
+import com.saicon.games.callcard.entity.CallCardTemplateEntry;
+import com.saicon.games.callcard.entity.CallCardTemplatePOS;
+import com.saicon.games.callcard.entity.util.CallCardTemplateChangeListener;
+import com.saicon.games.entities.shared.ItemTypes;
+import com.saicon.games.entities.shared.Users;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Unit tests for CallCardTemplateSkeleton compilation and CallCardTemplateSkeletonCache invalidation.
+ */
+public class CallCardTemplateSkeletonCacheTest {
+
+    private static final String TEMPLATE_ID = "7C1F2E4A-0000-0000-0000-000000000001";
+    private static final String GAME_TYPE_ID = "pmi-egypt";
+
+    private CallCardTemplateSkeletonCache cache;
+    private CallCardTemplate template;
+
+    @BeforeEach
+    public void setUp() {
+        cache = new CallCardTemplateSkeletonCache(100, 30);
+
+        template = new CallCardTemplate();
+        template.setCallCardTemplateId(TEMPLATE_ID);
+        template.setEntries(Arrays.asList(
+                entry("product-2", 2, "callCardIndexSales,callCardIndexStock"),
+                entry("product-1", 1, "callCardIndexSales"),
+                entry("product-3", 3, "")));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cache.close();
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    /**
+     * Entries are sorted by ordering, properties tokenized and entries without properties skipped.
+     */
+    @Test
+    public void compileSortsAndTokenizesEntries() {
+        CallCardTemplatePOS pos = new CallCardTemplatePOS();
+        pos.setRefUserId(new Users("pos-1"));
+        pos.setMandatory(true);
+
+        CallCardTemplateSkeleton skeleton = CallCardTemplateSkeleton.compile(TEMPLATE_ID, GAME_TYPE_ID, template.getEntries(), Collections.singletonList(pos), null);
+
+        assertEquals(2, skeleton.getItems().size());
+        assertEquals("product-1", skeleton.getItems().get(0).getItemId());
+        assertEquals(Arrays.asList("callCardIndexSales", "callCardIndexStock"), skeleton.getItems().get(1).getPropertyNames());
+        assertEquals(1, skeleton.getPos().size());
+        assertEquals("pos-1", skeleton.getPos().get(0).getRefUserId());
+    }
+
+    @Test
+    public void skeletonIsCompiledOnceUntilTemplateChanges() {
+        AtomicInteger compilations = new AtomicInteger();
+
+        CallCardTemplateSkeleton first = cache.get(TEMPLATE_ID, GAME_TYPE_ID, () -> {
+            compilations.incrementAndGet();
+            return CallCardTemplateSkeleton.compile(TEMPLATE_ID, GAME_TYPE_ID, template.getEntries(), null, null);
+        });
+        CallCardTemplateSkeleton second = cache.get(TEMPLATE_ID.toLowerCase(), GAME_TYPE_ID, () -> {
+            compilations.incrementAndGet();
+            return CallCardTemplateSkeleton.compile(TEMPLATE_ID, GAME_TYPE_ID, template.getEntries(), null, null);
+        });
+
+        assertSame(first, second);
+        assertEquals(1, compilations.get());
+
+        // an update of one of the template entries through JPA invalidates the skeleton
+        new CallCardTemplateChangeListener().onChange(template.getEntries().get(0));
+
+        cache.get(TEMPLATE_ID, GAME_TYPE_ID, () -> {
+            compilations.incrementAndGet();
+            return CallCardTemplateSkeleton.compile(TEMPLATE_ID, GAME_TYPE_ID, template.getEntries(), null, null);
+        });
+        assertEquals(2, compilations.get());
+    }
+
+    /**
+     * Misses of several templates are compiled with a single loader call; hits are not reloaded.
+     */
+    @Test
+    public void getAllCompilesMissingSkeletonsTogether() {
+        String otherTemplateId = "7C1F2E4A-0000-0000-0000-000000000002";
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(TEMPLATE_ID, GAME_TYPE_ID, () -> CallCardTemplateSkeleton.compile(TEMPLATE_ID, GAME_TYPE_ID, template.getEntries(), null, null));
+
+        Map<String, CallCardTemplateSkeleton> skeletons = cache.getAll(Arrays.asList(TEMPLATE_ID, otherTemplateId), GAME_TYPE_ID, missingTemplateIds -> {
+            loads.incrementAndGet();
+            assertEquals(Collections.singletonList(otherTemplateId), missingTemplateIds);
+
+            Map<String, CallCardTemplateSkeleton> compiled = new HashMap<>();
+            compiled.put(otherTemplateId, CallCardTemplateSkeleton.compile(otherTemplateId, GAME_TYPE_ID, null, null, null));
+            return compiled;
+        });
+
+        assertEquals(1, loads.get());
+        assertEquals(2, skeletons.size());
+        assertEquals(otherTemplateId, skeletons.get(otherTemplateId).getCallCardTemplateId());
+        assertEquals(2, cache.size());
+    }
+
+    /**
+     * A change flushed inside a transaction invalidates the skeleton only once the transaction completes.
+     */
+    @Test
+    public void changeInATransactionInvalidatesAfterCompletion() {
+        CallCardTemplateSkeleton first = cache.get(TEMPLATE_ID, GAME_TYPE_ID, this::compile);
+
+        TransactionSynchronizationManager.initSynchronization();
+        new CallCardTemplateChangeListener().onChange(template.getEntries().get(0));
+        new CallCardTemplateChangeListener().onChange(template);
+        assertSame(first, cache.get(TEMPLATE_ID, GAME_TYPE_ID, this::compile));
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        assertEquals(1, synchronizations.size());
+        synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertNotSame(first, cache.get(TEMPLATE_ID, GAME_TYPE_ID, this::compile));
+    }
+
+    /**
+     * A skeleton loaded while the template was invalidated is served, but not cached.
+     */
+    @Test
+    public void skeletonLoadedAcrossAnInvalidationIsNotCached() {
+        CallCardTemplateSkeleton loaded = cache.get(TEMPLATE_ID, GAME_TYPE_ID, () -> {
+            cache.invalidate(TEMPLATE_ID);
+            return compile();
+        });
+
+        assertEquals(TEMPLATE_ID, loaded.getCallCardTemplateId());
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Concurrent misses of a template share one load.
+     */
+    @Test
+    public void concurrentMissesLoadOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<CallCardTemplateSkeleton> first = executor.submit(() -> cache.get(TEMPLATE_ID, GAME_TYPE_ID, () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return compile();
+            }));
+
+            loading.await();
+            // release the first load once this thread waits for it
+            new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                release.countDown();
+            }).start();
+            CallCardTemplateSkeleton second = cache.get(TEMPLATE_ID, GAME_TYPE_ID, () -> {
+                loads.incrementAndGet();
+                return compile();
+            });
+
+            assertSame(first.get(1, TimeUnit.SECONDS), second);
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CallCardTemplateSkeleton compile() {
+        return CallCardTemplateSkeleton.compile(TEMPLATE_ID, GAME_TYPE_ID, template.getEntries(), null, null);
+    }
+
+    private CallCardTemplateEntry entry(String itemId, int ordering, String properties) {
+        CallCardTemplateEntry entry = new CallCardTemplateEntry();
+        entry.setCallCardTemplateId(template);
+        entry.setItemId(itemId);
+        entry.setItemTypeId(new ItemTypes(1002));
+        entry.setOrdering(ordering);
+        entry.setProperties(properties);
+        return entry;
+    }
+}
@@ -0,0 +1,162 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.exception.BusinessLayerException;
+import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for CallCardUpdateExecutor concurrency and per-task transactions.
+ */
+public class CallCardUpdateExecutorTest {
+
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger rollbacks = new AtomicInteger();
+    private CallCardUpdateExecutor executor;
+
+    @BeforeEach
+    public void setUp() {
+        executor = new CallCardUpdateExecutor(transactionManager(), 4, 16, 2000);
+    }
+
+    private PlatformTransactionManager transactionManager() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                commits.incrementAndGet();
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                rollbacks.incrementAndGet();
+            }
+        };
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    public void independentCallCardsAreStoredConcurrently() throws Exception {
+        long start = System.currentTimeMillis();
+
+        Future<String> first = executor.submitInTransaction("group", "gameType", () -> sleepAndReturn(300, "card-1"));
+        Future<String> second = executor.submitInTransaction("group", "gameType", () -> sleepAndReturn(300, "card-2"));
+        Future<String> third = executor.submitInTransaction("group", "gameType", () -> Thread.currentThread().getName());
+
+        assertEquals("card-1", executor.await(first));
+        assertEquals("card-2", executor.await(second));
+        assertNotEquals(Thread.currentThread().getName(), executor.await(third));
+
+        assertTrue(System.currentTimeMillis() - start < 800, "updates should overlap");
+        assertEquals(3, commits.get());
+    }
+
+    @Test
+    public void failedCallCardIsRolledBackAlone() throws Exception {
+        BusinessLayerException failure = new BusinessLayerException(ExceptionTypeTO.NOT_FOUND, "No callCard found");
+
+        Future<String> failed = executor.submitInTransaction("group", "gameType", () -> {
+            throw failure;
+        });
+        Future<String> stored = executor.submitInTransaction("group", "gameType", () -> "card-2");
+
+        assertSame(failure, assertThrows(BusinessLayerException.class, () -> executor.await(failed)));
+        assertEquals("card-2", executor.await(stored));
+        assertEquals(1, rollbacks.get());
+        assertEquals(1, commits.get());
+    }
+
+    @Test
+    public void runningCallCardIsAwaitedPastTheTimeout() throws Exception {
+        CallCardUpdateExecutor slowExecutor = new CallCardUpdateExecutor(transactionManager(), 1, 16, 100);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            Future<Boolean> running = slowExecutor.submitInTransaction("group", "gameType", () -> {
+                boolean released = awaitQuietly(release);
+                return released && !Thread.currentThread().isInterrupted();
+            });
+            Future<String> queued = slowExecutor.submitInTransaction("group", "gameType", () -> "card-2");
+
+            new Thread(() -> {
+                sleepAndReturn(300, null);
+                release.countDown();
+            }).start();
+            long deadline = slowExecutor.deadline();
+
+            assertTrue(slowExecutor.await(running, deadline), "the running update completes without an interrupt");
+            assertThrows(BusinessLayerException.class, () -> slowExecutor.await(queued, deadline));
+            assertTrue(queued.isCancelled());
+            assertEquals(1, commits.get());
+        } finally {
+            slowExecutor.close();
+        }
+    }
+
+    @Test
+    public void callCardsOfAnUpdateShareOneDeadline() throws Exception {
+        CallCardUpdateExecutor slowExecutor = new CallCardUpdateExecutor(transactionManager(), 1, 16, 400);
+        try {
+            Future<String> first = slowExecutor.submitInTransaction("group", "gameType", () -> sleepAndReturn(200, "card-1"));
+            Future<String> second = slowExecutor.submitInTransaction("group", "gameType", () -> sleepAndReturn(400, "card-2"));
+            Future<String> third = slowExecutor.submitInTransaction("group", "gameType", () -> "card-3");
+            long deadline = slowExecutor.deadline();
+
+            assertEquals("card-1", slowExecutor.await(first, deadline));
+            assertEquals("card-2", slowExecutor.await(second, deadline));
+            assertThrows(BusinessLayerException.class, () -> slowExecutor.await(third, deadline), "not started by the deadline of the update");
+            assertTrue(third.isCancelled());
+        } finally {
+            slowExecutor.close();
+        }
+    }
+
+    @Test
+    public void pendingCallCardIsStoredOnTheCallerThread() throws Exception {
+        String thread = executor.executeInTransaction("group", "gameType", () -> Thread.currentThread().getName());
+
+        assertEquals(Thread.currentThread().getName(), thread);
+        assertEquals(1, commits.get());
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch) {
+        try {
+            return latch.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String sleepAndReturn(long millis, String value) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+}
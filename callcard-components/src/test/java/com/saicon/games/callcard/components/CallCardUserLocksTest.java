@@ -0,0 +1,91 @@
+package com.saicon.games.callcard.components;
+
+import com.saicon.games.callcard.exception.BusinessLayerException;
+import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for CallCardUserLocks serialization, timeouts and wait metrics.
+ */
+public class CallCardUserLocksTest {
+
+    private static final String USER_ID = "6F9619FF-8B86-D011-B42D-00C04FC964FF";
+
+    @Test
+    public void updatesOfAUserAreSerialized() throws Exception {
+        CallCardUserLocks locks = new CallCardUserLocks(16, 2000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Lock lock = locks.lock(USER_ID);
+            CountDownLatch started = new CountDownLatch(1);
+            Future<?> other = executor.submit(() -> {
+                started.countDown();
+                Lock otherLock = locks.lock(USER_ID.toLowerCase());
+                otherLock.unlock();
+                return null;
+            });
+
+            started.await();
+            Thread.sleep(100);
+            assertFalse(other.isDone(), "the same user, whatever the case of the id, waits for the lock");
+
+            lock.unlock();
+            other.get(1, TimeUnit.SECONDS);
+            assertEquals(2, locks.getAcquired());
+            assertEquals(1, locks.getContended());
+            assertTrue(locks.getWaitMillis() >= 50);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void lockWithoutTimeoutFailsAtOnce() throws Exception {
+        CallCardUserLocks locks = new CallCardUserLocks(16, 2000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Lock lock = locks.lock(USER_ID);
+            long start = System.nanoTime();
+            Future<?> other = executor.submit(() -> locks.lock(USER_ID, 0));
+
+            Exception e = assertThrows(Exception.class, () -> other.get(1, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof BusinessLayerException);
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000), "no wait for the default timeout");
+            assertEquals(1, locks.getTimedOut());
+            lock.unlock();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void updateIsRefusedWhenTheLockIsHeldTooLong() throws Exception {
+        CallCardUserLocks locks = new CallCardUserLocks(16, 50);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Lock lock = locks.lock(USER_ID);
+            Future<?> other = executor.submit(() -> locks.lock(USER_ID));
+
+            Exception e = assertThrows(Exception.class, () -> other.get(1, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof BusinessLayerException);
+            assertEquals(ExceptionTypeTO.CONCURRENT_MODIFICATION, ((BusinessLayerException) e.getCause()).getErrorCode());
+            assertEquals(1, locks.getTimedOut());
+            assertEquals(0, locks.getWaiting());
+            lock.unlock();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
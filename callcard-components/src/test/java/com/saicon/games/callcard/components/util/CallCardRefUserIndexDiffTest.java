@@ -0,0 +1,87 @@
+package com.saicon.games.callcard.components.util;
+
+import com.saicon.games.callcard.entity.CallCardRefUserIndex;
+import com.saicon.games.entities.shared.ItemTypes;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Unit tests for CallCardRefUserIndexDiff matching.
+ */
+public class CallCardRefUserIndexDiffTest {
+
+    @Test
+    public void unchangedRowsAreNotWritten() {
+        CallCardRefUserIndexDiff diff = new CallCardRefUserIndexDiff(Arrays.asList(
+                index("stored-1", "ITEM-1", "CallCardIndex.sales", "5", 1000),
+                index("stored-2", "ITEM-1", "CallCardIndex.salesUnit", "2", 1000)));
+
+        diff.add(index(null, "item-1", "CallCardIndex.sales", "5", 1002));
+        diff.add(index(null, "item-1", "CallCardIndex.salesUnit", "2", 1000));
+
+        assertEquals(2, diff.getUnchanged());
+        assertEquals(0, diff.getInserts().size() + diff.getUpdates().size() + diff.getDeletes().size());
+    }
+
+    @Test
+    public void onlyChangedRowsAreWritten() {
+        CallCardRefUserIndex changed = index("stored-1", "ITEM-1", "CallCardIndex.sales", "5", 1000);
+        CallCardRefUserIndex removed = index("stored-2", "ITEM-2", "CallCardIndex.sales", "1", 1000);
+        CallCardRefUserIndexDiff diff = new CallCardRefUserIndexDiff(Arrays.asList(changed, removed));
+
+        CallCardRefUserIndex added = index(null, "ITEM-3", "CallCardIndex.sales", "7", 1000);
+        diff.add(index(null, "ITEM-1", "CallCardIndex.sales", "6", 1000));
+        diff.add(added);
+
+        assertEquals(Collections.singletonList(changed), diff.getUpdates());
+        assertEquals("6", changed.getPropertyValue());
+        assertEquals(Collections.singletonList(removed), diff.getDeletes());
+        assertSame(added, diff.getInserts().get(0));
+    }
+
+    @Test
+    public void repeatedKeysAreMatchedInOrder() {
+        CallCardRefUserIndexDiff diff = new CallCardRefUserIndexDiff(Collections.singletonList(
+                index("stored-1", "ITEM-1", "CallCardIndex.comment", "a", 1000)));
+
+        diff.add(index(null, "ITEM-1", "CallCardIndex.comment", "a", 1000));
+        diff.add(index(null, "ITEM-1", "CallCardIndex.comment", "b", 1000));
+
+        assertEquals(1, diff.getUnchanged());
+        assertEquals(1, diff.getInserts().size());
+    }
+
+    @Test
+    public void amountsAreComparedAsStored() {
+        CallCardRefUserIndexDiff diff = new CallCardRefUserIndexDiff(Collections.singletonList(
+                index("stored-1", "ITEM-1", "CallCardIndex.sales", "5", 1000)));
+
+        CallCardRefUserIndex incoming = index(null, "ITEM-1", "CallCardIndex.sales", "5", 1000);
+        incoming.setAmount(new BigDecimal("1.499"));
+        diff.add(incoming);
+
+        assertEquals(1, diff.getUnchanged());
+        assertEquals(0, diff.getUpdates().size());
+    }
+
+    private static CallCardRefUserIndex index(String id, String itemId, String propertyId, String value, long submitDate) {
+        CallCardRefUserIndex index = new CallCardRefUserIndex();
+        index.setCallCardRefUserIndexId(id);
+        index.setItemId(itemId);
+        index.setItemTypeId(new ItemTypes(3));
+        index.setPropertyId(propertyId);
+        index.setPropertyValue(value);
+        index.setStatus(1);
+        index.setSubmitDate(new Date(submitDate));
+        index.setAmount(new BigDecimal("1.50"));
+        index.setType(1);
+        return index;
+    }
+}
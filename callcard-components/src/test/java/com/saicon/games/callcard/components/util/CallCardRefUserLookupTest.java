@@ -0,0 +1,49 @@
+package com.saicon.games.callcard.components.util;
+
+import com.saicon.games.callcard.entity.CallCardRefUser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for CallCardRefUserLookup resolution of incoming refUsers.
+ */
+public class CallCardRefUserLookupTest {
+
+    @Test
+    public void refUsersAreResolvedByIdAndInternalRefNo() {
+        CallCardRefUser byId = refUser("6F9619FF-8B86-D011-B42D-00C04FC964FF", null);
+        CallCardRefUser byRefNo = refUser("7F9619FF-8B86-D011-B42D-00C04FC964FF", "1234567890");
+
+        CallCardRefUserLookup lookup = new CallCardRefUserLookup(Collections.singletonList(byId), Collections.singletonList(byRefNo));
+
+        assertSame(byId, lookup.getById("6f9619ff-8b86-d011-b42d-00c04fc964ff"));
+        assertNull(lookup.getById("8F9619FF-8B86-D011-B42D-00C04FC964FF"));
+        assertEquals(Collections.singletonList(byRefNo), lookup.listByInternalRefNo("1234567890"));
+        assertTrue(lookup.listByInternalRefNo("0000000000").isEmpty());
+    }
+
+    @Test
+    public void createdRefUsersAreRegistered() {
+        CallCardRefUserLookup lookup = new CallCardRefUserLookup(null, Arrays.asList(refUser("A", "dup"), refUser("B", "DUP")));
+        CallCardRefUser created = refUser("C", "new");
+
+        lookup.add(created);
+
+        assertEquals(2, lookup.listByInternalRefNo("dup").size());
+        assertSame(created, lookup.listByInternalRefNo("new").get(0));
+    }
+
+    private static CallCardRefUser refUser(String id, String internalRefNo) {
+        CallCardRefUser refUser = new CallCardRefUser();
+        refUser.setCallCardRefUserId(id);
+        refUser.setInternalRefNo(internalRefNo);
+        return refUser;
+    }
+}
@@ -0,0 +1,209 @@
+package com.saicon.games.callcard.components.util;
+
+import com.saicon.games.callcard.entity.CallCardTemplateEntry;
+import com.saicon.games.callcard.entity.CallCardTemplatePOS;
+import com.saicon.games.callcard.util.Constants;
+import com.saicon.games.callcard.ws.dto.CallCardActionItemAttributesDTO;
+import com.saicon.games.callcard.ws.dto.CallCardActionItemDTO;
+import com.saicon.games.callcard.ws.dto.CallCardActionsDTO;
+import com.saicon.games.callcard.ws.dto.CallCardGroupDTO;
+import com.saicon.games.callcard.ws.dto.CallCardRefUserDTO;
+import com.saicon.games.entities.shared.ItemTypes;
+import com.saicon.games.entities.shared.Users;
+import com.saicon.games.metadata.dto.MetadataKeyDTO;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Merge of previous-value summaries into a template by {@link CallCardGroupAssembler}, through the
+ * refUserId → itemId → property ordinal index, checked against the former linear equalsIgnoreCase scan.
+ *
+ * The 500 POS x 300 SKU benchmark is opt-in: run it with {@code -Dgroups=benchmark -Dbenchmark=true}.
+ */
+public class CallCardSummaryIndexTest {
+
+    private static final List<String> PROPERTY_NAMES = Arrays.asList(
+            "callCardIndexSales", "callCardIndexStock", "callCardIndexFacings", "callCardIndexPrice",
+            "callCardIndexPromotion", "callCardIndexShelf", "callCardIndexOutOfStock", "callCardIndexOrder");
+
+    // the template asks for a subset of the properties, in a different case than the summaries
+    private static final List<String> TEMPLATE_PROPERTIES = Arrays.asList("CALLCARDINDEXSALES", "callcardindexstock", "CallCardIndexOrder");
+
+    @Test
+    public void lookupsResolveByOrdinal() {
+        CallCardPropertyDictionary dictionary = dictionary();
+        Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> summaries = summaries(1, 1);
+        CallCardSummaryIndex index = new CallCardSummaryIndex(summaries, dictionary);
+
+        CallCardActionItemAttributesDTO sales = summaries.get("pos-0").get("sku-0").get(0);
+        assertSame(sales, index.get("pos-0", "sku-0", dictionary.ordinalOf("CALLCARDINDEXSALES")));
+        assertNull(index.get("pos-0", "sku-0", dictionary.ordinalOf("unknown")));
+        assertNull(index.get("pos-1", "sku-0", 0));
+        assertSame(summaries, index.asMap());
+    }
+
+    @Test
+    public void assembledAttributesCarryTheSummariesOfTheLinearScan() {
+        CallCardPropertyDictionary dictionary = dictionary();
+        // pos-20 has no summaries, and sku-30 is in no summary
+        CallCardTemplateSkeleton skeleton = skeleton(21, 31);
+        Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> summaries = summaries(20, 30);
+
+        List<CallCardGroupDTO> groups = CallCardGroupAssembler.buildCallCardGroups(skeleton, "user", new CallCardSummaryIndex(summaries, dictionary), null, dictionary,
+                new HashMap<String, Integer>());
+
+        Map<String, String> assembled = assembledValues(groups);
+        Map<String, String> expected = mergeLinear(skeleton, summaries);
+        assertEquals(21 * 31 * TEMPLATE_PROPERTIES.size(), assembled.size(), "one attribute per POS, SKU and template property");
+        assertEquals(expected, assembled);
+        assertTrue(assembled.containsValue(String.valueOf(19 * 30 + 29)));
+        assertNull(assembled.get("pos-20|sku-0|CALLCARDINDEXSALES"));
+        assertNull(assembled.get("pos-0|sku-30|CALLCARDINDEXSALES"));
+    }
+
+    @Test
+    public void templatesWithoutPosHaveNoGroups() {
+        CallCardPropertyDictionary dictionary = dictionary();
+
+        assertNull(CallCardGroupAssembler.buildCallCardGroups(skeleton(0, 3), "user", CallCardSummaryIndex.empty(), null, dictionary, new HashMap<String, Integer>()));
+    }
+
+    @Test
+    @Tag("benchmark")
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void mergeOf500PosBy300Skus() {
+        final int rounds = 5;
+        CallCardPropertyDictionary dictionary = dictionary();
+        CallCardTemplateSkeleton skeleton = skeleton(500, 300);
+        Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> summaries = summaries(500, 300);
+
+        long linearNanos = Long.MAX_VALUE;
+        long indexedNanos = Long.MAX_VALUE;
+        Map<String, String> linear = null;
+        Map<String, String> indexed = null;
+
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            linear = mergeLinear(skeleton, summaries);
+            linearNanos = Math.min(linearNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            List<CallCardGroupDTO> groups = CallCardGroupAssembler.buildCallCardGroups(skeleton, "user", new CallCardSummaryIndex(summaries, dictionary), null, dictionary,
+                    new HashMap<String, Integer>());
+            indexedNanos = Math.min(indexedNanos, System.nanoTime() - start);
+            indexed = assembledValues(groups);
+        }
+
+        System.out.println(String.format("CallCard summary merge 500 POS x 300 SKU x %d properties: linear scan %d ms, assembly with the ordinal index %d ms (incl. index build)",
+                TEMPLATE_PROPERTIES.size(), linearNanos / 1_000_000, indexedNanos / 1_000_000));
+
+        assertEquals(linear, indexed);
+    }
+
+    /**
+     * The value of every attribute of the assembled groups, keyed by POS, SKU and property.
+     */
+    private static Map<String, String> assembledValues(List<CallCardGroupDTO> groups) {
+        Map<String, String> values = new HashMap<>();
+        for (CallCardGroupDTO group : groups) {
+            for (CallCardRefUserDTO refUser : group.getRefUserIds()) {
+                for (CallCardActionsDTO actions : refUser.getActions()) {
+                    for (CallCardActionItemDTO actionItem : actions.getActionItems()) {
+                        for (CallCardActionItemAttributesDTO attribute : actionItem.getAttributes())
+                            values.put(refUser.getRefUserId() + "|" + actionItem.getItemId() + "|" + attribute.getPropertyName(), attribute.getRefPropertyValue());
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The former merge: a linear equalsIgnoreCase scan of the summaries of each POS and SKU.
+     */
+    private static Map<String, String> mergeLinear(CallCardTemplateSkeleton skeleton, Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> summaries) {
+        Map<String, String> values = new HashMap<>();
+        for (CallCardTemplateSkeleton.Pos pos : skeleton.getPos()) {
+            Map<String, List<CallCardActionItemAttributesDTO>> itemAttributeSummariesMap = summaries.get(pos.getRefUserId());
+            for (CallCardTemplateSkeleton.Item item : skeleton.getItems()) {
+                List<CallCardActionItemAttributesDTO> itemAttributeSummaries = itemAttributeSummariesMap != null ? itemAttributeSummariesMap.get(item.getItemId()) : null;
+                for (String propertyName : item.getPropertyNames()) {
+                    CallCardActionItemAttributesDTO summary = null;
+                    if (itemAttributeSummaries != null) {
+                        for (CallCardActionItemAttributesDTO itemAttributeSummary : itemAttributeSummaries) {
+                            if (itemAttributeSummary.getPropertyName().equalsIgnoreCase(propertyName)) {
+                                summary = itemAttributeSummary;
+                                break;
+                            }
+                        }
+                    }
+                    values.put(pos.getRefUserId() + "|" + item.getItemId() + "|" + propertyName, summary != null ? summary.getRefPropertyValue() : null);
+                }
+            }
+        }
+        return values;
+    }
+
+    private static CallCardPropertyDictionary dictionary() {
+        List<MetadataKeyDTO> metadataKeys = new ArrayList<>();
+        for (String propertyName : PROPERTY_NAMES) {
+            MetadataKeyDTO metadataKey = new MetadataKeyDTO();
+            metadataKey.setMetadataKeyName(propertyName);
+            metadataKey.setDataTypeName("integer");
+            metadataKeys.add(metadataKey);
+        }
+        return new CallCardPropertyDictionary(1, metadataKeys);
+    }
+
+    private static CallCardTemplateSkeleton skeleton(int pos, int skus) {
+        String properties = String.join(",", TEMPLATE_PROPERTIES);
+        List<CallCardTemplateEntry> entries = new ArrayList<>();
+        for (int s = 0; s < skus; s++) {
+            CallCardTemplateEntry entry = new CallCardTemplateEntry();
+            entry.setItemId("sku-" + s);
+            entry.setItemTypeId(new ItemTypes(Constants.ITEM_TYPE_BRAND_PRODUCT));
+            entry.setOrdering(s);
+            entry.setProperties(properties);
+            entries.add(entry);
+        }
+
+        List<CallCardTemplatePOS> templatePOSs = new ArrayList<>();
+        for (int p = 0; p < pos; p++) {
+            CallCardTemplatePOS templatePOS = new CallCardTemplatePOS();
+            templatePOS.setRefUserId(new Users("pos-" + p));
+            templatePOSs.add(templatePOS);
+        }
+        return CallCardTemplateSkeleton.compile("template", "gameType", entries, templatePOSs, null);
+    }
+
+    private static Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> summaries(int pos, int skus) {
+        Map<String, Map<String, List<CallCardActionItemAttributesDTO>>> summaries = new HashMap<>();
+        for (int p = 0; p < pos; p++) {
+            Map<String, List<CallCardActionItemAttributesDTO>> items = new HashMap<>();
+            for (int s = 0; s < skus; s++) {
+                List<CallCardActionItemAttributesDTO> attributes = new ArrayList<>();
+                for (String propertyName : PROPERTY_NAMES) {
+                    CallCardActionItemAttributesDTO attribute = new CallCardActionItemAttributesDTO();
+                    attribute.setPropertyName(propertyName);
+                    attribute.setRefPropertyValue(String.valueOf(p * skus + s));
+                    attributes.add(attribute);
+                }
+                items.put("sku-" + s, attributes);
+            }
+            summaries.put("pos-" + p, items);
+        }
+        return summaries;
+    }
+}
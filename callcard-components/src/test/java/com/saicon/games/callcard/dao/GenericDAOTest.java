@@ -0,0 +1,276 @@
+package com.saicon.games.callcard.dao;
+
+import com.saicon.games.callcard.entity.CallCard;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the named query name resolution, the bulk operations and the IN-list chunking of GenericDAO.
+ */
+public class GenericDAOTest {
+
+    private final List<String> lookups = new ArrayList<>();
+    private final List<String> calls = new ArrayList<>();
+    private final List<List<?>> boundIds = new ArrayList<>();
+    private List<?> results = Collections.emptyList();
+
+    @Test
+    public void queryRegisteredUnderTheSimpleNameIsResolvedOnce() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+
+        dao.queryList("listByUser", "user-1");
+        dao.queryList("listByUser", "user-2");
+        dao.queryList("listByUser", "user-3");
+
+        assertEquals(4, lookups.size(), "two trials, then the simple name only");
+        assertEquals("com.saicon.games.callcard.entity.CallCard.listByUser", lookups.get(0));
+        assertEquals("CallCard.listByUser", lookups.get(3));
+        assertEquals(2, dao.getQueryNameHits());
+        assertEquals(1, dao.getQueryNameMisses());
+    }
+
+    @Test
+    public void missingQueryIsNotLookedUpAgain() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+
+        assertNull(dao.querySingle("unknown"));
+        assertNull(dao.querySingle("unknown"));
+
+        assertEquals(2, lookups.size());
+        assertEquals(1, dao.getQueryNameHits());
+    }
+
+    @Test
+    public void manyEntitiesAreFlushedAndDetachedEveryFlushInterval() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+        dao.setFlushInterval(2);
+
+        dao.createAll(Arrays.asList(new CallCard(), new CallCard(), new CallCard()));
+
+        assertEquals(Arrays.asList("persist", "persist", "flush", "detach", "detach", "persist", "flush", "detach"), calls);
+    }
+
+    @Test
+    public void fewEntitiesAreFlushedAndDetachedToo() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+
+        dao.createAll(Arrays.asList(new CallCard(), new CallCard()));
+
+        assertEquals(Arrays.asList("persist", "persist", "flush", "detach", "detach"), calls);
+    }
+
+    @Test
+    public void idsAreReadInChunksWithoutDuplicates() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+        dao.setInListSize(2);
+
+        dao.readAll(Arrays.asList("A", "B", "A", "C"));
+
+        assertEquals(Arrays.asList("createQuery", "createQuery"), calls);
+        assertEquals(Arrays.asList(Arrays.asList("A", "B"), Collections.singletonList("C")), boundIds);
+    }
+
+    @Test
+    public void entitiesAreReadInTheOrderOfTheirIds() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+        CallCard a = callCard("A");
+        CallCard b = callCard("B");
+        CallCard c = callCard("C");
+        results = Arrays.asList(c, b, a);
+
+        assertEquals(Arrays.asList(a, b, c), dao.readAll(Arrays.asList("A", "b", "D", "C", "A")));
+    }
+
+    @Test
+    public void largeCollectionArgumentIsQueriedInPaddedChunks() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+        dao.setInListSize(4);
+
+        dao.queryList("listByUser", Arrays.asList("A", "B", "C", "D", "E", "F"));
+
+        assertEquals(Arrays.asList(Arrays.asList("A", "B", "C", "D"), Arrays.asList("E", "F")), boundIds);
+    }
+
+    @Test
+    public void inListSizeThatIsNotAPowerOfTwoIsNotPaddedPast() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+        dao.setInListSize(3);
+
+        dao.queryList("listByUser", Arrays.asList("A", "B", "C", "D", "E", "F", "G"));
+
+        assertEquals(Arrays.asList(Arrays.asList("A", "B", "C"), Arrays.asList("D", "E", "F"), Collections.singletonList("G")), boundIds);
+    }
+
+    @Test
+    public void collectionArgumentsOverTheParameterBudgetAreSplit() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+        List<String> userIds = ids("U", 1000);
+        List<String> callCardIds = ids("C", 1000);
+
+        dao.executeUpdate("listByUser", userIds, callCardIds, ids("T", 1000));
+
+        assertEquals(8 * 3, boundIds.size(), "two chunks of each list, one statement per combination");
+        for (int statement = 0; statement < boundIds.size(); statement += 3) {
+            int parameters = boundIds.get(statement).size() + boundIds.get(statement + 1).size() + boundIds.get(statement + 2).size();
+            assertTrue(parameters <= InLists.DEFAULT_PARAMETER_BUDGET);
+        }
+    }
+
+    @Test
+    public void smallCollectionArgumentIsPadded() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+
+        dao.queryList("listByUser", Arrays.asList("A", "B", "C"));
+
+        assertEquals(Collections.singletonList(Arrays.asList("A", "B", "C", "C")), boundIds);
+    }
+
+    @Test
+    public void entitiesMatchedBySeveralStatementsAreMergedOnce() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+        dao.setInListSize(2);
+        CallCard callCard = new CallCard();
+        results = Collections.singletonList(callCard);
+
+        List<CallCard> merged = dao.queryList("listByUser", Arrays.asList("A", "B", "C"));
+
+        assertEquals(2, boundIds.size());
+        assertEquals(Collections.singletonList(callCard), merged);
+        assertSame(callCard, dao.querySingle("listByUser", Arrays.asList("A", "B", "C")));
+    }
+
+    @Test
+    public void orderedQueryIsNotMergedFromSeveralStatements() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser", "SELECT c FROM CallCard c WHERE c.userId IN ?1 ORDER BY c.dateCreated"));
+        dao.setInListSize(2);
+
+        assertThrows(IllegalArgumentException.class, () -> dao.queryList("listByUser", Arrays.asList("A", "B", "C")));
+        dao.queryList("listByUser", Arrays.asList("A", "B"));
+
+        assertEquals(Collections.singletonList(Arrays.asList("A", "B")), boundIds);
+    }
+
+    @Test
+    public void rangeOfSeveralStatementsIsRejected() {
+        GenericDAO<CallCard, String> dao = new GenericDAO<>(CallCard.class, entityManager("CallCard.listByUser"));
+        dao.setInListSize(2);
+
+        assertThrows(IllegalArgumentException.class, () -> dao.queryListRange("listByUser", 0, 10, Arrays.asList("A", "B", "C")));
+        assertTrue(boundIds.isEmpty());
+    }
+
+    private EntityManager entityManager(String registeredName) {
+        return entityManager(registeredName, null);
+    }
+
+    /**
+     * @param queryString JPQL of the named query, which is then a Hibernate query; null for a plain JPA query
+     */
+    private EntityManager entityManager(String registeredName, String queryString) {
+        Class<?> queryType = queryString != null ? org.hibernate.query.Query.class : TypedQuery.class;
+        Query query = (Query) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{queryType}, (proxy, method, args) -> {
+            if ("getResultList".equals(method.getName()))
+                return results;
+            if ("getQueryString".equals(method.getName()))
+                return queryString;
+            if ("executeUpdate".equals(method.getName()))
+                return 0;
+            if ("setParameter".equals(method.getName()) && args[1] instanceof List)
+                boundIds.add(new ArrayList<>((List<?>) args[1]));
+            return proxy;
+        });
+
+        return (EntityManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{EntityManager.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "createNamedQuery":
+                    lookups.add((String) args[0]);
+                    if (!registeredName.equals(args[0]))
+                        throw new IllegalArgumentException("No query defined for that name [" + args[0] + "]");
+                    return query;
+                case "createQuery":
+                    calls.add(method.getName());
+                    return query;
+                case "getMetamodel":
+                    return metamodel();
+                case "getEntityManagerFactory":
+                    return entityManagerFactory();
+                case "persist":
+                case "flush":
+                case "detach":
+                    calls.add(method.getName());
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private Metamodel metamodel() {
+        Type<?> idType = proxy(Type.class, "getJavaType", String.class);
+        SingularAttribute<?, ?> idAttribute = proxy(SingularAttribute.class, "getName", "callCardId");
+        EntityType<?> entityType = (EntityType<?>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{EntityType.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return "CallCard";
+                case "getIdType":
+                    return idType;
+                case "getId":
+                    return idAttribute;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        return proxy(Metamodel.class, "entity", entityType);
+    }
+
+    private EntityManagerFactory entityManagerFactory() {
+        PersistenceUnitUtil persistenceUnitUtil = (PersistenceUnitUtil) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PersistenceUnitUtil.class}, (proxy, method, args) -> {
+            if (!"getIdentifier".equals(method.getName()))
+                throw new UnsupportedOperationException(method.getName());
+            return ((CallCard) args[0]).getCallCardId();
+        });
+        return proxy(EntityManagerFactory.class, "getPersistenceUnitUtil", persistenceUnitUtil);
+    }
+
+    private static CallCard callCard(String callCardId) {
+        CallCard callCard = new CallCard();
+        callCard.setCallCardId(callCardId);
+        return callCard;
+    }
+
+    private static List<String> ids(String prefix, int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            ids.add(prefix + i);
+        return ids;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <P> P proxy(Class<?> type, String methodName, Object value) {
+        return (P) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (!methodName.equals(method.getName()))
+                throw new UnsupportedOperationException(method.getName());
+            return value;
+        });
+    }
+}
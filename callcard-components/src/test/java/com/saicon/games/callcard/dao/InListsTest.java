@@ -0,0 +1,139 @@
+package com.saicon.games.callcard.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the chunking and padding of IN-list values.
+ */
+public class InListsTest {
+
+    @Test
+    public void valuesArePaddedToTheNextPowerOfTwoWithoutDuplicates() {
+        assertEquals(Arrays.asList("A", "B", "C", "C"), InLists.pad(Arrays.asList("A", "B", "A", "C")));
+        assertEquals(Arrays.asList("A", "B"), InLists.pad(Arrays.asList("A", "B")));
+        assertEquals(Collections.singletonList("A"), InLists.pad(Collections.singletonList("A")));
+        assertTrue(InLists.pad(Collections.<String>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void largeListsAreSplitInPaddedChunks() {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 11; i++)
+            values.add(i);
+
+        List<List<Integer>> chunks = InLists.partition(values, 4);
+
+        assertEquals(3, chunks.size());
+        assertEquals(Arrays.asList(0, 1, 2, 3), chunks.get(0));
+        assertEquals(Arrays.asList(4, 5, 6, 7), chunks.get(1));
+        assertEquals(Arrays.asList(8, 9, 10, 10), chunks.get(2));
+    }
+
+    @Test
+    public void chunksAreNotPaddedPastTheMaxSize() {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 7; i++)
+            values.add(i);
+
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2), Arrays.asList(3, 4, 5), Collections.singletonList(6)), InLists.partition(values, 3));
+        assertEquals(6, InLists.pad(values.subList(0, 5), 6).size());
+        assertEquals(7, InLists.pad(values, 6).size(), "a list over the max size is not padded");
+    }
+
+    @Test
+    public void chunksOfAnySizeHoldAllValuesWithinTheMaxSize() {
+        for (int size = 1; size <= 40; size++) {
+            List<Integer> values = new ArrayList<>();
+            for (int i = 0; i < size; i++)
+                values.add(i);
+
+            for (int maxSize = 1; maxSize <= 12; maxSize++) {
+                Set<Integer> chunked = new LinkedHashSet<>();
+                for (List<Integer> chunk : InLists.partition(values, maxSize)) {
+                    assertTrue(chunk.size() <= maxSize, size + " values in chunks of " + maxSize);
+                    assertTrue(Integer.bitCount(chunk.size()) == 1 || chunk.size() == maxSize);
+                    assertFalse(InLists.exceeds(chunk, maxSize));
+                    chunked.addAll(chunk);
+                }
+                assertEquals(new LinkedHashSet<>(values), chunked);
+            }
+        }
+    }
+
+    @Test
+    public void listsOverTheParameterBudgetAreSplitInCombinations() {
+        List<String> first = Arrays.asList("A", "B", "C", "D");
+        List<String> second = Arrays.asList("1", "2", "3");
+
+        assertTrue(InLists.exceeds(4, 6, first, second, null));
+        assertFalse(InLists.exceeds(4, 8, first, second, null));
+
+        List<List<List<String>>> statements = InLists.partitionAll(4, 6, first, second, null);
+
+        assertEquals(2, statements.size());
+        assertEquals(Arrays.asList(Arrays.asList("A", "B"), Arrays.asList("1", "2", "3", "3"), null), statements.get(0));
+        assertEquals(Arrays.asList(Arrays.asList("C", "D"), Arrays.asList("1", "2", "3", "3"), null), statements.get(1));
+    }
+
+    @Test
+    public void listsOfAnySizeFitTheParameterBudget() {
+        int[] sizes = {0, 1, 3, 500, 1000, 1024, 1500, 3000};
+        for (int first : sizes) {
+            for (int second : sizes) {
+                for (int third : sizes) {
+                    List<Integer> a = values(first), b = values(second), c = values(third);
+                    int statements = 0;
+                    for (List<List<Integer>> statement : InLists.partitionAll(InLists.DEFAULT_MAX_SIZE, InLists.DEFAULT_PARAMETER_BUDGET, a, b, c)) {
+                        int parameters = 0;
+                        for (List<Integer> chunk : statement) {
+                            assertTrue(chunk.size() <= InLists.DEFAULT_MAX_SIZE);
+                            parameters += chunk.size();
+                        }
+                        assertTrue(parameters <= InLists.DEFAULT_PARAMETER_BUDGET, first + "/" + second + "/" + third + " bind " + parameters);
+                        statements++;
+                    }
+                    assertEquals(statements > 1, InLists.exceeds(InLists.DEFAULT_MAX_SIZE, InLists.DEFAULT_PARAMETER_BUDGET, a, b, c));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void statementResultsAreMergedInOrder() {
+        List<String> results = InLists.queryAll(2, 3, lists -> Collections.singletonList(lists.get(0).get(0) + lists.get(1).get(0)),
+                Arrays.asList("A", "B", "C"), Arrays.asList("1", "2"));
+
+        assertEquals(Arrays.asList("A1", "B1", "C1"), results, "one value of the first list per statement leaves room for the second");
+    }
+
+    @Test
+    public void chunkResultsAreMergedInChunkOrder() {
+        List<List<String>> queried = new ArrayList<>();
+
+        List<String> results = InLists.query(Arrays.asList("A", "B", "C"), 2, chunk -> {
+            queried.add(chunk);
+            return Collections.singletonList(chunk.get(0));
+        });
+
+        assertEquals(Arrays.asList(Arrays.asList("A", "B"), Collections.singletonList("C")), queried);
+        assertEquals(Arrays.asList("A", "C"), results);
+    }
+
+    private static List<Integer> values(int size) {
+        List<Integer> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            values.add(i);
+        return values;
+    }
+}
@@ -0,0 +1,178 @@
+package com.saicon.games.callcard.dao;
+
+import com.saicon.games.callcard.entity.CallCard;
+import org.hibernate.ScrollableResults;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for streaming ScrollableResults rows with periodic eviction.
+ */
+public class ScrollableResultsSpliteratorTest {
+
+    private final List<Object> evicted = new ArrayList<>();
+    private final Map<Object, Object> managed = new IdentityHashMap<>(); //< Entity, Entity>
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    @Test
+    public void streamedEntitiesAreEvictedEveryInterval() {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            rows.add(new Object[]{new CallCard(), "refUser-" + i});
+
+        List<Integer> evictedWhenStreamed = new ArrayList<>();
+        try (Stream<CallCard> stream = ScrollableResultsSpliterator.stream(scrollableResults(rows), session(), 2)) {
+            stream.forEach(callCard -> evictedWhenStreamed.add(evicted.size()));
+        }
+
+        assertEquals(Arrays.asList(0, 0, 2, 2, 4), evictedWhenStreamed);
+        assertEquals(5, evicted.size(), "rows left are evicted at the end, scalar columns are not");
+        assertTrue(managed.isEmpty());
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void rowsAreMapped() {
+        List<Object[]> rows = Arrays.asList(new Object[]{new CallCard(), "refUser-1"}, new Object[]{new CallCard(), "refUser-2"});
+
+        List<String> refUserIds;
+        try (Stream<String> stream = ScrollableResultsSpliterator.stream(scrollableResults(rows), session(), 10, row -> (String) row[1])) {
+            refUserIds = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(Arrays.asList("refUser-1", "refUser-2"), refUserIds);
+    }
+
+    @Test
+    public void entitiesInTheSessionBeforeTheirRowAreNotEvicted() {
+        CallCard loadedBefore = new CallCard();
+        CallCard loadedWhileStreaming = new CallCard();
+        managed.put(loadedBefore, loadedBefore);
+        List<Object[]> rows = Arrays.asList(new Object[]{loadedBefore}, new Object[]{new CallCard()}, new Object[]{loadedWhileStreaming});
+
+        try (Stream<CallCard> stream = ScrollableResultsSpliterator.stream(scrollableResults(rows), session(), 10)) {
+            stream.forEach(callCard -> managed.put(loadedWhileStreaming, loadedWhileStreaming));
+        }
+
+        assertEquals(1, evicted.size());
+        assertTrue(managed.containsKey(loadedBefore));
+        assertTrue(managed.containsKey(loadedWhileStreaming));
+    }
+
+    @Test
+    public void proxiesAreEvictedByTheirEntity() {
+        CallCard callCard = new CallCard();
+        List<Object[]> rows = Arrays.asList(new Object[]{proxy(callCard, true)}, new Object[]{proxy(new CallCard(), false)});
+
+        try (Stream<Object> stream = ScrollableResultsSpliterator.stream(scrollableResults(rows), session(), 10)) {
+            assertEquals(2, stream.count());
+        }
+
+        assertEquals(Collections.singletonList(callCard), evicted, "uninitialized proxies were not loaded by the scan");
+    }
+
+    @Test
+    public void entitiesLeftAreEvictedWhenTheStreamIsClosedEarly() {
+        List<Object[]> rows = Arrays.asList(new Object[]{new CallCard()}, new Object[]{new CallCard()}, new Object[]{new CallCard()});
+
+        CallCard first;
+        try (Stream<CallCard> stream = ScrollableResultsSpliterator.stream(scrollableResults(rows), session(), 10)) {
+            first = stream.findFirst().orElse(null);
+            assertTrue(evicted.isEmpty());
+        }
+
+        assertEquals(1, evicted.size());
+        assertSame(first, evicted.get(0));
+        assertFalse(managed.containsKey(first));
+        assertTrue(closed.get());
+    }
+
+    /**
+     * Rows whose entities join the session when the cursor reaches them, as Hibernate loads them.
+     */
+    private ScrollableResults scrollableResults(List<Object[]> rows) {
+        int[] position = {-1};
+        return (ScrollableResults) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ScrollableResults.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next":
+                    if (++position[0] >= rows.size())
+                        return false;
+                    for (Object value : rows.get(position[0]))
+                        if (value instanceof CallCard)
+                            managed.put(value, value);
+                        else if (value instanceof HibernateProxy && !((HibernateProxy) value).getHibernateLazyInitializer().isUninitialized())
+                            managed.put(((HibernateProxy) value).getHibernateLazyInitializer().getImplementation(), value);
+                    return true;
+                case "get":
+                    return rows.get(position[0]);
+                case "close":
+                    closed.set(true);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private SessionImplementor session() {
+        PersistenceContext persistenceContext = (PersistenceContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PersistenceContext.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getNumberOfManagedEntities":
+                    return managed.size();
+                case "getEntitiesByKey":
+                    return new IdentityHashMap<>(managed);
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        return (SessionImplementor) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{SessionImplementor.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getPersistenceContextInternal":
+                    return persistenceContext;
+                case "evict":
+                    evicted.add(args[0]);
+                    managed.remove(args[0]);
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private HibernateProxy proxy(CallCard callCard, boolean initialized) {
+        LazyInitializer initializer = (LazyInitializer) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{LazyInitializer.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "isUninitialized":
+                    return !initialized;
+                case "getImplementation":
+                    return callCard;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        return (HibernateProxy) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HibernateProxy.class}, (proxy, method, args) -> {
+            if (!"getHibernateLazyInitializer".equals(method.getName()))
+                throw new UnsupportedOperationException(method.getName());
+            return initializer;
+        });
+    }
+}
@@ -0,0 +1,47 @@
+package com.saicon.games.callcard.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for the SQL Server uniqueidentifier order.
+ */
+public class UniqueIdentifierOrderTest {
+
+    @Test
+    public void bytesAreComparedFromTheLastGroupOn() {
+        List<String> ordered = Arrays.asList(
+                "01000000-0000-0000-0000-000000000000",
+                "00000001-0000-0000-0000-000000000000",
+                "00000000-0100-0000-0000-000000000000",
+                "00000000-0001-0000-0000-000000000000",
+                "00000000-0000-0100-0000-000000000000",
+                "00000000-0000-0001-0000-000000000000",
+                "00000000-0000-0000-0001-000000000000",
+                "00000000-0000-0000-0100-000000000000",
+                "00000000-0000-0000-0000-000000000001",
+                "00000000-0000-0000-0000-010000000000");
+
+        List<String> sorted = new ArrayList<>(ordered);
+        Collections.reverse(sorted);
+        sorted.sort(UniqueIdentifierOrder.INSTANCE);
+
+        assertEquals(ordered, sorted);
+    }
+
+    @Test
+    public void caseIsIgnoredAndOtherIdsComeLast() {
+        assertEquals(0, UniqueIdentifierOrder.INSTANCE.compare("6F9619FF-8B86-D011-B42D-00C04FC964FF", "6f9619ff-8b86-d011-b42d-00c04fc964ff"));
+
+        List<String> sorted = new ArrayList<>(Arrays.asList("b", "A", "6F9619FF-8B86-D011-B42D-00C04FC964FF"));
+        sorted.sort(UniqueIdentifierOrder.INSTANCE);
+
+        assertEquals(Arrays.asList("6F9619FF-8B86-D011-B42D-00C04FC964FF", "A", "b"), sorted);
+    }
+}
@@ -19,7 +19,9 @@ import java.util.List;
         @NamedQuery(name = "com.saicon.games.callcard.entity.CallCardRefUser.listByCallCardId", query = "SELECT u FROM CallCardRefUser u WHERE u.callCardId.callCardId = ?1"),
         @NamedQuery(name = "com.saicon.games.callcard.entity.CallCardRefUser.listByCallCardIdEndDate", query = "SELECT u FROM CallCardRefUser u WHERE u.callCardId IN (?1) AND u.endDate > ?2"),
         @NamedQuery(name = "com.saicon.games.callcard.entity.CallCardRefUser.listByCallCardIdRefUserId", query = "SELECT u FROM CallCardRefUser u WHERE u.callCardId.callCardId = ?1 AND u.refUserId.userId = ?2"),
-        @NamedQuery(name = "com.saicon.games.callcard.entity.CallCardRefUser.listByCallCardIdInternalRefNo", query = "SELECT u FROM CallCardRefUser u WHERE u.callCardId.callCardId = ?1 AND u.internalRefNo = ?2")
+        @NamedQuery(name = "com.saicon.games.callcard.entity.CallCardRefUser.listByCallCardIdInternalRefNo", query = "SELECT u FROM CallCardRefUser u WHERE u.callCardId.callCardId = ?1 AND u.internalRefNo = ?2"),
+        @NamedQuery(name = "com.saicon.games.callcard.entity.CallCardRefUser.listByCallCardIdInternalRefNos", query = "SELECT u FROM CallCardRefUser u WHERE u.callCardId.callCardId = ?1 AND u.internalRefNo IN ?2"),
+        @NamedQuery(name = "com.saicon.games.callcard.entity.CallCardRefUser.listByIds", query = "SELECT u FROM CallCardRefUser u WHERE u.callCardRefUserId IN ?1")
 })
 public class CallCardRefUser {
 
@@ -2,6 +2,7 @@ package com.saicon.games.callcard.entity;
 
 import com.saicon.games.entities.shared.GameType;
 import com.saicon.games.entities.shared.UserGroups;
+import com.saicon.games.callcard.entity.util.CallCardTemplateChangeListener;
 import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
@@ -13,6 +14,7 @@ import java.util.List;
  * Created by user101 on 9/2/2016.
  */
 @Entity
+@EntityListeners(CallCardTemplateChangeListener.class)
 @Table(name = "CALL_CARD_TEMPLATE")
 public class CallCardTemplate {
 
@@ -1,6 +1,7 @@
 package com.saicon.games.callcard.entity;
 
 import com.saicon.games.entities.shared.ItemTypes;
+import com.saicon.games.callcard.entity.util.CallCardTemplateChangeListener;
 import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
@@ -9,6 +10,7 @@ import javax.persistence.*;
  * Created by user101 on 9/2/2016.
  */
 @Entity
+@EntityListeners(CallCardTemplateChangeListener.class)
 @Table(name = "CALL_CARD_TEMPLATE_ENTRY")
 public class CallCardTemplateEntry {
 
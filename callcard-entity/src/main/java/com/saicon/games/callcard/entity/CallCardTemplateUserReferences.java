@@ -2,6 +2,7 @@ package com.saicon.games.callcard.entity;
 
 import com.saicon.games.entities.shared.ItemTypes;
 import com.saicon.games.entities.shared.Users;
+import com.saicon.games.callcard.entity.util.CallCardTemplateChangeListener;
 import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
@@ -10,6 +11,7 @@ import javax.persistence.*;
  * Created by user101 on 9/2/2016.
  */
 @Entity
+@EntityListeners(CallCardTemplateChangeListener.class)
 @Table(name = "CALL_CARD_TEMPLATE_USER_REFERENCES")
 @NamedQueries({
         @NamedQuery(name = "com.saicon.games.callcard.entity.CallCardTemplateUserReferences.listByCallCardTemplateId", query = "SELECT u FROM CallCardTemplateUserReferences u WHERE u.callCardTemplateId.callCardTemplateId = ?1 AND u.active = 1 ORDER BY u.ordering ASC")
@@ -0,0 +1,59 @@
+package com.saicon.games.callcard.entity.util;
+
+import com.saicon.games.callcard.entity.CallCardTemplate;
+import com.saicon.games.callcard.entity.CallCardTemplateEntry;
+import com.saicon.games.callcard.entity.CallCardTemplatePOS;
+import com.saicon.games.callcard.entity.CallCardTemplateUserReferences;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * JPA entity listener for CallCardTemplate and its child entities (entries, POS, user references).
+ * Notifies registered callbacks with the affected CallCardTemplate ID after every insert, update or delete,
+ * so that in-process caches derived from the template can be invalidated. Callbacks run at flush, before the
+ * transaction commits: they should defer the invalidation until it completes.
+ */
+public class CallCardTemplateChangeListener {
+
+    private static final List<Consumer<String>> CALLBACKS = new CopyOnWriteArrayList<>();
+
+    public static void register(Consumer<String> callback) {
+        CALLBACKS.add(callback);
+    }
+
+    public static void unregister(Consumer<String> callback) {
+        CALLBACKS.remove(callback);
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        String callCardTemplateId = getCallCardTemplateId(entity);
+        if (callCardTemplateId == null)
+            return;
+
+        for (Consumer<String> callback : CALLBACKS) {
+            callback.accept(callCardTemplateId);
+        }
+    }
+
+    private static String getCallCardTemplateId(Object entity) {
+        CallCardTemplate template = null;
+        if (entity instanceof CallCardTemplate)
+            template = (CallCardTemplate) entity;
+        else if (entity instanceof CallCardTemplateEntry)
+            template = ((CallCardTemplateEntry) entity).getCallCardTemplateId();
+        else if (entity instanceof CallCardTemplatePOS)
+            template = ((CallCardTemplatePOS) entity).getCallCardTemplateId();
+        else if (entity instanceof CallCardTemplateUserReferences)
+            template = ((CallCardTemplateUserReferences) entity).getCallCardTemplateId();
+
+        return template != null ? template.getCallCardTemplateId() : null;
+    }
+}
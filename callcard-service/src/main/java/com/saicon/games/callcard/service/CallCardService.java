@@ -5,12 +5,15 @@ import com.saicon.games.callcard.ws.dto.SimplifiedCallCardDTO;
 import com.saicon.games.callcard.ws.dto.ItemStatisticsDTO;
 import com.saicon.games.callcard.exception.BusinessLayerException;
 import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import com.saicon.games.callcard.components.CallCardUserLocks;
 import com.saicon.games.callcard.components.ICallCardManagement;
 import com.saicon.games.callcard.components.external.IUserSessionManagement;
 import com.saicon.games.callcard.ws.response.ResponseListItemStatistics;
 import com.saicon.games.callcard.ws.response.ResponseStatus;
 import com.saicon.games.callcard.ws.response.WSResponse;
 import com.saicon.games.callcard.ws.data.ResponseListCallCard;
+import com.saicon.games.callcard.ws.data.ResponseListCallCardUpdateResult;
+import com.saicon.games.callcard.ws.dto.CallCardUpdateResultDTO;
 import com.saicon.games.callcard.ws.data.ResponseListSimplifiedCallCard;
 import com.saicon.games.callcard.ws.ICallCardService;
 import org.slf4j.Logger;
@@ -18,6 +21,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.jws.WebService;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Created by user101 on 10/2/2016.
@@ -36,11 +40,20 @@ public class CallCardService implements ICallCardService {
 
     private IUserSessionManagement userSessionManagement;
 
+    private CallCardUserLocks callCardUserLocks;
+    private long userLockTimeoutMillis = -1;
+
     @Override
     public ResponseListCallCard addCallCardRecords(String userGroupId, String gameTypeId, String applicationId, String userId, List<CallCardDTO> callCards) {
         ResponseListCallCard toReturn;
         try {
-            CallCardDTO callCardDTO = callCardManagement.updateCallCard(userGroupId, gameTypeId, applicationId, userId, callCards);
+            CallCardDTO callCardDTO;
+            Lock lock = lockUser(userId);
+            try {
+                callCardDTO = callCardManagement.updateCallCard(userGroupId, gameTypeId, applicationId, userId, callCards);
+            } finally {
+                unlock(lock);
+            }
 
             toReturn = new ResponseListCallCard("", ResponseStatus.OK, callCardDTO != null ? Arrays.asList(callCardDTO) : null, callCardDTO != null ? 1 : 0);
         } catch (BusinessLayerException e) {
@@ -50,11 +63,33 @@ public class CallCardService implements ICallCardService {
         return toReturn;
     }
 
+    @Override
+    public ResponseListCallCardUpdateResult updateCallCards(String userGroupId, String gameTypeId, String applicationId, String userId, List<CallCardDTO> callCards) {
+        try {
+            List<CallCardUpdateResultDTO> results;
+            Lock lock = lockUser(userId);
+            try {
+                results = callCardManagement.updateCallCards(userGroupId, gameTypeId, applicationId, userId, callCards);
+            } finally {
+                unlock(lock);
+            }
+
+            return new ResponseListCallCardUpdateResult("", ResponseStatus.OK, results, results.size());
+        } catch (BusinessLayerException e) {
+            return new ResponseListCallCardUpdateResult(Integer.parseInt(e.getErrorCode()), e.getMessage(), ResponseStatus.ERROR, null, 0);
+        }
+    }
+
     @Override
     public WSResponse addOrUpdateSimplifiedCallCard(String userGroupId, String gameTypeId, String applicationId, String userId, SimplifiedCallCardDTO callCard) {
         WSResponse toReturn;
         try {
-            callCardManagement.addOrUpdateSimplifiedCallCard(userGroupId, gameTypeId, applicationId, userId, callCard);
+            Lock lock = lockUser(userId);
+            try {
+                callCardManagement.addOrUpdateSimplifiedCallCard(userGroupId, gameTypeId, applicationId, userId, callCard);
+            } finally {
+                unlock(lock);
+            }
 
             toReturn = new WSResponse("", ResponseStatus.OK);
         } catch (BusinessLayerException e) {
@@ -85,10 +120,15 @@ public class CallCardService implements ICallCardService {
 
     @Override
     public ResponseListCallCard getCallCardsFromTemplate(String userId, String userGroupId, String gameTypeId, String applicationId) {
+        return getCallCardsFromTemplateAtVersion(userId, userGroupId, gameTypeId, applicationId, null);
+    }
+
+    @Override
+    public ResponseListCallCard getCallCardsFromTemplateAtVersion(String userId, String userGroupId, String gameTypeId, String applicationId, String version) {
         try {
             List<CallCardDTO> callCardDTOList;
 
-            callCardDTOList = callCardManagement.getCallCardsFromTemplate(userId, userGroupId, gameTypeId, applicationId);
+            callCardDTOList = callCardManagement.getCallCardsFromTemplate(userId, userGroupId, gameTypeId, applicationId, version);
 
             return new ResponseListCallCard("", ResponseStatus.OK, callCardDTOList, callCardDTOList != null ? callCardDTOList.size() : 0);
         } catch (BusinessLayerException e) {
@@ -115,6 +155,15 @@ public class CallCardService implements ICallCardService {
         }
     }
 
+    @Override
+    public WSResponse getCallCardVersion(String userId, String userGroupId, String gameTypeId, String applicationId, boolean includeTemplates) {
+        try {
+            return new WSResponse(callCardManagement.getCallCardVersion(userId, userGroupId, gameTypeId, applicationId, includeTemplates), ResponseStatus.OK);
+        } catch (BusinessLayerException e) {
+            return new WSResponse(Integer.parseInt(e.getErrorCode()), e.getMessage(), ResponseStatus.ERROR);
+        }
+    }
+
     @Override
     public ResponseListCallCard getNewOrPendingCallCard(String userId, String userGroupId, String gameTypeId, String applicationId, String callCardId, List<String> filterProperties) {
         try {
@@ -157,7 +206,12 @@ public class CallCardService implements ICallCardService {
     public WSResponse submitTransactions( String userId, String userGroupId, String gameTypeId, String applicationId, String indirectUserId, CallCardDTO callCardDTO) {
 
         try {
-            callCardManagement.submitTransactions( userId, userGroupId, gameTypeId, applicationId, indirectUserId, callCardDTO);
+            Lock lock = lockUser(indirectUserId);
+            try {
+                callCardManagement.submitTransactions( userId, userGroupId, gameTypeId, applicationId, indirectUserId, callCardDTO);
+            } finally {
+                unlock(lock);
+            }
             if (callCardDTO == null)
                 return new WSResponse(ExceptionTypeTO.CMS_CONFIGURATION_ERROR, "", ResponseStatus.ERROR);
 
@@ -169,6 +223,20 @@ public class CallCardService implements ICallCardService {
         }
     }
 
+    /**
+     * Serialize the updates of the user whose CallCards change, holding the lock until their transaction committed.
+     */
+    private Lock lockUser(String userId) throws BusinessLayerException {
+        if (callCardUserLocks == null)
+            return null;
+        return userLockTimeoutMillis >= 0 ? callCardUserLocks.lock(userId, userLockTimeoutMillis) : callCardUserLocks.lock(userId);
+    }
+
+    private static void unlock(Lock lock) {
+        if (lock != null)
+            lock.unlock();
+    }
+
     public ICallCardManagement getCallCardManagement() {
         return callCardManagement;
     }
@@ -184,4 +252,24 @@ public class CallCardService implements ICallCardService {
     public void setUserSessionManagement(IUserSessionManagement userSessionManagement) {
         this.userSessionManagement = userSessionManagement;
     }
+
+    public CallCardUserLocks getCallCardUserLocks() {
+        return callCardUserLocks;
+    }
+
+    public void setCallCardUserLocks(CallCardUserLocks callCardUserLocks) {
+        this.callCardUserLocks = callCardUserLocks;
+    }
+
+    public long getUserLockTimeoutMillis() {
+        return userLockTimeoutMillis;
+    }
+
+    /**
+     * Longest wait for the lock of a user; negative for the timeout of the locks. Callers that can retry later, as
+     * the ingestion workers, use 0 so that a busy user does not hold them.
+     */
+    public void setUserLockTimeoutMillis(long userLockTimeoutMillis) {
+        this.userLockTimeoutMillis = userLockTimeoutMillis;
+    }
 }
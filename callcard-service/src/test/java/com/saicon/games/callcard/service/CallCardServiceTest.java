@@ -0,0 +1,121 @@
+package com.saicon.games.callcard.service;
+
+import com.saicon.games.callcard.components.CallCardUserLocks;
+import com.saicon.games.callcard.components.ICallCardManagement;
+import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import com.saicon.games.callcard.ws.data.ResponseListCallCard;
+import com.saicon.games.callcard.ws.dto.CallCardDTO;
+import com.saicon.games.callcard.ws.response.ResponseStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the per-user locking of the CallCard updates of CallCardService.
+ */
+public class CallCardServiceTest {
+
+    private static final String USER_ID = "6F9619FF-8B86-D011-B42D-00C04FC964FF";
+
+    private final AtomicInteger updates = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private CallCardUserLocks locks;
+    private CallCardService service;
+    private ExecutorService holder;
+
+    @BeforeEach
+    public void setUp() {
+        locks = new CallCardUserLocks(16, 50);
+        service = new CallCardService();
+        service.setCallCardManagement(recordingManagement());
+        service.setCallCardUserLocks(locks);
+        holder = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        holder.shutdownNow();
+    }
+
+    @Test
+    public void updateOfABusyUserIsAnsweredWithConcurrentModification() throws Exception {
+        holdLock();
+
+        ResponseListCallCard rsp = service.addCallCardRecords("group", "gameType", "application", USER_ID, callCards());
+
+        assertEquals(ResponseStatus.ERROR, rsp.getStatus());
+        assertEquals(Integer.parseInt(ExceptionTypeTO.CONCURRENT_MODIFICATION), rsp.getErrorNumber());
+        assertEquals(0, updates.get());
+    }
+
+    @Test
+    public void updateWithoutLockTimeoutFailsAtOnce() throws Exception {
+        locks = new CallCardUserLocks(16, 5000);
+        service.setCallCardUserLocks(locks);
+        service.setUserLockTimeoutMillis(0);
+        holdLock();
+
+        long start = System.nanoTime();
+        ResponseListCallCard rsp = service.addCallCardRecords("group", "gameType", "application", USER_ID, callCards());
+
+        assertEquals(Integer.parseInt(ExceptionTypeTO.CONCURRENT_MODIFICATION), rsp.getErrorNumber());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000), "no wait for the timeout of the locks");
+        assertEquals(0, updates.get());
+    }
+
+    @Test
+    public void lockIsReleasedOnceTheUpdateReturns() throws Exception {
+        ResponseListCallCard rsp = service.addCallCardRecords("group", "gameType", "application", USER_ID, callCards());
+
+        assertEquals(ResponseStatus.OK, rsp.getStatus());
+        assertEquals(1, updates.get());
+        holder.submit(() -> locks.lock(USER_ID, 0).unlock()).get(1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Hold the lock of the user on another thread until the test ends.
+     */
+    private void holdLock() throws Exception {
+        CountDownLatch held = new CountDownLatch(1);
+        holder.submit(() -> {
+            Lock lock = locks.lock(USER_ID);
+            try {
+                held.countDown();
+                release.await();
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        });
+        assertTrue(held.await(1, TimeUnit.SECONDS));
+    }
+
+    private ICallCardManagement recordingManagement() {
+        return (ICallCardManagement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ICallCardManagement.class}, (proxy, method, args) -> {
+            if (!"updateCallCard".equals(method.getName()))
+                throw new UnsupportedOperationException(method.getName());
+
+            updates.incrementAndGet();
+            return null;
+        });
+    }
+
+    private static List<CallCardDTO> callCards() {
+        return Collections.singletonList(new CallCardDTO("card-1", new Date(0), new Date(1)));
+    }
+}
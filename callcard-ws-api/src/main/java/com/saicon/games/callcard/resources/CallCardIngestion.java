@@ -0,0 +1,430 @@
+package com.saicon.games.callcard.resources;
+
+import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import com.saicon.games.callcard.ws.ICallCardService;
+import com.saicon.games.callcard.ws.data.ResponseListCallCard;
+import com.saicon.games.callcard.ws.dto.CallCardDTO;
+import com.saicon.games.callcard.ws.dto.CallCardJobDTO;
+import com.saicon.games.callcard.ws.response.ResponseStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accept-and-process-later mode of the CallCard update endpoints: submissions are journaled and answered with a
+ * job id at once, and a fixed pool of workers applies them with {@link ICallCardService#addCallCardRecords}, so an
+ * end of day sync burst queues up instead of holding request threads and database connections.
+ *
+ * Each user is served by one worker, so the submissions of a user are applied in the order they were accepted.
+ * Synchronous submissions are not queued: they are applied on the request thread under the user's lock, and a caller
+ * should refuse one while {@link #hasPending} reports jobs of the user, so that it does not overtake them. A job
+ * interrupted by a restart is applied again on start: processing is at least once.
+ *
+ * Workers do not wait for the lock of a user that another update holds: the service should fail at once with
+ * CONCURRENT_MODIFICATION, and the job, with the jobs of the user queued after it, is retried after
+ * {@code retryDelayMillis}.
+ *
+ * Outcomes are kept for the last {@code maxJobs} jobs. When {@code maxPending} jobs are waiting, submissions are
+ * refused and the caller answers 503 with Retry-After.
+ *
+ * The journal, the queues and the job outcomes are local to the node: a job's status can only be read on the node
+ * that accepted it, the ordering holds for the submissions of a user reaching the same node, and the jobs of a node
+ * that does not come back are not applied by the others.
+ */
+public class CallCardIngestion {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardIngestion.class);
+
+    private final ICallCardService callCardService;
+    private final CallCardSubmissionJournal journal;
+    private final ExecutorService[] workers;
+    private final ScheduledExecutorService retries;
+    private final int maxPending;
+    private final long retryDelayMillis;
+    private final long compactBytes;
+    private long compactAt;
+
+    private final ConcurrentMap<String, CallCardSubmissionJournal.Entry> pending = new ConcurrentHashMap<>(); //< Job Id, SUBMIT entry>
+    private final ConcurrentMap<String, Integer> pendingUsers = new ConcurrentHashMap<>(); //< User Id, Pending jobs>
+    private final ConcurrentMap<String, CallCardJobDTO> running = new ConcurrentHashMap<>(); //< Job Id, Job>
+    private final ConcurrentMap<String, Deque<CallCardSubmissionJournal.Entry>> deferred = new ConcurrentHashMap<>(); //< User Id, SUBMIT entries in order>
+    private final Map<String, CallCardJobDTO> done; //< Job Id, Job>
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean closed;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+
+    public CallCardIngestion(ICallCardService callCardService, File journalFile, int threads, int maxPending, int maxJobs, long compactBytes) throws IOException {
+        this(callCardService, journalFile, threads, maxPending, maxJobs, compactBytes, 1000);
+    }
+
+    /**
+     * @param threads          Number of workers, which bounds the database connections the jobs take
+     * @param compactBytes     Journal size past which it is rewritten with the live entries
+     * @param retryDelayMillis Delay before the jobs of a user whose lock was held are tried again
+     */
+    public CallCardIngestion(ICallCardService callCardService, File journalFile, int threads, int maxPending, final int maxJobs, long compactBytes,
+                             long retryDelayMillis) throws IOException {
+        this.callCardService = callCardService;
+        this.journal = new CallCardSubmissionJournal(journalFile);
+        this.maxPending = maxPending;
+        this.retryDelayMillis = retryDelayMillis;
+        this.compactBytes = compactBytes;
+        this.compactAt = compactBytes;
+        this.done = new LinkedHashMap<String, CallCardJobDTO>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CallCardJobDTO> eldest) {
+                return size() > maxJobs;
+            }
+        };
+
+        this.workers = new ExecutorService[threads];
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            workers[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "callcard-ingestion-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.retries = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "callcard-ingestion-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        recover();
+    }
+
+    /**
+     * Journal a submission and queue it for processing.
+     *
+     * @return The accepted job, or null when the submission was refused and must be processed synchronously
+     */
+    public CallCardJobDTO submit(String userId, String userGroupId, String gameTypeId, String applicationId, List<CallCardDTO> callCards) {
+        if (isRefused(userId))
+            return null;
+
+        CallCardSubmissionJournal.Entry entry = new CallCardSubmissionJournal.Entry();
+        entry.setType(CallCardSubmissionJournal.Entry.SUBMIT);
+        entry.setUserGroupId(userGroupId);
+        entry.setGameTypeId(gameTypeId);
+        entry.setApplicationId(applicationId);
+        entry.setCallCards(callCards);
+        entry.setJob(new CallCardJobDTO(UUID.randomUUID().toString().toUpperCase(), userId, CallCardJobDTO.ACCEPTED, new Date()));
+
+        try {
+            long ticket;
+            synchronized (journal) {
+                entry.setSequence(sequence.incrementAndGet());
+                ticket = journal.write(entry);
+                addPending(entry);
+            }
+            journal.force(ticket); // outside the lock, with the entries written meanwhile
+        } catch (IOException e) {
+            synchronized (journal) {
+                removePending(entry.getJob().getJobId());
+            }
+            refused.incrementAndGet();
+            LOGGER.error("-- CallCard submission not journaled : userId={}", userId, e);
+            return null;
+        }
+
+        accepted.incrementAndGet();
+        schedule(entry);
+        return entry.getJob();
+    }
+
+    /**
+     * @return Whether jobs of the user were accepted and have no outcome yet, including the job being applied
+     */
+    public boolean hasPending(String userId) {
+        return pendingUsers.containsKey(userId.toUpperCase());
+    }
+
+    /**
+     * @return The job, or null if it is unknown or its outcome is no longer kept
+     */
+    public CallCardJobDTO getJob(String jobId) {
+        String key = jobId.toUpperCase();
+        CallCardJobDTO job = running.get(key);
+        if (job != null)
+            return job;
+
+        CallCardSubmissionJournal.Entry entry = pending.get(key);
+        if (entry != null)
+            return entry.getJob();
+
+        synchronized (journal) {
+            return done.get(key);
+        }
+    }
+
+    /**
+     * Stop the workers once the jobs being processed complete. Jobs not started yet stay in the journal and are
+     * processed on the next start.
+     */
+    public void close() {
+        closed = true;
+        retries.shutdownNow();
+        for (ExecutorService worker : workers)
+            worker.shutdown();
+        try {
+            for (ExecutorService worker : workers)
+                worker.awaitTermination(30, TimeUnit.SECONDS);
+            journal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.error("-- CallCard journal not closed", e);
+        }
+        LOGGER.info("-- CallCard ingestion closed : {}", this);
+    }
+
+    public int getPending() {
+        return pending.size();
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getRefused() {
+        return refused.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    @Override
+    public String toString() {
+        return "pending=" + pending.size() + " accepted=" + accepted.get() + " completed=" + completed.get() + " failed=" + failed.get() + " refused=" + refused.get()
+                + " retried=" + retried.get();
+    }
+
+    /**
+     * Rebuild the outcomes and queue again the jobs the journal holds without an outcome, in their original order.
+     */
+    private void recover() throws IOException {
+        List<CallCardSubmissionJournal.Entry> submissions = new ArrayList<>();
+        for (CallCardSubmissionJournal.Entry entry : journal.read()) {
+            String jobId = entry.getJob().getJobId();
+            if (CallCardSubmissionJournal.Entry.DONE.equals(entry.getType())) {
+                removePending(jobId);
+                done.put(jobId, entry.getJob());
+            } else if (!done.containsKey(jobId) && addPending(entry)) {
+                submissions.add(entry);
+            }
+            sequence.set(Math.max(sequence.get(), entry.getSequence()));
+        }
+
+        int recovered = 0;
+        for (CallCardSubmissionJournal.Entry entry : submissions) {
+            if (pending.containsKey(entry.getJob().getJobId())) {
+                entry.getJob().setState(CallCardJobDTO.ACCEPTED);
+                schedule(entry);
+                recovered++;
+            }
+        }
+        if (recovered > 0)
+            LOGGER.info("-- CallCard jobs recovered from journal : count={}", recovered);
+    }
+
+    private boolean isRefused(String userId) {
+        if (closed)
+            return true;
+        if (pending.size() >= maxPending) {
+            refused.incrementAndGet();
+            LOGGER.warn("-- CallCard submission refused, too many pending jobs : userId={} {}", userId, this);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean addPending(CallCardSubmissionJournal.Entry entry) {
+        if (pending.putIfAbsent(entry.getJob().getJobId(), entry) != null)
+            return false;
+        pendingUsers.merge(entry.getJob().getUserId().toUpperCase(), 1, Integer::sum);
+        return true;
+    }
+
+    private void removePending(String jobId) {
+        CallCardSubmissionJournal.Entry entry = pending.remove(jobId);
+        if (entry != null)
+            pendingUsers.computeIfPresent(entry.getJob().getUserId().toUpperCase(), (userId, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void schedule(final CallCardSubmissionJournal.Entry entry) {
+        worker(entry.getJob().getUserId()).execute(() -> process(entry));
+    }
+
+    private ExecutorService worker(String userId) {
+        return workers[(userId.toUpperCase().hashCode() & Integer.MAX_VALUE) % workers.length];
+    }
+
+    private static boolean isBusy(ResponseListCallCard rsp) {
+        return !ResponseStatus.OK.equals(rsp.getStatus()) && String.valueOf(rsp.getErrorNumber()).equals(ExceptionTypeTO.CONCURRENT_MODIFICATION);
+    }
+
+    /**
+     * Process a job on its user's worker, unless earlier jobs of the user wait for a retry: it then waits behind them.
+     */
+    private void process(CallCardSubmissionJournal.Entry entry) {
+        if (closed)
+            return;
+
+        String userKey = entry.getJob().getUserId().toUpperCase();
+        Deque<CallCardSubmissionJournal.Entry> waiting = deferred.get(userKey);
+        if (waiting != null) {
+            waiting.addLast(entry);
+            return;
+        }
+
+        if (!apply(entry)) {
+            waiting = new ArrayDeque<>();
+            waiting.addLast(entry);
+            deferred.put(userKey, waiting);
+            scheduleRetry(userKey);
+        }
+    }
+
+    /**
+     * Apply the waiting jobs of a user in order, on the user's worker, until one finds the user busy again.
+     */
+    private void retry(String userKey) {
+        if (closed)
+            return;
+
+        Deque<CallCardSubmissionJournal.Entry> waiting = deferred.get(userKey);
+        while (waiting != null && !waiting.isEmpty()) {
+            if (!apply(waiting.peekFirst())) {
+                scheduleRetry(userKey);
+                return;
+            }
+            waiting.pollFirst();
+        }
+        deferred.remove(userKey);
+    }
+
+    private void scheduleRetry(final String userKey) {
+        retried.incrementAndGet();
+        try {
+            retries.schedule(() -> worker(userKey).execute(() -> retry(userKey)), retryDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("-- CallCard jobs not retried, ingestion closed : userId={}", userKey); // still pending in the journal
+        }
+    }
+
+    /**
+     * @return False, leaving the job pending, if another update of the user held its lock
+     */
+    private boolean apply(CallCardSubmissionJournal.Entry entry) {
+        CallCardJobDTO submitted = entry.getJob();
+        CallCardJobDTO job = new CallCardJobDTO(submitted.getJobId(), submitted.getUserId(), CallCardJobDTO.RUNNING, submitted.getSubmittedDate());
+        running.put(job.getJobId(), job);
+
+        try {
+            ResponseListCallCard rsp = callCardService.addCallCardRecords(entry.getUserGroupId(), entry.getGameTypeId(), entry.getApplicationId(), job.getUserId(), entry.getCallCards());
+            if (isBusy(rsp)) {
+                running.remove(job.getJobId());
+                LOGGER.debug("-- CallCard job deferred, another update of the user is in progress : jobId={} userId={}", job.getJobId(), job.getUserId());
+                return false;
+            }
+            if (ResponseStatus.OK.equals(rsp.getStatus())) {
+                job.setItemCount(rsp.getTotalRecords());
+                job.setState(CallCardJobDTO.COMPLETED);
+            } else {
+                job.setErrorNumber(rsp.getErrorNumber());
+                job.setError(rsp.getResult());
+                job.setState(CallCardJobDTO.FAILED);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("-- CallCard job failed : jobId={} userId={}", job.getJobId(), job.getUserId(), e);
+            job.setError(e.getMessage());
+            job.setState(CallCardJobDTO.FAILED);
+        }
+        job.setCompletedDate(new Date());
+        if (CallCardJobDTO.COMPLETED.equals(job.getState()))
+            completed.incrementAndGet();
+        else
+            failed.incrementAndGet();
+
+        CallCardSubmissionJournal.Entry outcome = new CallCardSubmissionJournal.Entry();
+        outcome.setType(CallCardSubmissionJournal.Entry.DONE);
+        outcome.setJob(job);
+        try {
+            long ticket;
+            synchronized (journal) {
+                outcome.setSequence(sequence.incrementAndGet());
+                ticket = journal.write(outcome);
+                done.put(job.getJobId(), job);
+                removePending(job.getJobId());
+                running.remove(job.getJobId());
+
+                if (journal.size() > compactAt)
+                    compact();
+            }
+            journal.force(ticket);
+        } catch (IOException e) {
+            LOGGER.error("-- CallCard job outcome not journaled, the job will run again on restart : jobId={}", job.getJobId(), e);
+            synchronized (journal) {
+                done.put(job.getJobId(), job);
+                removePending(job.getJobId());
+                running.remove(job.getJobId());
+            }
+        }
+        LOGGER.debug("-- CallCard job processed : jobId={} userId={} state={}", job.getJobId(), job.getUserId(), job.getState());
+        return true;
+    }
+
+    /**
+     * Rewrite the journal with the kept outcomes and the pending submissions. Called holding the journal lock.
+     */
+    private void compact() throws IOException {
+        List<CallCardSubmissionJournal.Entry> entries = new ArrayList<>(done.size() + pending.size());
+        for (CallCardJobDTO job : done.values()) {
+            CallCardSubmissionJournal.Entry entry = new CallCardSubmissionJournal.Entry();
+            entry.setType(CallCardSubmissionJournal.Entry.DONE);
+            entry.setJob(job);
+            entries.add(entry);
+        }
+
+        List<CallCardSubmissionJournal.Entry> submissions = new ArrayList<>(pending.values());
+        submissions.sort(Comparator.comparingLong(CallCardSubmissionJournal.Entry::getSequence));
+        entries.addAll(submissions);
+
+        journal.compact(entries);
+        compactAt = Math.max(compactBytes, 2 * journal.size()); // the kept outcomes alone may exceed compactBytes
+    }
+}
@@ -1,6 +1,10 @@
 package com.saicon.games.callcard.resources;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.saicon.games.callcard.ws.dto.CallCardDTO;
+import com.saicon.games.callcard.ws.dto.CallCardJobDTO;
+import com.saicon.games.callcard.ws.dto.CallCardUpdateResultDTO;
 import com.saicon.games.callcard.ws.dto.SimplifiedCallCardDTO;
 import com.saicon.games.callcard.ws.dto.ItemStatisticsDTO;
 import com.saicon.games.callcard.exception.BusinessLayerException;
@@ -14,17 +18,24 @@ import com.saicon.games.callcard.ws.external.IGameService;
 import com.saicon.games.callcard.ws.response.ResponseStatus;
 import com.saicon.games.callcard.ws.response.WSResponse;
 import com.saicon.games.callcard.ws.data.ResponseListCallCard;
+import com.saicon.games.callcard.ws.data.ResponseListCallCardUpdateResult;
 import com.saicon.games.callcard.ws.data.ResponseListSimplifiedCallCard;
 import com.saicon.games.callcard.ws.external.UserSessionDTOS;
 import com.saicon.games.callcard.util.TalosUtil;
 import io.swagger.annotations.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import javax.ws.rs.*;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -41,6 +52,10 @@ public class CallCardResources {
     // Removed ICallCardResources interface (not needed for JAX-RS)
     private static final Logger LOGGER = LoggerFactory.getLogger("com.saicon.talos.services.audit_logger");
 
+    private static final String PREFER = "Prefer";
+    private static final String RESPOND_ASYNC = "respond-async";
+    private static final int RETRY_AFTER_SECONDS = 30;
+
     @Resource
     private ICallCardService callCardService;
 
@@ -50,6 +65,23 @@ public class CallCardResources {
     @Resource
     private IGameInternalService gameInternalService;
 
+    @Autowired(required = false)
+    private IdempotentSubmissions idempotentSubmissions;
+
+    @Autowired(required = false)
+    private CallCardIngestion callCardIngestion;
+
+    @Autowired(required = false)
+    private ObjectMapper objectMapper;
+
+    private volatile ObjectWriter callCardWriter;
+
+    @Context
+    private Request request;
+
+    @Context
+    private HttpHeaders headers;
+
     public CallCardResources() {
     }
 
@@ -92,8 +124,14 @@ public class CallCardResources {
         Assert.notNullOrEmpty(applicationId, "Provide a applicationId...");
         Assert.isValidUUID(applicationId, "Provide a valid applicationId...");
 
-        // get all call card templates for userId
-        ResponseListCallCard rsp = callCardService.getCallCardsFromTemplate(userId, userGroupId, gameTypeId, applicationId);
+        EntityTag entityTag = getCallCardEntityTag(userId, userGroupId, gameTypeId, applicationId, true);
+        Response.ResponseBuilder notModified = evaluatePreconditions(entityTag);
+        if (notModified != null)
+            return notModified.cacheControl(revalidate()).build();
+
+        // get all call card templates for userId, at the version just computed for the ETag
+        ResponseListCallCard rsp = callCardService.getCallCardsFromTemplateAtVersion(userId, userGroupId, gameTypeId, applicationId,
+                entityTag != null ? entityTag.getValue() : null);
         if (ResponseStatus.ERROR.equals(rsp.getStatus()))
             throw new BusinessLayerException(String.format("Error %d listing CallCard: %s", rsp.getErrorNumber(),
                     rsp.getResult()), ExceptionTypeTO.valueOf(rsp.getErrorNumber()));
@@ -111,9 +149,9 @@ public class CallCardResources {
             callCardDTOs.addAll( rspPending.getRecords());
 
         if (callCardDTOs != null && callCardDTOs.size() > 0)
-            return Response.ok(callCardDTOs).header(TalosUtil.X_TALOS_ITEM_COUNT, callCardDTOs.size()).build();
+            return streamCallCards(callCardDTOs, callCardDTOs.size(), entityTag);
         else
-            return Response.noContent().build();
+            return Response.noContent().tag(entityTag).cacheControl(revalidate()).build();
     }
 
     @GET
@@ -147,13 +185,17 @@ public class CallCardResources {
         Assert.notNullOrEmpty(applicationId, "Provide a applicationId...");
         Assert.isValidUUID(applicationId, "Provide a valid applicationId...");
 
+        EntityTag entityTag = getCallCardEntityTag(userId, userGroupId, gameTypeId, applicationId, false);
+        Response.ResponseBuilder notModified = evaluatePreconditions(entityTag);
+        if (notModified != null)
+            return notModified.cacheControl(revalidate()).build();
 
         ResponseListCallCard rsp = callCardService.getPendingCallCard(userId, userGroupId, gameTypeId, applicationId);
         if (ResponseStatus.OK.equals(rsp.getStatus())) {
             if (rsp.getRecords() != null && rsp.getRecords().size() > 0)
-                return Response.ok(rsp.getRecords()).header(TalosUtil.X_TALOS_ITEM_COUNT, rsp.getTotalRecords()).build();
+                return streamCallCards(rsp.getRecords(), rsp.getTotalRecords(), entityTag);
             else
-                return Response.noContent().build();
+                return Response.noContent().tag(entityTag).cacheControl(revalidate()).build();
         } else
             throw new BusinessLayerException(rsp.getResult(), ExceptionTypeTO.valueOf(rsp.getErrorNumber()));
     }
@@ -207,7 +249,7 @@ public class CallCardResources {
         ResponseListCallCard rsp = callCardService.getNewOrPendingCallCard(userId, userGroupId, gameTypeId, applicationId, callCardId, filterProperties);
         if (ResponseStatus.OK.equals(rsp.getStatus())) {
             if (rsp.getRecords() != null && rsp.getRecords().size() > 0)
-                return Response.ok(rsp.getRecords()).header(TalosUtil.X_TALOS_ITEM_COUNT, rsp.getTotalRecords()).build();
+                return streamCallCards(rsp.getRecords(), rsp.getTotalRecords(), null);
             else
                 return Response.noContent().build();
         } else
@@ -267,7 +309,9 @@ public class CallCardResources {
             @ApiResponse(code = 404, message = "CallCard not found", response = BusinessLayerException.class),
             @ApiResponse(code = 200, message = "OK",
                     responseHeaders = @ResponseHeader(name = "X-Talos-Item-Count", response = CallCardDTO.class)),
+            @ApiResponse(code = 202, message = "Accepted for asynchronous processing (Prefer: respond-async)", response = CallCardJobDTO.class),
             @ApiResponse(code = 204, message = "NoContent", response = Response.class),
+            @ApiResponse(code = 503, message = "Too many submissions queued, retry after the Retry-After seconds", response = Response.class),
             @ApiResponse(code = 1070, message = "CMS Configuration Error", response = BusinessLayerException.class),
             @ApiResponse(code = 1073, message = "Item belongs to other user", response = BusinessLayerException.class)
     })
@@ -290,14 +334,8 @@ public class CallCardResources {
             throw new BusinessLayerException("invalid userSession", ExceptionTypeTO.USER_SESSION_ID_NOT_VALID);
         }
 
-        ResponseListCallCard rsp = callCardService.addCallCardRecords(userSession.getUser().getUserGroupId(), userSession.getGameTypeId(), userSession.getApplicationId(), userId, Arrays.asList(input));
-        if (ResponseStatus.OK.equals(rsp.getStatus())) {
-            if (rsp.getRecords() != null && rsp.getRecords().size() > 0)
-                return Response.ok(rsp.getRecords()).header(TalosUtil.X_TALOS_ITEM_COUNT, rsp.getTotalRecords()).build();
-            else
-                return Response.noContent().build();
-        } else
-            throw new BusinessLayerException(rsp.getResult(), ExceptionTypeTO.valueOf(rsp.getErrorNumber()));
+        final UserSessionDTOS session = userSession;
+        return submitIdempotent(userId, "update", input, () -> updateCallCards(session, userId, Arrays.asList(input)));
     }
 
     @POST
@@ -312,7 +350,9 @@ public class CallCardResources {
             @ApiResponse(code = 404, message = "CallCard not found", response = BusinessLayerException.class),
             @ApiResponse(code = 200, message = "OK",
                     responseHeaders = @ResponseHeader(name = "X-Talos-Item-Count", response = CallCardDTO.class)),
+            @ApiResponse(code = 202, message = "Accepted for asynchronous processing (Prefer: respond-async)", response = CallCardJobDTO.class),
             @ApiResponse(code = 204, message = "NoContent", response = Response.class),
+            @ApiResponse(code = 503, message = "Too many submissions queued, retry after the Retry-After seconds", response = Response.class),
             @ApiResponse(code = 1070, message = "CMS Configuration Error", response = BusinessLayerException.class),
             @ApiResponse(code = 1073, message = "Item belongs to other user", response = BusinessLayerException.class)
     })
@@ -333,14 +373,82 @@ public class CallCardResources {
             throw new BusinessLayerException("invalid userSession", ExceptionTypeTO.USER_SESSION_ID_NOT_VALID);
         }
 
-        ResponseListCallCard rsp = callCardService.addCallCardRecords(userSession.getUser().getUserGroupId(), userSession.getGameTypeId(), userSession.getApplicationId(), userId, input);
-        if (ResponseStatus.OK.equals(rsp.getStatus())) {
-            if (rsp.getRecords() != null && rsp.getRecords().size() > 0)
-                return Response.ok(rsp.getRecords()).header(TalosUtil.X_TALOS_ITEM_COUNT, rsp.getTotalRecords()).build();
+        final UserSessionDTOS session = userSession;
+        return submitIdempotent(userId, "update/multiple", input, () -> updateCallCards(session, userId, input));
+    }
+
+    @GET
+    @Path("/update/{userId}/jobs/{jobId}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Get the status of a CallCard submission accepted for asynchronous processing", notes = "User ID and job ID are required. Jobs are known only to the node that accepted them", response = CallCardJobDTO.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal server error"),
+            @ApiResponse(code = 404, message = "Job not found", response = BusinessLayerException.class),
+            @ApiResponse(code = 200, message = "OK", response = CallCardJobDTO.class)
+    })
+    public Response getCallCardJob(@ApiParam(name = TalosUtil.X_TALOS_SESSION_ID, required = true) @HeaderParam(TalosUtil.X_TALOS_SESSION_ID) String userSessionId,
+                                   @ApiParam(name = "userId", value = "Owner of the job.", required = true) @PathParam("userId") String userId,
+                                   @ApiParam(name = "jobId", value = "Job ID returned when the submission was accepted.", required = true) @PathParam("jobId") String jobId) throws BusinessLayerException {
+
+        Assert.notNullOrEmpty(userSessionId, "userSessionId shall not be null or empty");
+        Assert.isValidUUID(userSessionId, "userSessionId shall be a valid UUID");
+        Assert.notNullOrEmpty(jobId, "Provide a jobId...");
+
+        UserSessionDTOS userSession;
+        try {
+            userSession = gameInternalService.getUserSession(userSessionId);
+        } catch (Exception e) {
+            throw new BusinessLayerException(ExceptionTypeTO.USER_SESSION_ID_NOT_VALID, "invalid userSession");
+        }
+        if (userSession == null || userSession.getUser() == null)
+            throw new BusinessLayerException(ExceptionTypeTO.USER_SESSION_ID_NOT_VALID, "invalid userSession");
+        if (!userId.equalsIgnoreCase(userSession.getUser().getUserId()))
+            throw new BusinessLayerException(ExceptionTypeTO.ITEM_BELONGS_TO_OTHER_USER, "CallCard jobs of another user");
+
+        CallCardJobDTO job = callCardIngestion != null ? callCardIngestion.getJob(jobId) : null;
+        if (job == null || !job.getUserId().equalsIgnoreCase(userId))
+            throw new BusinessLayerException(ExceptionTypeTO.NOT_FOUND, "CallCard job not found");
+
+        return Response.ok(job).build();
+    }
+
+    @POST
+    @Path("/update/{userId}/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Update CallCard records, reporting the outcome of each", notes = "User ID is required. Each closed CallCard is stored on its own: one failing does not undo the others", response = CallCardUpdateResultDTO.class, responseContainer = "List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 500, message = "Internal server error"),
+            @ApiResponse(code = 400, message = "Invalid user ID supplied", response = BusinessLayerException.class),
+            @ApiResponse(code = 200, message = "OK",
+                    responseHeaders = @ResponseHeader(name = "X-Talos-Item-Count", response = CallCardUpdateResultDTO.class)),
+            @ApiResponse(code = 1008, message = "Invalid user session", response = BusinessLayerException.class)
+    })
+    public Response updateCallCardBatch(@ApiParam(name = TalosUtil.X_TALOS_SESSION_ID, required = true) @HeaderParam(TalosUtil.X_TALOS_SESSION_ID) String userSessionId,
+                                        @ApiParam(name = "userId", value = "Query Call Cards by userId.", required = true) @PathParam("userId") String userId,
+                                        @ApiParam(value = "Value of 'mandatory' in message body must be set", required = true) List<CallCardDTO> input) throws BusinessLayerException {
+
+        Assert.notNullOrEmpty(userSessionId, "userSessionId shall not be null or empty");
+        Assert.isValidUUID(userSessionId, "userSessionId shall be a valid UUID");
+
+        UserSessionDTOS userSession = null;
+        try {
+            userSession = gameInternalService.getUserSession(userSessionId);
+            if (userSession == null)
+                throw new BusinessLayerException("invalid userSession", ExceptionTypeTO.USER_SESSION_ID_NOT_VALID);
+        } catch (Exception e) {
+            throw new BusinessLayerException("invalid userSession", ExceptionTypeTO.USER_SESSION_ID_NOT_VALID);
+        }
+
+        final UserSessionDTOS session = userSession;
+        return submitIdempotent(userId, "update/batch", input, () -> {
+            ResponseListCallCardUpdateResult rsp = callCardService.updateCallCards(session.getUser().getUserGroupId(), session.getGameTypeId(), session.getApplicationId(), userId, input);
+            if (ResponseStatus.OK.equals(rsp.getStatus()))
+                return new IdempotentResponse(Response.Status.OK.getStatusCode(), rsp.getTotalRecords(), rsp.getRecords());
             else
-                return Response.noContent().build();
-        } else
-            throw new BusinessLayerException(rsp.getResult(), ExceptionTypeTO.valueOf(rsp.getErrorNumber()));
+                throw new BusinessLayerException(rsp.getResult(), ExceptionTypeTO.valueOf(rsp.getErrorNumber()));
+        });
     }
 
     @POST
@@ -380,13 +488,16 @@ public class CallCardResources {
             throw new BusinessLayerException("invalid userSession", ExceptionTypeTO.USER_SESSION_ID_NOT_VALID);
         }
 
-        String gameTypeId = userSession.getGameTypeId();
+        final String sessionUserId = userSession.getUser().getUserId();
+        final String gameTypeId = userSession.getGameTypeId();
 
-        WSResponse rsp = callCardService.submitTransactions( userSession.getUser().getUserId(), userGroupId, gameTypeId, applicationId, userId, input);
-        if (ResponseStatus.OK.equals(rsp.getStatus()))
-            return Response.noContent().build();
-        else
-            throw new BusinessLayerException(rsp.getResult(), ExceptionTypeTO.valueOf(rsp.getErrorNumber()));
+        return submitIdempotent(userId, "transactions", input, () -> {
+            WSResponse rsp = callCardService.submitTransactions(sessionUserId, userGroupId, gameTypeId, applicationId, userId, input);
+            if (ResponseStatus.OK.equals(rsp.getStatus()))
+                return new IdempotentResponse(Response.Status.NO_CONTENT.getStatusCode(), null, null);
+            else
+                throw new BusinessLayerException(rsp.getResult(), ExceptionTypeTO.valueOf(rsp.getErrorNumber()));
+        });
     }
 
     @POST
@@ -482,4 +593,154 @@ public class CallCardResources {
             throw new BusinessLayerException(rsp.getResult(), ExceptionTypeTO.valueOf(rsp.getErrorNumber()));
     }
 
+    /**
+     * Execute a submission once per Idempotency-Key header, replaying the first response to its retries.
+     * Submissions without the header are executed as before.
+     */
+    private Response submitIdempotent(String userId, String endpoint, Object input, IdempotentSubmissions.Submission submission) throws BusinessLayerException {
+        String idempotencyKey = headers != null ? headers.getHeaderString(IdempotentSubmissions.IDEMPOTENCY_KEY) : null;
+        if (idempotentSubmissions == null || idempotencyKey == null || idempotencyKey.trim().isEmpty())
+            return toResponse(submission.submit(), false);
+
+        IdempotentSubmissions.Outcome outcome = idempotentSubmissions.execute(userId, endpoint, idempotencyKey.trim(), input, submission);
+        return toResponse(outcome.getResponse(), outcome.isReplayed());
+    }
+
+    /**
+     * Update the CallCards. With the ingestion enabled, they are journaled for the ingestion workers when the client
+     * prefers an asynchronous response, and a submission the ingestion refuses is answered 503 with Retry-After.
+     * Otherwise they are applied on the request thread under the user's lock, as without the ingestion, unless jobs
+     * of the user are still pending: that submission is answered 503 with Retry-After so that it does not overtake
+     * them.
+     */
+    private IdempotentResponse updateCallCards(UserSessionDTOS session, String userId, List<CallCardDTO> callCards) throws BusinessLayerException {
+        String userGroupId = session.getUser().getUserGroupId();
+        if (callCardIngestion == null)
+            return toIdempotentResponse(callCardService.addCallCardRecords(userGroupId, session.getGameTypeId(), session.getApplicationId(), userId, callCards));
+
+        Assert.isValidUUID(userId, "Provide a valid userId...");
+        Assert.notNull(callCards, "Provide an input...");
+        Assert.isFalse(callCards.contains(null), "Provide an input...");
+
+        if (isRespondAsync()) {
+            CallCardJobDTO job = callCardIngestion.submit(userId, userGroupId, session.getGameTypeId(), session.getApplicationId(), callCards);
+            if (job == null)
+                throw unavailable();
+            return new IdempotentResponse(Response.Status.ACCEPTED.getStatusCode(), null, job);
+        }
+
+        if (callCardIngestion.hasPending(userId))
+            throw unavailable();
+        ResponseListCallCard rsp = callCardService.addCallCardRecords(userGroupId, session.getGameTypeId(), session.getApplicationId(), userId, callCards);
+        return toIdempotentResponse(rsp);
+    }
+
+    /**
+     * 503 with Retry-After; not remembered as the response of an Idempotency-Key, so the retry is executed.
+     */
+    private static WebApplicationException unavailable() {
+        return new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .build());
+    }
+
+    private boolean isRespondAsync() {
+        String prefer = headers != null ? headers.getHeaderString(PREFER) : null;
+        return prefer != null && prefer.toLowerCase().contains(RESPOND_ASYNC);
+    }
+
+    private static IdempotentResponse toIdempotentResponse(ResponseListCallCard rsp) throws BusinessLayerException {
+        if (ResponseStatus.OK.equals(rsp.getStatus())) {
+            if (rsp.getRecords() != null && rsp.getRecords().size() > 0)
+                return new IdempotentResponse(Response.Status.OK.getStatusCode(), rsp.getTotalRecords(), rsp.getRecords());
+            else
+                return new IdempotentResponse(Response.Status.NO_CONTENT.getStatusCode(), null, null);
+        } else
+            throw new BusinessLayerException(rsp.getResult(), ExceptionTypeTO.valueOf(rsp.getErrorNumber()));
+    }
+
+    /**
+     * Replayed entities are the JSON of the first response, written as is.
+     */
+    private static Response toResponse(IdempotentResponse response, boolean replayed) {
+        Response.ResponseBuilder builder = Response.status(response.getStatus());
+        if (response.getEntity() != null)
+            builder.entity(response.getEntity()).type(MediaType.APPLICATION_JSON_TYPE);
+        if (response.getItemCount() != null)
+            builder.header(TalosUtil.X_TALOS_ITEM_COUNT, response.getItemCount());
+        if (replayed)
+            builder.header(IdempotentSubmissions.IDEMPOTENT_REPLAYED, "true");
+        return builder.build();
+    }
+
+    /**
+     * CallCard responses can hold thousands of POS: write them with the streaming generator, one POS at a time.
+     * A response with CallCards assembled without some optional lookup is flagged with X-Talos-Degraded and gets
+     * no ETag, so that the client does not keep it as current.
+     */
+    private Response streamCallCards(List<CallCardDTO> callCards, int itemCount, EntityTag entityTag) {
+        Response.ResponseBuilder builder = Response.ok(new CallCardStreamingOutput(getCallCardWriter(), callCards), MediaType.APPLICATION_JSON_TYPE)
+                .header(TalosUtil.X_TALOS_ITEM_COUNT, itemCount);
+        if (isDegraded(callCards))
+            builder.header(TalosUtil.X_TALOS_DEGRADED, true);
+        else if (entityTag != null)
+            builder.tag(entityTag).cacheControl(revalidate());
+        return builder.build();
+    }
+
+    /**
+     * Streaming writer built from the application's ObjectMapper, the one the JSON provider serializes with.
+     */
+    private ObjectWriter getCallCardWriter() {
+        ObjectWriter writer = callCardWriter;
+        if (writer == null) {
+            writer = CallCardStreamingOutput.writerFor(objectMapper != null ? objectMapper : new ObjectMapper());
+            callCardWriter = writer;
+        }
+        return writer;
+    }
+
+    private static boolean isDegraded(List<CallCardDTO> callCards) {
+        for (CallCardDTO callCard : callCards) {
+            if (callCard != null && callCard.isDegraded())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 304 Not Modified if the request's If-None-Match matches the ETag, null if the response must be served.
+     */
+    private Response.ResponseBuilder evaluatePreconditions(EntityTag entityTag) {
+        if (entityTag == null || request == null)
+            return null;
+
+        return request.evaluatePreconditions(entityTag);
+    }
+
+    /**
+     * Clients may keep CallCards but must revalidate them with If-None-Match before use.
+     */
+    private static CacheControl revalidate() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setPrivate(true);
+        cacheControl.setNoCache(true);
+        cacheControl.setNoTransform(false);
+        return cacheControl;
+    }
+
+    /**
+     * ETag of the user's CallCards, computed from the version of their sources without assembling them.
+     * Returns null when the version can not be computed, in which case the response is served unconditionally.
+     */
+    private EntityTag getCallCardEntityTag(String userId, String userGroupId, String gameTypeId, String applicationId, boolean includeTemplates) {
+        WSResponse rsp = callCardService.getCallCardVersion(userId, userGroupId, gameTypeId, applicationId, includeTemplates);
+        if (!ResponseStatus.OK.equals(rsp.getStatus()) || rsp.getResult() == null || rsp.getResult().isEmpty()) {
+            LOGGER.warn("-- CallCard version not available : userId={} error={}", userId, rsp.getResult());
+            return null;
+        }
+
+        return new EntityTag(rsp.getResult());
+    }
+
 }
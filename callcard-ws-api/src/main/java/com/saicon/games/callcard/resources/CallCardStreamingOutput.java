@@ -0,0 +1,147 @@
+package com.saicon.games.callcard.resources;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.saicon.games.callcard.ws.dto.CallCardDTO;
+import com.saicon.games.callcard.ws.dto.CallCardRefUserDTO;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a list of CallCards as a JSON array straight from the DTOs to the response with the Jackson streaming
+ * generator, instead of letting the JSON provider serialize the whole graph to a buffer first. The output is the
+ * same JSON the provider would produce with the same mapper, and the DTOs are not modified.
+ *
+ * The generator is flushed every {@link #FLUSH_INTERVAL} POS (CallCardRefUserDTO), so a response with thousands
+ * of POS is sent in chunks while it is being written.
+ */
+public class CallCardStreamingOutput implements StreamingOutput {
+
+    static final int FLUSH_INTERVAL = 50;
+
+    private static final String WRITTEN = CallCardStreamingOutput.class.getName() + ".written";
+
+    private final ObjectWriter writer;
+    private final List<CallCardDTO> callCards;
+
+    public CallCardStreamingOutput(ObjectMapper mapper, List<CallCardDTO> callCards) {
+        this(writerFor(mapper), callCards);
+    }
+
+    /**
+     * @param writer A writer from {@link #writerFor(ObjectMapper)}, which can be shared by all responses
+     */
+    public CallCardStreamingOutput(ObjectWriter writer, List<CallCardDTO> callCards) {
+        this.writer = writer;
+        this.callCards = callCards;
+    }
+
+    /**
+     * A writer with the configuration of the given mapper that flushes the generator every FLUSH_INTERVAL POS.
+     * Building one copies the mapper, so it should be built once and reused.
+     */
+    public static ObjectWriter writerFor(ObjectMapper mapper) {
+        ObjectMapper streamingMapper = mapper.copy();
+        streamingMapper.registerModule(new SimpleModule("CallCardStreaming").setSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription beanDesc, JsonSerializer<?> serializer) {
+                if (CallCardRefUserDTO.class.equals(beanDesc.getBeanClass()))
+                    return new FlushingSerializer((JsonSerializer<Object>) serializer);
+                return serializer;
+            }
+        }));
+        return streamingMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        JsonGenerator generator = writer.getFactory().createGenerator(output, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            writer.withAttribute(WRITTEN, new AtomicInteger()).writeValue(generator, callCards);
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * Serializes a POS with the serializer the mapper would use, then flushes the generator every FLUSH_INTERVAL
+     * POS of the response being written.
+     */
+    private static final class FlushingSerializer extends JsonSerializer<Object> implements ResolvableSerializer, ContextualSerializer {
+        private final JsonSerializer<Object> delegate;
+
+        private FlushingSerializer(JsonSerializer<Object> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void resolve(SerializerProvider provider) throws JsonMappingException {
+            if (delegate instanceof ResolvableSerializer)
+                ((ResolvableSerializer) delegate).resolve(provider);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property) throws JsonMappingException {
+            if (!(delegate instanceof ContextualSerializer))
+                return this;
+
+            JsonSerializer<?> contextual = ((ContextualSerializer) delegate).createContextual(provider, property);
+            return contextual == delegate ? this : new FlushingSerializer((JsonSerializer<Object>) contextual);
+        }
+
+        @Override
+        public void serialize(Object value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            delegate.serialize(value, generator, provider);
+            written(generator, provider);
+        }
+
+        @Override
+        public void serializeWithType(Object value, JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
+            delegate.serializeWithType(value, generator, provider, typeSerializer);
+            written(generator, provider);
+        }
+
+        @Override
+        public boolean isEmpty(SerializerProvider provider, Object value) {
+            return delegate.isEmpty(provider, value);
+        }
+
+        @Override
+        public boolean usesObjectId() {
+            return delegate.usesObjectId();
+        }
+
+        @Override
+        public Class<Object> handledType() {
+            return delegate.handledType();
+        }
+
+        private static void written(JsonGenerator generator, SerializerProvider provider) throws IOException {
+            Object written = provider.getAttribute(WRITTEN);
+            if (written instanceof AtomicInteger && ((AtomicInteger) written).incrementAndGet() % FLUSH_INTERVAL == 0)
+                generator.flush();
+        }
+    }
+}
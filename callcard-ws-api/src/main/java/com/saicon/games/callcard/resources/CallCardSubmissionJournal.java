@@ -0,0 +1,253 @@
+package com.saicon.games.callcard.resources;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.saicon.games.callcard.ws.dto.CallCardDTO;
+import com.saicon.games.callcard.ws.dto.CallCardJobDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Append-only journal of the CallCard submissions accepted for asynchronous processing, one JSON entry per line.
+ *
+ * A SUBMIT entry holds the submission, a DONE entry the outcome of a job. An entry is written with {@link #write},
+ * which returns at once, and is on disk once {@link #force} returns for it, so an accepted submission survives a
+ * crash; on start the jobs without a DONE entry are processed again.
+ *
+ * Forcing is a group commit: one thread forces the entries written so far while the threads whose entries came
+ * after wait, and the first of them then forces all of those at once. A burst of submissions thus takes a few
+ * fsyncs rather than one each.
+ *
+ * The journal is rewritten with the live entries only once it grows past the size given to {@link #compact}.
+ */
+public class CallCardSubmissionJournal implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallCardSubmissionJournal.class);
+
+    private final File file;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private FileChannel channel;
+    private long written; // entries written
+    private long forced;  // entries on disk
+    private boolean forcing;
+
+    public CallCardSubmissionJournal(File file) throws IOException {
+        this.file = file;
+        this.channel = open(file);
+    }
+
+    /**
+     * Append an entry and force it to disk.
+     */
+    public void append(Entry entry) throws IOException {
+        force(write(entry));
+    }
+
+    /**
+     * Append an entry without waiting for the disk.
+     *
+     * @return The ticket to {@link #force} the entry with
+     */
+    public long write(Entry entry) throws IOException {
+        byte[] line = (mapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            return ++written;
+        }
+    }
+
+    /**
+     * Wait until the entry of the ticket is on disk, forcing it along with the entries written since the last force
+     * unless another thread is already forcing.
+     */
+    public void force(long ticket) throws IOException {
+        FileChannel target;
+        long upTo;
+        synchronized (this) {
+            while (forced < ticket && forcing)
+                awaitForce();
+            if (forced >= ticket)
+                return;
+
+            forcing = true;
+            target = channel;
+            upTo = written;
+        }
+
+        boolean done = false;
+        try {
+            target.force(false);
+            done = true;
+        } finally {
+            synchronized (this) {
+                if (done)
+                    forced = Math.max(forced, upTo);
+                forcing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The entries of the journal, in the order they were appended. A line torn by a crash is skipped.
+     */
+    public synchronized List<Entry> read() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty())
+                    continue;
+                try {
+                    entries.add(mapper.readValue(line, Entry.class));
+                } catch (IOException e) {
+                    LOGGER.error("-- Unreadable CallCard journal entry skipped : file={} length={}", file, line.length(), e);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Replace the journal with the given entries.
+     */
+    public synchronized void compact(Collection<Entry> entries) throws IOException {
+        while (forcing)
+            awaitForce();
+
+        File compacted = new File(file.getPath() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Entry entry : entries) {
+                ByteBuffer buffer = ByteBuffer.wrap((mapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining())
+                    out.write(buffer);
+            }
+            out.force(true);
+        }
+
+        long before = channel.size();
+        channel.close();
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = open(file);
+        forced = written; // the entries of the old file that are still live are in the forced copy
+        LOGGER.info("-- CallCard journal compacted : file={} entries={} bytes={}->{}", file, entries.size(), before, channel.size());
+    }
+
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        while (forcing)
+            awaitForce();
+        channel.close();
+    }
+
+    /**
+     * Wait for the thread forcing the channel, holding this monitor.
+     */
+    private void awaitForce() throws IOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the CallCard journal to be forced");
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * A journaled submission (SUBMIT) or job outcome (DONE).
+     */
+    public static class Entry {
+        public static final String SUBMIT = "SUBMIT";
+        public static final String DONE = "DONE";
+
+        private String type;
+        private long sequence;
+        private String userGroupId;
+        private String gameTypeId;
+        private String applicationId;
+        private List<CallCardDTO> callCards;
+        private CallCardJobDTO job;
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public void setSequence(long sequence) {
+            this.sequence = sequence;
+        }
+
+        public String getUserGroupId() {
+            return userGroupId;
+        }
+
+        public void setUserGroupId(String userGroupId) {
+            this.userGroupId = userGroupId;
+        }
+
+        public String getGameTypeId() {
+            return gameTypeId;
+        }
+
+        public void setGameTypeId(String gameTypeId) {
+            this.gameTypeId = gameTypeId;
+        }
+
+        public String getApplicationId() {
+            return applicationId;
+        }
+
+        public void setApplicationId(String applicationId) {
+            this.applicationId = applicationId;
+        }
+
+        public List<CallCardDTO> getCallCards() {
+            return callCards;
+        }
+
+        public void setCallCards(List<CallCardDTO> callCards) {
+            this.callCards = callCards;
+        }
+
+        public CallCardJobDTO getJob() {
+            return job;
+        }
+
+        public void setJob(CallCardJobDTO job) {
+            this.job = job;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.saicon.games.callcard.resources;
+
+/**
+ * Outcome of a submission made with an {@code Idempotency-Key}: what is replayed to the retries of the submission.
+ *
+ * The entity is the response body as returned by the submission; once remembered it is kept as its JSON, so the
+ * same response can be replayed from memory or from the database.
+ */
+public class IdempotentResponse {
+
+    private final int status;
+    private final Integer itemCount;
+    private final Object entity;
+    private final String fingerprint;
+    private final long createdAt;
+
+    public IdempotentResponse(int status, Integer itemCount, Object entity) {
+        this(status, itemCount, entity, null, System.currentTimeMillis());
+    }
+
+    /**
+     * @param fingerprint Digest of the request the response was produced for
+     * @param createdAt   Time the response was produced, in milliseconds
+     */
+    public IdempotentResponse(int status, Integer itemCount, Object entity, String fingerprint, long createdAt) {
+        this.status = status;
+        this.itemCount = itemCount;
+        this.entity = entity;
+        this.fingerprint = fingerprint;
+        this.createdAt = createdAt;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public Integer getItemCount() {
+        return itemCount;
+    }
+
+    public Object getEntity() {
+        return entity;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
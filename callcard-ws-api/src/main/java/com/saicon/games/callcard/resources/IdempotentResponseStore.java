@@ -0,0 +1,18 @@
+package com.saicon.games.callcard.resources;
+
+/**
+ * Durable store of the responses remembered by {@link IdempotentSubmissions}, shared by all nodes and surviving
+ * restarts. Entities are stored as their JSON.
+ */
+public interface IdempotentResponseStore {
+
+    /**
+     * @return The response stored under the key, or null
+     */
+    IdempotentResponse get(String key);
+
+    /**
+     * Store a response. A response already stored under the key is kept.
+     */
+    void put(String key, IdempotentResponse response);
+}
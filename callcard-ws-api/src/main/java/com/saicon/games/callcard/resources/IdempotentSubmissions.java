@@ -0,0 +1,350 @@
+package com.saicon.games.callcard.resources;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.saicon.games.callcard.exception.BusinessLayerException;
+import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes a submission at most once per {@code Idempotency-Key}, so that the retries of a device on a bad network
+ * get the response of the first submission instead of submitting the CallCard again.
+ *
+ * Keys are scoped to the user and the endpoint. Successful responses are remembered for {@code expireAfterMillis}
+ * in an in-process LRU map, bounded both in entries and in the size of the bodies, and, when a
+ * {@link IdempotentResponseStore} is configured, in the database so that retries reaching another node or arriving
+ * after a restart are replayed too. Failed submissions are not remembered: their retries are executed again.
+ *
+ * A duplicate arriving while the first submission is still in flight on this node waits for it, up to
+ * {@code inFlightTimeoutMillis}, and shares its outcome, failures included; past the timeout it is rejected with
+ * CONCURRENT_MODIFICATION and can be retried. A key reused with a different request is rejected.
+ *
+ * Bodies are remembered and fingerprinted as the JSON of the given ObjectMapper, the application's one, so that a
+ * replayed body is the one the JSON provider wrote for the first response.
+ *
+ * Coalescing of submissions in flight is local to the node: two duplicates reaching two nodes at the same time are
+ * both executed. The store keeps the response of the first one, which is then replayed to all later retries.
+ */
+public class IdempotentSubmissions {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotentSubmissions.class);
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    static final int MAX_KEY_LENGTH = 128;
+
+    /**
+     * Estimated size of a remembered response besides its key and body, in bytes.
+     */
+    static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    static final long DEFAULT_IN_FLIGHT_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * The submission to execute once. Returns the response to remember or throws the error to report.
+     */
+    public interface Submission {
+        IdempotentResponse submit() throws BusinessLayerException;
+    }
+
+    private final ObjectMapper mapper;
+    private final ConcurrentMap<String, CompletableFuture<IdempotentResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, IdempotentResponse> responses = new LinkedHashMap<>(16, 0.75f, true); //< Scoped Key, IdempotentResponse>
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long expireAfterMillis;
+    private final long inFlightTimeoutMillis;
+    private long responseBytes; //< Guarded by responses
+    private final IdempotentResponseStore store;
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    public IdempotentSubmissions(int maxEntries, long expireAfterMillis, IdempotentResponseStore store) {
+        this(maxEntries, Long.MAX_VALUE, expireAfterMillis, store);
+    }
+
+    /**
+     * @param maxBytes Most bytes of keys and bodies remembered in memory
+     * @param store    Durable store of the responses; null to remember them in memory only
+     */
+    public IdempotentSubmissions(int maxEntries, long maxBytes, long expireAfterMillis, IdempotentResponseStore store) {
+        this(maxEntries, maxBytes, expireAfterMillis, DEFAULT_IN_FLIGHT_TIMEOUT_MILLIS, store, new ObjectMapper());
+    }
+
+    /**
+     * @param maxBytes              Most bytes of keys and bodies remembered in memory
+     * @param inFlightTimeoutMillis Longest a duplicate waits for the submission in flight
+     * @param store                 Durable store of the responses; null to remember them in memory only
+     * @param mapper                Mapper the bodies are serialized with, the one of the JSON provider
+     */
+    public IdempotentSubmissions(int maxEntries, long maxBytes, long expireAfterMillis, long inFlightTimeoutMillis, IdempotentResponseStore store, ObjectMapper mapper) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.expireAfterMillis = expireAfterMillis;
+        this.inFlightTimeoutMillis = inFlightTimeoutMillis;
+        this.store = store;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Execute the submission, or replay the response of the submission already made with the same key.
+     *
+     * @param endpoint Name of the endpoint the key is scoped to
+     * @param input    Request body, compared with the one of the first submission
+     * @return The response, flagged as replayed when the submission was not executed
+     */
+    public Outcome execute(String userId, String endpoint, String idempotencyKey, Object input, Submission submission) throws BusinessLayerException {
+        if (idempotencyKey.length() > MAX_KEY_LENGTH)
+            throw new BusinessLayerException(ExceptionTypeTO.INVALID_INPUT, IDEMPOTENCY_KEY + " shall not exceed " + MAX_KEY_LENGTH + " characters");
+
+        String key = userId.toUpperCase() + "|" + endpoint + "|" + idempotencyKey;
+        String fingerprint = fingerprint(endpoint, input);
+
+        IdempotentResponse remembered = lookup(key);
+        if (remembered != null)
+            return replay(key, remembered, fingerprint, replayed);
+
+        CompletableFuture<IdempotentResponse> future = new CompletableFuture<>();
+        CompletableFuture<IdempotentResponse> first = inFlight.putIfAbsent(key, future);
+        if (first != null)
+            return replay(key, await(key, first), fingerprint, coalesced);
+
+        try {
+            remembered = getRemembered(key); // completed between the lookup and the registration
+            if (remembered != null) {
+                future.complete(remembered);
+                return replay(key, remembered, fingerprint, replayed);
+            }
+
+            executed.incrementAndGet();
+            IdempotentResponse response = submission.submit();
+            future.complete(remember(key, response, fingerprint));
+            return new Outcome(response, false);
+        } catch (BusinessLayerException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    public int size() {
+        synchronized (responses) {
+            return responses.size();
+        }
+    }
+
+    /**
+     * Estimated size of the responses remembered in memory, in bytes.
+     */
+    public long getBytes() {
+        synchronized (responses) {
+            return responseBytes;
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    private IdempotentResponse lookup(String key) {
+        IdempotentResponse response = getRemembered(key);
+        if (response != null || store == null)
+            return response;
+
+        try {
+            response = store.get(key);
+        } catch (RuntimeException e) {
+            LOGGER.warn("-- Idempotent response not read from store : key={} reason={}", key, e.getMessage());
+            return null;
+        }
+        if (response == null || isExpired(response))
+            return null;
+
+        synchronized (responses) {
+            put(key, response);
+        }
+        return response;
+    }
+
+    private IdempotentResponse getRemembered(String key) {
+        synchronized (responses) {
+            IdempotentResponse response = responses.get(key);
+            if (response != null && isExpired(response)) {
+                remove(key);
+                return null;
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Keep the response as its JSON, in memory and in the store.
+     */
+    private IdempotentResponse remember(String key, IdempotentResponse response, String fingerprint) {
+        String body = null;
+        if (response.getEntity() != null) {
+            try {
+                body = response.getEntity() instanceof String ? (String) response.getEntity() : mapper.writeValueAsString(response.getEntity());
+            } catch (JsonProcessingException e) {
+                LOGGER.warn("-- Idempotent response not remembered, entity not serializable : key={} reason={}", key, e.getMessage());
+                return response;
+            }
+        }
+
+        IdempotentResponse remembered = new IdempotentResponse(response.getStatus(), response.getItemCount(), body, fingerprint, System.currentTimeMillis());
+        synchronized (responses) {
+            put(key, remembered);
+        }
+
+        if (store != null) {
+            try {
+                store.put(key, remembered);
+            } catch (RuntimeException e) {
+                LOGGER.warn("-- Idempotent response not stored : key={} reason={}", key, e.getMessage());
+            }
+        }
+        return remembered;
+    }
+
+    /**
+     * Remember the response and evict the least recently used ones beyond maxEntries or maxBytes. Guarded by
+     * responses.
+     */
+    private void put(String key, IdempotentResponse response) {
+        remove(key);
+        responses.put(key, response);
+        responseBytes += bytes(key, response);
+
+        Iterator<Map.Entry<String, IdempotentResponse>> eldest = responses.entrySet().iterator();
+        while ((responses.size() > maxEntries || responseBytes > maxBytes) && eldest.hasNext()) {
+            Map.Entry<String, IdempotentResponse> entry = eldest.next();
+            eldest.remove();
+            responseBytes -= bytes(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Guarded by responses.
+     */
+    private void remove(String key) {
+        IdempotentResponse removed = responses.remove(key);
+        if (removed != null)
+            responseBytes -= bytes(key, removed);
+    }
+
+    private static long bytes(String key, IdempotentResponse response) {
+        long bytes = ENTRY_OVERHEAD_BYTES + 2L * key.length();
+        if (response.getEntity() instanceof String)
+            bytes += 2L * ((String) response.getEntity()).length();
+        return bytes;
+    }
+
+    private Outcome replay(String key, IdempotentResponse response, String fingerprint, AtomicLong counter) throws BusinessLayerException {
+        if (response.getFingerprint() != null && fingerprint != null && !response.getFingerprint().equals(fingerprint)) {
+            conflicts.incrementAndGet();
+            LOGGER.warn("-- Idempotency-Key reused with a different request : key={}", key);
+            throw new BusinessLayerException(ExceptionTypeTO.DUPLICATE_ENTRY, IDEMPOTENCY_KEY + " already used for a different request");
+        }
+
+        counter.incrementAndGet();
+        LOGGER.debug("-- Idempotent response replayed : key={} status={}", key, response.getStatus());
+        return new Outcome(response, true);
+    }
+
+    private IdempotentResponse await(String key, CompletableFuture<IdempotentResponse> future) throws BusinessLayerException {
+        try {
+            return future.get(inFlightTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("-- Submission in flight not completed within {} ms : key={}", inFlightTimeoutMillis, key);
+            throw new BusinessLayerException(ExceptionTypeTO.CONCURRENT_MODIFICATION, "The submission with the same " + IDEMPOTENCY_KEY + " is still in progress");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, "Interrupted while waiting for the submission in flight");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BusinessLayerException)
+                throw (BusinessLayerException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new BusinessLayerException(ExceptionTypeTO.GENERIC, e.getCause().getMessage());
+        }
+    }
+
+    private boolean isExpired(IdempotentResponse response) {
+        return System.currentTimeMillis() - response.getCreatedAt() > expireAfterMillis;
+    }
+
+    /**
+     * SHA-256 of the endpoint and the JSON of the request body; null if the body can not be serialized.
+     */
+    private String fingerprint(String endpoint, Object input) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(endpoint.getBytes(StandardCharsets.UTF_8));
+            digest.update(mapper.writeValueAsBytes(input));
+
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest())
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            LOGGER.warn("-- Request fingerprint not computed : endpoint={} reason={}", endpoint, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Response of a submission and whether it was replayed instead of executed.
+     */
+    public static class Outcome {
+        private final IdempotentResponse response;
+        private final boolean replayed;
+
+        Outcome(IdempotentResponse response, boolean replayed) {
+            this.response = response;
+            this.replayed = replayed;
+        }
+
+        public IdempotentResponse getResponse() {
+            return response;
+        }
+
+        public boolean isReplayed() {
+            return replayed;
+        }
+    }
+}
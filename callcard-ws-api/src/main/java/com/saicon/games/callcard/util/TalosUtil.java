@@ -10,6 +10,7 @@ public class TalosUtil {
     public static final String X_TALOS_SESSION_ID = "X-Talos-Session-Id";
     public static final String X_TALOS_ITEM_COUNT = "X-Talos-Item-Count";
     public static final String X_TALOS_FILL_RESOURCES = "X-Talos-Fill-Resources";
+    public static final String X_TALOS_DEGRADED = "X-Talos-Degraded";
 
     private TalosUtil() {
         // Utility class
@@ -5,6 +5,7 @@ import com.saicon.games.callcard.ws.dto.SimplifiedCallCardDTO;
 // import com.saicon.games.ecommerce.data.ResponseListItemStatistics; // Not needed - using local response class
 import com.saicon.games.callcard.ws.response.WSResponse;
 import com.saicon.games.callcard.ws.data.ResponseListCallCard;
+import com.saicon.games.callcard.ws.data.ResponseListCallCardUpdateResult;
 import com.saicon.games.callcard.ws.data.ResponseListSimplifiedCallCard;
 import com.saicon.games.callcard.ws.data.ResponseListItemStatistics;
 import org.apache.cxf.annotations.FastInfoset;
@@ -50,6 +51,13 @@ public interface ICallCardService {
                                              @WebParam(name = "gameTypeId") String gameTypeId,
                                              @WebParam(name = "applicationId") String applicationId);
 
+    @WebMethod(operationName = "getCallCardVersion")
+    WSResponse getCallCardVersion( @WebParam(name = "userId") String userId,
+                                   @WebParam(name = "userGroupId") String userGroupId,
+                                   @WebParam(name = "gameTypeId") String gameTypeId,
+                                   @WebParam(name = "applicationId") String applicationId,
+                                   @WebParam(name = "includeTemplates") boolean includeTemplates);
+
     @WebMethod(operationName = "getNewOrPendingCallCard")
     ResponseListCallCard getNewOrPendingCallCard( @WebParam(name = "userId") String userId,
                                                   @WebParam(name = "userGroupId") String userGroupId,
@@ -64,6 +72,16 @@ public interface ICallCardService {
                                                    @WebParam(name = "gameTypeId") String gameTypeId,
                                                    @WebParam(name = "applicationId") String applicationId);
 
+    /**
+     * As getCallCardsFromTemplate, for a caller that already has the version from getCallCardVersion with templates.
+     */
+    @WebMethod(operationName = "getCallCardsFromTemplateAtVersion")
+    ResponseListCallCard getCallCardsFromTemplateAtVersion( @WebParam(name = "userId") String userId,
+                                                            @WebParam(name = "userGroupId") String userGroupId,
+                                                            @WebParam(name = "gameTypeId") String gameTypeId,
+                                                            @WebParam(name = "applicationId") String applicationId,
+                                                            @WebParam(name = "version") String version);
+
     @WebMethod(operationName = "listPendingCallCard")
     ResponseListCallCard listPendingCallCard( @WebParam(name = "userId") String userId,
                                                      @WebParam(name = "userGroupId") String userGroupId,
@@ -76,6 +94,17 @@ public interface ICallCardService {
                                             @WebParam(name = "userId") String userId,
                                             @WebParam(name = "callCard") List<CallCardDTO> callCard);
 
+    /**
+     * Update the given CallCards, reporting the outcome of each. The submitted CallCards may be processed in
+     * parallel, each in its own transaction, in which case a failed CallCard does not undo the others.
+     */
+    @WebMethod(operationName = "updateCallCards")
+    ResponseListCallCardUpdateResult updateCallCards(@WebParam(name = "userGroupId") String userGroupId,
+                                                     @WebParam(name = "gameTypeId") String gameTypeId,
+                                                     @WebParam(name = "applicationId") String applicationId,
+                                                     @WebParam(name = "userId") String userId,
+                                                     @WebParam(name = "callCard") List<CallCardDTO> callCard);
+
     @WebMethod(operationName = "addOrUpdateSimplifiedCallCard")
     WSResponse addOrUpdateSimplifiedCallCard(@WebParam(name = "userGroupId") String userGroupId,
                                              @WebParam(name = "gameTypeId") String gameTypeId,
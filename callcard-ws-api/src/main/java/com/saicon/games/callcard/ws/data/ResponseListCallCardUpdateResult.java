@@ -0,0 +1,51 @@
+package com.saicon.games.callcard.ws.data;
+
+import com.saicon.games.callcard.ws.dto.CallCardUpdateResultDTO;
+import com.saicon.games.callcard.ws.response.ResponseStatus;
+import com.saicon.games.callcard.ws.response.WSResponse;
+
+import java.util.List;
+
+/**
+ * Response wrapper for the per-card results of a multi-card CallCard update
+ */
+public class ResponseListCallCardUpdateResult extends WSResponse {
+    private List<CallCardUpdateResultDTO> records;
+    private int totalRecords;
+
+    public ResponseListCallCardUpdateResult() {
+    }
+
+    public ResponseListCallCardUpdateResult(List<CallCardUpdateResultDTO> records, int totalRecords) {
+        this.setRecords(records);
+        this.setTotalRecords(totalRecords);
+    }
+
+    public ResponseListCallCardUpdateResult(String result, ResponseStatus status, List<CallCardUpdateResultDTO> records, int totalRecords) {
+        super(result, status);
+        this.setRecords(records);
+        this.setTotalRecords(totalRecords);
+    }
+
+    public ResponseListCallCardUpdateResult(int errorNumber, String result, ResponseStatus status, List<CallCardUpdateResultDTO> records, int totalRecords) {
+        super(errorNumber, result, status);
+        this.setRecords(records);
+        this.setTotalRecords(totalRecords);
+    }
+
+    public List<CallCardUpdateResultDTO> getRecords() {
+        return records;
+    }
+
+    public void setRecords(List<CallCardUpdateResultDTO> records) {
+        this.records = records;
+    }
+
+    public int getTotalRecords() {
+        return totalRecords;
+    }
+
+    public void setTotalRecords(int totalRecords) {
+        this.totalRecords = totalRecords;
+    }
+}
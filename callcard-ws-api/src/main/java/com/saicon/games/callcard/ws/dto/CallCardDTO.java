@@ -37,6 +37,12 @@ public class CallCardDTO extends AbstractDTOWithResources{
 
     private String internalRefNo;
 
+    /**
+     * Set when an optional part of the assembly (previous values, geo info, brand product categories) could not be
+     * read in time and was left out.
+     */
+    private boolean degraded;
+
     public CallCardDTO(){
     }
 
@@ -156,6 +162,14 @@ public class CallCardDTO extends AbstractDTOWithResources{
         this.callCardTemplateId = callCardTemplateId;
     }
 
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    public void setDegraded(boolean degraded) {
+        this.degraded = degraded;
+    }
+
 
     public static class ExistingCallCardFirst implements Comparator<CallCardDTO> {
         @Override
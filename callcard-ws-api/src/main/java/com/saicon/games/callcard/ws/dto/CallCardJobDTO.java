@@ -0,0 +1,130 @@
+package com.saicon.games.callcard.ws.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.saicon.games.callcard.util.DTOParam;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Status of a CallCard submission accepted for asynchronous processing.
+ *
+ * States:
+ * - ACCEPTED: journaled, waiting for a worker
+ * - RUNNING: being processed
+ * - COMPLETED: CallCards updated, itemCount holds the number of CallCards returned
+ * - FAILED: not processed, errorNumber and error hold the reason
+ */
+@XmlRootElement(name = "CallCardJob")
+@XmlAccessorType(XmlAccessType.FIELD)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CallCardJobDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String ACCEPTED = "ACCEPTED";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    @DTOParam(1)
+    private String jobId;
+
+    @DTOParam(2)
+    private String userId;
+
+    @DTOParam(3)
+    private String state;
+
+    @DTOParam(4)
+    private Date submittedDate;
+
+    @DTOParam(5)
+    private Date completedDate;
+
+    @DTOParam(6)
+    private Integer itemCount;
+
+    @DTOParam(7)
+    private Integer errorNumber;
+
+    @DTOParam(8)
+    private String error;
+
+    public CallCardJobDTO() {
+    }
+
+    public CallCardJobDTO(String jobId, String userId, String state, Date submittedDate) {
+        this.jobId = jobId;
+        this.userId = userId;
+        this.state = state;
+        this.submittedDate = submittedDate;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public Date getSubmittedDate() {
+        return submittedDate;
+    }
+
+    public void setSubmittedDate(Date submittedDate) {
+        this.submittedDate = submittedDate;
+    }
+
+    public Date getCompletedDate() {
+        return completedDate;
+    }
+
+    public void setCompletedDate(Date completedDate) {
+        this.completedDate = completedDate;
+    }
+
+    public Integer getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(Integer itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public Integer getErrorNumber() {
+        return errorNumber;
+    }
+
+    public void setErrorNumber(Integer errorNumber) {
+        this.errorNumber = errorNumber;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
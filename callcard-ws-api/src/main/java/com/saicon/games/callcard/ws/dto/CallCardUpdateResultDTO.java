@@ -0,0 +1,117 @@
+package com.saicon.games.callcard.ws.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.saicon.games.callcard.util.DTOParam;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * Outcome of one CallCard of a multi-card update.
+ *
+ * States:
+ * - UPDATED: stored, storedCallCardId holds its id
+ * - FAILED: not stored, errorNumber and error hold the reason
+ *
+ * The result of the pending CallCard carries it as it is after the update.
+ */
+@XmlRootElement(name = "CallCardUpdateResult")
+@XmlAccessorType(XmlAccessType.FIELD)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CallCardUpdateResultDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String UPDATED = "UPDATED";
+    public static final String FAILED = "FAILED";
+
+    @DTOParam(1)
+    private String callCardId;
+
+    @DTOParam(2)
+    private String storedCallCardId;
+
+    @DTOParam(3)
+    private String state;
+
+    @DTOParam(4)
+    private boolean submitted;
+
+    @DTOParam(5)
+    private Integer errorNumber;
+
+    @DTOParam(6)
+    private String error;
+
+    @DTOParam(7)
+    private CallCardDTO callCard;
+
+    public CallCardUpdateResultDTO() {
+    }
+
+    /**
+     * @param callCardId Id of the CallCard as submitted: its id, or the temporary id of a new CallCard
+     */
+    public CallCardUpdateResultDTO(String callCardId, boolean submitted) {
+        this.callCardId = callCardId;
+        this.submitted = submitted;
+    }
+
+    public String getCallCardId() {
+        return callCardId;
+    }
+
+    public void setCallCardId(String callCardId) {
+        this.callCardId = callCardId;
+    }
+
+    public String getStoredCallCardId() {
+        return storedCallCardId;
+    }
+
+    public void setStoredCallCardId(String storedCallCardId) {
+        this.storedCallCardId = storedCallCardId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public boolean isSubmitted() {
+        return submitted;
+    }
+
+    public void setSubmitted(boolean submitted) {
+        this.submitted = submitted;
+    }
+
+    public Integer getErrorNumber() {
+        return errorNumber;
+    }
+
+    public void setErrorNumber(Integer errorNumber) {
+        this.errorNumber = errorNumber;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public CallCardDTO getCallCard() {
+        return callCard;
+    }
+
+    public void setCallCard(CallCardDTO callCard) {
+        this.callCard = callCard;
+    }
+}
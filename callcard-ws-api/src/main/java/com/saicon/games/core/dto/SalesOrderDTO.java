@@ -26,6 +26,7 @@ public class SalesOrderDTO implements Serializable {
     private Date dateSubmitted;
     private String refItemId;
     private Integer refItemTypeId;
+    private String revisedSalesOrderId;
 
     public SalesOrderDTO() {
     }
@@ -187,6 +188,17 @@ public class SalesOrderDTO implements Serializable {
         this.refItemTypeId = refItemTypeId;
     }
 
+    /**
+     * The existing sales order this order is added as a revision of, or null for a new order
+     */
+    public String getRevisedSalesOrderId() {
+        return revisedSalesOrderId;
+    }
+
+    public void setRevisedSalesOrderId(String revisedSalesOrderId) {
+        this.revisedSalesOrderId = revisedSalesOrderId;
+    }
+
     @Override
     public String toString() {
         return "SalesOrderDTO{" +
@@ -0,0 +1,167 @@
+package com.saicon.games.callcard.resources;
+
+import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import com.saicon.games.callcard.ws.ICallCardService;
+import com.saicon.games.callcard.ws.data.ResponseListCallCard;
+import com.saicon.games.callcard.ws.dto.CallCardDTO;
+import com.saicon.games.callcard.ws.dto.CallCardJobDTO;
+import com.saicon.games.callcard.ws.response.ResponseStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for CallCardIngestion ordering, outcomes and recovery from the journal.
+ */
+public class CallCardIngestionTest {
+
+    private static final String USER_ID = "6F9619FF-8B86-D011-B42D-00C04FC964FF";
+
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean busyOnce = new AtomicBoolean();
+    private CallCardIngestion ingestion;
+
+    @AfterEach
+    public void tearDown() {
+        if (ingestion != null)
+            ingestion.close();
+    }
+
+    @Test
+    public void submissionsOfAUserAreProcessedInOrder(@TempDir Path directory) throws Exception {
+        ingestion = new CallCardIngestion(recordingService(), directory.resolve("jobs.journal").toFile(), 4, 100, 100, 1 << 20);
+
+        CallCardJobDTO first = ingestion.submit(USER_ID, "group", "gameType", "application", callCards("card-1"));
+        ingestion.submit(USER_ID, "group", "gameType", "application", callCards("card-2"));
+        CallCardJobDTO failing = ingestion.submit(USER_ID, "group", "gameType", "application", callCards("fail"));
+
+        assertEquals(CallCardJobDTO.ACCEPTED, first.getState());
+        awaitProcessed(3);
+        assertEquals(3, processed.size());
+        assertEquals("card-1", processed.get(0));
+        assertEquals("card-2", processed.get(1));
+
+        assertEquals(CallCardJobDTO.COMPLETED, awaitDone(first.getJobId()).getState());
+        CallCardJobDTO failed = awaitDone(failing.getJobId());
+        assertEquals(CallCardJobDTO.FAILED, failed.getState());
+        assertEquals("rejected", failed.getError());
+        assertNull(ingestion.getJob("0F9619FF-8B86-D011-B42D-00C04FC964FF"));
+    }
+
+    @Test
+    public void journaledSubmissionsAreProcessedAfterARestart(@TempDir Path directory) throws Exception {
+        File file = directory.resolve("jobs.journal").toFile();
+        CallCardSubmissionJournal journal = new CallCardSubmissionJournal(file);
+        CallCardSubmissionJournal.Entry entry = new CallCardSubmissionJournal.Entry();
+        entry.setType(CallCardSubmissionJournal.Entry.SUBMIT);
+        entry.setSequence(1);
+        entry.setCallCards(callCards("card-1"));
+        entry.setJob(new CallCardJobDTO("JOB-1", USER_ID, CallCardJobDTO.ACCEPTED, new Date()));
+        journal.append(entry);
+        journal.close();
+
+        ingestion = new CallCardIngestion(recordingService(), file, 2, 100, 100, 1 << 20);
+        assertEquals(CallCardJobDTO.COMPLETED, awaitDone("job-1").getState());
+        ingestion.close();
+
+        ingestion = new CallCardIngestion(recordingService(), file, 2, 100, 100, 1 << 20);
+        assertEquals(CallCardJobDTO.COMPLETED, ingestion.getJob("JOB-1").getState());
+        assertEquals(1, processed.size(), "completed jobs are not processed again");
+    }
+
+    @Test
+    public void usersHavePendingJobsUntilTheirOutcome(@TempDir Path directory) throws Exception {
+        ingestion = new CallCardIngestion(recordingService(), directory.resolve("jobs.journal").toFile(), 1, 100, 100, 1 << 20, 50);
+
+        assertFalse(ingestion.hasPending(USER_ID));
+        CallCardJobDTO busy = ingestion.submit(USER_ID, "group", "gameType", "application", callCards("busy"));
+        assertTrue(ingestion.hasPending(USER_ID.toLowerCase()));
+        assertFalse(ingestion.hasPending("0F9619FF-8B86-D011-B42D-00C04FC964FF"));
+
+        awaitProcessed(1);
+        assertTrue(ingestion.hasPending(USER_ID), "a job waiting for a retry is pending");
+
+        assertEquals(CallCardJobDTO.COMPLETED, awaitDone(busy.getJobId()).getState());
+        long deadline = System.currentTimeMillis() + 2000;
+        while (ingestion.hasPending(USER_ID) && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);   // the outcome is visible before it is journaled
+        assertFalse(ingestion.hasPending(USER_ID));
+    }
+
+    @Test
+    public void jobsOfABusyUserAreRetriedInOrder(@TempDir Path directory) throws Exception {
+        ingestion = new CallCardIngestion(recordingService(), directory.resolve("jobs.journal").toFile(), 1, 100, 100, 1 << 20, 50);
+
+        CallCardJobDTO busy = ingestion.submit(USER_ID, "group", "gameType", "application", callCards("busy"));
+        CallCardJobDTO next = ingestion.submit(USER_ID, "group", "gameType", "application", callCards("card-2"));
+
+        assertEquals(CallCardJobDTO.COMPLETED, awaitDone(busy.getJobId()).getState());
+        assertEquals(CallCardJobDTO.COMPLETED, awaitDone(next.getJobId()).getState());
+        assertEquals(Arrays.asList("busy", "busy", "card-2"), processed);
+        assertEquals(1, ingestion.getRetried());
+        assertEquals(0, ingestion.getFailed());
+    }
+
+    @Test
+    public void submissionsAreRefusedWhenTooManyArePending(@TempDir Path directory) throws Exception {
+        ingestion = new CallCardIngestion(recordingService(), directory.resolve("jobs.journal").toFile(), 1, 0, 100, 1 << 20);
+
+        assertNull(ingestion.submit(USER_ID, "group", "gameType", "application", callCards("card-1")));
+        assertEquals(1, ingestion.getRefused());
+        assertEquals(0, processed.size());
+    }
+
+    private ICallCardService recordingService() {
+        return (ICallCardService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ICallCardService.class}, (proxy, method, args) -> {
+            if (!"addCallCardRecords".equals(method.getName()))
+                throw new UnsupportedOperationException(method.getName());
+
+            @SuppressWarnings("unchecked")
+            List<CallCardDTO> callCards = (List<CallCardDTO>) args[4];
+            String callCardId = callCards.get(0).getCallCardId();
+            processed.add(callCardId);
+            if ("fail".equals(callCardId))
+                return new ResponseListCallCard(1005, "rejected", ResponseStatus.ERROR, null, 0);
+            if ("busy".equals(callCardId) && !busyOnce.getAndSet(true))
+                return new ResponseListCallCard(Integer.parseInt(ExceptionTypeTO.CONCURRENT_MODIFICATION), "busy", ResponseStatus.ERROR, null, 0);
+            return new ResponseListCallCard("", ResponseStatus.OK, callCards, callCards.size());
+        });
+    }
+
+    private void awaitProcessed(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (processed.size() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+
+    private CallCardJobDTO awaitDone(String jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        CallCardJobDTO job = ingestion.getJob(jobId);
+        while ((job == null || job.getCompletedDate() == null) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            job = ingestion.getJob(jobId);
+        }
+        assertNotNull(job);
+        return job;
+    }
+
+    private static List<CallCardDTO> callCards(String callCardId) {
+        return Collections.singletonList(new CallCardDTO(callCardId, new Date(0), new Date(1)));
+    }
+}
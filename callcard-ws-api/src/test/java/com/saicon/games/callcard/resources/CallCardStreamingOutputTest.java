@@ -0,0 +1,74 @@
+package com.saicon.games.callcard.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.saicon.games.callcard.ws.dto.CallCardDTO;
+import com.saicon.games.callcard.ws.dto.CallCardGroupDTO;
+import com.saicon.games.callcard.ws.dto.CallCardRefUserDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Unit tests for CallCardStreamingOutput: the streamed JSON must match what the JSON provider produces.
+ */
+public class CallCardStreamingOutputTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void streamedJsonMatchesProviderJson() throws Exception {
+        List<CallCardDTO> callCards = Arrays.asList(callCard("card-1", 3, 120), callCard("card-2", 0, 0), new CallCardDTO("card-3", new Date(0), new Date(1)));
+
+        JsonNode expected = mapper.readTree(mapper.writeValueAsBytes(callCards));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new CallCardStreamingOutput(mapper, callCards).write(output);
+
+        assertEquals(expected, mapper.readTree(output.toByteArray()));
+    }
+
+    @Test
+    public void configuredMapperIsUsed() throws Exception {
+        ObjectMapper configuredMapper = new ObjectMapper().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        List<CallCardDTO> callCards = Collections.singletonList(callCard("card-1", 2, 60));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new CallCardStreamingOutput(configuredMapper, callCards).write(output);
+
+        assertEquals(configuredMapper.readTree(configuredMapper.writeValueAsBytes(callCards)), configuredMapper.readTree(output.toByteArray()));
+    }
+
+    @Test
+    public void callCardsAreNotModified() throws Exception {
+        CallCardDTO callCard = callCard("card-1", 2, 10);
+        List<CallCardGroupDTO> groups = callCard.getGroupIds();
+        List<CallCardRefUserDTO> refUsers = groups.get(0).getRefUserIds();
+
+        new CallCardStreamingOutput(mapper, Collections.singletonList(callCard)).write(new ByteArrayOutputStream());
+
+        assertSame(groups, callCard.getGroupIds());
+        assertSame(refUsers, callCard.getGroupIds().get(0).getRefUserIds());
+        assertEquals(10, refUsers.size());
+    }
+
+    private static CallCardDTO callCard(String callCardId, int groups, int posPerGroup) {
+        List<CallCardGroupDTO> groupDTOs = new ArrayList<>();
+        for (int g = 0; g < groups; g++) {
+            List<CallCardRefUserDTO> refUsers = new ArrayList<>();
+            for (int p = 0; p < posPerGroup; p++)
+                refUsers.add(new CallCardRefUserDTO(callCardId + "-" + g + "-" + p, "pos-" + p, null, new Date(0), new Date(1), p % 2 == 0, "comment " + p));
+            groupDTOs.add(new CallCardGroupDTO(g, refUsers, "template-1"));
+        }
+        return new CallCardDTO(callCardId, new Date(0), new Date(1), groupDTOs, false, new Date(2));
+    }
+}
@@ -0,0 +1,82 @@
+package com.saicon.games.callcard.resources;
+
+import com.saicon.games.callcard.ws.dto.CallCardJobDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for the group commit of CallCardSubmissionJournal.
+ */
+public class CallCardSubmissionJournalTest {
+
+    @Test
+    public void concurrentAppendsAreAllJournaled(@TempDir Path directory) throws Exception {
+        File file = directory.resolve("jobs.journal").toFile();
+        CallCardSubmissionJournal journal = new CallCardSubmissionJournal(file);
+        AtomicLong sequence = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> appends = new ArrayList<>();
+            for (int i = 0; i < 400; i++)
+                appends.add(executor.submit(() -> {
+                    journal.append(entry(sequence.incrementAndGet()));
+                    return null;
+                }));
+            for (Future<?> append : appends)
+                append.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+            journal.close();
+        }
+
+        Set<Long> sequences = new HashSet<>();
+        for (CallCardSubmissionJournal.Entry entry : new CallCardSubmissionJournal(file).read())
+            sequences.add(entry.getSequence());
+        assertEquals(400, sequences.size());
+    }
+
+    @Test
+    public void entriesWrittenBeforeACompactionAreForcedByIt(@TempDir Path directory) throws Exception {
+        File file = directory.resolve("jobs.journal").toFile();
+        CallCardSubmissionJournal journal = new CallCardSubmissionJournal(file);
+
+        CallCardSubmissionJournal.Entry live = entry(1);
+        long ticket = journal.write(live);
+        journal.write(entry(2));
+        journal.compact(Collections.singletonList(live));
+        journal.force(ticket);
+        journal.append(entry(3));
+        journal.close();
+
+        List<Long> sequences = new ArrayList<>();
+        for (CallCardSubmissionJournal.Entry entry : new CallCardSubmissionJournal(file).read())
+            sequences.add(entry.getSequence());
+        assertEquals(2, sequences.size());
+        assertEquals(Long.valueOf(1), sequences.get(0));
+        assertEquals(Long.valueOf(3), sequences.get(1));
+    }
+
+    private static CallCardSubmissionJournal.Entry entry(long sequence) {
+        CallCardSubmissionJournal.Entry entry = new CallCardSubmissionJournal.Entry();
+        entry.setType(CallCardSubmissionJournal.Entry.SUBMIT);
+        entry.setSequence(sequence);
+        entry.setJob(new CallCardJobDTO("JOB-" + sequence, "6F9619FF-8B86-D011-B42D-00C04FC964FF", CallCardJobDTO.ACCEPTED, new Date()));
+        return entry;
+    }
+}
@@ -0,0 +1,207 @@
+package com.saicon.games.callcard.resources;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.saicon.games.callcard.exception.BusinessLayerException;
+import com.saicon.games.callcard.exception.ExceptionTypeTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for IdempotentSubmissions replay, coalescing and conflict detection.
+ */
+public class IdempotentSubmissionsTest {
+
+    private static final String USER_ID = "6F9619FF-8B86-D011-B42D-00C04FC964FF";
+
+    private final AtomicInteger submissions = new AtomicInteger();
+
+    @Test
+    public void retriesReplayTheFirstResponse() throws Exception {
+        IdempotentSubmissions idempotent = new IdempotentSubmissions(100, TimeUnit.HOURS.toMillis(1), null);
+
+        IdempotentSubmissions.Outcome first = idempotent.execute(USER_ID, "update", "key-1", "body", counting(Arrays.asList("a", "b")));
+        IdempotentSubmissions.Outcome retry = idempotent.execute(USER_ID.toLowerCase(), "update", "key-1", "body", counting(Collections.emptyList()));
+
+        assertFalse(first.isReplayed());
+        assertTrue(retry.isReplayed());
+        assertEquals(1, submissions.get());
+        assertEquals("[\"a\",\"b\"]", retry.getResponse().getEntity());
+        assertEquals(Integer.valueOf(2), retry.getResponse().getItemCount());
+
+        idempotent.execute(USER_ID, "transactions", "key-1", "body", counting(null));
+        assertEquals(2, submissions.get(), "keys are scoped to the endpoint");
+    }
+
+    @Test
+    public void keyReusedWithADifferentRequestIsRejected() throws Exception {
+        IdempotentSubmissions idempotent = new IdempotentSubmissions(100, TimeUnit.HOURS.toMillis(1), null);
+        idempotent.execute(USER_ID, "update", "key-1", "body", counting(null));
+
+        assertThrows(BusinessLayerException.class, () -> idempotent.execute(USER_ID, "update", "key-1", "other body", counting(null)));
+
+        assertEquals(1, idempotent.getConflicts());
+        assertEquals(1, submissions.get());
+    }
+
+    @Test
+    public void failuresAreNotRemembered() throws Exception {
+        IdempotentSubmissions idempotent = new IdempotentSubmissions(100, TimeUnit.HOURS.toMillis(1), null);
+
+        assertThrows(BusinessLayerException.class, () -> idempotent.execute(USER_ID, "update", "key-1", "body", () -> {
+            submissions.incrementAndGet();
+            throw new BusinessLayerException("database down", ExceptionTypeTO.GENERIC);
+        }));
+        IdempotentSubmissions.Outcome retry = idempotent.execute(USER_ID, "update", "key-1", "body", counting(null));
+
+        assertFalse(retry.isReplayed());
+        assertEquals(2, submissions.get());
+    }
+
+    @Test
+    public void concurrentDuplicatesWaitForTheFirstSubmission() throws Exception {
+        final IdempotentSubmissions idempotent = new IdempotentSubmissions(100, TimeUnit.HOURS.toMillis(1), null);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<IdempotentSubmissions.Outcome> first = executor.submit(() -> idempotent.execute(USER_ID, "update", "key-1", "body", () -> {
+                submissions.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new IdempotentResponse(200, 1, Collections.singletonList("a"));
+            }));
+            started.await();
+            Future<IdempotentSubmissions.Outcome> duplicate = executor.submit(() -> idempotent.execute(USER_ID, "update", "key-1", "body", counting(null)));
+            Thread.sleep(100);
+            assertFalse(duplicate.isDone(), "the duplicate must wait for the submission in flight");
+            release.countDown();
+
+            assertFalse(first.get(2, TimeUnit.SECONDS).isReplayed());
+            assertTrue(duplicate.get(2, TimeUnit.SECONDS).isReplayed());
+            assertEquals(1, submissions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void duplicatesWaitForTheSubmissionInFlightUpToTheTimeout() throws Exception {
+        final IdempotentSubmissions idempotent = new IdempotentSubmissions(100, Long.MAX_VALUE, TimeUnit.HOURS.toMillis(1), 100, null, new ObjectMapper());
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<IdempotentSubmissions.Outcome> first = executor.submit(() -> idempotent.execute(USER_ID, "update", "key-1", "body", () -> {
+                submissions.incrementAndGet();
+                started.countDown();
+                release.await();
+                return new IdempotentResponse(204, null, null);
+            }));
+            started.await();
+
+            BusinessLayerException e = assertThrows(BusinessLayerException.class, () -> idempotent.execute(USER_ID, "update", "key-1", "body", counting(null)));
+            assertEquals(ExceptionTypeTO.CONCURRENT_MODIFICATION, e.getErrorCode());
+            release.countDown();
+
+            assertFalse(first.get(2, TimeUnit.SECONDS).isReplayed());
+            assertTrue(idempotent.execute(USER_ID, "update", "key-1", "body", counting(null)).isReplayed());
+            assertEquals(1, submissions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void bodiesAreRememberedWithTheGivenMapper() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        IdempotentSubmissions idempotent = new IdempotentSubmissions(100, Long.MAX_VALUE, TimeUnit.HOURS.toMillis(1), 1000, null, mapper);
+
+        idempotent.execute(USER_ID, "update", "key-1", "body", counting(Collections.singletonList(new Date(0))));
+        IdempotentSubmissions.Outcome retry = idempotent.execute(USER_ID, "update", "key-1", "body", counting(null));
+
+        assertEquals(mapper.writeValueAsString(Collections.singletonList(new Date(0))), retry.getResponse().getEntity());
+    }
+
+    @Test
+    public void responsesAreReadFromTheStore() throws Exception {
+        MapStore store = new MapStore();
+        new IdempotentSubmissions(100, TimeUnit.HOURS.toMillis(1), store).execute(USER_ID, "update", "key-1", "body", counting(Collections.singletonList("a")));
+
+        IdempotentSubmissions restarted = new IdempotentSubmissions(100, TimeUnit.HOURS.toMillis(1), store);
+        IdempotentSubmissions.Outcome retry = restarted.execute(USER_ID, "update", "key-1", "body", counting(null));
+
+        assertTrue(retry.isReplayed());
+        assertEquals(1, submissions.get());
+        assertEquals(1, store.responses.size());
+    }
+
+    @Test
+    public void expiredResponsesAreNotReplayed() throws Exception {
+        IdempotentSubmissions idempotent = new IdempotentSubmissions(100, -1, null);
+
+        idempotent.execute(USER_ID, "update", "key-1", "body", counting(null));
+        idempotent.execute(USER_ID, "update", "key-1", "body", counting(null));
+
+        assertEquals(2, submissions.get());
+    }
+
+    @Test
+    public void rememberedResponsesAreBoundedInBytes() throws Exception {
+        char[] body = new char[1000];
+        Arrays.fill(body, 'x');
+        long bytesPerResponse = IdempotentSubmissions.ENTRY_OVERHEAD_BYTES + 2L * (USER_ID + "|update|key-1").length() + 2L * body.length;
+        IdempotentSubmissions idempotent = new IdempotentSubmissions(100, 2 * bytesPerResponse, TimeUnit.HOURS.toMillis(1), null);
+
+        for (int i = 1; i <= 3; i++)
+            idempotent.execute(USER_ID, "update", "key-" + i, "body", counting(new String(body)));
+
+        assertEquals(2, idempotent.size());
+        assertEquals(2 * bytesPerResponse, idempotent.getBytes());
+        idempotent.execute(USER_ID, "update", "key-1", "body", counting(null));
+        assertEquals(4, submissions.get(), "the least recently used response was evicted");
+    }
+
+    private IdempotentSubmissions.Submission counting(final Object entity) {
+        return () -> {
+            submissions.incrementAndGet();
+            return entity != null
+                    ? new IdempotentResponse(200, entity instanceof List ? ((List<?>) entity).size() : null, entity)
+                    : new IdempotentResponse(204, null, null);
+        };
+    }
+
+    private static class MapStore implements IdempotentResponseStore {
+        private final Map<String, IdempotentResponse> responses = new HashMap<>();
+
+        @Override
+        public IdempotentResponse get(String key) {
+            return responses.get(key);
+        }
+
+        @Override
+        public void put(String key, IdempotentResponse response) {
+            if (!responses.containsKey(key))
+                responses.put(key, response);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+-- ============================================================================
+-- CallCard Microservice - Rollback V005
+-- ============================================================================
+-- Purpose: Rollback V005__create_idempotent_response.sql
+-- Drops the CALL_CARD_IDEMPOTENT_RESPONSE table; set callcard.idempotency.table-enabled to false first
+-- Author: Talos Maind Platform
+-- Date: 2026-10-17
+-- Database: Microsoft SQL Server 2008+
+-- ============================================================================
+
+SET ANSI_NULLS ON
+GO
+SET QUOTED_IDENTIFIER ON
+GO
+
+PRINT 'Starting V005 rollback - dropping idempotent response table...'
+GO
+
+IF EXISTS (
+    SELECT 1 FROM sys.indexes
+    WHERE name = 'idx_idempotent_response_created'
+    AND object_id = OBJECT_ID('CALL_CARD_IDEMPOTENT_RESPONSE')
+)
+BEGIN
+    DROP INDEX idx_idempotent_response_created ON CALL_CARD_IDEMPOTENT_RESPONSE;
+    PRINT 'Index idx_idempotent_response_created dropped';
+END
+GO
+
+IF OBJECT_ID('CALL_CARD_IDEMPOTENT_RESPONSE', 'U') IS NOT NULL
+BEGIN
+    DROP TABLE CALL_CARD_IDEMPOTENT_RESPONSE;
+    PRINT 'Table CALL_CARD_IDEMPOTENT_RESPONSE dropped';
+END
+GO
+
+-- ============================================================================
+-- Rollback Complete
+-- ============================================================================
+PRINT 'V005 rollback completed successfully';
+GO
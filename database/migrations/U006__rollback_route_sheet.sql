@@ -0,0 +1,41 @@
+-- ============================================================================
+-- CallCard Microservice - Rollback V006
+-- ============================================================================
+-- Purpose: Rollback V006__create_route_sheet.sql
+-- Drops the CALL_CARD_ROUTE_SHEET table; route sheets are then assembled live until the next run
+-- Author: Talos Maind Platform
+-- Date: 2026-10-17
+-- Database: Microsoft SQL Server 2008+
+-- ============================================================================
+
+SET ANSI_NULLS ON
+GO
+SET QUOTED_IDENTIFIER ON
+GO
+
+PRINT 'Starting V006 rollback - dropping route sheet table...'
+GO
+
+IF EXISTS (
+    SELECT 1 FROM sys.indexes
+    WHERE name = 'idx_route_sheet_built'
+    AND object_id = OBJECT_ID('CALL_CARD_ROUTE_SHEET')
+)
+BEGIN
+    DROP INDEX idx_route_sheet_built ON CALL_CARD_ROUTE_SHEET;
+    PRINT 'Index idx_route_sheet_built dropped';
+END
+GO
+
+IF OBJECT_ID('CALL_CARD_ROUTE_SHEET', 'U') IS NOT NULL
+BEGIN
+    DROP TABLE CALL_CARD_ROUTE_SHEET;
+    PRINT 'Table CALL_CARD_ROUTE_SHEET dropped';
+END
+GO
+
+-- ============================================================================
+-- Rollback Complete
+-- ============================================================================
+PRINT 'V006 rollback completed successfully';
+GO